@@ -0,0 +1,225 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.ldif.LDIFException;
+import com.unboundid.ldif.LDIFReader;
+import fr.insee.sugoi.app.service.LdapEmbeddedService;
+import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
+import fr.insee.sugoi.ldap.utils.mapper.AddressLdapMapper;
+import fr.insee.sugoi.ldap.utils.mapper.OrganizationLdapMapper;
+import fr.insee.sugoi.ldap.utils.mapper.UserLdapMapper;
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * In-process directory configured as the embedded ldap of sugoi-api-distribution-full-env, loaded
+ * with the test data and a generated population: users with their address, a tree of
+ * organizations, and an application with groups of members.
+ */
+public class BenchmarkDirectory {
+
+  public static final String APPLICATION = "BenchAppli";
+  public static final int ORGANIZATION_COUNT = 100;
+  public static final int GROUP_COUNT = 10;
+  public static final int GROUP_SIZE = 100;
+  public static final int POOL_SIZE = 64;
+
+  private static final String BASE_DN = "o=insee,c=fr";
+  private static final String SCHEMA = "/ldap-data/init-schema.txt";
+  private static final String LDIF = "/ldap-data/init-ldap.ldif";
+
+  private final InMemoryDirectoryServer server;
+  private final int population;
+
+  private BenchmarkDirectory(InMemoryDirectoryServer server, int population) {
+    this.server = server;
+    this.population = population;
+  }
+
+  /**
+   * Create the directory, load it then start listening on a free port of the loopback interface
+   *
+   * @param population number of generated users
+   * @return the started directory
+   */
+  public static BenchmarkDirectory start(int population) {
+    try {
+      Schema schema;
+      try (LDIFReader schemaReader =
+          new LDIFReader(BenchmarkDirectory.class.getResourceAsStream(SCHEMA))) {
+        schema = new Schema(schemaReader.readEntry());
+      }
+      InMemoryDirectoryServer server = LdapEmbeddedService.createServer(0, BASE_DN, schema, false);
+      try (LDIFReader ldifReader =
+          new LDIFReader(BenchmarkDirectory.class.getResourceAsStream(LDIF))) {
+        server.importFromLDIF(true, ldifReader);
+      }
+      BenchmarkDirectory directory = new BenchmarkDirectory(server, population);
+      directory.populate();
+      server.startListening();
+      return directory;
+    } catch (LDAPException | LDIFException | IOException e) {
+      throw new RuntimeException("Failed to start the benchmark directory", e);
+    }
+  }
+
+  public void shutDown() {
+    server.shutDown(true);
+  }
+
+  public int getPopulation() {
+    return population;
+  }
+
+  /** Configuration of a userStorage on this directory, with the benchmark mappings */
+  public Map<String, String> config() {
+    Map<String, String> config = BenchmarkFixtures.config();
+    config.put(LdapConfigKeys.URL, InetAddress.getLoopbackAddress().getHostAddress());
+    config.put(LdapConfigKeys.PORT, String.valueOf(server.getListenPort()));
+    config.put(LdapConfigKeys.USERNAME, LdapEmbeddedService.getUsername());
+    config.put(LdapConfigKeys.PASSWORD, LdapEmbeddedService.getPassword());
+    config.put(LdapConfigKeys.POOL_SIZE, String.valueOf(POOL_SIZE));
+    // set by LdapStoreBeans for every userStorage, searches read it
+    config.put(LdapConfigKeys.VLV_ENABLED, "false");
+    return config;
+  }
+
+  /** Mappings of the stores, keyed as in LdapStoreBeans */
+  public static Map<String, Map<String, String>> mappings() {
+    Map<String, Map<String, String>> mappings = new HashMap<>();
+    mappings.put("userMapping", BenchmarkFixtures.mapping(BenchmarkFixtures.USER_MAPPING));
+    mappings.put(
+        "organizationMapping", BenchmarkFixtures.mapping(BenchmarkFixtures.ORGANIZATION_MAPPING));
+    mappings.put("groupMapping", BenchmarkFixtures.mapping(BenchmarkFixtures.GROUP_MAPPING));
+    mappings.put(
+        "applicationMapping", BenchmarkFixtures.mapping(BenchmarkFixtures.APPLICATION_MAPPING));
+    return mappings;
+  }
+
+  /**
+   * Generate a user accepted by the schema of the test directory. Its address links to the entry
+   * address{i} created by the directory.
+   *
+   * @param i index of the user
+   * @param random source of the generated values
+   * @return the user
+   */
+  public static User user(int i, Random random) {
+    User user = BenchmarkFixtures.user(i, random);
+    // not allowed by the user object classes of the test schema
+    user.getAttributes().remove("insee_timbre");
+    user.getAttributes().remove("insee_organisme");
+    // ten users share each last name, so that a search on a last name fits in one page
+    user.setLastName("Nom" + (i / 10));
+    return user;
+  }
+
+  /**
+   * Lines of a generated postal address
+   *
+   * @param i index of the address
+   * @return the address, without id
+   */
+  public static Map<String, String> address(int i) {
+    Map<String, String> address = new HashMap<>();
+    address.put("Ligne1", "Destinataire " + i);
+    address.put("Ligne2", "_");
+    address.put("Ligne3", "_");
+    address.put("Ligne4", (i % 200) + " AVE VERDIER");
+    address.put("Ligne5", "_");
+    address.put("Ligne6", "92120 MONTROUGE");
+    address.put("Ligne7", "_");
+    return address;
+  }
+
+  public static String groupName(int g) {
+    return "Groupe" + g + "_" + APPLICATION;
+  }
+
+  private void populate() throws LDAPException {
+    Map<String, String> config = BenchmarkFixtures.config();
+    Map<String, Map<String, String>> mappings = mappings();
+    UserLdapMapper userLdapMapper = new UserLdapMapper(config, mappings.get("userMapping"));
+    OrganizationLdapMapper organizationLdapMapper =
+        new OrganizationLdapMapper(config, mappings.get("organizationMapping"));
+    AddressLdapMapper addressLdapMapper = new AddressLdapMapper(config);
+    Random random = new Random(BenchmarkFixtures.SEED);
+
+    // organizations form a tree where each organization has ten children
+    for (int n = 0; n < ORGANIZATION_COUNT; n++) {
+      Organization organization = new Organization();
+      organization.setIdentifiant("organisation" + n);
+      organization.addAttributes("description", "Organisation generee " + n);
+      if (n > 0) {
+        Organization parent = new Organization();
+        parent.setIdentifiant("organisation" + ((n - 1) / 10));
+        organization.setOrganization(parent);
+      }
+      server.add(
+          new Entry(
+              "uid=organisation" + n + "," + BenchmarkFixtures.ORGANIZATION_SOURCE,
+              organizationLdapMapper.mapToAttributes(organization)));
+    }
+
+    for (int i = 0; i < population; i++) {
+      server.add(
+          new Entry(
+              "l=address" + i + "," + BenchmarkFixtures.ADDRESS_SOURCE,
+              addressLdapMapper.mapToAttributes(address(i))));
+      server.add(
+          new Entry(
+              "uid=user" + i + "," + BenchmarkFixtures.USER_SOURCE,
+              userLdapMapper.mapToAttributes(user(i, random))));
+    }
+
+    String applicationDn = "ou=" + APPLICATION + "," + BenchmarkFixtures.APP_SOURCE;
+    server.add(
+        new Entry(
+            applicationDn,
+            new Attribute("objectClass", "top", "organizationalUnit"),
+            new Attribute("ou", APPLICATION)));
+    String groupSource = "ou=" + APPLICATION + "_Objets," + applicationDn;
+    server.add(
+        new Entry(
+            groupSource,
+            new Attribute("objectClass", "top", "organizationalUnit"),
+            new Attribute("ou", APPLICATION + "_Objets")));
+    for (int g = 0; g < GROUP_COUNT; g++) {
+      Set<String> members = new LinkedHashSet<>();
+      while (members.size() < Math.min(GROUP_SIZE, population)) {
+        members.add("uid=user" + random.nextInt(population) + "," + BenchmarkFixtures.USER_SOURCE);
+      }
+      server.add(
+          new Entry(
+              "cn=" + groupName(g) + "," + groupSource,
+              new Attribute("objectClass", "top", "groupOfUniqueNames"),
+              new Attribute("cn", groupName(g)),
+              new Attribute("description", "Groupe genere " + g),
+              new Attribute("uniqueMember", members)));
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import com.unboundid.ldap.sdk.Attribute;
+import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
+import fr.insee.sugoi.model.Habilitation;
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Data shared by the benchmarks. Mappings and configuration are written in the format of the
+ * fr.insee.sugoi.ldap.default.* properties read by LdapStoreBeans and reproduce the userStorages of
+ * the test directory. Generated entities only depend on the seed, so that two runs measure the same
+ * work.
+ */
+public class BenchmarkFixtures {
+
+  public static final long SEED = 42L;
+
+  public static final String USER_MAPPING =
+      "username:uid,String,rw;lastName:sn,String,rw;mail:mail,String,rw;"
+          + "firstName:givenname,String,rw;attributes.common_name:cn,String,rw;"
+          + "attributes.personal_title:personalTitle,String,rw;"
+          + "attributes.description:description,String,rw;"
+          + "attributes.phone_number:telephoneNumber,String,rw;"
+          + "habilitations:inseeGroupeDefaut,list_habilitation,rw;"
+          + "organization:inseeOrganisationDN,organization,rw;"
+          + "address:inseeAdressePostaleDN,address,rw;groups:memberOf,list_group,ro;"
+          + "attributes.insee_roles_applicatifs:inseeRoleApplicatif,list_string,rw;"
+          + "attributes.insee_timbre:inseeTimbre,String,rw;"
+          + "attributes.insee_organisme:inseeOrganisme,String,rw;"
+          + "attributes.identifiant_metier:inseeIdentifiantMetier,String,rw;"
+          + "attributes.properties:inseePropriete,list_string,rw;"
+          + "attributes.seeAlsos:seeAlso,list_string,ro;"
+          + "metadatas.modifyTimestamp:modifyTimestamp,String,ro";
+
+  public static final String ORGANIZATION_MAPPING =
+      "identifiant:uid,String,rw;attributes.description:description,String,rw;"
+          + "attributes.mail:mail,String,rw;address:inseeAdressePostaleDN,address,rw;"
+          + "organization:inseeOrganisationDN,organization,rw";
+
+  public static final String GROUP_MAPPING =
+      "name:cn,String,rw;description:description,String,rw;users:uniquemember,list_user,rw";
+
+  public static final String APPLICATION_MAPPING = "name:ou,String,rw";
+
+  public static final String USER_SOURCE = "ou=contacts,ou=clients_domaine1,o=insee,c=fr";
+  public static final String ORGANIZATION_SOURCE =
+      "ou=organisations,ou=clients_domaine1,o=insee,c=fr";
+  public static final String ADDRESS_SOURCE = "ou=adresses,ou=clients_domaine1,o=insee,c=fr";
+  public static final String APP_SOURCE = "ou=Applications,o=insee,c=fr";
+
+  private BenchmarkFixtures() {}
+
+  /** Configuration of a userStorage as generated by LdapStoreBeans */
+  public static Map<String, String> config() {
+    Map<String, String> config = new HashMap<>();
+    config.put(LdapConfigKeys.NAME, "default");
+    config.put(LdapConfigKeys.REALM_NAME, "domaine1");
+    config.put(LdapConfigKeys.USER_SOURCE, USER_SOURCE);
+    config.put(LdapConfigKeys.ORGANIZATION_SOURCE, ORGANIZATION_SOURCE);
+    config.put(LdapConfigKeys.ADDRESS_SOURCE, ADDRESS_SOURCE);
+    config.put(LdapConfigKeys.APP_SOURCE, APP_SOURCE);
+    config.put(
+        LdapConfigKeys.GROUP_SOURCE_PATTERN,
+        "ou={appliname}_Objets,ou={appliname},ou=Applications,o=insee,c=fr");
+    config.put(LdapConfigKeys.GROUP_FILTER_PATTERN, "(cn={group}_{appliname})");
+    config.put(
+        LdapConfigKeys.USER_OBJECT_CLASSES,
+        "top,inseeCompte,inseeContact,inseeAttributsAuthentification,inseeAttributsHabilitation,"
+            + "inseeAttributsCommunication");
+    config.put(LdapConfigKeys.ORGANIZATION_OBJECT_CLASSES, "top,inseeOrganisation");
+    config.put(LdapConfigKeys.GROUP_OBJECT_CLASSES, "top,groupOfUniqueNames");
+    config.put(LdapConfigKeys.APPLICATION_OBJECT_CLASSES, "top,organizationalUnit");
+    config.put(LdapConfigKeys.ADDRESS_OBJECT_CLASSES, "top,locality,inseeAdressePostale");
+    return config;
+  }
+
+  /**
+   * Parse a mapping the way LdapStoreBeans parses the default mappings
+   *
+   * @param mappingProperty mapping instructions separated by ;
+   * @return the mapping between sugoi fields and ldap attributes
+   */
+  public static Map<String, String> mapping(String mappingProperty) {
+    Map<String, String> mapping = new HashMap<>();
+    for (String mappingInstruction : mappingProperty.split(";")) {
+      String[] mappingInstructionSplit = mappingInstruction.split(":");
+      mapping.put(mappingInstructionSplit[0], mappingInstructionSplit[1]);
+    }
+    return mapping;
+  }
+
+  /**
+   * Generate users with all the mapped fields set
+   *
+   * @param count number of users
+   * @param random source of the generated values
+   * @return the users
+   */
+  public static List<User> users(int count, Random random) {
+    List<User> users = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      users.add(user(i, random));
+    }
+    return users;
+  }
+
+  /**
+   * Generate a user with all the mapped fields set
+   *
+   * @param i index of the user, used in its username
+   * @param random source of the generated values
+   * @return the user
+   */
+  public static User user(int i, Random random) {
+    User user = new User("user" + i);
+    user.setLastName("Nom" + random.nextInt(1000));
+    user.setFirstName("Prenom" + random.nextInt(1000));
+    user.setMail("user" + i + "@insee.fr");
+    user.addAttributes("common_name", user.getFirstName() + " " + user.getLastName());
+    user.addAttributes("personal_title", random.nextBoolean() ? "M" : "Mme");
+    user.addAttributes("description", "Utilisateur genere " + i);
+    user.addAttributes("phone_number", String.format("01%08d", random.nextInt(100000000)));
+    user.addAttributes("insee_timbre", "DG75-L" + random.nextInt(1000));
+    user.addAttributes("insee_organisme", "INSEE");
+    user.addAttributes("identifiant_metier", "metier" + i);
+    user.addAttributes("insee_roles_applicatifs", List.of("role1", "role2"));
+    user.addAttributes("properties", List.of("prop1$value1", "prop2$value2"));
+    for (int h = 0; h < 5; h++) {
+      user.addHabilitation(
+          new Habilitation("appli" + random.nextInt(20), "role" + h, "property" + h));
+    }
+    Organization organization = new Organization();
+    organization.setIdentifiant("organisation" + random.nextInt(100));
+    user.setOrganization(organization);
+    user.addAddress("id", "address" + i);
+    return user;
+  }
+
+  /**
+   * Attributes of an ldap user entry matching the user mapping
+   *
+   * @param i index of the user
+   * @param random source of the generated values
+   * @return the attributes of the entry
+   */
+  public static List<Attribute> userAttributes(int i, Random random) {
+    List<Attribute> attributes = new ArrayList<>();
+    attributes.add(
+        new Attribute(
+            "objectClass",
+            "top",
+            "inseeCompte",
+            "inseeContact",
+            "inseeAttributsAuthentification",
+            "inseeAttributsHabilitation",
+            "inseeAttributsCommunication"));
+    attributes.add(new Attribute("uid", "user" + i));
+    attributes.add(new Attribute("sn", "Nom" + random.nextInt(1000)));
+    attributes.add(new Attribute("givenName", "Prenom" + random.nextInt(1000)));
+    attributes.add(new Attribute("cn", "Prenom Nom"));
+    attributes.add(new Attribute("mail", "user" + i + "@insee.fr"));
+    attributes.add(new Attribute("personalTitle", "M"));
+    attributes.add(new Attribute("description", "Utilisateur genere " + i));
+    attributes.add(new Attribute("telephoneNumber", "0102030405"));
+    attributes.add(new Attribute("inseeTimbre", "DG75-L" + random.nextInt(1000)));
+    attributes.add(new Attribute("inseeOrganisme", "INSEE"));
+    attributes.add(new Attribute("inseeIdentifiantMetier", "metier" + i));
+    attributes.add(new Attribute("inseeRoleApplicatif", "role1", "role2"));
+    attributes.add(new Attribute("inseePropriete", "prop1$value1", "prop2$value2"));
+    attributes.add(
+        new Attribute(
+            "inseeGroupeDefaut",
+            "property0_role0_appli" + random.nextInt(20),
+            "property1_role1_appli" + random.nextInt(20),
+            "role2_appli" + random.nextInt(20)));
+    attributes.add(
+        new Attribute(
+            "memberOf",
+            "cn=Administrateurs_appli1,ou=appli1_Objets,ou=appli1,ou=Applications,o=insee,c=fr",
+            "cn=Utilisateurs_appli2,ou=appli2_Objets,ou=appli2,ou=Applications,o=insee,c=fr"));
+    attributes.add(
+        new Attribute(
+            "inseeOrganisationDN",
+            "uid=organisation" + random.nextInt(100) + "," + ORGANIZATION_SOURCE));
+    attributes.add(new Attribute("inseeAdressePostaleDN", "l=address" + i + "," + ADDRESS_SOURCE));
+    attributes.add(new Attribute("modifyTimestamp", "20210101000000Z"));
+    return attributes;
+  }
+}
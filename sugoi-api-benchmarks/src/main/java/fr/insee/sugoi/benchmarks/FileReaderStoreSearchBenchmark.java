@@ -0,0 +1,125 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import fr.insee.sugoi.model.Realm;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.UserStorage;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import fr.insee.sugoi.store.file.FileReaderStore;
+import fr.insee.sugoi.store.file.FileStoreBeans;
+import fr.insee.sugoi.store.file.FileWriterStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * Searches of FileReaderStore, which reads every user file of the userStorage then keeps the users
+ * matching the filter. The users are written by FileWriterStore to a temporary directory before
+ * the benchmark, without their habilitations which the file store cannot read back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileReaderStoreSearchBenchmark {
+
+  @Param({"100", "1000"})
+  public int userCount;
+
+  private Path userDirectory;
+  private AnnotationConfigApplicationContext context;
+  private FileReaderStore fileReaderStore;
+  private User mailFilter;
+  private User attributesFilter;
+
+  @Setup
+  public void setup() throws IOException {
+    userDirectory = Files.createTempDirectory("sugoi-benchmark-users");
+    Realm realm = new Realm();
+    realm.setName("benchmark");
+    UserStorage userStorage = new UserStorage();
+    userStorage.setName("default");
+    userStorage.setUserSource("file:" + userDirectory.toAbsolutePath() + "/");
+    context = new AnnotationConfigApplicationContext(FileStoreBeans.class);
+    fileReaderStore = (FileReaderStore) context.getBean("FileReaderStore", realm, userStorage);
+    FileWriterStore fileWriterStore =
+        (FileWriterStore) context.getBean("FileWriterStore", realm, userStorage);
+    for (User user : BenchmarkFixtures.users(userCount, new Random(BenchmarkFixtures.SEED))) {
+      user.setHabilitations(new ArrayList<>());
+      fileWriterStore.createUser(user);
+    }
+
+    mailFilter = emptyFilter();
+    mailFilter.setMail("user" + (userCount / 2) + "@insee.fr");
+
+    attributesFilter = emptyFilter();
+    attributesFilter.setAttributes(new HashMap<>());
+    attributesFilter.addAttributes("insee_organisme", "INSEE");
+    attributesFilter.addAttributes("personal_title", "Mme");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    context.close();
+    try (Stream<Path> files = Files.walk(userDirectory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public PageResult<User> searchMail() {
+    return fileReaderStore.searchUsers(mailFilter, new PageableResult(), "AND");
+  }
+
+  @Benchmark
+  public PageResult<User> searchAttributes() {
+    return fileReaderStore.searchUsers(attributesFilter, new PageableResult(), "AND");
+  }
+
+  /** A user without the collections initialized by its constructor, as deserialized filters */
+  private static User emptyFilter() {
+    User filter = new User();
+    filter.setGroups(null);
+    filter.setHabilitations(null);
+    filter.setAddress(null);
+    filter.setMetadatas(null);
+    filter.setAttributes(null);
+    return filter;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Modification;
+import fr.insee.sugoi.ldap.utils.mapper.GenericLdapMapper;
+import fr.insee.sugoi.ldap.utils.mapper.GroupLdapMapper;
+import fr.insee.sugoi.ldap.utils.mapper.OrganizationLdapMapper;
+import fr.insee.sugoi.ldap.utils.mapper.UserLdapMapper;
+import fr.insee.sugoi.model.Group;
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Mapping of ldap entries to sugoi entities and back, with the mappers used by the ldap store */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenericLdapMapperBenchmark {
+
+  private Map<String, String> config;
+  private Map<String, String> userMapping;
+  private UserLdapMapper userLdapMapper;
+  private OrganizationLdapMapper organizationLdapMapper;
+  private GroupLdapMapper groupLdapMapper;
+
+  private User user;
+  private List<Attribute> userAttributes;
+  private Organization organization;
+  private List<Attribute> organizationAttributes;
+  private List<Attribute> groupAttributes;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(BenchmarkFixtures.SEED);
+    config = BenchmarkFixtures.config();
+    userMapping = BenchmarkFixtures.mapping(BenchmarkFixtures.USER_MAPPING);
+    userLdapMapper = new UserLdapMapper(config, userMapping);
+    organizationLdapMapper =
+        new OrganizationLdapMapper(
+            config, BenchmarkFixtures.mapping(BenchmarkFixtures.ORGANIZATION_MAPPING));
+    groupLdapMapper =
+        new GroupLdapMapper(config, BenchmarkFixtures.mapping(BenchmarkFixtures.GROUP_MAPPING));
+
+    user = BenchmarkFixtures.users(1, random).get(0);
+    userAttributes = BenchmarkFixtures.userAttributes(0, random);
+    organization = userLdapMapper.mapFromAttributes(userAttributes).getOrganization();
+    organization.addAttributes("description", "Organisation generee");
+    organization.addAttributes("mail", "organisation@insee.fr");
+    organization.addAddress("id", "addressOrganisation");
+    organizationAttributes = organizationLdapMapper.mapToAttributes(organization);
+    Group group = new Group("appli1", "Utilisateurs_appli1");
+    group.setDescription("Groupe genere");
+    groupAttributes = groupLdapMapper.mapToAttributes(group);
+    for (int i = 0; i < 100; i++) {
+      groupAttributes.add(
+          new Attribute("uniqueMember", "uid=user" + i + ",ou=contacts,o=insee,c=fr"));
+    }
+  }
+
+  @Benchmark
+  public User userFromAttributes() {
+    return userLdapMapper.mapFromAttributes(userAttributes);
+  }
+
+  @Benchmark
+  public List<Attribute> userToAttributes() {
+    return userLdapMapper.mapToAttributes(user);
+  }
+
+  @Benchmark
+  public List<Modification> userModifications() {
+    return userLdapMapper.createMods(user);
+  }
+
+  /** Same mapping as userFromAttributes without a mapper, the mapping is compiled on each call */
+  @Benchmark
+  public User userFromAttributesUncompiled() {
+    return GenericLdapMapper.mapLdapAttributesToObject(
+        userAttributes, User.class, config, userMapping);
+  }
+
+  @Benchmark
+  public Organization organizationFromAttributes() {
+    return organizationLdapMapper.mapFromAttributes(organizationAttributes);
+  }
+
+  @Benchmark
+  public List<Attribute> organizationToAttributes() {
+    return organizationLdapMapper.mapToAttributes(organization);
+  }
+
+  @Benchmark
+  public Group groupFromAttributes() {
+    return groupLdapMapper.mapFromAttributes(groupAttributes);
+  }
+}
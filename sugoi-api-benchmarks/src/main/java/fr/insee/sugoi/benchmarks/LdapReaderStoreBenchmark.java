@@ -0,0 +1,110 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import fr.insee.sugoi.model.Application;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import fr.insee.sugoi.store.ldap.LdapReaderStore;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Reads of LdapReaderStore on a directory holding a generated population. Each benchmark runs in
+ * a fresh fork, so that the directory is loaded again and the operations of a benchmark do not
+ * change what the others read. Throughput and latency percentiles are both reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class LdapReaderStoreBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  public int population;
+
+  private BenchmarkDirectory directory;
+  private LdapReaderStore ldapReaderStore;
+  private ExecutorService hydrationExecutor;
+
+  @Setup
+  public void setup() {
+    directory = BenchmarkDirectory.start(population);
+    hydrationExecutor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4);
+    ldapReaderStore =
+        new LdapReaderStore(directory.config(), BenchmarkDirectory.mappings(), hydrationExecutor);
+  }
+
+  @TearDown
+  public void tearDown() {
+    hydrationExecutor.shutdown();
+    directory.shutDown();
+  }
+
+  @Benchmark
+  public User getUser(ThreadState state) {
+    return ldapReaderStore.getUser("user" + state.random.nextInt(population));
+  }
+
+  /** Search on a last name, shared by ten users */
+  @Benchmark
+  public PageResult<User> searchUsers(ThreadState state) {
+    User filter = new User();
+    filter.setLastName("Nom" + state.random.nextInt(population / 10));
+    return ldapReaderStore.searchUsers(filter, new PageableResult(20, 0, null), "AND");
+  }
+
+  @Benchmark
+  public PageResult<User> getUsersInGroup(ThreadState state) {
+    return ldapReaderStore.getUsersInGroup(
+        BenchmarkDirectory.APPLICATION,
+        BenchmarkDirectory.groupName(state.random.nextInt(BenchmarkDirectory.GROUP_COUNT)));
+  }
+
+  @Benchmark
+  public Application getApplication() {
+    return ldapReaderStore.getApplication(BenchmarkDirectory.APPLICATION);
+  }
+
+  /** Identifiers read by a thread, drawn from a seed of its own */
+  @State(Scope.Thread)
+  public static class ThreadState {
+
+    private Random random;
+
+    @Setup
+    public void setup(ThreadParams threadParams) {
+      random = new Random(BenchmarkFixtures.SEED + threadParams.getThreadIndex());
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import fr.insee.sugoi.store.ldap.LdapReaderStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Searches of LdapReaderStore with filter entities of increasing size, on a small directory so
+ * that the construction of the search filter and the mapping of the page weigh in the measure
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LdapSearchFilterBenchmark {
+
+  private static final int POPULATION = 1000;
+
+  @Param({"AND", "OR"})
+  public String searchType;
+
+  private BenchmarkDirectory directory;
+  private ExecutorService hydrationExecutor;
+  private LdapReaderStore ldapReaderStore;
+  private User simpleUserFilter;
+  private User fullUserFilter;
+  private Organization organizationFilter;
+
+  @Setup
+  public void setup() {
+    directory = BenchmarkDirectory.start(POPULATION);
+    hydrationExecutor = Executors.newFixedThreadPool(4);
+    ldapReaderStore =
+        new LdapReaderStore(directory.config(), BenchmarkDirectory.mappings(), hydrationExecutor);
+
+    // what the search endpoints usually send: a few properties
+    simpleUserFilter = new User();
+    simpleUserFilter.setMail("user1@insee.fr");
+    simpleUserFilter.setLastName("Nom*");
+
+    fullUserFilter = new User();
+    fullUserFilter.setMail("user1*");
+    fullUserFilter.setLastName("Nom*");
+    fullUserFilter.setFirstName("Prenom*");
+    fullUserFilter.setUsername("user*");
+    fullUserFilter.addAttributes("common_name", "Prenom*");
+    fullUserFilter.addAttributes("personal_title", "M*");
+    fullUserFilter.addAttributes("description", "*genere*");
+
+    organizationFilter = new Organization();
+    organizationFilter.setIdentifiant("organisation*");
+    organizationFilter.addAttributes("mail", "*@insee.fr");
+  }
+
+  @TearDown
+  public void tearDown() {
+    hydrationExecutor.shutdown();
+    directory.shutDown();
+  }
+
+  @Benchmark
+  public PageResult<User> simpleUserFilter() {
+    return ldapReaderStore.searchUsers(
+        simpleUserFilter, new PageableResult(20, 0, null), searchType);
+  }
+
+  @Benchmark
+  public PageResult<User> fullUserFilter() {
+    return ldapReaderStore.searchUsers(fullUserFilter, new PageableResult(20, 0, null), searchType);
+  }
+
+  @Benchmark
+  public PageResult<Organization> organizationFilter() {
+    return ldapReaderStore.searchOrganizations(
+        organizationFilter, new PageableResult(20, 0, null), searchType);
+  }
+}
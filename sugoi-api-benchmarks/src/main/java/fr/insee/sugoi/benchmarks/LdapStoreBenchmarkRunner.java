@@ -0,0 +1,65 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the ldap store benchmarks with an increasing number of threads, doubling from 1 up to the
+ * maximum. The results of each thread count are written as json in the result directory.
+ *
+ * <p>Arguments, all optional: maximum number of threads (default number of processors),
+ * populations separated by commas (default those of the benchmarks), result directory (default
+ * ldap-store-results).
+ */
+public class LdapStoreBenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException {
+    int maxThreads =
+        args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    File resultDirectory = new File(args.length > 2 ? args[2] : "ldap-store-results");
+    resultDirectory.mkdirs();
+
+    for (int threads : threadCounts(maxThreads)) {
+      OptionsBuilder optionsBuilder = new OptionsBuilder();
+      optionsBuilder
+          .include(LdapReaderStoreBenchmark.class.getName())
+          .include(LdapWriterStoreBenchmark.class.getName())
+          .threads(threads)
+          .resultFormat(ResultFormatType.JSON)
+          .result(new File(resultDirectory, "ldap-store-" + threads + "-threads.json").getPath());
+      if (args.length > 1) {
+        optionsBuilder.param("population", args[1].split(","));
+      }
+      Options options = optionsBuilder.build();
+      new Runner(options).run();
+    }
+  }
+
+  private static List<Integer> threadCounts(int maxThreads) {
+    List<Integer> threadCounts = new ArrayList<>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(maxThreads);
+    return threadCounts;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.store.ldap.LdapWriterStore;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Writes of LdapWriterStore on a directory holding a generated population. Each benchmark runs in
+ * a fresh fork with a freshly loaded directory. Throughput and latency percentiles are both
+ * reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class LdapWriterStoreBenchmark {
+
+  @Param({"10000", "100000", "1000000"})
+  public int population;
+
+  private BenchmarkDirectory directory;
+  private LdapWriterStore ldapWriterStore;
+  private ExecutorService hydrationExecutor;
+
+  @Setup
+  public void setup() {
+    directory = BenchmarkDirectory.start(population);
+    hydrationExecutor =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4);
+    ldapWriterStore =
+        new LdapWriterStore(directory.config(), BenchmarkDirectory.mappings(), hydrationExecutor);
+  }
+
+  @TearDown
+  public void tearDown() {
+    hydrationExecutor.shutdown();
+    directory.shutDown();
+  }
+
+  /** Create a user with an address, which is another entry */
+  @Benchmark
+  public User createUser(ThreadState state) {
+    return ldapWriterStore.createUser(state.newUser());
+  }
+
+  @Benchmark
+  public User updateUser(ThreadState state) {
+    int i = state.random.nextInt(population);
+    User user = BenchmarkDirectory.user(i, state.random);
+    user.addAttributes("description", "Utilisateur modifie " + i);
+    return ldapWriterStore.updateUser(user);
+  }
+
+  /** Delete a user created by the stores before the invocation */
+  @Benchmark
+  public void deleteUser(CreatedUser createdUser) {
+    ldapWriterStore.deleteUser(createdUser.username);
+  }
+
+  @Benchmark
+  public void addUserToGroup(ThreadState state) {
+    ldapWriterStore.addUserToGroup(
+        BenchmarkDirectory.APPLICATION,
+        BenchmarkDirectory.groupName(state.random.nextInt(BenchmarkDirectory.GROUP_COUNT)),
+        "user" + state.random.nextInt(population));
+  }
+
+  /** Values generated by a thread, with usernames no other thread generates */
+  @State(Scope.Thread)
+  public static class ThreadState {
+
+    private Random random;
+    private int threadIndex;
+    private int createdUsers;
+
+    @Setup
+    public void setup(ThreadParams threadParams) {
+      threadIndex = threadParams.getThreadIndex();
+      random = new Random(BenchmarkFixtures.SEED + threadIndex);
+    }
+
+    User newUser() {
+      User user = BenchmarkDirectory.user(createdUsers, random);
+      user.setUsername("bench" + threadIndex + "_" + createdUsers);
+      user.setMail(user.getUsername() + "@insee.fr");
+      user.setAddress(BenchmarkDirectory.address(createdUsers));
+      createdUsers++;
+      return user;
+    }
+  }
+
+  /**
+   * A user created before each invocation of deleteUser. The creation is not part of the measured
+   * time.
+   */
+  @State(Scope.Thread)
+  public static class CreatedUser {
+
+    private String username;
+
+    @Setup(Level.Invocation)
+    public void setup(LdapWriterStoreBenchmark benchmark, ThreadState state) {
+      username = benchmark.ldapWriterStore.createUser(state.newUser()).getUsername();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import fr.insee.sugoi.converter.mapper.OuganextSugoiMapper;
+import fr.insee.sugoi.converter.ouganext.Adresse;
+import fr.insee.sugoi.converter.ouganext.Contact;
+import fr.insee.sugoi.converter.ouganext.Organisation;
+import fr.insee.sugoi.model.User;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Conversions between the contacts of the legacy api and sugoi users */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OuganextSugoiMapperBenchmark {
+
+  private OuganextSugoiMapper ouganextSugoiMapper;
+  private Contact contact;
+  private User user;
+
+  @Setup
+  public void setup() {
+    ouganextSugoiMapper = new OuganextSugoiMapper();
+    user = BenchmarkFixtures.users(1, new Random(BenchmarkFixtures.SEED)).get(0);
+    user.addAddress("ligneUne", "M Prenom Nom");
+    user.addAddress("ligneDeux", "88 avenue Verdier");
+    user.addAddress("ligneSept", "92120 Montrouge");
+
+    contact = new Contact();
+    contact.setIdentifiant("user0");
+    contact.setNom("Nom");
+    contact.setPrenom("Prenom");
+    contact.setNomCommun("Prenom Nom");
+    contact.setAdresseMessagerie("user0@insee.fr");
+    contact.setDescription("Contact genere");
+    contact.setNumeroTelephone("0102030405");
+    contact.setCivilite("M");
+    contact.setIdentifiantMetier("metier0");
+    contact.setDomaineDeGestion("domaine1");
+    Adresse adresse = new Adresse();
+    adresse.setLigneUne("M Prenom Nom");
+    adresse.setLigneDeux("88 avenue Verdier");
+    adresse.setLigneSept("92120 Montrouge");
+    contact.setAdresse(adresse);
+    Organisation organisation = new Organisation();
+    organisation.setIdentifiant("organisation1");
+    organisation.setDescription("Organisation generee");
+    contact.setOrganisationDeRattachement(organisation);
+  }
+
+  @Benchmark
+  public User serializeToSugoi() {
+    return ouganextSugoiMapper.serializeToSugoi(contact, User.class);
+  }
+
+  @Benchmark
+  public Contact serializeToOuganext() {
+    return ouganextSugoiMapper.serializeToOuganext(user, Contact.class);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.benchmarks;
+
+import fr.insee.sugoi.core.model.SugoiUser;
+import fr.insee.sugoi.core.realm.RealmProvider;
+import fr.insee.sugoi.core.service.PermissionService;
+import fr.insee.sugoi.core.service.impl.PermissionServiceImpl;
+import fr.insee.sugoi.model.Realm;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Permission checks made on each request. PermissionServiceImpl is created by spring with the role
+ * patterns of benchmark-permissions.properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionServiceBenchmark {
+
+  /** Number of roles of the checked user besides the one granting the permission */
+  @Param({"5", "50"})
+  public int roleCount;
+
+  private ConfigurableApplicationContext context;
+  private PermissionService permissionService;
+  private SugoiUser reader;
+  private SugoiUser stranger;
+
+  @Setup
+  public void setup() {
+    context =
+        new SpringApplicationBuilder(PermissionServiceImpl.class, NoRealmProvider.class)
+            .web(WebApplicationType.NONE)
+            .properties("spring.config.location=classpath:/benchmark-permissions.properties")
+            .run();
+    permissionService = context.getBean(PermissionService.class);
+
+    Random random = new Random(BenchmarkFixtures.SEED);
+    List<String> roles = new ArrayList<>();
+    for (int i = 0; i < roleCount; i++) {
+      roles.add("ROLE_APPLI" + random.nextInt(1000) + "_UTILISATEUR");
+    }
+    stranger = new SugoiUser("stranger", new ArrayList<>(roles));
+    roles.add("ROLE_READER_DOMAINE1_SUGOI");
+    reader = new SugoiUser("reader", roles);
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public boolean isReaderGranted() {
+    return permissionService.isReader(reader, "domaine1", "default");
+  }
+
+  /** A refused permission goes through all the role patterns */
+  @Benchmark
+  public boolean isReaderRefused() {
+    return permissionService.isReader(stranger, "domaine1", "default");
+  }
+
+  @Benchmark
+  public List<String> getUserRealmReader() {
+    return permissionService.getUserRealmReader(reader);
+  }
+
+  /** The realms are not needed by the benchmarked checks */
+  public static class NoRealmProvider implements RealmProvider {
+
+    @Override
+    public Realm load(String realmName) {
+      return null;
+    }
+
+    @Override
+    public List<Realm> findAll() {
+      return List.of();
+    }
+
+    @Override
+    public void createRealm(Realm realm) {}
+
+    @Override
+    public void updateRealm(Realm realm) {}
+
+    @Override
+    public void deleteRealm(String realmName) {}
+  }
+}
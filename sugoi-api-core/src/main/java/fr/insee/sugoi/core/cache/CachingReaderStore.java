@@ -0,0 +1,199 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.cache;
+
+import fr.insee.sugoi.core.cache.ReaderStoreCache.CacheKey;
+import fr.insee.sugoi.core.cache.ReaderStoreCache.Entity;
+import fr.insee.sugoi.core.store.ReaderStore;
+import fr.insee.sugoi.model.Application;
+import fr.insee.sugoi.model.Group;
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import java.util.Set;
+
+/**
+ * Reader store reading users, organizations, groups and applications by id through the
+ * ReaderStoreCache. Existence checks use the cached entities and remember missing entities.
+ * Searches and credential validations are always sent to the wrapped store.
+ */
+public class CachingReaderStore implements ReaderStore {
+
+  private final ReaderStore readerStore;
+  private final ReaderStoreCache readerStoreCache;
+  private final String realm;
+  private final String userStorage;
+  private final Set<Entity> cachedEntities;
+  private final long timeToLiveSeconds;
+  private final long negativeTimeToLiveSeconds;
+  private final int maxEntries;
+
+  /**
+   * @param readerStore the wrapped reader store
+   * @param readerStoreCache where entities are cached
+   * @param realm name of the realm of the reader store
+   * @param userStorage name of the userStorage of the reader store
+   * @param cachedEntities kinds of entities read through the cache
+   * @param timeToLiveSeconds time an entity stays in the cache
+   * @param negativeTimeToLiveSeconds time a missing entity stays in the cache
+   * @param maxEntries maximum number of entities of each kind in the cache
+   */
+  public CachingReaderStore(
+      ReaderStore readerStore,
+      ReaderStoreCache readerStoreCache,
+      String realm,
+      String userStorage,
+      Set<Entity> cachedEntities,
+      long timeToLiveSeconds,
+      long negativeTimeToLiveSeconds,
+      int maxEntries) {
+    this.readerStore = readerStore;
+    this.readerStoreCache = readerStoreCache;
+    this.realm = realm;
+    this.userStorage = userStorage;
+    this.cachedEntities = cachedEntities;
+    this.timeToLiveSeconds = timeToLiveSeconds;
+    this.negativeTimeToLiveSeconds = negativeTimeToLiveSeconds;
+    this.maxEntries = maxEntries;
+  }
+
+  public ReaderStore getReaderStore() {
+    return readerStore;
+  }
+
+  @Override
+  public User getUser(String id) {
+    if (id == null || !cachedEntities.contains(Entity.USER)) {
+      return readerStore.getUser(id);
+    }
+    return readerStoreCache.get(
+        cacheKey(Entity.USER, id), User.class, () -> readerStore.getUser(id));
+  }
+
+  @Override
+  public boolean userExists(String id) {
+    if (id == null || !cachedEntities.contains(Entity.USER)) {
+      return readerStore.userExists(id);
+    }
+    return readerStoreCache.exists(cacheKey(Entity.USER, id), () -> readerStore.userExists(id));
+  }
+
+  @Override
+  public PageResult<User> searchUsers(
+      User userFilter, PageableResult pageable, String searchOperator) {
+    return readerStore.searchUsers(userFilter, pageable, searchOperator);
+  }
+
+  @Override
+  public Organization getOrganization(String id) {
+    if (id == null || !cachedEntities.contains(Entity.ORGANIZATION)) {
+      return readerStore.getOrganization(id);
+    }
+    return readerStoreCache.get(
+        cacheKey(Entity.ORGANIZATION, id),
+        Organization.class,
+        () -> readerStore.getOrganization(id));
+  }
+
+  @Override
+  public boolean organizationExists(String id) {
+    if (id == null || !cachedEntities.contains(Entity.ORGANIZATION)) {
+      return readerStore.organizationExists(id);
+    }
+    return readerStoreCache.exists(
+        cacheKey(Entity.ORGANIZATION, id), () -> readerStore.organizationExists(id));
+  }
+
+  @Override
+  public PageResult<Organization> searchOrganizations(
+      Organization organizationFilter, PageableResult pageable, String searchOperator) {
+    return readerStore.searchOrganizations(organizationFilter, pageable, searchOperator);
+  }
+
+  @Override
+  public Application getApplication(String applicationName) {
+    if (applicationName == null || !cachedEntities.contains(Entity.APPLICATION)) {
+      return readerStore.getApplication(applicationName);
+    }
+    return readerStoreCache.get(
+        cacheKey(Entity.APPLICATION, applicationName),
+        Application.class,
+        () -> readerStore.getApplication(applicationName));
+  }
+
+  @Override
+  public boolean applicationExists(String applicationName) {
+    if (applicationName == null || !cachedEntities.contains(Entity.APPLICATION)) {
+      return readerStore.applicationExists(applicationName);
+    }
+    return readerStoreCache.exists(
+        cacheKey(Entity.APPLICATION, applicationName),
+        () -> readerStore.applicationExists(applicationName));
+  }
+
+  @Override
+  public PageResult<Application> searchApplications(
+      Application applicationFilter, PageableResult pageable, String searchOperator) {
+    return readerStore.searchApplications(applicationFilter, pageable, searchOperator);
+  }
+
+  @Override
+  public Group getGroup(String appName, String groupName) {
+    if (appName == null || groupName == null || !cachedEntities.contains(Entity.GROUP)) {
+      return readerStore.getGroup(appName, groupName);
+    }
+    return readerStoreCache.get(
+        cacheKey(Entity.GROUP, appName + "/" + groupName),
+        Group.class,
+        () -> readerStore.getGroup(appName, groupName));
+  }
+
+  @Override
+  public boolean groupExists(String appName, String groupName) {
+    if (appName == null || groupName == null || !cachedEntities.contains(Entity.GROUP)) {
+      return readerStore.groupExists(appName, groupName);
+    }
+    return readerStoreCache.exists(
+        cacheKey(Entity.GROUP, appName + "/" + groupName),
+        () -> readerStore.groupExists(appName, groupName));
+  }
+
+  @Override
+  public PageResult<Group> searchGroups(
+      String appName, Group groupFilter, PageableResult pageable, String searchOperator) {
+    return readerStore.searchGroups(appName, groupFilter, pageable, searchOperator);
+  }
+
+  @Override
+  public PageResult<User> getUsersInGroup(String appName, String groupName) {
+    return readerStore.getUsersInGroup(appName, groupName);
+  }
+
+  @Override
+  public boolean validateCredentials(User user, String credential) {
+    return readerStore.validateCredentials(user, credential);
+  }
+
+  private CacheKey cacheKey(Entity entity, String key) {
+    return new CacheKey(
+        realm,
+        userStorage,
+        entity,
+        key,
+        timeToLiveSeconds,
+        negativeTimeToLiveSeconds,
+        maxEntries);
+  }
+}
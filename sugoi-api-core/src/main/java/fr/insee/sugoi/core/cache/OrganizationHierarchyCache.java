@@ -0,0 +1,262 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.cache;
+
+import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
+import fr.insee.sugoi.core.event.bus.SugoiEventListener;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.model.Organization;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of the organizations of each (realm, userStorage). It is enabled for each realm by the
+ * organization_cache realm property, checked by the reader stores with isEnabled. Organizations are
+ * stored without their parent organization so that a hierarchy is rebuilt from map lookups only.
+ * The cache of a userStorage is cleared each time one of its organizations is created, updated or
+ * deleted.
+ */
+@Component
+public class OrganizationHierarchyCache implements SugoiEventListener {
+
+  private static final Logger logger = LogManager.getLogger(OrganizationHierarchyCache.class);
+
+  public static final int DEFAULT_MAX_DEPTH = 20;
+
+  private static final String CACHE_PREFIX = "Organizations_";
+
+  @Autowired private CacheManager ehCacheManager;
+
+  @Value("${fr.insee.sugoi.cache.organization.ttl:300}")
+  private long timeToLiveSeconds;
+
+  @Value("${fr.insee.sugoi.cache.organization.max-entries:10000}")
+  private long maxEntries;
+
+  @Value("${fr.insee.sugoi.cache.organization.max-depth:" + DEFAULT_MAX_DEPTH + "}")
+  private int maxDepth;
+
+  /**
+   * Get an organization with its parent organizations using the cache of the userStorage
+   *
+   * @param realm name of the realm
+   * @param userStorage name of the userStorage
+   * @param id identifiant of the organization
+   * @param loader function loading an organization from the store. The parent organization of the
+   *     loaded organization only needs its identifiant
+   * @return the organization with its parent organizations or null if it does not exist
+   */
+  public Organization getOrganization(
+      String realm, String userStorage, String id, Function<String, Organization> loader) {
+    return resolveHierarchy(
+        id,
+        maxDepth,
+        organizationId -> {
+          Organization organization = getCached(realm, userStorage, organizationId);
+          if (organization == null) {
+            organization = loader.apply(organizationId);
+            put(realm, userStorage, organizationId, organization);
+          }
+          return organization;
+        });
+  }
+
+  /**
+   * @param realm name of the realm
+   * @param userStorage name of the userStorage
+   * @param id identifiant of the organization
+   * @return a copy of the cached organization, its parent organization only containing its
+   *     identifiant, or null if the organization is not cached
+   */
+  public Organization getCached(String realm, String userStorage, String id) {
+    Element element = getCache(realm, userStorage).get(id);
+    return element != null ? copyOf((Organization) element.getObjectValue()) : null;
+  }
+
+  /**
+   * Cache an organization without its parent organizations
+   *
+   * @param realm name of the realm
+   * @param userStorage name of the userStorage
+   * @param id identifiant the organization was loaded with
+   * @param organization the organization loaded from the store, nothing is cached if it is null
+   */
+  public void put(String realm, String userStorage, String id, Organization organization) {
+    if (organization != null) {
+      getCache(realm, userStorage).put(new Element(id, copyOf(organization)));
+    }
+  }
+
+  /**
+   * @param config configuration of a reader store, holding the organization_cache realm property
+   * @return true if the realm of the reader store caches its organizations
+   */
+  public static boolean isEnabled(Map<String, String> config) {
+    return "true".equalsIgnoreCase(config.get(GlobalKeysConfig.ORGANIZATION_CACHE));
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Build an organization and its parent organizations from single organizations. The walk stops
+   * when maxDepth organizations have been loaded or when an organization is met twice. In that case
+   * the last organization keeps a parent only containing the identifiant.
+   *
+   * @param id identifiant of the organization
+   * @param maxDepth maximum number of organizations to load
+   * @param loader function loading an organization without its parent organizations
+   * @return the organization with its parent organizations or null if it does not exist
+   */
+  public static Organization resolveHierarchy(
+      String id, int maxDepth, Function<String, Organization> loader) {
+    Organization root = null;
+    Organization child = null;
+    Set<String> visitedIds = new HashSet<>();
+    String currentId = id;
+    while (currentId != null && visitedIds.size() < maxDepth) {
+      if (!visitedIds.add(currentId.toLowerCase())) {
+        logger.warn("Organization {} is its own parent organization", currentId);
+        break;
+      }
+      Organization current = loader.apply(currentId);
+      Organization organization = current != null ? copyOf(current) : null;
+      if (child == null) {
+        root = organization;
+      } else {
+        child.setOrganization(organization);
+      }
+      if (organization == null) {
+        break;
+      }
+      child = organization;
+      currentId =
+          organization.getOrganization() != null
+              ? organization.getOrganization().getIdentifiant()
+              : null;
+    }
+    return root;
+  }
+
+  @Override
+  public Set<SugoiEventTypeEnum> getEventTypes() {
+    return EnumSet.of(
+        SugoiEventTypeEnum.CREATE_ORGANIZATION,
+        SugoiEventTypeEnum.UPDATE_ORGANIZATION,
+        SugoiEventTypeEnum.DELETE_ORGANIZATION);
+  }
+
+  @Override
+  public boolean isSynchronous() {
+    return true;
+  }
+
+  @Override
+  public void onEvent(SugoiEvent event) {
+    handleOrganizationChange(event);
+  }
+
+  public void handleOrganizationChange(SugoiEvent event) {
+    switch (event.getEventType()) {
+      case CREATE_ORGANIZATION:
+      case UPDATE_ORGANIZATION:
+      case DELETE_ORGANIZATION:
+        invalidate(event.getRealm(), event.getUserStorage());
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Remove all the organizations cached for a userStorage
+   *
+   * @param realm name of the realm
+   * @param userStorage name of the userStorage, if null the organizations of all the userStorages
+   *     of the realm are removed
+   */
+  public void invalidate(String realm, String userStorage) {
+    if (realm == null) {
+      return;
+    }
+    String prefix =
+        userStorage != null ? getCacheName(realm, userStorage) : getCacheName(realm, "");
+    for (String cacheName : ehCacheManager.getCacheNames()) {
+      if (userStorage != null ? cacheName.equals(prefix) : cacheName.startsWith(prefix)) {
+        logger.debug("Clearing organization cache {}", cacheName);
+        ehCacheManager.getEhcache(cacheName).removeAll();
+      }
+    }
+  }
+
+  private Ehcache getCache(String realm, String userStorage) {
+    String cacheName = getCacheName(realm, userStorage);
+    Ehcache cache = ehCacheManager.getEhcache(cacheName);
+    if (cache == null) {
+      cache =
+          ehCacheManager.addCacheIfAbsent(
+              new Cache(
+                  new CacheConfiguration(cacheName, (int) maxEntries)
+                      .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+                      .timeToLiveSeconds(timeToLiveSeconds)));
+    }
+    return cache;
+  }
+
+  private String getCacheName(String realm, String userStorage) {
+    return CACHE_PREFIX + realm.toLowerCase() + "_" + userStorage.toLowerCase();
+  }
+
+  /**
+   * Copy an organization without its parent organizations so that cached organizations are never
+   * modified by callers
+   */
+  private static Organization copyOf(Organization organization) {
+    Organization copy = new Organization();
+    copy.setIdentifiant(organization.getIdentifiant());
+    copy.setGpgkey(organization.getGpgkey());
+    if (organization.getAddress() != null) {
+      copy.setAddress(new HashMap<>(organization.getAddress()));
+    }
+    if (organization.getAttributes() != null) {
+      copy.setAttributes(new HashMap<>(organization.getAttributes()));
+    }
+    if (organization.getMetadatas() != null) {
+      copy.setMetadatas(new HashMap<>(organization.getMetadatas()));
+    }
+    if (organization.getOrganization() != null) {
+      Organization parent = new Organization();
+      parent.setIdentifiant(organization.getOrganization().getIdentifiant());
+      copy.setOrganization(parent);
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,411 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
+import fr.insee.sugoi.core.event.bus.SugoiEventListener;
+import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.core.store.ReaderStore;
+import fr.insee.sugoi.model.Realm;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.UserStorage;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.EhCache2Metrics;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches of the users, organizations, groups and applications read by the reader stores. Caches are
+ * enabled for each realm by the reader_cache realm property listing the cached entities. Entities
+ * are kept serialized so that callers always get their own copy. Entries are removed when Sugoi
+ * modifies the entity, as notified by the SugoiEvents, and expire after the time to live anyway
+ * since the directory may be modified by other applications. Missing entities are remembered for a
+ * shorter time so that existence checks before creations do not reach the store twice.
+ */
+@Component
+public class ReaderStoreCache implements SugoiEventListener {
+
+  private static final Logger logger = LogManager.getLogger(ReaderStoreCache.class);
+
+  private static final String CACHE_PREFIX = "ReaderStore_";
+
+  /** Value cached for missing entities, a serialized entity is never empty */
+  private static final byte[] MISSING = new byte[0];
+
+  /** Kinds of entities which can be cached */
+  public enum Entity {
+    USER,
+    ORGANIZATION,
+    GROUP,
+    APPLICATION;
+
+    public String getName() {
+      return name().toLowerCase();
+    }
+  }
+
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  @Autowired private CacheManager ehCacheManager;
+
+  @Value("${fr.insee.sugoi.cache.reader.ttl:60}")
+  private long defaultTimeToLiveSeconds;
+
+  @Value("${fr.insee.sugoi.cache.reader.max-entries:10000}")
+  private int defaultMaxEntries;
+
+  @Value("${fr.insee.sugoi.cache.reader.negative-ttl:5}")
+  private long defaultNegativeTimeToLiveSeconds;
+
+  /**
+   * Wrap the reader store of a userStorage in a CachingReaderStore if the realm enables caches
+   *
+   * @param realm the realm of the reader store
+   * @param userStorage the userStorage of the reader store
+   * @param readerStore the reader store to wrap
+   * @return the caching reader store or readerStore itself if no entity is cached for the realm
+   */
+  public ReaderStore wrap(Realm realm, UserStorage userStorage, ReaderStore readerStore) {
+    Set<Entity> entities = getCachedEntities(realm);
+    if (entities.isEmpty()) {
+      return readerStore;
+    }
+    logger.info("Caching {} read on {}_{}", entities, realm.getName(), userStorage.getName());
+    long timeToLiveSeconds =
+        getLongProperty(realm, GlobalKeysConfig.READER_CACHE_TTL, defaultTimeToLiveSeconds);
+    long negativeTimeToLiveSeconds =
+        getLongProperty(
+            realm, GlobalKeysConfig.READER_CACHE_NEGATIVE_TTL, defaultNegativeTimeToLiveSeconds);
+    long maxEntries =
+        getLongProperty(realm, GlobalKeysConfig.READER_CACHE_MAX_ENTRIES, defaultMaxEntries);
+    return new CachingReaderStore(
+        readerStore,
+        this,
+        realm.getName(),
+        userStorage.getName(),
+        entities,
+        timeToLiveSeconds,
+        negativeTimeToLiveSeconds,
+        (int) maxEntries);
+  }
+
+  /**
+   * Get an entity from the cache or load it and put it in the cache
+   *
+   * @param <T> type of the entity
+   * @param cacheKey identifies the cache and the entity
+   * @param type class of the entity, used to copy it
+   * @param loader loads the entity when it is not in the cache. Null results are cached for the
+   *     negative time to live
+   * @return a copy of the cached entity or the loaded entity, null if the entity is missing
+   */
+  public <T> T get(CacheKey cacheKey, Class<T> type, Supplier<T> loader) {
+    Ehcache cache = getCache(cacheKey);
+    Element element = cache.get(cacheKey.key);
+    if (element != null) {
+      byte[] cached = (byte[]) element.getObjectValue();
+      if (cached.length == 0) {
+        return null;
+      }
+      try {
+        return objectMapper.readValue(cached, type);
+      } catch (IOException e) {
+        logger.warn("Cannot read cached {} {}", cacheKey.entity.getName(), cacheKey.key, e);
+        cache.remove(cacheKey.key);
+      }
+    }
+    T value = loader.get();
+    if (value != null) {
+      try {
+        cache.put(new Element(cacheKey.key, objectMapper.writeValueAsBytes(value)));
+      } catch (IOException e) {
+        logger.warn("Cannot cache {} {}", cacheKey.entity.getName(), cacheKey.key, e);
+      }
+    } else {
+      putMissing(cache, cacheKey);
+    }
+    return value;
+  }
+
+  /**
+   * Check if an entity exists using the cache, or probe the store. Missing entities are cached for
+   * the negative time to live, existing entities are not cached since they are not read.
+   *
+   * @param cacheKey identifies the cache and the entity
+   * @param probe checks if the entity exists in the store
+   * @return true if the entity exists
+   */
+  public boolean exists(CacheKey cacheKey, BooleanSupplier probe) {
+    Ehcache cache = getCache(cacheKey);
+    Element element = cache.get(cacheKey.key);
+    if (element != null) {
+      return ((byte[]) element.getObjectValue()).length > 0;
+    }
+    boolean exists = probe.getAsBoolean();
+    if (!exists) {
+      putMissing(cache, cacheKey);
+    }
+    return exists;
+  }
+
+  @Override
+  public Set<SugoiEventTypeEnum> getEventTypes() {
+    return EnumSet.of(
+        SugoiEventTypeEnum.CREATE_USER,
+        SugoiEventTypeEnum.UPDATE_USER,
+        SugoiEventTypeEnum.DELETE_USER,
+        SugoiEventTypeEnum.CHANGE_PASSWORD,
+        SugoiEventTypeEnum.RESET_PASSWORD,
+        SugoiEventTypeEnum.INIT_PASSWORD,
+        SugoiEventTypeEnum.ADD_APP_MANAGED_ATTRIBUTES,
+        SugoiEventTypeEnum.DELETE_APP_MANAGED_ATTRIBUTES,
+        SugoiEventTypeEnum.ADD_USER_TO_GROUP,
+        SugoiEventTypeEnum.DELETE_USER_FROM_GROUP,
+        SugoiEventTypeEnum.CREATE_GROUP,
+        SugoiEventTypeEnum.UPDATE_GROUP,
+        SugoiEventTypeEnum.DELETE_GROUP,
+        SugoiEventTypeEnum.CREATE_APPLICATION,
+        SugoiEventTypeEnum.UPDATE_APPLICATION,
+        SugoiEventTypeEnum.DELETE_APPLICATION,
+        SugoiEventTypeEnum.CREATE_ORGANIZATION,
+        SugoiEventTypeEnum.UPDATE_ORGANIZATION,
+        SugoiEventTypeEnum.DELETE_ORGANIZATION,
+        SugoiEventTypeEnum.UPDATE_REALM,
+        SugoiEventTypeEnum.DELETE_REALM);
+  }
+
+  /** Entities are removed before the modification returns so that it is read right after */
+  @Override
+  public boolean isSynchronous() {
+    return true;
+  }
+
+  @Override
+  public void onEvent(SugoiEvent event) {
+    handleChange(event);
+  }
+
+  public void handleChange(SugoiEvent event) {
+    String realm = event.getRealm();
+    String userStorage = event.getUserStorage();
+    switch (event.getEventType()) {
+      case CREATE_USER:
+      case UPDATE_USER:
+      case DELETE_USER:
+      case CHANGE_PASSWORD:
+      case RESET_PASSWORD:
+      case INIT_PASSWORD:
+      case ADD_APP_MANAGED_ATTRIBUTES:
+      case DELETE_APP_MANAGED_ATTRIBUTES:
+        invalidate(realm, userStorage, Entity.USER, getUserId(event));
+        break;
+      case ADD_USER_TO_GROUP:
+      case DELETE_USER_FROM_GROUP:
+        invalidate(realm, userStorage, Entity.USER, getUserId(event));
+        invalidate(realm, null, Entity.GROUP, null);
+        invalidate(realm, null, Entity.APPLICATION, null);
+        break;
+      case CREATE_GROUP:
+      case UPDATE_GROUP:
+      case DELETE_GROUP:
+      case CREATE_APPLICATION:
+      case UPDATE_APPLICATION:
+      case DELETE_APPLICATION:
+        invalidate(realm, null, Entity.GROUP, null);
+        invalidate(realm, null, Entity.APPLICATION, null);
+        break;
+      case CREATE_ORGANIZATION:
+      case UPDATE_ORGANIZATION:
+      case DELETE_ORGANIZATION:
+        // organizations embed their parents, children of the modified organization are stale too
+        invalidate(realm, userStorage, Entity.ORGANIZATION, null);
+        // users embed their organization
+        invalidate(realm, userStorage, Entity.USER, null);
+        break;
+      case UPDATE_REALM:
+      case DELETE_REALM:
+        for (Entity entity : Entity.values()) {
+          invalidate(realm, null, entity, null);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Remove cached entities
+   *
+   * @param realm name of the realm
+   * @param userStorage name of the userStorage, if null the entities of all the userStorages of the
+   *     realm are removed
+   * @param entity kind of the removed entities
+   * @param key key of the removed entity, if null all the entities of this kind are removed
+   */
+  public void invalidate(String realm, String userStorage, Entity entity, String key) {
+    if (realm == null) {
+      return;
+    }
+    String prefix = CACHE_PREFIX + entity.getName() + "_" + realm.toLowerCase() + "_";
+    String cacheName = userStorage != null ? prefix + userStorage.toLowerCase() : null;
+    for (String name : ehCacheManager.getCacheNames()) {
+      if (cacheName != null ? name.equals(cacheName) : name.startsWith(prefix)) {
+        Ehcache cache = ehCacheManager.getEhcache(name);
+        if (key != null) {
+          cache.remove(key.toLowerCase());
+        } else {
+          logger.debug("Clearing reader cache {}", name);
+          cache.removeAll();
+        }
+      }
+    }
+  }
+
+  /** Identifies a cache and an entry in the cache */
+  public static class CacheKey {
+
+    private final String realm;
+    private final String userStorage;
+    private final Entity entity;
+    private final String key;
+    private final long timeToLiveSeconds;
+    private final long negativeTimeToLiveSeconds;
+    private final int maxEntries;
+
+    /**
+     * @param realm name of the realm
+     * @param userStorage name of the userStorage
+     * @param entity kind of entity
+     * @param key key of the entity, case insensitive
+     * @param timeToLiveSeconds time to live of the entries, used if the cache is created
+     * @param negativeTimeToLiveSeconds time to live of the missing entity, not cached if 0
+     * @param maxEntries maximum size of the cache, used if the cache is created
+     */
+    public CacheKey(
+        String realm,
+        String userStorage,
+        Entity entity,
+        String key,
+        long timeToLiveSeconds,
+        long negativeTimeToLiveSeconds,
+        int maxEntries) {
+      this.realm = realm;
+      this.userStorage = userStorage;
+      this.entity = entity;
+      this.key = key.toLowerCase();
+      this.timeToLiveSeconds = timeToLiveSeconds;
+      this.negativeTimeToLiveSeconds = negativeTimeToLiveSeconds;
+      this.maxEntries = maxEntries;
+    }
+  }
+
+  private void putMissing(Ehcache cache, CacheKey cacheKey) {
+    // an element time to live of 0 would mean eternal
+    if (cacheKey.negativeTimeToLiveSeconds > 0) {
+      Element element = new Element(cacheKey.key, MISSING);
+      element.setTimeToLive(
+          (int) Math.min(cacheKey.negativeTimeToLiveSeconds, cacheKey.timeToLiveSeconds));
+      cache.put(element);
+    }
+  }
+
+  private Ehcache getCache(CacheKey cacheKey) {
+    String cacheName =
+        CACHE_PREFIX
+            + cacheKey.entity.getName()
+            + "_"
+            + cacheKey.realm.toLowerCase()
+            + "_"
+            + cacheKey.userStorage.toLowerCase();
+    Ehcache cache = ehCacheManager.getEhcache(cacheName);
+    if (cache == null) {
+      cache =
+          ehCacheManager.addCacheIfAbsent(
+              new Cache(
+                  new CacheConfiguration(cacheName, cacheKey.maxEntries)
+                      .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+                      .timeToLiveSeconds(cacheKey.timeToLiveSeconds)));
+      EhCache2Metrics.monitor(
+          Metrics.globalRegistry,
+          cache,
+          Tags.of(
+              "realm",
+              cacheKey.realm,
+              "userStorage",
+              cacheKey.userStorage,
+              "entity",
+              cacheKey.entity.getName()));
+    }
+    return cache;
+  }
+
+  private Set<Entity> getCachedEntities(Realm realm) {
+    Set<Entity> entities = EnumSet.noneOf(Entity.class);
+    String property =
+        realm.getProperties() != null
+            ? realm.getProperties().get(GlobalKeysConfig.READER_CACHE)
+            : null;
+    if (property != null) {
+      for (String name : property.replace(" ", "").split(",")) {
+        if (!name.isEmpty()) {
+          try {
+            entities.add(Entity.valueOf(name.toUpperCase()));
+          } catch (IllegalArgumentException e) {
+            logger.warn("Unknown cached entity {} on realm {}", name, realm.getName());
+          }
+        }
+      }
+    }
+    return entities;
+  }
+
+  private long getLongProperty(Realm realm, String property, long defaultValue) {
+    String value = realm.getProperties() != null ? realm.getProperties().get(property) : null;
+    return value != null ? Long.parseLong(value.trim()) : defaultValue;
+  }
+
+  private String getUserId(SugoiEvent event) {
+    if (event.getProperties() == null) {
+      return null;
+    }
+    Object user = event.getProperties().get(EventKeysConfig.USER);
+    if (user instanceof User) {
+      return ((User) user).getUsername();
+    } else if (user instanceof String) {
+      return (String) user;
+    }
+    Object userId = event.getProperties().get(EventKeysConfig.USER_ID);
+    return userId instanceof String ? (String) userId : null;
+  }
+}
@@ -0,0 +1,229 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.coalescing;
+
+import com.fasterxml.jackson.databind.JavaType;
+import fr.insee.sugoi.core.store.ReaderStore;
+import fr.insee.sugoi.model.Application;
+import fr.insee.sugoi.model.Group;
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import java.util.function.Supplier;
+
+/**
+ * Reader store sending identical concurrent reads to the wrapped store only once through the
+ * ReadCoalescer. Searches are identical when their filters, paging and operators are equal.
+ * Searches resuming from a search token and pages returned with a search token are not shared,
+ * since a search token belongs to a single caller. Credential validations are always sent to the
+ * wrapped store.
+ */
+public class CoalescingReaderStore implements ReaderStore {
+
+  private final ReaderStore readerStore;
+  private final ReadCoalescer readCoalescer;
+  private final String realm;
+  private final String userStorage;
+
+  private final JavaType userType;
+  private final JavaType organizationType;
+  private final JavaType applicationType;
+  private final JavaType groupType;
+  private final JavaType booleanType;
+  private final JavaType userPageType;
+  private final JavaType organizationPageType;
+  private final JavaType applicationPageType;
+  private final JavaType groupPageType;
+
+  /**
+   * @param readerStore the wrapped reader store
+   * @param readCoalescer shares the in flight reads
+   * @param realm name of the realm of the reader store
+   * @param userStorage name of the userStorage of the reader store
+   */
+  public CoalescingReaderStore(
+      ReaderStore readerStore, ReadCoalescer readCoalescer, String realm, String userStorage) {
+    this.readerStore = readerStore;
+    this.readCoalescer = readCoalescer;
+    this.realm = realm;
+    this.userStorage = userStorage;
+    userType = readCoalescer.type(User.class);
+    organizationType = readCoalescer.type(Organization.class);
+    applicationType = readCoalescer.type(Application.class);
+    groupType = readCoalescer.type(Group.class);
+    booleanType = readCoalescer.type(Boolean.class);
+    userPageType = readCoalescer.type(PageResult.class, User.class);
+    organizationPageType = readCoalescer.type(PageResult.class, Organization.class);
+    applicationPageType = readCoalescer.type(PageResult.class, Application.class);
+    groupPageType = readCoalescer.type(PageResult.class, Group.class);
+  }
+
+  public ReaderStore getReaderStore() {
+    return readerStore;
+  }
+
+  @Override
+  public User getUser(String id) {
+    return read("getUser", userType, () -> readerStore.getUser(id), id);
+  }
+
+  @Override
+  public boolean userExists(String id) {
+    return read("userExists", booleanType, () -> readerStore.userExists(id), id);
+  }
+
+  @Override
+  public PageResult<User> searchUsers(
+      User userFilter, PageableResult pageable, String searchOperator) {
+    return search(
+        "searchUsers",
+        userPageType,
+        pageable,
+        () -> readerStore.searchUsers(userFilter, pageable, searchOperator),
+        userFilter,
+        pageable,
+        normalize(searchOperator));
+  }
+
+  @Override
+  public Organization getOrganization(String id) {
+    return read("getOrganization", organizationType, () -> readerStore.getOrganization(id), id);
+  }
+
+  @Override
+  public boolean organizationExists(String id) {
+    return read("organizationExists", booleanType, () -> readerStore.organizationExists(id), id);
+  }
+
+  @Override
+  public PageResult<Organization> searchOrganizations(
+      Organization organizationFilter, PageableResult pageable, String searchOperator) {
+    return search(
+        "searchOrganizations",
+        organizationPageType,
+        pageable,
+        () -> readerStore.searchOrganizations(organizationFilter, pageable, searchOperator),
+        organizationFilter,
+        pageable,
+        normalize(searchOperator));
+  }
+
+  @Override
+  public Application getApplication(String applicationName) {
+    return read(
+        "getApplication",
+        applicationType,
+        () -> readerStore.getApplication(applicationName),
+        applicationName);
+  }
+
+  @Override
+  public boolean applicationExists(String applicationName) {
+    return read(
+        "applicationExists",
+        booleanType,
+        () -> readerStore.applicationExists(applicationName),
+        applicationName);
+  }
+
+  @Override
+  public PageResult<Application> searchApplications(
+      Application applicationFilter, PageableResult pageable, String searchOperator) {
+    return search(
+        "searchApplications",
+        applicationPageType,
+        pageable,
+        () -> readerStore.searchApplications(applicationFilter, pageable, searchOperator),
+        applicationFilter,
+        pageable,
+        normalize(searchOperator));
+  }
+
+  @Override
+  public Group getGroup(String appName, String groupName) {
+    return read(
+        "getGroup", groupType, () -> readerStore.getGroup(appName, groupName), appName, groupName);
+  }
+
+  @Override
+  public boolean groupExists(String appName, String groupName) {
+    return read(
+        "groupExists",
+        booleanType,
+        () -> readerStore.groupExists(appName, groupName),
+        appName,
+        groupName);
+  }
+
+  @Override
+  public PageResult<Group> searchGroups(
+      String appName, Group groupFilter, PageableResult pageable, String searchOperator) {
+    return search(
+        "searchGroups",
+        groupPageType,
+        pageable,
+        () -> readerStore.searchGroups(appName, groupFilter, pageable, searchOperator),
+        appName,
+        groupFilter,
+        pageable,
+        normalize(searchOperator));
+  }
+
+  @Override
+  public PageResult<User> getUsersInGroup(String appName, String groupName) {
+    return read(
+        "getUsersInGroup",
+        userPageType,
+        () -> readerStore.getUsersInGroup(appName, groupName),
+        appName,
+        groupName);
+  }
+
+  @Override
+  public boolean validateCredentials(User user, String credential) {
+    return readerStore.validateCredentials(user, credential);
+  }
+
+  private <T> T read(String operation, JavaType type, Supplier<T> loader, Object... arguments) {
+    return readCoalescer.read(
+        realm,
+        operation,
+        readCoalescer.key(realm, userStorage, operation, arguments),
+        type,
+        loader);
+  }
+
+  private <T> PageResult<T> search(
+      String operation,
+      JavaType type,
+      PageableResult pageable,
+      Supplier<PageResult<T>> loader,
+      Object... arguments) {
+    if (pageable != null && pageable.getSearchToken() != null) {
+      return loader.get();
+    }
+    return readCoalescer.read(
+        realm,
+        operation,
+        readCoalescer.key(realm, userStorage, operation, arguments),
+        type,
+        loader,
+        page -> page == null || page.getSearchToken() == null);
+  }
+
+  private String normalize(String searchOperator) {
+    return searchOperator != null ? searchOperator.toUpperCase() : null;
+  }
+}
@@ -0,0 +1,271 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.coalescing;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.insee.sugoi.core.deadline.RequestDeadline;
+import fr.insee.sugoi.core.exceptions.RequestDeadlineExceededException;
+import fr.insee.sugoi.core.exceptions.StoreTimeoutException;
+import fr.insee.sugoi.core.store.ReaderStore;
+import fr.insee.sugoi.model.Realm;
+import fr.insee.sugoi.model.UserStorage;
+import io.micrometer.core.instrument.Metrics;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shares the result of a read between the identical reads made at the same time. The first read
+ * of a key is sent to the store, the reads of the same key arriving before it completes wait for
+ * its result and get their own copy of it. Nothing is kept once the read completes.
+ *
+ * <p>A result which must not be shared, such as a search page pinned to a connection, makes the
+ * waiting reads go to the store on their own, and so does a first read which takes longer than the
+ * timeout or which fails because of its own request deadline. A waiting read never waits past the
+ * deadline of its own request.
+ */
+@Component
+public class ReadCoalescer {
+
+  private static final Logger logger = LogManager.getLogger(ReadCoalescer.class);
+
+  private static final String METRIC_NAME = "sugoi.reader.coalescing";
+
+  private final ObjectMapper objectMapper =
+      new ObjectMapper()
+          .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+          .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+          .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+
+  private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+  @Value("${fr.insee.sugoi.reader.coalescing.enabled:true}")
+  private boolean enabled;
+
+  @Value("${fr.insee.sugoi.reader.coalescing.timeout:10000}")
+  private long timeoutMillis = 10000;
+
+  /**
+   * Wrap a reader store in a CoalescingReaderStore if coalescing is enabled
+   *
+   * @param realm the realm of the reader store
+   * @param userStorage the userStorage of the reader store
+   * @param readerStore the reader store to wrap
+   * @return the coalescing reader store or readerStore itself if coalescing is disabled
+   */
+  public ReaderStore wrap(Realm realm, UserStorage userStorage, ReaderStore readerStore) {
+    return enabled
+        ? new CoalescingReaderStore(readerStore, this, realm.getName(), userStorage.getName())
+        : readerStore;
+  }
+
+  /**
+   * Read through the in flight read of the same key or make the read
+   *
+   * @param <T> type of the result
+   * @param realm name of the realm, used as a metric tag
+   * @param operation name of the read operation, used as a metric tag
+   * @param key identifies the read, identical reads must have the same key
+   * @param type type of the result, used to copy it
+   * @param loader makes the read
+   * @return the result of the read, or a copy of the result of the identical in flight read
+   */
+  public <T> T read(String realm, String operation, String key, JavaType type, Supplier<T> loader) {
+    return read(realm, operation, key, type, loader, value -> true);
+  }
+
+  /**
+   * Read through the in flight read of the same key or make the read
+   *
+   * @param <T> type of the result
+   * @param realm name of the realm, used as a metric tag
+   * @param operation name of the read operation, used as a metric tag
+   * @param key identifies the read, identical reads must have the same key
+   * @param type type of the result, used to copy it
+   * @param loader makes the read
+   * @param shareable tells whether a result can be given to the identical reads, the identical
+   *     reads make their own read otherwise
+   * @return the result of the read, or a copy of the result of the identical in flight read
+   */
+  public <T> T read(
+      String realm,
+      String operation,
+      String key,
+      JavaType type,
+      Supplier<T> loader,
+      Predicate<T> shareable) {
+    while (true) {
+      Flight flight = new Flight();
+      Flight inFlight = flights.putIfAbsent(key, flight);
+      if (inFlight == null) {
+        count(realm, operation, "leader");
+        return lead(key, flight, loader, shareable);
+      }
+      if (inFlight.join()) {
+        count(realm, operation, "follower");
+        return follow(key, inFlight, type, loader);
+      }
+      // the in flight read completed meanwhile, try again
+      flights.remove(key, inFlight);
+    }
+  }
+
+  /**
+   * Identifies a read by the operation and its arguments. Arguments are serialized with sorted
+   * properties so that equal filters give equal keys.
+   *
+   * @param realm name of the realm
+   * @param userStorage name of the userStorage
+   * @param operation name of the read operation
+   * @param arguments arguments of the read
+   * @return the key of the read
+   */
+  public String key(String realm, String userStorage, String operation, Object... arguments) {
+    try {
+      return realm.toLowerCase()
+          + "/"
+          + userStorage.toLowerCase()
+          + "/"
+          + operation
+          + objectMapper.writeValueAsString(Arrays.asList(arguments));
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot serialize the arguments of " + operation, e);
+    }
+  }
+
+  public JavaType type(Class<?> type) {
+    return objectMapper.getTypeFactory().constructType(type);
+  }
+
+  public JavaType type(Class<?> type, Class<?> parameter) {
+    return objectMapper.getTypeFactory().constructParametricType(type, parameter);
+  }
+
+  private <T> T lead(String key, Flight flight, Supplier<T> loader, Predicate<T> shareable) {
+    T value;
+    try {
+      value = loader.get();
+    } catch (RuntimeException | Error e) {
+      flights.remove(key, flight);
+      flight.close();
+      // the deadline of the first read is not the deadline of the identical reads
+      flight.result.completeExceptionally(
+          e instanceof RequestDeadlineExceededException || e instanceof StoreTimeoutException
+              ? NotShared.INSTANCE
+              : e);
+      throw e;
+    }
+    flights.remove(key, flight);
+    if (flight.close() > 0) {
+      if (!shareable.test(value)) {
+        flight.result.completeExceptionally(NotShared.INSTANCE);
+        return value;
+      }
+      // followers copy the value before the caller can modify it
+      try {
+        flight.result.complete(objectMapper.writeValueAsBytes(value));
+      } catch (IOException e) {
+        flight.result.completeExceptionally(
+            new RuntimeException("Cannot share the result of " + key, e));
+      }
+    }
+    return value;
+  }
+
+  private <T> T follow(String key, Flight flight, JavaType type, Supplier<T> loader) {
+    byte[] result;
+    long waitUntil =
+        RequestDeadline.earliest(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    try {
+      result = flight.result.get(waitUntil - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      RequestDeadline.check("coalesced read");
+      logger.debug(
+          "Identical read of {} still running after {} ms, reading alone", key, timeoutMillis);
+      return loader.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for the identical read of " + key, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof NotShared) {
+        return loader.get();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    try {
+      return objectMapper.readValue(result, type);
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot read the shared result", e);
+    }
+  }
+
+  private void count(String realm, String operation, String role) {
+    Metrics.counter(METRIC_NAME, "realm", realm, "operation", operation, "role", role).increment();
+    logger.trace("{} of {} on {}", role, operation, realm);
+  }
+
+  /** Tells the identical reads that the result was not shared with them */
+  private static class NotShared extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final NotShared INSTANCE = new NotShared();
+
+    private NotShared() {
+      super("Result not shared", null, false, false);
+    }
+  }
+
+  /** A read in flight and the number of identical reads waiting for it */
+  private static class Flight {
+
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+    private int followers;
+    private boolean closed;
+
+    /** @return false if the read already completed */
+    private synchronized boolean join() {
+      if (closed) {
+        return false;
+      }
+      followers++;
+      return true;
+    }
+
+    /** @return the number of identical reads waiting for the result */
+    private synchronized int close() {
+      closed = true;
+      return followers;
+    }
+  }
+}
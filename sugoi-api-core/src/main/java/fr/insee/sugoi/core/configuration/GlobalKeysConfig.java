@@ -28,4 +28,11 @@ public class GlobalKeysConfig {
   public static final String APP_MANAGED_ATTRIBUTE_KEYS_LIST = "app-managed-attribute-keys-list";
   public static final String APP_MANAGED_ATTRIBUTE_PATTERNS_LIST =
       "app-managed-attribute-patterns-list";
+
+  public static final String READER_CACHE = "reader_cache";
+  public static final String READER_CACHE_TTL = "reader_cache_ttl";
+  public static final String READER_CACHE_MAX_ENTRIES = "reader_cache_max_entries";
+  public static final String READER_CACHE_NEGATIVE_TTL = "reader_cache_negative_ttl";
+
+  public static final String ORGANIZATION_CACHE = "organization_cache";
 }
@@ -0,0 +1,159 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.deadline;
+
+import fr.insee.sugoi.core.store.WriterStore;
+import fr.insee.sugoi.model.Application;
+import fr.insee.sugoi.model.Group;
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PasswordChangeRequest;
+import fr.insee.sugoi.model.paging.SendMode;
+import java.util.List;
+
+/**
+ * WriterStore checking the request deadline once before each write. A write made of several steps
+ * (the address then the user, the memberships then the user...) is never stopped between two of
+ * them by the deadline so that it does not leave the store half written.
+ */
+public class DeadlineWriterStore implements WriterStore {
+
+  private final WriterStore writerStore;
+
+  public DeadlineWriterStore(WriterStore writerStore) {
+    this.writerStore = writerStore;
+  }
+
+  @Override
+  public User createUser(User user) {
+    return RequestDeadline.uninterrupted("createUser", () -> writerStore.createUser(user));
+  }
+
+  @Override
+  public User updateUser(User updatedUser) {
+    return RequestDeadline.uninterrupted("updateUser", () -> writerStore.updateUser(updatedUser));
+  }
+
+  @Override
+  public void deleteUser(String id) {
+    RequestDeadline.uninterrupted("deleteUser", () -> writerStore.deleteUser(id));
+  }
+
+  @Override
+  public Organization createOrganization(Organization organization) {
+    return RequestDeadline.uninterrupted(
+        "createOrganization", () -> writerStore.createOrganization(organization));
+  }
+
+  @Override
+  public Organization updateOrganization(Organization updatedOrganization) {
+    return RequestDeadline.uninterrupted(
+        "updateOrganization", () -> writerStore.updateOrganization(updatedOrganization));
+  }
+
+  @Override
+  public void deleteOrganization(String organizationId) {
+    RequestDeadline.uninterrupted(
+        "deleteOrganization", () -> writerStore.deleteOrganization(organizationId));
+  }
+
+  @Override
+  public Application createApplication(Application application) {
+    return RequestDeadline.uninterrupted(
+        "createApplication", () -> writerStore.createApplication(application));
+  }
+
+  @Override
+  public Application updateApplication(Application updatedApplication) {
+    return RequestDeadline.uninterrupted(
+        "updateApplication", () -> writerStore.updateApplication(updatedApplication));
+  }
+
+  @Override
+  public void deleteApplication(String applicationName) {
+    RequestDeadline.uninterrupted(
+        "deleteApplication", () -> writerStore.deleteApplication(applicationName));
+  }
+
+  @Override
+  public Group createGroup(String appName, Group group) {
+    return RequestDeadline.uninterrupted(
+        "createGroup", () -> writerStore.createGroup(appName, group));
+  }
+
+  @Override
+  public Group updateGroup(String appName, Group updatedGroup) {
+    return RequestDeadline.uninterrupted(
+        "updateGroup", () -> writerStore.updateGroup(appName, updatedGroup));
+  }
+
+  @Override
+  public void deleteGroup(String appName, String groupName) {
+    RequestDeadline.uninterrupted("deleteGroup", () -> writerStore.deleteGroup(appName, groupName));
+  }
+
+  @Override
+  public void addUserToGroup(String appName, String groupName, String userId) {
+    RequestDeadline.uninterrupted(
+        "addUserToGroup", () -> writerStore.addUserToGroup(appName, groupName, userId));
+  }
+
+  @Override
+  public void deleteUserFromGroup(String appName, String groupName, String userId) {
+    RequestDeadline.uninterrupted(
+        "deleteUserFromGroup", () -> writerStore.deleteUserFromGroup(appName, groupName, userId));
+  }
+
+  @Override
+  public void initPassword(
+      User user, String initPassword, PasswordChangeRequest pcr, List<SendMode> sendModes) {
+    RequestDeadline.uninterrupted(
+        "initPassword", () -> writerStore.initPassword(user, initPassword, pcr, sendModes));
+  }
+
+  @Override
+  public void reinitPassword(
+      User user, String generatedPassword, PasswordChangeRequest pcr, List<SendMode> sendModes) {
+    RequestDeadline.uninterrupted(
+        "reinitPassword",
+        () -> writerStore.reinitPassword(user, generatedPassword, pcr, sendModes));
+  }
+
+  @Override
+  public void changePassword(
+      User user, String oldPassword, String newPassword, PasswordChangeRequest pcr) {
+    RequestDeadline.uninterrupted(
+        "changePassword", () -> writerStore.changePassword(user, oldPassword, newPassword, pcr));
+  }
+
+  @Override
+  public void changePasswordResetStatus(User user, boolean isReset) {
+    RequestDeadline.uninterrupted(
+        "changePasswordResetStatus", () -> writerStore.changePasswordResetStatus(user, isReset));
+  }
+
+  @Override
+  public void addAppManagedAttribute(String userId, String attributeKey, String attributeValue) {
+    RequestDeadline.uninterrupted(
+        "addAppManagedAttribute",
+        () -> writerStore.addAppManagedAttribute(userId, attributeKey, attributeValue));
+  }
+
+  @Override
+  public void deleteAppManagedAttribute(String userId, String attributeKey, String attributeValue) {
+    RequestDeadline.uninterrupted(
+        "deleteAppManagedAttribute",
+        () -> writerStore.deleteAppManagedAttribute(userId, attributeKey, attributeValue));
+  }
+}
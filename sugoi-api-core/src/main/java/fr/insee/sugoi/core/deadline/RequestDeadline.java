@@ -0,0 +1,182 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.deadline;
+
+import fr.insee.sugoi.core.exceptions.RequestDeadlineExceededException;
+import io.micrometer.core.instrument.Metrics;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Deadline of the request processed by the current thread. It is started when the request reaches
+ * the controllers and read by the services and the stores, which stop working for the request once
+ * the client cannot use the answer anymore. Tasks run for the request on other threads are given
+ * the deadline of the submitting thread with wrap.
+ */
+public final class RequestDeadline {
+
+  public static final String EXCEEDED_METRIC = "sugoi.request.deadline.exceeded";
+
+  private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+  private static final ThreadLocal<Long> timeout = new ThreadLocal<>();
+
+  private RequestDeadline() {}
+
+  /**
+   * Start the deadline of the request processed by the current thread
+   *
+   * @param timeoutMillis time in milliseconds the request has to complete
+   */
+  public static void start(long timeoutMillis) {
+    deadline.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    timeout.set(timeoutMillis);
+  }
+
+  /**
+   * Give the request processed by the current thread its whole timeout again, for requests made of
+   * steps each bounded by the timeout such as the pages of a streamed export. Does nothing if the
+   * current thread has no deadline.
+   */
+  public static void restart() {
+    Long timeoutMillis = timeout.get();
+    if (deadline.get() != null && timeoutMillis != null) {
+      deadline.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+  }
+
+  /** Remove the deadline of the current thread once its request is processed */
+  public static void clear() {
+    deadline.remove();
+    timeout.remove();
+  }
+
+  /**
+   * @return the time in milliseconds left before the deadline, 0 if it passed, Long.MAX_VALUE if
+   *     the current thread has no deadline
+   */
+  public static long remainingMillis() {
+    Long current = deadline.get();
+    if (current == null) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(TimeUnit.NANOSECONDS.toMillis(current - System.nanoTime()), 0);
+  }
+
+  /**
+   * @param deadlineNanos a deadline in System.nanoTime() time
+   * @return the earliest of deadlineNanos and the deadline of the current thread
+   */
+  public static long earliest(long deadlineNanos) {
+    Long current = deadline.get();
+    return current != null && current - deadlineNanos < 0 ? current : deadlineNanos;
+  }
+
+  /**
+   * Stop the processing of the request if its deadline passed. The stops are counted by the
+   * sugoi.request.deadline.exceeded metric tagged with the operation.
+   *
+   * @param operation name of the operation about to start
+   * @throws RequestDeadlineExceededException if the deadline passed
+   */
+  public static void check(String operation) {
+    Long current = deadline.get();
+    if (current != null && current - System.nanoTime() <= 0) {
+      Metrics.counter(EXCEEDED_METRIC, "operation", operation).increment();
+      throw new RequestDeadlineExceededException(
+          "Request deadline exceeded before " + operation);
+    }
+  }
+
+  /**
+   * @param <T> type of the result
+   * @param task a task to run on another thread for the request of the current thread
+   * @return the task, run with the deadline of the current thread
+   */
+  public static <T> Callable<T> wrap(Callable<T> task) {
+    Long captured = deadline.get();
+    return () -> {
+      Long previous = deadline.get();
+      set(captured);
+      try {
+        return task.call();
+      } finally {
+        set(previous);
+      }
+    };
+  }
+
+  /**
+   * @param <T> type of the result
+   * @param task a task to run on another thread for the request of the current thread
+   * @return the task, run with the deadline of the current thread
+   */
+  public static <T> Supplier<T> wrap(Supplier<T> task) {
+    Long captured = deadline.get();
+    return () -> {
+      Long previous = deadline.get();
+      set(captured);
+      try {
+        return task.get();
+      } finally {
+        set(previous);
+      }
+    };
+  }
+
+  /**
+   * Run a task made of several steps that must not be stopped between two of them, such as a write
+   * to a store. The deadline is checked once before the task starts and the task then runs without
+   * it, bounded by the timeouts of the store only.
+   *
+   * @param <T> type of the result
+   * @param operation name of the operation about to start
+   * @param task the steps of the operation
+   * @return the result of the task
+   * @throws RequestDeadlineExceededException if the deadline passed before the task started
+   */
+  public static <T> T uninterrupted(String operation, Supplier<T> task) {
+    check(operation);
+    Long previous = deadline.get();
+    deadline.remove();
+    try {
+      return task.get();
+    } finally {
+      set(previous);
+    }
+  }
+
+  /**
+   * @param operation name of the operation about to start
+   * @param task the steps of the operation
+   * @see #uninterrupted(String, Supplier)
+   */
+  public static void uninterrupted(String operation, Runnable task) {
+    uninterrupted(
+        operation,
+        () -> {
+          task.run();
+          return null;
+        });
+  }
+
+  private static void set(Long value) {
+    if (value != null) {
+      deadline.set(value);
+    } else {
+      deadline.remove();
+    }
+  }
+}
@@ -0,0 +1,27 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.event.bus;
+
+/** What the SugoiEventBus does with an event published while the buffer of a listener is full */
+public enum OverflowPolicy {
+  /** The publishing thread waits for room in the buffer, no event is lost */
+  BLOCK,
+  /** The event is dropped for this listener */
+  DROP,
+  /**
+   * Once the buffer is half full, only one event out of the sample rate is kept, and events are
+   * dropped when the buffer is full
+   */
+  SAMPLE
+}
@@ -0,0 +1,272 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.event.bus;
+
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Deliver the SugoiEvents to the SugoiEventListener beans subscribed to their type. Synchronous
+ * listeners are called on the publishing thread. Each asynchronous listener has its own bounded
+ * buffer and worker thread so that a slow listener neither delays the requests nor the other
+ * listeners, the overflow policy telling what to do when its buffer is full.
+ *
+ * <p>Listeners are indexed by event type the first time an event is published, so that checking
+ * whether a type has subscribers is a single array lookup.
+ *
+ * <p>When the application stops, the events already buffered are delivered before the bus shuts
+ * down, for at most the shutdown timeout.
+ */
+@Component
+public class SugoiEventBus implements DisposableBean {
+
+  private static final Logger logger = LogManager.getLogger(SugoiEventBus.class);
+
+  private static final Subscriber[] NO_SUBSCRIBER = new Subscriber[0];
+
+  private final ObjectProvider<SugoiEventListener> listenerProvider;
+
+  private final int capacity;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final int sampleRate;
+
+  private final long shutdownTimeoutMillis;
+
+  private final List<Subscriber> subscribers = new ArrayList<>();
+
+  /** Subscribers of each event type, indexed by the ordinal of the type */
+  private volatile Subscriber[][] subscribersByType;
+
+  private volatile boolean stopped = false;
+
+  /**
+   * @param listenerProvider the listener beans
+   * @param capacity number of events buffered for each asynchronous listener
+   * @param overflowPolicy policy of the listeners which do not choose one
+   * @param sampleRate one event out of sampleRate is kept by the SAMPLE policy
+   * @param shutdownTimeoutMillis time given to the listeners to handle the buffered events when
+   *     the application stops
+   */
+  public SugoiEventBus(
+      ObjectProvider<SugoiEventListener> listenerProvider,
+      @Value("${fr.insee.sugoi.event.bus.capacity:1024}") int capacity,
+      @Value("${fr.insee.sugoi.event.bus.overflow-policy:DROP}") OverflowPolicy overflowPolicy,
+      @Value("${fr.insee.sugoi.event.bus.sample-rate:10}") int sampleRate,
+      @Value("${fr.insee.sugoi.event.bus.shutdown-timeout:30000}") long shutdownTimeoutMillis) {
+    this.listenerProvider = listenerProvider;
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+    this.sampleRate = Math.max(sampleRate, 1);
+    this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+  }
+
+  /**
+   * @param eventType type of an event
+   * @return true if a listener receives the events of this type, events of the other types do not
+   *     need to be built
+   */
+  public boolean hasSubscribers(SugoiEventTypeEnum eventType) {
+    return getSubscribers(eventType).length > 0;
+  }
+
+  /**
+   * @param eventType type of an event
+   * @return true if a listener handles the events of this type on its own thread, after the
+   *     publication returns
+   */
+  public boolean hasAsynchronousSubscribers(SugoiEventTypeEnum eventType) {
+    for (Subscriber subscriber : getSubscribers(eventType)) {
+      if (subscriber.buffer != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Deliver an event to the listeners subscribed to its type
+   *
+   * @param event the event to publish
+   */
+  public void publish(SugoiEvent event) {
+    for (Subscriber subscriber : getSubscribers(event.getEventType())) {
+      subscriber.deliver(event);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    stopped = true;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+    synchronized (this) {
+      for (Subscriber subscriber : subscribers) {
+        subscriber.drain(deadline);
+      }
+    }
+  }
+
+  private Subscriber[] getSubscribers(SugoiEventTypeEnum eventType) {
+    Subscriber[][] index = subscribersByType;
+    if (index == null) {
+      index = subscribe();
+    }
+    return index[eventType.ordinal()];
+  }
+
+  private synchronized Subscriber[][] subscribe() {
+    if (subscribersByType != null) {
+      return subscribersByType;
+    }
+    for (SugoiEventListener listener :
+        listenerProvider.orderedStream().collect(Collectors.toList())) {
+      subscribers.add(new Subscriber(listener));
+    }
+    SugoiEventTypeEnum[] eventTypes = SugoiEventTypeEnum.values();
+    Subscriber[][] index = new Subscriber[eventTypes.length][];
+    for (SugoiEventTypeEnum eventType : eventTypes) {
+      Subscriber[] typeSubscribers =
+          subscribers.stream()
+              .filter(subscriber -> subscriber.listener.getEventTypes().contains(eventType))
+              .toArray(Subscriber[]::new);
+      index[eventType.ordinal()] = typeSubscribers.length > 0 ? typeSubscribers : NO_SUBSCRIBER;
+    }
+    subscribersByType = index;
+    return index;
+  }
+
+  /** A listener with, if it is asynchronous, its buffer and worker thread */
+  private class Subscriber {
+
+    private final SugoiEventListener listener;
+    private final String name;
+    private final OverflowPolicy policy;
+    private final BlockingQueue<SugoiEvent> buffer;
+    private final Thread worker;
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final Counter dropped;
+
+    private Subscriber(SugoiEventListener listener) {
+      this.listener = listener;
+      this.name = ClassUtils.getUserClass(listener).getSimpleName();
+      this.policy =
+          listener.getOverflowPolicy() != null ? listener.getOverflowPolicy() : overflowPolicy;
+      this.dropped = Metrics.counter("sugoi.event.dropped", "listener", name);
+      if (listener.isSynchronous()) {
+        this.buffer = null;
+        this.worker = null;
+        logger.info("{} receives {} synchronously", name, listener.getEventTypes());
+      } else {
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        Metrics.gauge(
+            "sugoi.event.buffer.size", Tags.of("listener", name), buffer, BlockingQueue::size);
+        this.worker = new Thread(this::work, "sugoi-event-" + name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+        logger.info("{} receives {} with the {} policy", name, listener.getEventTypes(), policy);
+      }
+    }
+
+    private void deliver(SugoiEvent event) {
+      if (buffer == null) {
+        handle(event);
+      } else if (!isSampled() || !buffer.offer(event) && !overflow(event)) {
+        dropped.increment();
+        logger.debug("{} event dropped for {}", event.getEventType(), name);
+      }
+    }
+
+    /**
+     * @return false if the SAMPLE policy skips the event
+     */
+    private boolean isSampled() {
+      return policy != OverflowPolicy.SAMPLE
+          || buffer.size() < capacity / 2
+          || overflowCount.getAndIncrement() % sampleRate == 0;
+    }
+
+    /**
+     * @return true if the event has been buffered although the buffer was full
+     */
+    private boolean overflow(SugoiEvent event) {
+      if (policy != OverflowPolicy.BLOCK || stopped) {
+        return false;
+      }
+      try {
+        buffer.put(event);
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    private void work() {
+      while (!stopped || !buffer.isEmpty()) {
+        try {
+          SugoiEvent event = buffer.poll(100, TimeUnit.MILLISECONDS);
+          if (event != null) {
+            handle(event);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+
+    private void handle(SugoiEvent event) {
+      try {
+        listener.onEvent(event);
+      } catch (RuntimeException e) {
+        logger.error("{} failed to handle a {} event", name, event.getEventType(), e);
+      }
+    }
+
+    /** Wait for the worker to handle the buffered events, it stops once the buffer is empty */
+    private void drain(long deadline) {
+      if (worker == null) {
+        return;
+      }
+      try {
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        worker.join(Math.max(remainingMillis, 1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (worker.isAlive()) {
+        logger.warn("{} stopped with {} events not handled", name, buffer.size());
+        worker.interrupt();
+      }
+    }
+  }
+}
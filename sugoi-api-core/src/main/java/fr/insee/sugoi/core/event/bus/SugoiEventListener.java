@@ -0,0 +1,51 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.event.bus;
+
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import java.util.Set;
+
+/** A bean receiving the SugoiEvents of some types from the SugoiEventBus */
+public interface SugoiEventListener {
+
+  /**
+   * @return the types of the events to receive, events of other types are never delivered
+   */
+  Set<SugoiEventTypeEnum> getEventTypes();
+
+  /**
+   * Handle an event. Asynchronous listeners are called by their own worker thread, one event at a
+   * time, in the order of publication.
+   *
+   * @param event the published event
+   */
+  void onEvent(SugoiEvent event);
+
+  /**
+   * @return true if the events must be handled on the publishing thread before the publication
+   *     returns, for instance to invalidate a cache read right after the modification
+   */
+  default boolean isSynchronous() {
+    return false;
+  }
+
+  /**
+   * @return the policy applied when the buffer of this listener is full, or null to use the
+   *     configured policy
+   */
+  default OverflowPolicy getOverflowPolicy() {
+    return null;
+  }
+}
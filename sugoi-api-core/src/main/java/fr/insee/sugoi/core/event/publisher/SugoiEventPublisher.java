@@ -13,23 +13,119 @@
 */
 package fr.insee.sugoi.core.event.publisher;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.insee.sugoi.core.event.bus.SugoiEventBus;
 import fr.insee.sugoi.core.event.model.SugoiEvent;
 import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
+/**
+ * Publish the SugoiEvents on the SugoiEventBus and, if enabled, as Spring application events for
+ * the EventListener beans. When a listener of the bus handles the event on its own thread, the
+ * event carries a copy of the objects given by the services so that the listener sees them as they
+ * were when the event was published. Events only delivered on the publishing thread carry the
+ * objects themselves.
+ */
 @Component
 public class SugoiEventPublisher {
+
+  private static final Logger logger = LogManager.getLogger(SugoiEventPublisher.class);
+
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  @Autowired private SugoiEventBus sugoiEventBus;
+
   @Autowired private ApplicationEventPublisher applicationEventPublisher;
 
+  @Value("${fr.insee.sugoi.event.application-events.enabled:false}")
+  private boolean applicationEventsEnabled = false;
+
   public void publishCustomEvent(
       final String realm,
       final String storage,
       final SugoiEventTypeEnum eventType,
       final Map<String, Object> properties) {
-    SugoiEvent sugoiEvent = new SugoiEvent(realm, storage, eventType, properties);
-    applicationEventPublisher.publishEvent(sugoiEvent);
+    boolean subscribed = sugoiEventBus.hasSubscribers(eventType);
+    if (subscribed || applicationEventsEnabled) {
+      SugoiEvent sugoiEvent =
+          new SugoiEvent(
+              realm,
+              storage,
+              eventType,
+              subscribed && sugoiEventBus.hasAsynchronousSubscribers(eventType)
+                  ? copy(properties)
+                  : properties);
+      if (subscribed) {
+        sugoiEventBus.publish(sugoiEvent);
+      }
+      if (applicationEventsEnabled) {
+        applicationEventPublisher.publishEvent(sugoiEvent);
+      }
+    }
+  }
+
+  /**
+   * Frequent events should only be built when this returns true
+   *
+   * @param eventType type of an event
+   * @return true if a listener receives the events of this type
+   */
+  public boolean isPublished(final SugoiEventTypeEnum eventType) {
+    return applicationEventsEnabled || sugoiEventBus.hasSubscribers(eventType);
+  }
+
+  private Map<String, Object> copy(Map<String, Object> properties) {
+    if (properties == null) {
+      return null;
+    }
+    Map<String, Object> copies = new LinkedHashMap<>();
+    properties.forEach((key, value) -> copies.put(key, copyValue(value)));
+    return Collections.unmodifiableMap(copies);
+  }
+
+  /** Immutable values are kept, collections and model objects are copied */
+  private Object copyValue(Object value) {
+    if (value == null
+        || value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean
+        || value instanceof Character
+        || value instanceof Enum) {
+      return value;
+    } else if (value instanceof Map) {
+      Map<Object, Object> copies = new LinkedHashMap<>();
+      ((Map<?, ?>) value).forEach((key, element) -> copies.put(key, copyValue(element)));
+      return copies;
+    } else if (value instanceof Set) {
+      Set<Object> copies = new LinkedHashSet<>();
+      ((Set<?>) value).forEach(element -> copies.add(copyValue(element)));
+      return copies;
+    } else if (value instanceof Collection) {
+      List<Object> copies = new ArrayList<>();
+      ((Collection<?>) value).forEach(element -> copies.add(copyValue(element)));
+      return copies;
+    }
+    try {
+      return objectMapper.readValue(objectMapper.writeValueAsBytes(value), value.getClass());
+    } catch (IOException e) {
+      logger.warn("Cannot copy a {} for an event, it is shared", value.getClass(), e);
+      return value;
+    }
   }
 }
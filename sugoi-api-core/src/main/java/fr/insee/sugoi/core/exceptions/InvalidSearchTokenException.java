@@ -0,0 +1,28 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.exceptions;
+
+/** The search token of a next page was not returned by a previous search */
+public class InvalidSearchTokenException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 6034795471210941427L;
+
+  public InvalidSearchTokenException(String message) {
+    super(message);
+  }
+
+  public InvalidSearchTokenException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,28 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.exceptions;
+
+/** The deadline of the request passed before its processing ended */
+public class RequestDeadlineExceededException extends RuntimeException {
+
+  private static final long serialVersionUID = -2247096533711902146L;
+
+  public RequestDeadlineExceededException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  public RequestDeadlineExceededException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.search;
+
+import fr.insee.sugoi.core.exceptions.InvalidSearchTokenException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Search token of a search run on several userStorages. It keeps the position reached in each
+ * userStorage: the next offset and the search token returned by the userStorage, or the fact that
+ * the userStorage has no more results. It is serialized as an opaque url safe string.
+ */
+public class CompositeSearchToken {
+
+  private static final String PREFIX = "us1";
+  private static final String ENTRY_SEPARATOR = "&";
+  private static final String KEY_SEPARATOR = "=";
+  private static final String VALUE_SEPARATOR = ":";
+
+  private final Map<String, Position> positions = new LinkedHashMap<>();
+
+  /** Position of the search in one userStorage */
+  public static class Position {
+
+    private final int offset;
+    private final String searchToken;
+    private final boolean exhausted;
+
+    private Position(int offset, String searchToken, boolean exhausted) {
+      this.offset = offset;
+      this.searchToken = searchToken;
+      this.exhausted = exhausted;
+    }
+
+    public static Position of(int offset, String searchToken) {
+      return new Position(offset, searchToken, false);
+    }
+
+    public static Position exhausted() {
+      return new Position(0, null, true);
+    }
+
+    public int getOffset() {
+      return offset;
+    }
+
+    public String getSearchToken() {
+      return searchToken;
+    }
+
+    public boolean isExhausted() {
+      return exhausted;
+    }
+  }
+
+  /**
+   * @param userStorage name of the userStorage
+   * @return the position reached in the userStorage or null if it was not searched yet
+   */
+  public Position get(String userStorage) {
+    return positions.get(userStorage.toLowerCase());
+  }
+
+  public void put(String userStorage, Position position) {
+    positions.put(userStorage.toLowerCase(), position);
+  }
+
+  /** @return true if at least one userStorage may still have results */
+  public boolean hasMoreResults() {
+    return positions.values().stream().anyMatch(position -> !position.isExhausted());
+  }
+
+  public String encode() {
+    String entries =
+        positions.entrySet().stream()
+            .map(
+                entry ->
+                    encodeValue(entry.getKey())
+                        + KEY_SEPARATOR
+                        + (entry.getValue().isExhausted()
+                            ? ""
+                            : entry.getValue().getOffset()
+                                + VALUE_SEPARATOR
+                                + encodeValue(entry.getValue().getSearchToken())))
+            .collect(Collectors.joining(ENTRY_SEPARATOR));
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString((PREFIX + ENTRY_SEPARATOR + entries).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Read a token built by encode
+   *
+   * @param token the encoded token
+   * @return the decoded token
+   * @throws InvalidSearchTokenException if the token was not built by encode
+   */
+  public static CompositeSearchToken decode(String token) {
+    String decoded;
+    try {
+      decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidSearchTokenException("Invalid search token " + token, e);
+    }
+    String[] entries = decoded.split(ENTRY_SEPARATOR, -1);
+    if (!entries[0].equals(PREFIX)) {
+      throw new InvalidSearchTokenException("Invalid search token " + token);
+    }
+    CompositeSearchToken compositeSearchToken = new CompositeSearchToken();
+    for (int i = 1; i < entries.length; i++) {
+      String[] keyValue = entries[i].split(KEY_SEPARATOR, 2);
+      if (keyValue.length != 2) {
+        throw new InvalidSearchTokenException("Invalid search token " + token);
+      }
+      if (keyValue[1].isEmpty()) {
+        compositeSearchToken.put(decodeValue(keyValue[0]), Position.exhausted());
+      } else {
+        String[] value = keyValue[1].split(VALUE_SEPARATOR, 2);
+        try {
+          compositeSearchToken.put(
+              decodeValue(keyValue[0]),
+              Position.of(
+                  Integer.parseInt(value[0]), value.length > 1 ? decodeValue(value[1]) : null));
+        } catch (NumberFormatException e) {
+          throw new InvalidSearchTokenException("Invalid search token " + token, e);
+        }
+      }
+    }
+    return compositeSearchToken;
+  }
+
+  private static String encodeValue(String value) {
+    return value != null ? URLEncoder.encode(value, StandardCharsets.UTF_8) : "";
+  }
+
+  private static String decodeValue(String value) {
+    return value.isEmpty() ? null : URLDecoder.decode(value, StandardCharsets.UTF_8);
+  }
+}
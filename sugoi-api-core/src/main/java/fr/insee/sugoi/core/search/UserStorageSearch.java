@@ -0,0 +1,544 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.search;
+
+import fr.insee.sugoi.core.deadline.RequestDeadline;
+import fr.insee.sugoi.core.event.bus.SugoiEventListener;
+import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.core.exceptions.InvalidSearchTokenException;
+import fr.insee.sugoi.core.exceptions.RequestDeadlineExceededException;
+import fr.insee.sugoi.core.exceptions.StoreTimeoutException;
+import fr.insee.sugoi.core.search.CompositeSearchToken.Position;
+import fr.insee.sugoi.model.Organization;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Run a search on all the userStorages of a realm at the same time and merge the results in one
+ * page. The page size is shared between the userStorages which may still have results and the
+ * position reached in each of them is kept in a CompositeSearchToken, so that the next page resumes
+ * every userStorage where it stopped.
+ *
+ * <p>Lookups by id are also sent to all the userStorages at the same time. When several
+ * userStorages have the entity, the first of them in the order of the realm wins. The userStorage
+ * where an entity was last found is remembered so that the next lookups of the entity go straight
+ * to it, until the entity is created or deleted or the realm is modified.
+ *
+ * <p>The searches run on other threads are given the deadline of the request and are not waited for
+ * after it.
+ */
+@Component
+public class UserStorageSearch implements SugoiEventListener, DisposableBean {
+
+  private static final Logger logger = LogManager.getLogger(UserStorageSearch.class);
+
+  private final ExecutorService executor;
+
+  private final long timeoutSeconds;
+
+  private final boolean hintsEnabled;
+
+  private final int hintsMaxEntries;
+
+  private final long hintsTimeToLiveMillis;
+
+  private final Map<String, Map<String, Hint>> hintsByRealm = new ConcurrentHashMap<>();
+
+  /** A value found on a userStorage */
+  public static class Match<T> {
+
+    private final String userStorage;
+    private final T value;
+
+    public Match(String userStorage, T value) {
+      this.userStorage = userStorage;
+      this.value = value;
+    }
+
+    public String getUserStorage() {
+      return userStorage;
+    }
+
+    public T getValue() {
+      return value;
+    }
+  }
+
+  private static class Hint {
+
+    private final String userStorage;
+    private final long expiration;
+
+    private Hint(String userStorage, long expiration) {
+      this.userStorage = userStorage;
+      this.expiration = expiration;
+    }
+  }
+
+  /**
+   * @param threads maximum number of userStorages searched at the same time. When all threads are
+   *     busy and the queue is full, searches run on the calling thread
+   * @param timeoutSeconds time after which the searches still running are cancelled
+   * @param hintsEnabled remember the userStorage where an entity was last found
+   * @param hintsMaxEntries maximum number of entities remembered per realm
+   * @param hintsTimeToLiveSeconds time in seconds an entity is remembered
+   */
+  public UserStorageSearch(
+      @Value("${fr.insee.sugoi.search.userstorages.threads:16}") int threads,
+      @Value("${fr.insee.sugoi.search.userstorages.timeout:60}") long timeoutSeconds,
+      @Value("${fr.insee.sugoi.search.userstorages.hints.enabled:true}") boolean hintsEnabled,
+      @Value("${fr.insee.sugoi.search.userstorages.hints.max-entries:10000}") int hintsMaxEntries,
+      @Value("${fr.insee.sugoi.search.userstorages.hints.ttl:3600}") long hintsTimeToLiveSeconds) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadPoolExecutor threadPoolExecutor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(threads * 4),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "userstorage-search-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    this.executor = threadPoolExecutor;
+    this.timeoutSeconds = timeoutSeconds;
+    this.hintsEnabled = hintsEnabled;
+    this.hintsMaxEntries = hintsMaxEntries;
+    this.hintsTimeToLiveMillis = TimeUnit.SECONDS.toMillis(hintsTimeToLiveSeconds);
+  }
+
+  /**
+   * Find an entity on the first userStorage where it exists. The userStorage where the entity was
+   * last found is tried first, then all the other userStorages are tried at the same time and the
+   * first userStorage of the list having the entity wins.
+   *
+   * @param <T> type of the entity
+   * @param realm name of the realm
+   * @param kind kind of entity, so that entities of different kinds sharing an id get their own
+   *     hint
+   * @param id id of the entity
+   * @param userStorages names of the userStorages of the realm, in the order of the realm
+   * @param lookup function finding the entity on a userStorage, a null result or an exception
+   *     other than a timeout means the entity is not on the userStorage
+   * @return the entity and the userStorage where it was found or null if no userStorage has it
+   * @throws StoreTimeoutException if no userStorage has the entity and a userStorage timed out
+   */
+  public <T> Match<T> findFirst(
+      String realm,
+      String kind,
+      String id,
+      List<String> userStorages,
+      BiFunction<String, String, T> lookup) {
+    String hintKey = getHintKey(kind, id);
+    List<String> remainingUserStorages = new ArrayList<>(userStorages);
+    String hintedUserStorage = hintsEnabled ? getHint(realm, hintKey) : null;
+    if (hintedUserStorage != null) {
+      for (String userStorage : userStorages) {
+        if (userStorage.equalsIgnoreCase(hintedUserStorage)) {
+          T value = lookupQuietly(userStorage, id, lookup);
+          if (value != null) {
+            return new Match<>(userStorage, value);
+          }
+          remainingUserStorages.remove(userStorage);
+          break;
+        }
+      }
+      removeHint(realm, hintKey);
+    }
+    Match<T> match;
+    if (remainingUserStorages.isEmpty()) {
+      return null;
+    } else if (remainingUserStorages.size() == 1) {
+      T value = lookupQuietly(remainingUserStorages.get(0), id, lookup);
+      match = value != null ? new Match<>(remainingUserStorages.get(0), value) : null;
+    } else {
+      match = findFirstConcurrently(id, remainingUserStorages, lookup);
+    }
+    if (match != null && hintsEnabled) {
+      putHint(realm, hintKey, match.getUserStorage());
+    }
+    return match;
+  }
+
+  /** Forget where the entities of a realm were found */
+  public void invalidateHints(String realm) {
+    if (realm != null) {
+      hintsByRealm.remove(realm.toLowerCase());
+    }
+  }
+
+  @Override
+  public Set<SugoiEventTypeEnum> getEventTypes() {
+    return EnumSet.of(
+        SugoiEventTypeEnum.CREATE_USER,
+        SugoiEventTypeEnum.DELETE_USER,
+        SugoiEventTypeEnum.CREATE_ORGANIZATION,
+        SugoiEventTypeEnum.DELETE_ORGANIZATION,
+        SugoiEventTypeEnum.UPDATE_REALM,
+        SugoiEventTypeEnum.DELETE_REALM);
+  }
+
+  @Override
+  public boolean isSynchronous() {
+    return true;
+  }
+
+  /**
+   * Forget where an entity was found when it is created or deleted, since it may now be found on
+   * another userStorage, and forget all the entities of a realm when its userStorages change
+   */
+  @Override
+  public void onEvent(SugoiEvent event) {
+    if (event.getRealm() == null) {
+      return;
+    }
+    Map<String, Object> properties =
+        event.getProperties() != null ? event.getProperties() : Map.of();
+    switch (event.getEventType()) {
+      case CREATE_USER:
+        Object user = properties.get(EventKeysConfig.USER);
+        if (user instanceof User) {
+          forget(event.getRealm(), "user", ((User) user).getUsername());
+        }
+        break;
+      case DELETE_USER:
+        forget(event.getRealm(), "user", (String) properties.get(EventKeysConfig.USER_ID));
+        break;
+      case CREATE_ORGANIZATION:
+        Object organization = properties.get(EventKeysConfig.ORGANIZATION);
+        if (organization instanceof Organization) {
+          forget(
+              event.getRealm(), "organization", ((Organization) organization).getIdentifiant());
+        }
+        break;
+      case DELETE_ORGANIZATION:
+        forget(
+            event.getRealm(),
+            "organization",
+            (String) properties.get(EventKeysConfig.ORGANIZATION_ID));
+        break;
+      case UPDATE_REALM:
+      case DELETE_REALM:
+        invalidateHints(event.getRealm());
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void forget(String realm, String kind, String id) {
+    if (id != null) {
+      removeHint(realm, getHintKey(kind, id));
+    }
+  }
+
+  private static String getHintKey(String kind, String id) {
+    return kind + "/" + id.toLowerCase();
+  }
+
+  /**
+   * Look up the entity on all the userStorages at the same time. A match is returned once all the
+   * userStorages before it in the list answered that they do not have the entity.
+   */
+  private <T> Match<T> findFirstConcurrently(
+      String id, List<String> userStorages, BiFunction<String, String, T> lookup) {
+    CompletionService<Match<T>> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<Match<T>>> futures = new ArrayList<>();
+    Map<Future<Match<T>>, Integer> positions = new HashMap<>();
+    try {
+      for (String userStorage : userStorages) {
+        Callable<Match<T>> task =
+            () -> {
+              T value = lookupQuietly(userStorage, id, lookup);
+              return value != null ? new Match<>(userStorage, value) : null;
+            };
+        Future<Match<T>> future = completionService.submit(RequestDeadline.wrap(task));
+        positions.put(future, futures.size());
+        futures.add(future);
+      }
+      long deadline =
+          RequestDeadline.earliest(System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds));
+      List<Match<T>> matches = new ArrayList<>();
+      boolean[] answered = new boolean[futures.size()];
+      futures.forEach(future -> matches.add(null));
+      // first userStorage of the list whose answer is still awaited
+      int awaited = 0;
+      RuntimeException timeout = null;
+      for (int i = 0; i < futures.size(); i++) {
+        Future<Match<T>> future =
+            completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (future == null) {
+          // a userStorage before the matches did not answer in time, the best match is kept
+          for (Match<T> match : matches) {
+            if (match != null) {
+              return match;
+            }
+          }
+          RequestDeadline.check("lookup");
+          throw new RuntimeException("Lookup of " + id + " on userStorages timed out");
+        }
+        int position = positions.get(future);
+        answered[position] = true;
+        try {
+          matches.set(position, future.get());
+        } catch (ExecutionException e) {
+          // lookupQuietly only throws timeouts, another userStorage may still have the entity
+          timeout = (RuntimeException) e.getCause();
+        }
+        while (awaited < answered.length && answered[awaited]) {
+          if (matches.get(awaited) != null) {
+            return matches.get(awaited);
+          }
+          awaited++;
+        }
+      }
+      if (timeout != null) {
+        throw timeout;
+      }
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while looking up " + id, e);
+    } finally {
+      // lookups still waiting for a thread are not started. Running lookups are not interrupted
+      // since interrupting a thread in the middle of an ldap operation breaks its connection
+      futures.forEach(future -> future.cancel(false));
+    }
+  }
+
+  private <T> T lookupQuietly(String userStorage, String id, BiFunction<String, String, T> lookup) {
+    try {
+      return lookup.apply(userStorage, id);
+    } catch (StoreTimeoutException | RequestDeadlineExceededException e) {
+      // the entity may be on the userStorage
+      throw e;
+    } catch (Exception e) {
+      logger.debug(
+          "Error when trying to find {} on userstorage {} error {}",
+          id,
+          userStorage,
+          e.getMessage());
+      return null;
+    }
+  }
+
+  private String getHint(String realm, String hintKey) {
+    Map<String, Hint> hints = hintsByRealm.get(realm.toLowerCase());
+    if (hints == null) {
+      return null;
+    }
+    synchronized (hints) {
+      Hint hint = hints.get(hintKey);
+      if (hint != null && hint.expiration < System.currentTimeMillis()) {
+        hints.remove(hintKey);
+        return null;
+      }
+      return hint != null ? hint.userStorage : null;
+    }
+  }
+
+  private void putHint(String realm, String hintKey, String userStorage) {
+    Map<String, Hint> hints =
+        hintsByRealm.computeIfAbsent(
+            realm.toLowerCase(),
+            r ->
+                new LinkedHashMap<>(16, 0.75f, true) {
+                  private static final long serialVersionUID = 1L;
+
+                  @Override
+                  protected boolean removeEldestEntry(Map.Entry<String, Hint> eldest) {
+                    return size() > hintsMaxEntries;
+                  }
+                });
+    synchronized (hints) {
+      hints.put(hintKey, new Hint(userStorage, System.currentTimeMillis() + hintsTimeToLiveMillis));
+    }
+  }
+
+  private void removeHint(String realm, String hintKey) {
+    Map<String, Hint> hints = hintsByRealm.get(realm.toLowerCase());
+    if (hints != null) {
+      synchronized (hints) {
+        hints.remove(hintKey);
+      }
+    }
+  }
+
+  /**
+   * Search a page of results on several userStorages
+   *
+   * @param <T> type of the results
+   * @param userStorages names of the userStorages to search
+   * @param pageable the requested page. Its search token must be null or a token returned by a
+   *     previous call for the same search
+   * @param search function searching a page of results on a userStorage
+   * @return the merged page. Its search token is a CompositeSearchToken if a userStorage may still
+   *     have results, or the search token of the userStorage if it is the only one
+   * @throws InvalidSearchTokenException if the search token was not returned by a previous call
+   */
+  public <T> PageResult<T> search(
+      List<String> userStorages,
+      PageableResult pageable,
+      BiFunction<String, PageableResult, PageResult<T>> search) {
+    if (userStorages.size() == 1) {
+      // the page and its token are the ones of the userStorage
+      return search.apply(userStorages.get(0), pageable);
+    }
+    CompositeSearchToken previous =
+        pageable.getSearchToken() != null
+            ? CompositeSearchToken.decode(pageable.getSearchToken())
+            : new CompositeSearchToken();
+    CompositeSearchToken next = new CompositeSearchToken();
+    List<String> pendingUserStorages = new ArrayList<>();
+    for (String userStorage : userStorages) {
+      Position position = previous.get(userStorage);
+      if (position != null && position.isExhausted()) {
+        next.put(userStorage, position);
+      } else {
+        pendingUserStorages.add(userStorage);
+      }
+    }
+
+    // the page is shared between the userStorages. When it is smaller than their number, only the
+    // first userStorages are searched and the others keep their position for the next pages
+    Map<String, PageableResult> pageables = new LinkedHashMap<>();
+    int size = pageable.getSize();
+    int searchedCount = Math.min(pendingUserStorages.size(), Math.max(1, size));
+    for (int i = 0; i < pendingUserStorages.size(); i++) {
+      String userStorage = pendingUserStorages.get(i);
+      Position position = previous.get(userStorage);
+      if (i >= searchedCount) {
+        next.put(
+            userStorage, position != null ? position : Position.of(pageable.getFirst(), null));
+        continue;
+      }
+      int share = Math.max(1, size / searchedCount + (i < size % searchedCount ? 1 : 0));
+      pageables.put(
+          userStorage,
+          position != null
+              ? new PageableResult(share, position.getOffset(), position.getSearchToken())
+              : new PageableResult(share, pageable.getFirst(), null));
+    }
+
+    PageResult<T> result = new PageResult<>();
+    result.setPageSize(size);
+    // the total is unknown while some userStorages were not searched
+    int totalElements = searchedCount < pendingUserStorages.size() ? -1 : 0;
+    for (Map.Entry<String, PageResult<T>> page : searchAll(pageables, search).entrySet()) {
+      PageResult<T> userStoragePage = page.getValue();
+      result.getResults().addAll(userStoragePage.getResults());
+      totalElements =
+          totalElements == -1 || userStoragePage.getTotalElements() == -1
+              ? -1
+              : totalElements + userStoragePage.getTotalElements();
+      next.put(
+          page.getKey(),
+          userStoragePage.isHasMoreResult()
+              ? Position.of(
+                  pageables.get(page.getKey()).getFirst() + userStoragePage.getResults().size(),
+                  userStoragePage.getSearchToken())
+              : Position.exhausted());
+    }
+    result.setTotalElements(totalElements);
+    result.setNextStart(pageable.getFirst() + result.getResults().size());
+    result.setHasMoreResult(next.hasMoreResults());
+    result.setSearchToken(result.isHasMoreResult() ? next.encode() : null);
+    return result;
+  }
+
+  private <T> Map<String, PageResult<T>> searchAll(
+      Map<String, PageableResult> pageables,
+      BiFunction<String, PageableResult, PageResult<T>> search) {
+    Map<String, PageResult<T>> pages = new LinkedHashMap<>();
+    if (pageables.size() == 1) {
+      // no need to wait for another thread
+      pageables.forEach(
+          (userStorage, pageable) -> pages.put(userStorage, search.apply(userStorage, pageable)));
+      return pages;
+    }
+    List<String> userStorages = new ArrayList<>(pageables.keySet());
+    List<Future<PageResult<T>>> futures = new ArrayList<>();
+    try {
+      for (String userStorage : userStorages) {
+        Callable<PageResult<T>> task = () -> search.apply(userStorage, pageables.get(userStorage));
+        futures.add(executor.submit(RequestDeadline.wrap(task)));
+      }
+      long deadline =
+          RequestDeadline.earliest(System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds));
+      for (int i = 0; i < userStorages.size(); i++) {
+        try {
+          pages.put(
+              userStorages.get(i),
+              futures.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+          RequestDeadline.check("search");
+          throw new RuntimeException(
+              "Search on userStorage " + userStorages.get(i) + " timed out", e);
+        } catch (ExecutionException e) {
+          logger.debug("Search on userStorage {} failed", userStorages.get(i), e.getCause());
+          if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+          }
+          throw new RuntimeException(e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while searching userStorages", e);
+    } finally {
+      // on failure, searches still waiting for a thread are not started and running searches are
+      // not interrupted, as for the lookups
+      futures.forEach(future -> future.cancel(false));
+    }
+    return pages;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+}
@@ -13,9 +13,12 @@
 */
 package fr.insee.sugoi.core.seealso;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -41,4 +44,20 @@ public class MapProtocolSeeAlsoDecorator {
     SeeAlsoDecorator seeAlsoDecorator = seeAlsoDecoratorByProtocol.get(protocol);
     return seeAlsoDecorator != null ? seeAlsoDecorator.getResourceFromUrl(url, subobject) : null;
   }
+
+  public Map<String, Object> getResourcesFromUrl(
+      String protocol, String url, Collection<String> subobjects) {
+    SeeAlsoDecorator seeAlsoDecorator = seeAlsoDecoratorByProtocol.get(protocol);
+    return seeAlsoDecorator != null
+        ? seeAlsoDecorator.getResourcesFromUrl(url, subobjects)
+        : new HashMap<>();
+  }
+
+  public CompletableFuture<Map<String, Object>> getResourcesFromUrlAsync(
+      String protocol, String url, Collection<String> subobjects, Executor executor) {
+    SeeAlsoDecorator seeAlsoDecorator = seeAlsoDecoratorByProtocol.get(protocol);
+    return seeAlsoDecorator != null
+        ? seeAlsoDecorator.getResourcesFromUrlAsync(url, subobjects, executor)
+        : CompletableFuture.completedFuture(new HashMap<>());
+  }
 }
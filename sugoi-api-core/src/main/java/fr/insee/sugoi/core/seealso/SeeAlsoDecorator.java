@@ -13,7 +13,12 @@
 */
 package fr.insee.sugoi.core.seealso;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface SeeAlsoDecorator {
 
@@ -28,6 +33,43 @@ public interface SeeAlsoDecorator {
    */
   public Object getResourceFromUrl(String url, String subobject);
 
+  /**
+   * Fetch a resource at url once and parse it to retrieve several subobjects. The default
+   * implementation fetches the resource for each subobject.
+   *
+   * @param url location of the resource to parse
+   * @param subobjects descriptions of how to get the String or List<String> of each seeAlso
+   * @return the String or List<String> described by each subobject, subobjects which cannot be
+   *     retrieved are missing
+   */
+  public default Map<String, Object> getResourcesFromUrl(
+      String url, Collection<String> subobjects) {
+    Map<String, Object> resources = new HashMap<>();
+    for (String subobject : subobjects) {
+      Object resource = getResourceFromUrl(url, subobject);
+      if (resource != null) {
+        resources.put(subobject, resource);
+      }
+    }
+    return resources;
+  }
+
+  /**
+   * Fetch a resource at url once and parse it to retrieve several subobjects without blocking the
+   * caller. The default implementation runs getResourcesFromUrl on the executor, decorators able to
+   * fetch without blocking a thread should override it.
+   *
+   * @param url location of the resource to parse
+   * @param subobjects descriptions of how to get the String or List<String> of each seeAlso
+   * @param executor where blocking fetches can run
+   * @return the String or List<String> described by each subobject, subobjects which cannot be
+   *     retrieved are missing
+   */
+  public default CompletableFuture<Map<String, Object>> getResourcesFromUrlAsync(
+      String url, Collection<String> subobjects, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> getResourcesFromUrl(url, subobjects), executor);
+  }
+
   /** @return the list of the protocols the SeeAlsoDecorator is able to deal with */
   public List<String> getProtocols();
 }
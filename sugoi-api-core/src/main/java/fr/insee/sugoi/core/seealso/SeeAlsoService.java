@@ -13,19 +13,104 @@
 */
 package fr.insee.sugoi.core.seealso;
 
+import fr.insee.sugoi.core.deadline.RequestDeadline;
 import fr.insee.sugoi.model.User;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.EhCache2Metrics;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Resolve the seeAlsos of a user. The seeAlsos of a user are fetched at the same time, each url
+ * once, either without blocking or on a bounded executor for the decorators which block, and the
+ * seeAlsos not resolved before the deadline, or before the deadline of the request if it comes
+ * first, are skipped. Resolved values are cached by url and subobject for each protocol.
+ */
 @Service
-public class SeeAlsoService {
+public class SeeAlsoService implements DisposableBean {
 
   protected static final Logger logger = LogManager.getLogger(SeeAlsoService.class);
 
+  private static final String CACHE_PREFIX = "SeeAlso_";
+
   @Autowired private MapProtocolSeeAlsoDecorator mapProtocol;
 
+  @Autowired private CacheManager ehCacheManager;
+
+  private final ExecutorService executor;
+
+  private final long timeoutMillis;
+
+  private final boolean cacheEnabled;
+
+  private final long cacheTimeToLiveSeconds;
+
+  private final int cacheMaxEntries;
+
+  /**
+   * @param threads maximum number of seeAlsos fetched at the same time by the blocking decorators
+   * @param timeoutMillis time in milliseconds after which the seeAlsos of a user are abandoned
+   * @param cacheEnabled cache the resolved seeAlsos
+   * @param cacheTimeToLiveSeconds time a resolved seeAlso stays in the cache
+   * @param cacheMaxEntries maximum number of seeAlsos cached per protocol
+   */
+  public SeeAlsoService(
+      @Value("${fr.insee.sugoi.seealso.threads:16}") int threads,
+      @Value("${fr.insee.sugoi.seealso.timeout:2000}") long timeoutMillis,
+      @Value("${fr.insee.sugoi.seealso.cache.enabled:true}") boolean cacheEnabled,
+      @Value("${fr.insee.sugoi.seealso.cache.ttl:300}") long cacheTimeToLiveSeconds,
+      @Value("${fr.insee.sugoi.seealso.cache.max-entries:10000}") int cacheMaxEntries) {
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadPoolExecutor threadPoolExecutor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(threads * 4),
+            runnable -> {
+              Thread thread = new Thread(runnable, "seealso-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            // a saturated executor skips the seeAlso rather than fetching it on the request thread
+            new ThreadPoolExecutor.AbortPolicy());
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    this.executor = threadPoolExecutor;
+    this.timeoutMillis = timeoutMillis;
+    this.cacheEnabled = cacheEnabled;
+    this.cacheTimeToLiveSeconds = cacheTimeToLiveSeconds;
+    this.cacheMaxEntries = cacheMaxEntries;
+  }
+
   /**
    * Add an attribute to a user according to a seeAlso. This attribute can be a String or a
    * List<String>. SeeAlso is a String described as "url|subobject|attributetoupdate"
@@ -45,26 +130,170 @@ public class SeeAlsoService {
    * @return the modified user
    */
   public User decorateWithSeeAlso(User user, String seeAlso) {
-    Object valueOfNewAttribute = getSeeAlsoFieldValue(seeAlso);
-    if (valueOfNewAttribute != null) {
-      user.addAttributes(getSeeAlsoFieldName(seeAlso), getSeeAlsoFieldValue(seeAlso));
+    return decorateWithSeeAlsos(user, List.of(seeAlso));
+  }
+
+  /**
+   * Add to a user the attributes described by several seeAlsos, as decorateWithSeeAlso does. The
+   * urls are fetched at the same time, each url once even if several seeAlsos use it.
+   *
+   * <p>SeeAlsos which cannot be retrieved before the deadline add no attribute.
+   *
+   * @param user which to add attributes
+   * @param seeAlsos
+   * @return the modified user
+   */
+  public User decorateWithSeeAlsos(User user, List<String> seeAlsos) {
+    long deadline =
+        RequestDeadline.earliest(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    List<SeeAlso> parsedSeeAlsos = new ArrayList<>();
+    for (String seeAlso : seeAlsos) {
+      try {
+        parsedSeeAlsos.add(new SeeAlso(seeAlso));
+      } catch (Exception e) {
+        logger.error("Error while retrieving the seeAlso value from " + seeAlso + " : " + e);
+      }
+    }
+
+    Map<String, Map<String, Object>> valuesByUrl = new HashMap<>();
+    Map<String, Set<String>> missingSubobjectsByUrl = new LinkedHashMap<>();
+    for (SeeAlso seeAlso : parsedSeeAlsos) {
+      Object cachedValue = getCachedValue(seeAlso.protocol, seeAlso.url, seeAlso.subobject);
+      if (cachedValue != null) {
+        valuesByUrl
+            .computeIfAbsent(seeAlso.url, url -> new HashMap<>())
+            .put(seeAlso.subobject, cachedValue);
+      } else {
+        missingSubobjectsByUrl
+            .computeIfAbsent(seeAlso.url, url -> new LinkedHashSet<>())
+            .add(seeAlso.subobject);
+      }
+    }
+
+    Map<String, Future<Map<String, Object>>> fetches = new LinkedHashMap<>();
+    missingSubobjectsByUrl.forEach((url, subobjects) -> fetches.put(url, fetch(url, subobjects)));
+    for (Map.Entry<String, Future<Map<String, Object>>> fetch : fetches.entrySet()) {
+      String url = fetch.getKey();
+      Future<Map<String, Object>> future = fetch.getValue();
+      try {
+        long remaining = Math.max(deadline - System.nanoTime(), 0);
+        valuesByUrl
+            .computeIfAbsent(url, key -> new HashMap<>())
+            .putAll(future.get(remaining, TimeUnit.NANOSECONDS));
+      } catch (TimeoutException e) {
+        // not interrupted so that the decorators can release their connections
+        future.cancel(false);
+        Metrics.counter("sugoi.seealso.deadline.exceeded", "protocol", getProtocol(url))
+            .increment();
+        logger.warn("SeeAlso {} not retrieved before the deadline", url);
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof RejectedExecutionException)) {
+          logger.error(
+              "Error while retrieving the seeAlso value from " + url + " : " + e.getCause());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        future.cancel(false);
+      }
+    }
+
+    for (SeeAlso seeAlso : parsedSeeAlsos) {
+      Object value = valuesByUrl.getOrDefault(seeAlso.url, Map.of()).get(seeAlso.subobject);
+      if (value != null) {
+        user.addAttributes(seeAlso.attribute, value);
+      }
     }
     return user;
   }
 
-  private Object getSeeAlsoFieldValue(String seeAlso) {
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+
+  private CompletableFuture<Map<String, Object>> fetch(String url, Set<String> subobjects) {
+    String protocol = getProtocol(url);
+    long start = System.nanoTime();
+    CompletableFuture<Map<String, Object>> fetch;
     try {
-      String url = seeAlso.split("\\|")[0];
-      String subobject = seeAlso.split("\\|")[1];
-      String protocol = url.split(":")[0];
-      return mapProtocol.getResourceFromUrl(protocol, url, subobject);
-    } catch (Exception e) {
-      logger.error("Error while retrieving the seeAlso value from " + seeAlso + " : " + e);
+      fetch = mapProtocol.getResourcesFromUrlAsync(protocol, url, subobjects, executor);
+    } catch (RejectedExecutionException e) {
+      Metrics.counter("sugoi.seealso.rejected", "protocol", protocol).increment();
+      logger.warn("SeeAlso {} skipped, all the seeAlso threads are busy", url);
+      return CompletableFuture.failedFuture(e);
+    } catch (RuntimeException e) {
+      fetch = CompletableFuture.failedFuture(e);
+    }
+    return fetch
+        .thenApply(values -> values != null ? values : Map.<String, Object>of())
+        .whenComplete(
+            (values, e) -> {
+              String outcome = e != null ? "error" : values.isEmpty() ? "empty" : "success";
+              Metrics.timer("sugoi.seealso.fetch", "protocol", protocol, "outcome", outcome)
+                  .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+              if (e == null && cacheEnabled) {
+                Ehcache cache = getCache(protocol);
+                // the cache keeps its own list, the fetched one is given to the user
+                values.forEach(
+                    (subobject, value) ->
+                        cache.put(
+                            new Element(
+                                getCacheKey(url, subobject),
+                                value instanceof List ? new ArrayList<>((List<?>) value) : value)));
+              }
+            });
+  }
+
+  private Object getCachedValue(String protocol, String url, String subobject) {
+    if (!cacheEnabled) {
+      return null;
+    }
+    Element element = getCache(protocol).get(getCacheKey(url, subobject));
+    if (element == null) {
       return null;
     }
+    // users get their own list
+    Object value = element.getObjectValue();
+    return value instanceof List ? new ArrayList<>((List<?>) value) : value;
   }
 
-  private String getSeeAlsoFieldName(String seeAlso) {
-    return seeAlso.split("\\|")[2];
+  private String getCacheKey(String url, String subobject) {
+    return url + "|" + subobject;
+  }
+
+  private Ehcache getCache(String protocol) {
+    String cacheName = CACHE_PREFIX + protocol;
+    Ehcache cache = ehCacheManager.getEhcache(cacheName);
+    if (cache == null) {
+      cache =
+          ehCacheManager.addCacheIfAbsent(
+              new Cache(
+                  new CacheConfiguration(cacheName, cacheMaxEntries)
+                      .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+                      .timeToLiveSeconds(cacheTimeToLiveSeconds)));
+      EhCache2Metrics.monitor(Metrics.globalRegistry, cache, Tags.of("protocol", protocol));
+    }
+    return cache;
+  }
+
+  private static String getProtocol(String url) {
+    return url.split(":")[0].toLowerCase();
+  }
+
+  /** A seeAlso described as "url|subobject|attributetoupdate" */
+  private static class SeeAlso {
+
+    private final String url;
+    private final String subobject;
+    private final String attribute;
+    private final String protocol;
+
+    private SeeAlso(String seeAlso) {
+      String[] parts = seeAlso.split("\\|");
+      this.url = parts[0];
+      this.subobject = parts[1];
+      this.attribute = parts[2];
+      this.protocol = getProtocol(url);
+    }
   }
 }
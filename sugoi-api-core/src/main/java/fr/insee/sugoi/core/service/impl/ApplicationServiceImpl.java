@@ -39,7 +39,7 @@ public class ApplicationServiceImpl implements ApplicationService {
   @Override
   public Application create(String realm, Application application) {
     try {
-      if (findById(realm, application.getName()).isEmpty()) {
+      if (!storeProvider.getReaderStore(realm).applicationExists(application.getName())) {
         String appName =
             storeProvider.getWriterStore(realm).createApplication(application).getName();
         sugoiEventPublisher.publishCustomEvent(
@@ -140,11 +140,13 @@ public class ApplicationServiceImpl implements ApplicationService {
     try {
 
       Application app = storeProvider.getReaderStore(realm).getApplication(id);
-      sugoiEventPublisher.publishCustomEvent(
-          realm,
-          null,
-          SugoiEventTypeEnum.FIND_APPLICATION_BY_ID,
-          Map.ofEntries(Map.entry(EventKeysConfig.APPLICATION_ID, id)));
+      if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_APPLICATION_BY_ID)) {
+        sugoiEventPublisher.publishCustomEvent(
+            realm,
+            null,
+            SugoiEventTypeEnum.FIND_APPLICATION_BY_ID,
+            Map.ofEntries(Map.entry(EventKeysConfig.APPLICATION_ID, id)));
+      }
       return Optional.ofNullable(app);
     } catch (Exception e) {
       sugoiEventPublisher.publishCustomEvent(
@@ -167,11 +169,13 @@ public class ApplicationServiceImpl implements ApplicationService {
           storeProvider
               .getReaderStore(realm)
               .searchApplications(applicationFilter, pageableResult, SearchType.AND.name());
-      sugoiEventPublisher.publishCustomEvent(
-          realm,
-          null,
-          SugoiEventTypeEnum.FIND_APPLICATIONS,
-          Map.ofEntries(Map.entry(EventKeysConfig.APPLICATION_FILTER, applicationFilter)));
+      if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_APPLICATIONS)) {
+        sugoiEventPublisher.publishCustomEvent(
+            realm,
+            null,
+            SugoiEventTypeEnum.FIND_APPLICATIONS,
+            Map.ofEntries(Map.entry(EventKeysConfig.APPLICATION_FILTER, applicationFilter)));
+      }
       return apps;
     } catch (Exception e) {
       sugoiEventPublisher.publishCustomEvent(
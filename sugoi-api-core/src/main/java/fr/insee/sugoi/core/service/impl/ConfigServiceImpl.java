@@ -40,11 +40,13 @@ public class ConfigServiceImpl implements ConfigService {
   public Optional<Realm> getRealm(String name) {
     try {
       Realm realm = realmProvider.load(name);
-      sugoiEventPublisher.publishCustomEvent(
-          null,
-          null,
-          SugoiEventTypeEnum.FIND_REALM_BY_ID,
-          Map.ofEntries(Map.entry(EventKeysConfig.REALM_NAME, name)));
+      if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_REALM_BY_ID)) {
+        sugoiEventPublisher.publishCustomEvent(
+            null,
+            null,
+            SugoiEventTypeEnum.FIND_REALM_BY_ID,
+            Map.ofEntries(Map.entry(EventKeysConfig.REALM_NAME, name)));
+      }
       return Optional.ofNullable(realm);
     } catch (Exception e) {
       sugoiEventPublisher.publishCustomEvent(
@@ -46,7 +46,7 @@ public class GroupServiceImpl implements GroupService {
   public Group create(String realm, String appName, Group group) {
     try {
 
-      if (findById(realm, appName, group.getName()).isEmpty()) {
+      if (!storeProvider.getReaderStore(realm).groupExists(appName, group.getName())) {
         storeProvider.getWriterStore(realm).createGroup(appName, group);
         sugoiEventPublisher.publishCustomEvent(
             realm,
@@ -123,13 +123,15 @@ public class GroupServiceImpl implements GroupService {
     try {
 
       Group group = storeProvider.getReaderStore(realm).getGroup(appName, id);
-      sugoiEventPublisher.publishCustomEvent(
-          realm,
-          null,
-          SugoiEventTypeEnum.FIND_GROUP_BY_ID,
-          Map.ofEntries(
-              Map.entry(EventKeysConfig.GROUP_ID, id),
-              Map.entry(EventKeysConfig.APPLICATION_NAME, appName)));
+      if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_GROUP_BY_ID)) {
+        sugoiEventPublisher.publishCustomEvent(
+            realm,
+            null,
+            SugoiEventTypeEnum.FIND_GROUP_BY_ID,
+            Map.ofEntries(
+                Map.entry(EventKeysConfig.GROUP_ID, id),
+                Map.entry(EventKeysConfig.APPLICATION_NAME, appName)));
+      }
       return Optional.ofNullable(group);
     } catch (Exception e) {
       sugoiEventPublisher.publishCustomEvent(
@@ -153,13 +155,15 @@ public class GroupServiceImpl implements GroupService {
           storeProvider
               .getReaderStore(realm)
               .searchGroups(appName, groupFilter, pageableResult, SearchType.AND.name());
-      sugoiEventPublisher.publishCustomEvent(
-          realm,
-          null,
-          SugoiEventTypeEnum.FIND_GROUPS,
-          Map.ofEntries(
-              Map.entry(EventKeysConfig.APPLICATION_NAME, appName),
-              Map.entry(EventKeysConfig.GROUP_FILTER, groupFilter)));
+      if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_GROUPS)) {
+        sugoiEventPublisher.publishCustomEvent(
+            realm,
+            null,
+            SugoiEventTypeEnum.FIND_GROUPS,
+            Map.ofEntries(
+                Map.entry(EventKeysConfig.APPLICATION_NAME, appName),
+                Map.entry(EventKeysConfig.GROUP_FILTER, groupFilter)));
+      }
       return groups;
     } catch (Exception e) {
       sugoiEventPublisher.publishCustomEvent(
@@ -17,21 +17,24 @@ import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
 import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
 import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
 import fr.insee.sugoi.core.event.publisher.SugoiEventPublisher;
+import fr.insee.sugoi.core.exceptions.InvalidSearchTokenException;
 import fr.insee.sugoi.core.exceptions.OrganizationAlreadyExistException;
 import fr.insee.sugoi.core.exceptions.OrganizationNotCreatedException;
 import fr.insee.sugoi.core.exceptions.OrganizationNotFoundException;
+import fr.insee.sugoi.core.exceptions.SearchExpiredException;
 import fr.insee.sugoi.core.realm.RealmProvider;
+import fr.insee.sugoi.core.search.UserStorageSearch;
+import fr.insee.sugoi.core.search.UserStorageSearch.Match;
 import fr.insee.sugoi.core.service.OrganizationService;
-import fr.insee.sugoi.core.store.ReaderStore;
 import fr.insee.sugoi.core.store.StoreProvider;
 import fr.insee.sugoi.model.Organization;
-import fr.insee.sugoi.model.Realm;
 import fr.insee.sugoi.model.UserStorage;
 import fr.insee.sugoi.model.paging.PageResult;
 import fr.insee.sugoi.model.paging.PageableResult;
 import fr.insee.sugoi.model.paging.SearchType;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,10 +51,14 @@ public class OrganizationServiceImpl implements OrganizationService {
 
   @Autowired private RealmProvider realmProvider;
 
+  @Autowired private UserStorageSearch userStorageSearch;
+
   @Override
   public Organization create(String realm, String storageName, Organization organization) {
     try {
-      if (findById(realm, storageName, organization.getIdentifiant()).isEmpty()) {
+      if (!storeProvider
+          .getReaderStore(realm, storageName)
+          .organizationExists(organization.getIdentifiant())) {
         String orgName =
             storeProvider
                 .getWriterStore(realm, storageName)
@@ -129,31 +136,31 @@ public class OrganizationServiceImpl implements OrganizationService {
           org.addMetadatas(EventKeysConfig.REALM, realm.toLowerCase());
           org.addMetadatas(EventKeysConfig.USERSTORAGE, storage.toLowerCase());
         } else {
-          Realm r = realmProvider.load(realm);
-          for (UserStorage us : r.getUserStorages()) {
-            try {
-              org = storeProvider.getReaderStore(realm, us.getName()).getOrganization(id);
-              org.addMetadatas(GlobalKeysConfig.REALM, realm);
-              org.addMetadatas(EventKeysConfig.USERSTORAGE, us.getName());
-              break;
-            } catch (Exception e) {
-              logger.debug(
-                  "Error when trying to find organization "
-                      + id
-                      + " on realm "
-                      + realm
-                      + " and userstorage "
-                      + us
-                      + " error "
-                      + e.getMessage());
-            }
+          Match<Organization> match =
+              userStorageSearch.findFirst(
+                  realm,
+                  "organization",
+                  id,
+                  realmProvider.load(realm).getUserStorages().stream()
+                      .map(UserStorage::getName)
+                      .collect(Collectors.toList()),
+                  (userStorage, organizationId) ->
+                      storeProvider
+                          .getReaderStore(realm, userStorage)
+                          .getOrganization(organizationId));
+          if (match != null) {
+            org = match.getValue();
+            org.addMetadatas(GlobalKeysConfig.REALM, realm);
+            org.addMetadatas(EventKeysConfig.USERSTORAGE, match.getUserStorage());
           }
         }
-        sugoiEventPublisher.publishCustomEvent(
-            realm,
-            storage,
-            SugoiEventTypeEnum.FIND_ORGANIZATION_BY_ID,
-            Map.ofEntries(Map.entry(EventKeysConfig.ORGANIZATION_ID, id)));
+        if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_ORGANIZATION_BY_ID)) {
+          sugoiEventPublisher.publishCustomEvent(
+              realm,
+              storage,
+              SugoiEventTypeEnum.FIND_ORGANIZATION_BY_ID,
+              Map.ofEntries(Map.entry(EventKeysConfig.ORGANIZATION_ID, id)));
+        }
       }
       return Optional.ofNullable(org);
     } catch (Exception e) {
@@ -184,40 +191,27 @@ public class OrganizationServiceImpl implements OrganizationService {
                 .getReaderStore(realm, storageName)
                 .searchOrganizations(organizationFilter, pageableResult, typeRecherche.name());
       } else {
-        Realm r = realmProvider.load(realm);
-        for (UserStorage us : r.getUserStorages()) {
-          ReaderStore readerStore =
-              storeProvider.getStoreForUserStorage(realm, us.getName()).getReader();
-          PageResult<Organization> temResult =
-              readerStore.searchOrganizations(
-                  organizationFilter, pageableResult, typeRecherche.name());
-          temResult
-              .getResults()
-              .forEach(
-                  org -> {
-                    org.addMetadatas(GlobalKeysConfig.REALM, realm);
-                    org.addMetadatas(GlobalKeysConfig.USERSTORAGE, us.getName());
-                  });
-          result.getResults().addAll(temResult.getResults());
-          result.setTotalElements(
-              temResult.getTotalElements() == -1
-                  ? temResult.getTotalElements()
-                  : result.getTotalElements() + temResult.getTotalElements());
-          result.setSearchToken(temResult.getSearchToken());
-          result.setHasMoreResult(temResult.isHasMoreResult());
-          if (result.getResults().size() >= result.getPageSize()) {
-            sugoiEventPublisher.publishCustomEvent(
-                realm,
-                storageName,
-                SugoiEventTypeEnum.FIND_ORGANIZATIONS,
-                Map.ofEntries(
-                    Map.entry(EventKeysConfig.ORGANIZATION_FILTER, organizationFilter),
-                    Map.entry(EventKeysConfig.PAGEABLE_RESULT, pageableResult),
-                    Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche)));
-            return result;
-          }
-          pageableResult.setSize(pageableResult.getSize() - result.getTotalElements());
-        }
+        result =
+            userStorageSearch.search(
+                realmProvider.load(realm).getUserStorages().stream()
+                    .map(UserStorage::getName)
+                    .collect(Collectors.toList()),
+                pageableResult,
+                (userStorage, userStoragePageable) -> {
+                  PageResult<Organization> userStorageResult =
+                      storeProvider
+                          .getReaderStore(realm, userStorage)
+                          .searchOrganizations(
+                              organizationFilter, userStoragePageable, typeRecherche.name());
+                  userStorageResult
+                      .getResults()
+                      .forEach(
+                          org -> {
+                            org.addMetadatas(GlobalKeysConfig.REALM, realm);
+                            org.addMetadatas(GlobalKeysConfig.USERSTORAGE, userStorage);
+                          });
+                  return userStorageResult;
+                });
       }
     } catch (Exception e) {
       sugoiEventPublisher.publishCustomEvent(
@@ -229,16 +223,21 @@ public class OrganizationServiceImpl implements OrganizationService {
               Map.entry(EventKeysConfig.PAGEABLE_RESULT, pageableResult),
               Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche),
               Map.entry(EventKeysConfig.ERROR, e.toString())));
+      if (e instanceof SearchExpiredException || e instanceof InvalidSearchTokenException) {
+        throw (RuntimeException) e;
+      }
       throw new RuntimeException("Erreur lors de la récupération des organizations", e);
     }
-    sugoiEventPublisher.publishCustomEvent(
-        realm,
-        storageName,
-        SugoiEventTypeEnum.FIND_ORGANIZATIONS,
-        Map.ofEntries(
-            Map.entry(EventKeysConfig.ORGANIZATION_FILTER, organizationFilter),
-            Map.entry(EventKeysConfig.PAGEABLE_RESULT, pageableResult),
-            Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche)));
+    if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_ORGANIZATIONS)) {
+      sugoiEventPublisher.publishCustomEvent(
+          realm,
+          storageName,
+          SugoiEventTypeEnum.FIND_ORGANIZATIONS,
+          Map.ofEntries(
+              Map.entry(EventKeysConfig.ORGANIZATION_FILTER, organizationFilter),
+              Map.entry(EventKeysConfig.PAGEABLE_RESULT, pageableResult),
+              Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche)));
+    }
     return result;
   }
 
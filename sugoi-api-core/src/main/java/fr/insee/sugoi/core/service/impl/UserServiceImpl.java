@@ -17,13 +17,18 @@ import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
 import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
 import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
 import fr.insee.sugoi.core.event.publisher.SugoiEventPublisher;
+import fr.insee.sugoi.core.exceptions.InvalidSearchTokenException;
+import fr.insee.sugoi.core.exceptions.RequestDeadlineExceededException;
+import fr.insee.sugoi.core.exceptions.SearchExpiredException;
+import fr.insee.sugoi.core.exceptions.StoreTimeoutException;
 import fr.insee.sugoi.core.exceptions.UserAlreadyExistException;
 import fr.insee.sugoi.core.exceptions.UserNotCreatedException;
 import fr.insee.sugoi.core.exceptions.UserNotFoundException;
 import fr.insee.sugoi.core.realm.RealmProvider;
+import fr.insee.sugoi.core.search.UserStorageSearch;
+import fr.insee.sugoi.core.search.UserStorageSearch.Match;
 import fr.insee.sugoi.core.seealso.SeeAlsoService;
 import fr.insee.sugoi.core.service.UserService;
-import fr.insee.sugoi.core.store.ReaderStore;
 import fr.insee.sugoi.core.store.StoreProvider;
 import fr.insee.sugoi.model.Realm;
 import fr.insee.sugoi.model.User;
@@ -35,6 +40,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -49,6 +55,8 @@ public class UserServiceImpl implements UserService {
 
   @Autowired private SugoiEventPublisher sugoiEventPublisher;
 
+  @Autowired private UserStorageSearch userStorageSearch;
+
   @Autowired(required = false)
   private SeeAlsoService seeAlsoService;
 
@@ -58,7 +66,7 @@ public class UserServiceImpl implements UserService {
   public User create(String realm, String storage, User user) {
     try {
 
-      if (findById(realm, storage, user.getUsername()).isEmpty()) {
+      if (!storeProvider.getReaderStore(realm, storage).userExists(user.getUsername())) {
         String userName =
             storeProvider.getWriterStore(realm, storage).createUser(user).getUsername();
         sugoiEventPublisher.publishCustomEvent(
@@ -163,23 +171,20 @@ public class UserServiceImpl implements UserService {
           user.addMetadatas(GlobalKeysConfig.REALM, realmName.toLowerCase());
           user.addMetadatas(GlobalKeysConfig.USERSTORAGE, storage.toLowerCase());
         } else {
-          for (UserStorage us : realm.getUserStorages()) {
-            try {
-              user = storeProvider.getReaderStore(realmName, us.getName()).getUser(id);
-              user.addMetadatas(GlobalKeysConfig.REALM, realmName);
-              user.addMetadatas(GlobalKeysConfig.USERSTORAGE, us.getName());
-              break;
-            } catch (Exception e) {
-              logger.debug(
-                  "Error when trying to find user "
-                      + id
-                      + " on realm "
-                      + realmName
-                      + " and userstorage "
-                      + us
-                      + " error "
-                      + e.getMessage());
-            }
+          Match<User> match =
+              userStorageSearch.findFirst(
+                  realmName,
+                  "user",
+                  id,
+                  realm.getUserStorages().stream()
+                      .map(UserStorage::getName)
+                      .collect(Collectors.toList()),
+                  (userStorage, userId) ->
+                      storeProvider.getReaderStore(realmName, userStorage).getUser(userId));
+          if (match != null) {
+            user = match.getValue();
+            user.addMetadatas(GlobalKeysConfig.REALM, realmName);
+            user.addMetadatas(GlobalKeysConfig.USERSTORAGE, match.getUserStorage());
           }
         }
         if (seeAlsoService != null
@@ -200,15 +205,15 @@ public class UserServiceImpl implements UserService {
                   .forEach(seeAlso -> seeAlsos.add(seeAlso.toString()));
             }
           }
-          for (String seeAlso : seeAlsos) {
-            seeAlsoService.decorateWithSeeAlso(user, seeAlso);
-          }
+          seeAlsoService.decorateWithSeeAlsos(user, seeAlsos);
+        }
+        if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_USER_BY_ID)) {
+          sugoiEventPublisher.publishCustomEvent(
+              realmName,
+              storage,
+              SugoiEventTypeEnum.FIND_USER_BY_ID,
+              Map.ofEntries(Map.entry(EventKeysConfig.USER_ID, id)));
         }
-        sugoiEventPublisher.publishCustomEvent(
-            realmName,
-            storage,
-            SugoiEventTypeEnum.FIND_USER_BY_ID,
-            Map.ofEntries(Map.entry(EventKeysConfig.USER_ID, id)));
       }
       return Optional.ofNullable(user);
     } catch (Exception e) {
@@ -219,6 +224,10 @@ public class UserServiceImpl implements UserService {
           Map.ofEntries(
               Map.entry(EventKeysConfig.USER_ID, id),
               Map.entry(EventKeysConfig.ERROR, e.toString())));
+      if (e instanceof StoreTimeoutException || e instanceof RequestDeadlineExceededException) {
+        // the user may exist
+        throw (RuntimeException) e;
+      }
       return Optional.ofNullable(user);
     }
   }
@@ -247,39 +256,26 @@ public class UserServiceImpl implements UserService {
                   user.addMetadatas(EventKeysConfig.USERSTORAGE, storage);
                 });
       } else {
-        Realm r = realmProvider.load(realm);
-        for (UserStorage us : r.getUserStorages()) {
-          ReaderStore readerStore =
-              storeProvider.getStoreForUserStorage(realm, us.getName()).getReader();
-          PageResult<User> temResult =
-              readerStore.searchUsers(userProperties, pageable, typeRecherche.name());
-          temResult
-              .getResults()
-              .forEach(
-                  user -> {
-                    user.addMetadatas(EventKeysConfig.REALM, realm);
-                    user.addMetadatas(EventKeysConfig.USERSTORAGE, us.getName());
-                  });
-          result.getResults().addAll(temResult.getResults());
-          result.setTotalElements(
-              temResult.getTotalElements() == -1
-                  ? temResult.getTotalElements()
-                  : result.getTotalElements() + temResult.getTotalElements());
-          result.setSearchToken(temResult.getSearchToken());
-          result.setHasMoreResult(temResult.isHasMoreResult());
-          if (result.getResults().size() >= result.getPageSize()) {
-            sugoiEventPublisher.publishCustomEvent(
-                realm,
-                storage,
-                SugoiEventTypeEnum.FIND_USERS,
-                Map.ofEntries(
-                    Map.entry(EventKeysConfig.USER_PROPERTIES, userProperties),
-                    Map.entry(EventKeysConfig.PAGEABLE, pageable),
-                    Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche)));
-            return result;
-          }
-          pageable.setSize(pageable.getSize() - result.getTotalElements());
-        }
+        result =
+            userStorageSearch.search(
+                realmProvider.load(realm).getUserStorages().stream()
+                    .map(UserStorage::getName)
+                    .collect(Collectors.toList()),
+                pageable,
+                (userStorage, userStoragePageable) -> {
+                  PageResult<User> userStorageResult =
+                      storeProvider
+                          .getReaderStore(realm, userStorage)
+                          .searchUsers(userProperties, userStoragePageable, typeRecherche.name());
+                  userStorageResult
+                      .getResults()
+                      .forEach(
+                          user -> {
+                            user.addMetadatas(EventKeysConfig.REALM, realm);
+                            user.addMetadatas(EventKeysConfig.USERSTORAGE, userStorage);
+                          });
+                  return userStorageResult;
+                });
       }
 
     } catch (Exception e) {
@@ -292,16 +288,24 @@ public class UserServiceImpl implements UserService {
               Map.entry(EventKeysConfig.PAGEABLE, pageable),
               Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche),
               Map.entry(EventKeysConfig.ERROR, e.toString())));
+      if (e instanceof StoreTimeoutException
+          || e instanceof RequestDeadlineExceededException
+          || e instanceof SearchExpiredException
+          || e instanceof InvalidSearchTokenException) {
+        throw (RuntimeException) e;
+      }
       throw new RuntimeException("Erreur lors de la récupération des utilisateurs", e);
     }
-    sugoiEventPublisher.publishCustomEvent(
-        realm,
-        storage,
-        SugoiEventTypeEnum.FIND_USERS,
-        Map.ofEntries(
-            Map.entry(EventKeysConfig.USER_PROPERTIES, userProperties),
-            Map.entry(EventKeysConfig.PAGEABLE, pageable),
-            Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche)));
+    if (sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_USERS)) {
+      sugoiEventPublisher.publishCustomEvent(
+          realm,
+          storage,
+          SugoiEventTypeEnum.FIND_USERS,
+          Map.ofEntries(
+              Map.entry(EventKeysConfig.USER_PROPERTIES, userProperties),
+              Map.entry(EventKeysConfig.PAGEABLE, pageable),
+              Map.entry(EventKeysConfig.TYPE_RECHERCHE, typeRecherche)));
+    }
     return result;
   }
 
@@ -37,6 +37,17 @@ public interface ReaderStore {
    */
   public User getUser(String id);
 
+  /**
+   * Check if a user with the given id exists in the store. Implementations should not read the
+   * whole user.
+   *
+   * @param id the id of the user
+   * @return true if a user matches id, false otherwise
+   */
+  public default boolean userExists(String id) {
+    return getUser(id) != null;
+  }
+
   /**
    * Search users matching userFilter filled attributes.
    *
@@ -59,6 +70,19 @@ public interface ReaderStore {
    */
   public Organization getOrganization(String id);
 
+  /**
+   * Check if an organization with the given id exists in the store. Implementations should not
+   * read the whole organization.
+   *
+   * @param id the id of the organization
+   * @throws UnsupportedOperationException if the configuration for organizations is not set on the
+   *     UserStorage.
+   * @return true if an organization matches id, false otherwise
+   */
+  public default boolean organizationExists(String id) {
+    return getOrganization(id) != null;
+  }
+
   /**
    * Search organizations matching organizationFilter filled attributes.
    *
@@ -84,6 +108,19 @@ public interface ReaderStore {
    */
   public Application getApplication(String applicationName);
 
+  /**
+   * Check if an application with the given name exists in the store. Implementations should not
+   * read the application nor its groups.
+   *
+   * @param applicationName
+   * @throws UnsupportedOperationException if the configuration for applications is not set on the
+   *     Realm.
+   * @return true if an application matches applicationName, false otherwise
+   */
+  public default boolean applicationExists(String applicationName) {
+    return getApplication(applicationName) != null;
+  }
+
   /**
    * Search applications matching applicationFilter filled attributes.
    *
@@ -110,6 +147,20 @@ public interface ReaderStore {
    */
   public Group getGroup(String appName, String groupName);
 
+  /**
+   * Check if the group groupName of the application appName exists in the store. Implementations
+   * should not read the members of the group.
+   *
+   * @param appName
+   * @param groupName
+   * @throws UnsupportedOperationException if the configuration for applications or groups is not
+   *     set.
+   * @return true if the group exists, false otherwise
+   */
+  public default boolean groupExists(String appName, String groupName) {
+    return getGroup(appName, groupName) != null;
+  }
+
   /**
    * Search groups in application appName matching groupFilter filled attributes. Groups are
    * returned with simplified users.
@@ -13,16 +13,22 @@
 */
 package fr.insee.sugoi.core.store.impl;
 
+import fr.insee.sugoi.core.cache.ReaderStoreCache;
+import fr.insee.sugoi.core.coalescing.ReadCoalescer;
+import fr.insee.sugoi.core.deadline.DeadlineWriterStore;
 import fr.insee.sugoi.core.store.ReaderStore;
 import fr.insee.sugoi.core.store.Store;
 import fr.insee.sugoi.core.store.StoreStorage;
 import fr.insee.sugoi.core.store.WriterStore;
 import fr.insee.sugoi.model.Realm;
 import fr.insee.sugoi.model.UserStorage;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.ApplicationContext;
@@ -30,14 +36,21 @@ import org.springframework.stereotype.Component;
 
 @Component
 @ConfigurationProperties(prefix = "fr.insee.sugoi.store")
-public class StoreStorageImpl implements StoreStorage {
+public class StoreStorageImpl implements StoreStorage, DisposableBean {
 
   private static final Logger logger = LogManager.getLogger(StoreStorageImpl.class);
 
   private static final Map<String, Store> connections = new HashMap<>();
 
+  /** Reader and writer beans created for the stores, destroyed with the application context */
+  private static final List<Object> storeBeans = new ArrayList<>();
+
   @Autowired private ApplicationContext applicationContext;
 
+  @Autowired private ReaderStoreCache readerStoreCache;
+
+  @Autowired private ReadCoalescer readCoalescer;
+
   @Override
   public Store getStore(Realm realm, UserStorage userStorage) {
     String writerType = realm.getWriterType();
@@ -57,9 +70,29 @@ public class StoreStorageImpl implements StoreStorage {
           readerStore.getClass().getSimpleName(),
           writerStore.getClass().getSimpleName(),
           name);
-      connections.put(name, new Store(readerStore, writerStore));
+      storeBeans.add(writerStore);
+      storeBeans.add(readerStore);
+      // cache misses are coalesced before reaching the store
+      connections.put(
+          name,
+          new Store(
+              readerStoreCache.wrap(
+                  realm, userStorage, readCoalescer.wrap(realm, userStorage, readerStore)),
+              new DeadlineWriterStore(writerStore)));
     }
 
     return connections.get(name);
   }
+
+  /**
+   * Prototype beans are not destroyed by Spring, the stores are destroyed here so that they release
+   * what they hold. They are created again if the application context is restarted.
+   */
+  @Override
+  public void destroy() {
+    storeBeans.forEach(
+        storeBean -> applicationContext.getAutowireCapableBeanFactory().destroyBean(storeBean));
+    storeBeans.clear();
+    connections.clear();
+  }
 }
@@ -0,0 +1,171 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import fr.insee.sugoi.core.configuration.EhCacheConfig;
+import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.model.Organization;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(classes = {EhCacheConfig.class, OrganizationHierarchyCache.class})
+@TestPropertySource(locations = "classpath:/application.properties")
+public class OrganizationHierarchyCacheTest {
+
+  @Autowired private OrganizationHierarchyCache organizationHierarchyCache;
+
+  private Map<String, Organization> organizations;
+
+  private AtomicInteger loadCount;
+
+  private Function<String, Organization> loader;
+
+  @BeforeEach
+  public void setup() {
+    organizations = new HashMap<>();
+    organizations.put("child", createOrganization("child", "parent"));
+    organizations.put("parent", createOrganization("parent", "root"));
+    organizations.put("root", createOrganization("root", null));
+    organizations.put("cycle1", createOrganization("cycle1", "cycle2"));
+    organizations.put("cycle2", createOrganization("cycle2", "cycle1"));
+    loadCount = new AtomicInteger();
+    loader =
+        id -> {
+          loadCount.incrementAndGet();
+          return organizations.get(id);
+        };
+    organizationHierarchyCache.invalidate("realm", null);
+  }
+
+  @Test
+  public void testGetOrganizationHierarchy() {
+    Organization organization =
+        organizationHierarchyCache.getOrganization("realm", "us", "child", loader);
+    assertThat("Should get child", organization.getIdentifiant(), is("child"));
+    assertThat(
+        "Should get parent", organization.getOrganization().getIdentifiant(), is("parent"));
+    assertThat(
+        "Should get root",
+        organization.getOrganization().getOrganization().getIdentifiant(),
+        is("root"));
+    assertThat(
+        "Root has no parent",
+        organization.getOrganization().getOrganization().getOrganization(),
+        nullValue());
+  }
+
+  @Test
+  public void testOrganizationsAreLoadedOnce() {
+    organizationHierarchyCache.getOrganization("realm", "us", "child", loader);
+    organizationHierarchyCache.getOrganization("realm", "us", "parent", loader);
+    assertThat("Each organization should be loaded once", loadCount.get(), is(3));
+  }
+
+  @Test
+  public void testCachedOrganizationsAreNotModified() {
+    organizationHierarchyCache
+        .getOrganization("realm", "us", "child", loader)
+        .addMetadatas("realm", "realm");
+    assertThat(
+        "Cached organization should not be modified",
+        organizationHierarchyCache
+            .getOrganization("realm", "us", "child", loader)
+            .getMetadatas()
+            .containsKey("realm"),
+        is(false));
+  }
+
+  @Test
+  public void testCacheInvalidatedOnOrganizationEvent() {
+    organizationHierarchyCache.getOrganization("realm", "us", "root", loader);
+    organizations.get("root").addAttributes("description", "updated");
+    organizationHierarchyCache.handleOrganizationChange(
+        new SugoiEvent("realm", "us", SugoiEventTypeEnum.UPDATE_ORGANIZATION, Map.of()));
+    assertThat(
+        "Should get updated organization",
+        organizationHierarchyCache
+            .getOrganization("realm", "us", "root", loader)
+            .getAttributes()
+            .get("description"),
+        is("updated"));
+  }
+
+  @Test
+  public void testCycleIsStopped() {
+    Organization organization =
+        organizationHierarchyCache.getOrganization("realm", "us", "cycle1", loader);
+    assertThat(
+        "Should stop on cycle",
+        organization.getOrganization().getOrganization().getIdentifiant(),
+        is("cycle1"));
+    assertThat(
+        "Should not load cycle1 twice",
+        organization.getOrganization().getOrganization().getOrganization(),
+        nullValue());
+  }
+
+  @Test
+  public void testMaxDepth() {
+    Organization organization = OrganizationHierarchyCache.resolveHierarchy("child", 2, loader);
+    assertThat(
+        "Should stop at max depth",
+        organization.getOrganization().getOrganization().getIdentifiant(),
+        is("root"));
+    assertThat("Should only load 2 organizations", loadCount.get(), is(2));
+  }
+
+  @Test
+  public void testUnknownOrganization() {
+    assertThat(
+        "Should get null",
+        organizationHierarchyCache.getOrganization("realm", "us", "unknown", loader),
+        nullValue());
+  }
+
+  @Test
+  public void testCacheIsOptInPerRealm() {
+    assertThat(
+        "Cache should be disabled by default",
+        OrganizationHierarchyCache.isEnabled(Map.of()),
+        is(false));
+    assertThat(
+        "Cache should be enabled by the realm",
+        OrganizationHierarchyCache.isEnabled(Map.of(GlobalKeysConfig.ORGANIZATION_CACHE, "true")),
+        is(true));
+  }
+
+  private Organization createOrganization(String id, String parentId) {
+    Organization organization = new Organization();
+    organization.setIdentifiant(id);
+    if (parentId != null) {
+      Organization parent = new Organization();
+      parent.setIdentifiant(parentId);
+      organization.setOrganization(parent);
+    }
+    return organization;
+  }
+}
@@ -0,0 +1,178 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import fr.insee.sugoi.core.cache.ReaderStoreCache.Entity;
+import fr.insee.sugoi.core.configuration.EhCacheConfig;
+import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
+import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.core.store.ReaderStore;
+import fr.insee.sugoi.model.Group;
+import fr.insee.sugoi.model.Realm;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.UserStorage;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(classes = {EhCacheConfig.class, ReaderStoreCache.class})
+@TestPropertySource(locations = "classpath:/application.properties")
+public class ReaderStoreCacheTest {
+
+  @Autowired private ReaderStoreCache readerStoreCache;
+
+  private ReaderStore readerStore;
+
+  private ReaderStore cachingReaderStore;
+
+  private Realm realm;
+
+  private UserStorage userStorage;
+
+  @BeforeEach
+  public void setup() {
+    realm = new Realm();
+    realm.setName("realm");
+    realm.addProperty(GlobalKeysConfig.READER_CACHE, "user, group");
+    userStorage = new UserStorage();
+    userStorage.setName("us");
+    realm.setUserStorages(List.of(userStorage));
+
+    User user = new User("toto");
+    user.setMail("toto@insee.fr");
+    user.addAttributes("common_name", "Toto");
+    Group group = new Group();
+    group.setName("group");
+    group.setUsers(List.of(new User("toto")));
+    readerStore = Mockito.mock(ReaderStore.class);
+    Mockito.when(readerStore.getUser("toto")).thenReturn(user);
+    Mockito.when(readerStore.getGroup("app", "group")).thenReturn(group);
+    cachingReaderStore = readerStoreCache.wrap(realm, userStorage, readerStore);
+    for (Entity entity : Entity.values()) {
+      readerStoreCache.invalidate("realm", null, entity, null);
+    }
+  }
+
+  @Test
+  public void testNotWrappedWithoutProperty() {
+    Realm otherRealm = new Realm();
+    otherRealm.setName("other");
+    assertThat(
+        "No cache by default",
+        readerStoreCache.wrap(otherRealm, userStorage, readerStore),
+        sameInstance(readerStore));
+    assertThat("Cache is enabled", cachingReaderStore, instanceOf(CachingReaderStore.class));
+  }
+
+  @Test
+  public void testUserIsReadOnce() {
+    User first = cachingReaderStore.getUser("toto");
+    User second = cachingReaderStore.getUser("toto");
+    assertThat("Same mail", second.getMail(), is("toto@insee.fr"));
+    assertThat("Same attributes", second.getAttributes().get("common_name"), is("Toto"));
+    assertThat("Callers get their own copy", second, not(sameInstance(first)));
+    Mockito.verify(readerStore, Mockito.times(1)).getUser("toto");
+  }
+
+  @Test
+  public void testNullIsNotCachedWithoutNegativeTtl() {
+    realm.addProperty(GlobalKeysConfig.READER_CACHE_NEGATIVE_TTL, "0");
+    ReaderStore noNegativeCacheReaderStore = readerStoreCache.wrap(realm, userStorage, readerStore);
+    assertThat("Unknown user", noNegativeCacheReaderStore.getUser("titi"), nullValue());
+    noNegativeCacheReaderStore.getUser("titi");
+    Mockito.verify(readerStore, Mockito.times(2)).getUser("titi");
+  }
+
+  @Test
+  public void testMissingUserIsCached() {
+    assertThat("Unknown user", cachingReaderStore.getUser("titi"), nullValue());
+    assertThat("Still unknown", cachingReaderStore.getUser("titi"), nullValue());
+    assertThat("Does not exist", cachingReaderStore.userExists("titi"), is(false));
+    Mockito.verify(readerStore, Mockito.times(1)).getUser("titi");
+    Mockito.verify(readerStore, Mockito.never()).userExists("titi");
+  }
+
+  @Test
+  public void testExistsUsesCachedUser() {
+    cachingReaderStore.getUser("toto");
+    assertThat("Cached user exists", cachingReaderStore.userExists("toto"), is(true));
+    Mockito.verify(readerStore, Mockito.never()).userExists("toto");
+  }
+
+  @Test
+  public void testUserCreationInvalidatesMissingUser() {
+    assertThat("Does not exist", cachingReaderStore.userExists("titi"), is(false));
+    assertThat("Still does not exist", cachingReaderStore.userExists("titi"), is(false));
+    Mockito.verify(readerStore, Mockito.times(1)).userExists("titi");
+    readerStoreCache.handleChange(
+        new SugoiEvent(
+            "realm",
+            "us",
+            SugoiEventTypeEnum.CREATE_USER,
+            Map.of(EventKeysConfig.USER, new User("titi"))));
+    Mockito.when(readerStore.userExists("titi")).thenReturn(true);
+    assertThat("Created user exists", cachingReaderStore.userExists("titi"), is(true));
+  }
+
+  @Test
+  public void testNotCachedEntityIsAlwaysRead() {
+    cachingReaderStore.getApplication("app");
+    cachingReaderStore.getApplication("app");
+    Mockito.verify(readerStore, Mockito.times(2)).getApplication("app");
+  }
+
+  @Test
+  public void testUserUpdateInvalidatesUser() {
+    cachingReaderStore.getUser("toto");
+    readerStoreCache.handleChange(
+        new SugoiEvent(
+            "realm",
+            "us",
+            SugoiEventTypeEnum.UPDATE_USER,
+            Map.of(EventKeysConfig.USER, new User("Toto"))));
+    cachingReaderStore.getUser("toto");
+    Mockito.verify(readerStore, Mockito.times(2)).getUser("toto");
+  }
+
+  @Test
+  public void testMembershipChangeInvalidatesGroups() {
+    cachingReaderStore.getGroup("app", "group");
+    cachingReaderStore.getGroup("app", "group");
+    readerStoreCache.handleChange(
+        new SugoiEvent(
+            "realm",
+            null,
+            SugoiEventTypeEnum.ADD_USER_TO_GROUP,
+            Map.of(EventKeysConfig.USER, "titi", EventKeysConfig.APPLICATION_NAME, "app")));
+    assertThat(
+        "Group is read again",
+        cachingReaderStore.getGroup("app", "group").getUsers().get(0).getUsername(),
+        is("toto"));
+    Mockito.verify(readerStore, Mockito.times(2)).getGroup("app", "group");
+  }
+}
@@ -0,0 +1,315 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.coalescing;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import fr.insee.sugoi.core.deadline.RequestDeadline;
+import fr.insee.sugoi.core.exceptions.RequestDeadlineExceededException;
+import fr.insee.sugoi.core.store.ReaderStore;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ReadCoalescerTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private ReadCoalescer readCoalescer;
+
+  private ReaderStore readerStore;
+
+  private ReaderStore coalescingReaderStore;
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setup() {
+    Metrics.addRegistry(meterRegistry);
+    readCoalescer = new ReadCoalescer();
+    readerStore = Mockito.mock(ReaderStore.class);
+    coalescingReaderStore = new CoalescingReaderStore(readerStore, readCoalescer, "realm", "us");
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+    Metrics.removeRegistry(meterRegistry);
+  }
+
+  @Test
+  public void testIdenticalReadsAreCoalesced() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger reads = new AtomicInteger();
+    Mockito.when(readerStore.getUser("toto"))
+        .thenAnswer(
+            invocation -> {
+              reads.incrementAndGet();
+              release.await(5, TimeUnit.SECONDS);
+              User user = new User("toto");
+              user.setMail("toto@insee.fr");
+              return user;
+            });
+
+    List<Future<User>> users = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      users.add(executor.submit(() -> coalescingReaderStore.getUser("toto")));
+    }
+    // release the read once the three other reads wait for it
+    long deadline = System.currentTimeMillis() + 5000;
+    while (followers() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    for (Future<User> user : users) {
+      assertThat("Each read gets the user", user.get().getMail(), is("toto@insee.fr"));
+    }
+    assertThat("Store is read once", reads.get(), is(1));
+    assertThat(
+        "Reads get their own copy", users.get(0).get(), not(sameInstance(users.get(1).get())));
+  }
+
+  @Test
+  public void testCompletedReadIsNotShared() {
+    coalescingReaderStore.getUser("toto");
+    coalescingReaderStore.getUser("toto");
+    Mockito.verify(readerStore, Mockito.times(2)).getUser("toto");
+  }
+
+  @Test
+  public void testEqualSearchesHaveSameKey() {
+    User filter = new User();
+    filter.addAttributes("common_name", "Toto");
+    filter.addAttributes("description", "test");
+    User otherFilter = new User();
+    otherFilter.addAttributes("description", "test");
+    otherFilter.addAttributes("common_name", "Toto");
+    assertThat(
+        "Attributes order does not matter",
+        readCoalescer.key("realm", "us", "searchUsers", filter, new PageableResult(), "AND"),
+        is(
+            readCoalescer.key(
+                "Realm", "us", "searchUsers", otherFilter, new PageableResult(), "AND")));
+    assertThat(
+        "Paging matters",
+        readCoalescer.key("realm", "us", "searchUsers", filter, new PageableResult(), "AND"),
+        not(
+            readCoalescer.key(
+                "realm", "us", "searchUsers", filter, new PageableResult(10, 20, null), "AND")));
+  }
+
+  @Test
+  public void testSearchResumingFromTokenIsNotCoalesced() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger reads = new AtomicInteger();
+    PageableResult nextPage = new PageableResult(10, 10, "token");
+    Mockito.when(readerStore.searchUsers(Mockito.any(), Mockito.eq(nextPage), Mockito.any()))
+        .thenAnswer(
+            invocation -> {
+              reads.incrementAndGet();
+              release.await(5, TimeUnit.SECONDS);
+              return new PageResult<User>();
+            });
+
+    List<Future<PageResult<User>>> pages = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      pages.add(
+          executor.submit(() -> coalescingReaderStore.searchUsers(new User(), nextPage, "AND")));
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (reads.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+    for (Future<PageResult<User>> page : pages) {
+      page.get();
+    }
+    assertThat("Each search resumes its own token", reads.get(), is(2));
+  }
+
+  @Test
+  public void testPageWithSearchTokenIsNotShared() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger reads = new AtomicInteger();
+    Mockito.when(readerStore.searchUsers(Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenAnswer(
+            invocation -> {
+              int read = reads.incrementAndGet();
+              if (read == 1) {
+                release.await(5, TimeUnit.SECONDS);
+              }
+              PageResult<User> page = new PageResult<>();
+              page.setHasMoreResult(true);
+              page.setSearchToken("token" + read);
+              return page;
+            });
+
+    Future<PageResult<User>> leader =
+        executor.submit(
+            () -> coalescingReaderStore.searchUsers(new User(), new PageableResult(), "AND"));
+    while (reads.get() < 1) {
+      Thread.sleep(10);
+    }
+    Future<PageResult<User>> follower =
+        executor.submit(
+            () -> coalescingReaderStore.searchUsers(new User(), new PageableResult(), "AND"));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (followers("searchUsers") < 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    assertThat("Leader keeps its token", leader.get().getSearchToken(), is("token1"));
+    assertThat("Follower gets its own token", follower.get().getSearchToken(), is("token2"));
+  }
+
+  @Test
+  public void testFollowerWaitIsBounded() throws Exception {
+    ReflectionTestUtils.setField(readCoalescer, "timeoutMillis", 100L);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger reads = new AtomicInteger();
+    Mockito.when(readerStore.getUser("toto"))
+        .thenAnswer(
+            invocation -> {
+              if (reads.incrementAndGet() == 1) {
+                release.await(5, TimeUnit.SECONDS);
+              }
+              return new User("toto");
+            });
+
+    Future<User> leader = executor.submit(() -> coalescingReaderStore.getUser("toto"));
+    while (reads.get() < 1) {
+      Thread.sleep(10);
+    }
+    Future<User> follower = executor.submit(() -> coalescingReaderStore.getUser("toto"));
+    assertThat(
+        "Follower reads alone once the timeout is reached",
+        follower.get(2, TimeUnit.SECONDS).getUsername(),
+        is("toto"));
+    release.countDown();
+    leader.get();
+    assertThat("Store is read by the leader and the follower", reads.get(), is(2));
+  }
+
+  @Test
+  public void testLeaderDeadlineIsNotShared() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger reads = new AtomicInteger();
+    Mockito.when(readerStore.getUser("toto"))
+        .thenAnswer(
+            invocation -> {
+              if (reads.incrementAndGet() == 1) {
+                release.await(5, TimeUnit.SECONDS);
+                throw new RequestDeadlineExceededException("Request deadline exceeded");
+              }
+              return new User("toto");
+            });
+
+    Future<User> leader = executor.submit(() -> coalescingReaderStore.getUser("toto"));
+    while (reads.get() < 1) {
+      Thread.sleep(10);
+    }
+    Future<User> follower = executor.submit(() -> coalescingReaderStore.getUser("toto"));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (followers() < 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    release.countDown();
+
+    ExecutionException leaderFailure = assertThrows(ExecutionException.class, leader::get);
+    assertThat(
+        "Leader fails on its deadline",
+        leaderFailure.getCause() instanceof RequestDeadlineExceededException,
+        is(true));
+    assertThat("Follower reads on its own", follower.get().getUsername(), is("toto"));
+    assertThat("Store is read by the leader and the follower", reads.get(), is(2));
+  }
+
+  @Test
+  public void testFollowerWaitStopsAtItsDeadline() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger reads = new AtomicInteger();
+    Mockito.when(readerStore.getUser("toto"))
+        .thenAnswer(
+            invocation -> {
+              reads.incrementAndGet();
+              release.await(5, TimeUnit.SECONDS);
+              return new User("toto");
+            });
+
+    Future<User> leader = executor.submit(() -> coalescingReaderStore.getUser("toto"));
+    while (reads.get() < 1) {
+      Thread.sleep(10);
+    }
+    Future<User> follower =
+        executor.submit(
+            () -> {
+              RequestDeadline.start(100);
+              try {
+                return coalescingReaderStore.getUser("toto");
+              } finally {
+                RequestDeadline.clear();
+              }
+            });
+
+    ExecutionException followerFailure =
+        assertThrows(ExecutionException.class, () -> follower.get(2, TimeUnit.SECONDS));
+    assertThat(
+        "Follower stops at its deadline",
+        followerFailure.getCause() instanceof RequestDeadlineExceededException,
+        is(true));
+    release.countDown();
+    leader.get();
+    assertThat("Store is read by the leader only", reads.get(), is(1));
+  }
+
+  private double followers() {
+    return followers("getUser");
+  }
+
+  private double followers(String operation) {
+    return meterRegistry
+        .counter(
+            "sugoi.reader.coalescing",
+            "realm",
+            "realm",
+            "operation",
+            operation,
+            "role",
+            "follower")
+        .count();
+  }
+}
@@ -0,0 +1,128 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.deadline;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import fr.insee.sugoi.core.exceptions.RequestDeadlineExceededException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class RequestDeadlineTest {
+
+  @AfterEach
+  public void tearDown() {
+    RequestDeadline.clear();
+  }
+
+  @Test
+  public void testNoDeadline() {
+    RequestDeadline.check("read");
+    assertThat("Should have no limit", RequestDeadline.remainingMillis(), is(Long.MAX_VALUE));
+    assertThat("Should keep the given deadline", RequestDeadline.earliest(42L), is(42L));
+  }
+
+  @Test
+  public void testDeadlinePassed() {
+    RequestDeadline.start(0);
+    assertThat("Should have no time left", RequestDeadline.remainingMillis(), is(0L));
+    assertThrows(RequestDeadlineExceededException.class, () -> RequestDeadline.check("read"));
+  }
+
+  @Test
+  public void testRestartGivesTheTimeoutAgain() throws InterruptedException {
+    RequestDeadline.start(200);
+    Thread.sleep(300);
+    assertThat("Should have no time left", RequestDeadline.remainingMillis(), is(0L));
+    RequestDeadline.restart();
+    RequestDeadline.check("next page");
+    assertThat(
+        "Should have the timeout again", RequestDeadline.remainingMillis(), greaterThan(100L));
+    RequestDeadline.clear();
+    RequestDeadline.restart();
+    assertThat(
+        "Should not start a deadline", RequestDeadline.remainingMillis(), is(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testEarliestDeadline() {
+    RequestDeadline.start(1000);
+    long later = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    assertThat(
+        "Should keep the request deadline",
+        RequestDeadline.earliest(later) - System.nanoTime(),
+        lessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1)));
+    long sooner = System.nanoTime();
+    assertThat("Should keep the given deadline", RequestDeadline.earliest(sooner), is(sooner));
+  }
+
+  @Test
+  public void testWrappedTaskGetsTheDeadline() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      RequestDeadline.start(10000);
+      Callable<Long> task = RequestDeadline::remainingMillis;
+      assertThat(
+          "Should run with the deadline of the caller",
+          executor.submit(RequestDeadline.wrap(task)).get(),
+          lessThanOrEqualTo(10000L));
+      assertThat(
+          "Should not leave the deadline on the executor",
+          executor.submit(task).get(),
+          is(Long.MAX_VALUE));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testWrappedTaskRestoresTheCallerDeadline() throws Exception {
+    Callable<Long> task = RequestDeadline::remainingMillis;
+    Callable<Long> wrapped = RequestDeadline.wrap(task);
+    RequestDeadline.start(10000);
+    // a task run by the caller, as when the executor is saturated
+    assertThat("Should run without deadline", wrapped.call(), is(Long.MAX_VALUE));
+    assertThat(
+        "Should give the deadline back to the caller",
+        RequestDeadline.remainingMillis(),
+        greaterThan(0L));
+  }
+
+  @Test
+  public void testUninterruptedTaskChecksTheDeadlineOnce() {
+    RequestDeadline.start(10000);
+    Supplier<Long> task = RequestDeadline::remainingMillis;
+    assertThat(
+        "Should run without deadline",
+        RequestDeadline.uninterrupted("write", task),
+        is(Long.MAX_VALUE));
+    assertThat(
+        "Should give the deadline back to the caller",
+        RequestDeadline.remainingMillis(),
+        lessThanOrEqualTo(10000L));
+    RequestDeadline.start(0);
+    assertThrows(
+        RequestDeadlineExceededException.class,
+        () -> RequestDeadline.uninterrupted("write", task));
+  }
+}
@@ -0,0 +1,198 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.event.bus;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+public class SugoiEventBusTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private SugoiEventBus sugoiEventBus;
+
+  @BeforeEach
+  public void setup() {
+    Metrics.addRegistry(meterRegistry);
+  }
+
+  @AfterEach
+  public void teardown() {
+    if (sugoiEventBus != null) {
+      sugoiEventBus.destroy();
+    }
+    Metrics.removeRegistry(meterRegistry);
+  }
+
+  @Test
+  public void testTypeWithoutSubscriberIsNotPublished() {
+    RecordingListener listener = new RecordingListener(true, null);
+    sugoiEventBus = createBus(4, OverflowPolicy.DROP, listener);
+    assertThat("CREATE_USER is subscribed", sugoiEventBus.hasSubscribers(event().getEventType()));
+    assertThat(
+        "FIND_USERS is not subscribed",
+        sugoiEventBus.hasSubscribers(SugoiEventTypeEnum.FIND_USERS),
+        is(false));
+    sugoiEventBus.publish(new SugoiEvent("realm", "us", SugoiEventTypeEnum.FIND_USERS, Map.of()));
+    assertThat("FIND_USERS is not delivered", listener.events.size(), is(0));
+  }
+
+  @Test
+  public void testSynchronousListenerIsCalledBeforePublishReturns() {
+    RecordingListener listener = new RecordingListener(true, null);
+    sugoiEventBus = createBus(4, OverflowPolicy.DROP, listener);
+    sugoiEventBus.publish(event());
+    assertThat("Event is delivered", listener.events.size(), is(1));
+  }
+
+  @Test
+  public void testAsynchronousListenerReceivesEventsInOrder() throws InterruptedException {
+    RecordingListener listener = new RecordingListener(false, null);
+    listener.received = new CountDownLatch(3);
+    sugoiEventBus = createBus(4, OverflowPolicy.DROP, listener);
+    List<SugoiEvent> published = List.of(event(), event(), event());
+    published.forEach(sugoiEventBus::publish);
+    assertThat("Events are delivered", listener.received.await(5, TimeUnit.SECONDS));
+    assertThat("Events are delivered in order", listener.events, is(published));
+  }
+
+  @Test
+  public void testSlowListenerDoesNotDelayPublisher() throws InterruptedException {
+    RecordingListener listener = new RecordingListener(false, null);
+    listener.blocked = new CountDownLatch(1);
+    sugoiEventBus = createBus(2, OverflowPolicy.DROP, listener);
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 10; i++) {
+      sugoiEventBus.publish(event());
+    }
+    assertThat(
+        "Publisher does not wait for the listener",
+        System.currentTimeMillis() - start,
+        lessThan(1000L));
+    assertThat(
+        "Events are dropped once the buffer is full",
+        meterRegistry.get("sugoi.event.dropped").counter().count(),
+        greaterThan(0.0));
+    listener.blocked.countDown();
+  }
+
+  @Test
+  public void testBlockPolicyDeliversAllEvents() throws InterruptedException {
+    RecordingListener listener = new RecordingListener(false, OverflowPolicy.BLOCK);
+    listener.received = new CountDownLatch(20);
+    sugoiEventBus = createBus(2, OverflowPolicy.DROP, listener);
+    for (int i = 0; i < 20; i++) {
+      sugoiEventBus.publish(event());
+    }
+    assertThat("All events are delivered", listener.received.await(5, TimeUnit.SECONDS));
+    assertThat(
+        "No event is dropped",
+        meterRegistry.get("sugoi.event.dropped").counter().count(),
+        is(0.0));
+  }
+
+  private SugoiEventBus createBus(
+      int capacity, OverflowPolicy overflowPolicy, SugoiEventListener listener) {
+    StaticListableBeanFactory beanFactory =
+        new StaticListableBeanFactory(Map.of("listener", listener));
+    return new SugoiEventBus(
+        beanFactory.getBeanProvider(SugoiEventListener.class), capacity, overflowPolicy, 10, 5000);
+  }
+
+  @Test
+  public void testBufferedEventsAreDeliveredOnShutdown() throws InterruptedException {
+    RecordingListener listener = new RecordingListener(false, OverflowPolicy.BLOCK);
+    listener.blocked = new CountDownLatch(1);
+    sugoiEventBus = createBus(16, OverflowPolicy.DROP, listener);
+    for (int i = 0; i < 10; i++) {
+      sugoiEventBus.publish(event());
+    }
+    Thread release =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(200);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              listener.blocked.countDown();
+            });
+    release.start();
+    sugoiEventBus.destroy();
+    sugoiEventBus = null;
+    assertThat("Buffered events are delivered", listener.events.size(), is(10));
+  }
+
+  private SugoiEvent event() {
+    return new SugoiEvent("realm", "us", SugoiEventTypeEnum.CREATE_USER, Map.of());
+  }
+
+  private static class RecordingListener implements SugoiEventListener {
+
+    private final boolean synchronous;
+    private final OverflowPolicy overflowPolicy;
+    private final List<SugoiEvent> events = Collections.synchronizedList(new ArrayList<>());
+    private CountDownLatch received = new CountDownLatch(0);
+    private CountDownLatch blocked = new CountDownLatch(0);
+
+    private RecordingListener(boolean synchronous, OverflowPolicy overflowPolicy) {
+      this.synchronous = synchronous;
+      this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public Set<SugoiEventTypeEnum> getEventTypes() {
+      return Set.of(SugoiEventTypeEnum.CREATE_USER);
+    }
+
+    @Override
+    public void onEvent(SugoiEvent event) {
+      try {
+        blocked.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      events.add(event);
+      received.countDown();
+    }
+
+    @Override
+    public boolean isSynchronous() {
+      return synchronous;
+    }
+
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+      return overflowPolicy;
+    }
+  }
+}
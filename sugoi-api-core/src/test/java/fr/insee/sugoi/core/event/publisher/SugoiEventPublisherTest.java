@@ -0,0 +1,128 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.event.publisher;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import fr.insee.sugoi.core.event.bus.SugoiEventBus;
+import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageableResult;
+import fr.insee.sugoi.model.paging.SendMode;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SugoiEventPublisherTest {
+
+  private SugoiEventBus sugoiEventBus;
+
+  private ApplicationEventPublisher applicationEventPublisher;
+
+  private SugoiEventPublisher sugoiEventPublisher;
+
+  @BeforeEach
+  public void setup() {
+    sugoiEventBus = Mockito.mock(SugoiEventBus.class);
+    applicationEventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+    sugoiEventPublisher = new SugoiEventPublisher();
+    ReflectionTestUtils.setField(sugoiEventPublisher, "sugoiEventBus", sugoiEventBus);
+    ReflectionTestUtils.setField(
+        sugoiEventPublisher, "applicationEventPublisher", applicationEventPublisher);
+  }
+
+  @Test
+  public void testEventCarriesCopies() {
+    Mockito.when(sugoiEventBus.hasSubscribers(SugoiEventTypeEnum.CREATE_USER)).thenReturn(true);
+    Mockito.when(sugoiEventBus.hasAsynchronousSubscribers(SugoiEventTypeEnum.CREATE_USER))
+        .thenReturn(true);
+    ReflectionTestUtils.setField(sugoiEventPublisher, "applicationEventsEnabled", true);
+    User user = new User("toto");
+    user.setMail("toto@insee.fr");
+    PageableResult pageable = new PageableResult(10, 0, null);
+    sugoiEventPublisher.publishCustomEvent(
+        "realm",
+        "us",
+        SugoiEventTypeEnum.CREATE_USER,
+        Map.ofEntries(
+            Map.entry(EventKeysConfig.USER, user),
+            Map.entry(EventKeysConfig.PAGEABLE, pageable),
+            Map.entry(EventKeysConfig.SENDMODES, List.of(SendMode.MAIL))));
+    user.setMail("changed@insee.fr");
+    pageable.setSize(20);
+
+    ArgumentCaptor<SugoiEvent> event = ArgumentCaptor.forClass(SugoiEvent.class);
+    Mockito.verify(sugoiEventBus).publish(event.capture());
+    User published = (User) event.getValue().getProperties().get(EventKeysConfig.USER);
+    assertThat("Event has a copy of the user", published, not(sameInstance(user)));
+    assertThat("Copy is not modified", published.getMail(), is("toto@insee.fr"));
+    assertThat(
+        "Copy of pageable is not modified",
+        ((PageableResult) event.getValue().getProperties().get(EventKeysConfig.PAGEABLE))
+            .getSize(),
+        is(10));
+    assertThat(
+        "Collections keep their elements type",
+        event.getValue().getProperties().get(EventKeysConfig.SENDMODES),
+        is(List.of(SendMode.MAIL)));
+    Mockito.verify(applicationEventPublisher).publishEvent(event.getValue());
+  }
+
+  @Test
+  public void testEventOfSynchronousListenersIsNotCopied() {
+    Mockito.when(sugoiEventBus.hasSubscribers(SugoiEventTypeEnum.CREATE_USER)).thenReturn(true);
+    User user = new User("toto");
+    sugoiEventPublisher.publishCustomEvent(
+        "realm", "us", SugoiEventTypeEnum.CREATE_USER, Map.of(EventKeysConfig.USER, user));
+
+    ArgumentCaptor<SugoiEvent> event = ArgumentCaptor.forClass(SugoiEvent.class);
+    Mockito.verify(sugoiEventBus).publish(event.capture());
+    assertThat(
+        "Event has the user itself",
+        event.getValue().getProperties().get(EventKeysConfig.USER),
+        sameInstance(user));
+    Mockito.verify(applicationEventPublisher, Mockito.never()).publishEvent(Mockito.any());
+  }
+
+  @Test
+  public void testEventWithoutSubscriberIsOnlyBuiltForApplicationEvents() {
+    assertThat(
+        "Type without subscriber is not built by default",
+        sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_USERS),
+        is(false));
+    sugoiEventPublisher.publishCustomEvent(
+        "realm", "us", SugoiEventTypeEnum.FIND_USERS, Map.of(EventKeysConfig.REALM, "realm"));
+    Mockito.verify(sugoiEventBus, Mockito.never()).publish(Mockito.any());
+    Mockito.verify(applicationEventPublisher, Mockito.never()).publishEvent(Mockito.any());
+
+    ReflectionTestUtils.setField(sugoiEventPublisher, "applicationEventsEnabled", true);
+    assertThat(
+        "Application events receive all the types",
+        sugoiEventPublisher.isPublished(SugoiEventTypeEnum.FIND_USERS),
+        is(true));
+    sugoiEventPublisher.publishCustomEvent(
+        "realm", "us", SugoiEventTypeEnum.FIND_USERS, Map.of(EventKeysConfig.REALM, "realm"));
+    Mockito.verify(applicationEventPublisher).publishEvent(Mockito.any(SugoiEvent.class));
+  }
+}
@@ -0,0 +1,307 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.core.search;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.core.exceptions.InvalidSearchTokenException;
+import fr.insee.sugoi.model.User;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class UserStorageSearchTest {
+
+  private UserStorageSearch userStorageSearch;
+
+  /** us1 holds 5 entries, us2 holds 2 entries */
+  private final Map<String, List<String>> entries =
+      Map.of(
+          "us1",
+          IntStream.range(0, 5).mapToObj(i -> "us1-" + i).collect(Collectors.toList()),
+          "us2",
+          List.of("us2-0", "us2-1"));
+
+  private final List<String> searchedUserStorages = new ArrayList<>();
+
+  @BeforeEach
+  public void setup() {
+    userStorageSearch = new UserStorageSearch(4, 10, true, 100, 60);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    userStorageSearch.destroy();
+  }
+
+  /** Page through the entries of a userStorage using the search token as the next index */
+  private PageResult<String> searchPage(String userStorage, PageableResult pageable) {
+    synchronized (searchedUserStorages) {
+      searchedUserStorages.add(userStorage);
+    }
+    List<String> userStorageEntries = entries.get(userStorage);
+    int start = pageable.getSearchToken() != null ? Integer.parseInt(pageable.getSearchToken()) : 0;
+    int end = Math.min(start + pageable.getSize(), userStorageEntries.size());
+    PageResult<String> page = new PageResult<>();
+    page.setResults(new ArrayList<>(userStorageEntries.subList(start, end)));
+    page.setTotalElements(userStorageEntries.size());
+    if (end < userStorageEntries.size()) {
+      page.setHasMoreResult(true);
+      page.setSearchToken(String.valueOf(end));
+    }
+    return page;
+  }
+
+  @Test
+  public void testPagesResumeEachUserStorage() {
+    PageResult<String> firstPage =
+        userStorageSearch.search(
+            List.of("us1", "us2"), new PageableResult(4, 0, null), this::searchPage);
+    assertThat(
+        "First page shares the size",
+        firstPage.getResults(),
+        contains("us1-0", "us1-1", "us2-0", "us2-1"));
+    assertThat("Total is summed", firstPage.getTotalElements(), is(7));
+    assertThat("us1 has more results", firstPage.isHasMoreResult(), is(true));
+    assertThat("A token is returned", firstPage.getSearchToken(), notNullValue());
+
+    searchedUserStorages.clear();
+    PageResult<String> secondPage =
+        userStorageSearch.search(
+            List.of("us1", "us2"),
+            new PageableResult(4, 0, firstPage.getSearchToken()),
+            this::searchPage);
+    assertThat(
+        "Second page resumes us1", secondPage.getResults(), contains("us1-2", "us1-3", "us1-4"));
+    assertThat("Exhausted us2 is not searched", searchedUserStorages, contains("us1"));
+    assertThat("No more results", secondPage.isHasMoreResult(), is(false));
+    assertThat("No token on the last page", secondPage.getSearchToken(), nullValue());
+  }
+
+  @Test
+  public void testPageSmallerThanUserStoragesCount() {
+    PageResult<String> page =
+        userStorageSearch.search(
+            List.of("us1", "us2"), new PageableResult(1, 0, null), this::searchPage);
+    assertThat("Page does not exceed its size", page.getResults(), contains("us1-0"));
+    assertThat("Only us1 is searched", searchedUserStorages, contains("us1"));
+    assertThat("Total is unknown", page.getTotalElements(), is(-1));
+
+    List<String> results = new ArrayList<>(page.getResults());
+    while (page.isHasMoreResult()) {
+      page =
+          userStorageSearch.search(
+              List.of("us1", "us2"),
+              new PageableResult(1, 0, page.getSearchToken()),
+              this::searchPage);
+      assertThat("Page does not exceed its size", page.getResults().size(), is(1));
+      results.addAll(page.getResults());
+    }
+    assertThat(
+        "All results are found once",
+        results,
+        contains("us1-0", "us1-1", "us1-2", "us1-3", "us1-4", "us2-0", "us2-1"));
+  }
+
+  @Test
+  public void testSingleUserStorageKeepsItsToken() {
+    PageResult<String> page =
+        userStorageSearch.search(List.of("us1"), new PageableResult(2, 0, null), this::searchPage);
+    assertThat("Token of the userStorage is returned", page.getSearchToken(), is("2"));
+    page =
+        userStorageSearch.search(List.of("us1"), new PageableResult(2, 0, "2"), this::searchPage);
+    assertThat("Search resumes from the token", page.getResults(), contains("us1-2", "us1-3"));
+  }
+
+  @Test
+  public void testUserStoragesAreSearchedConcurrently() {
+    CountDownLatch latch = new CountDownLatch(2);
+    PageResult<String> page =
+        userStorageSearch.search(
+            List.of("us1", "us2"),
+            new PageableResult(10, 0, null),
+            (userStorage, pageable) -> {
+              latch.countDown();
+              try {
+                // only succeeds if the other userStorage is searched at the same time
+                if (!latch.await(5, TimeUnit.SECONDS)) {
+                  throw new RuntimeException("Searches are sequential");
+                }
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+              return searchPage(userStorage, pageable);
+            });
+    assertThat("All results are found", page.getResults().size(), is(7));
+  }
+
+  @Test
+  public void testFailedUserStorageFailsSearch() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            userStorageSearch.search(
+                List.of("us1", "us2"),
+                new PageableResult(10, 0, null),
+                (userStorage, pageable) -> {
+                  if (userStorage.equals("us2")) {
+                    throw new IllegalStateException("us2 is down");
+                  }
+                  return searchPage(userStorage, pageable);
+                }));
+  }
+
+  @Test
+  public void testTimedOutSearchIsNotInterrupted() throws InterruptedException {
+    UserStorageSearch timedSearch = new UserStorageSearch(4, 1, true, 100, 60);
+    CountDownLatch released = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(1);
+    List<Boolean> interrupted = new ArrayList<>();
+    try {
+      assertThrows(
+          RuntimeException.class,
+          () ->
+              timedSearch.search(
+                  List.of("us1", "us2"),
+                  new PageableResult(10, 0, null),
+                  (userStorage, pageable) -> {
+                    if (userStorage.equals("us2")) {
+                      try {
+                        released.await(5, TimeUnit.SECONDS);
+                        interrupted.add(false);
+                      } catch (InterruptedException e) {
+                        interrupted.add(true);
+                      }
+                      finished.countDown();
+                    }
+                    return searchPage(userStorage, pageable);
+                  }));
+      released.countDown();
+      assertThat("Slow search finishes", finished.await(5, TimeUnit.SECONDS), is(true));
+      assertThat("Slow search is not interrupted", interrupted, contains(false));
+    } finally {
+      timedSearch.destroy();
+    }
+  }
+
+  @Test
+  public void testFindFirstRemembersUserStorage() {
+    List<String> userStorages = List.of("us1", "us2", "us3");
+    UserStorageSearch.Match<String> match =
+        userStorageSearch.findFirst("realm", "user", "Toto", userStorages, this::lookup);
+    assertThat("Found on us2", match.getUserStorage(), is("us2"));
+    assertThat("Value is returned", match.getValue(), is("us2-toto"));
+
+    searchedUserStorages.clear();
+    match = userStorageSearch.findFirst("realm", "user", "toto", userStorages, this::lookup);
+    assertThat("Found again on us2", match.getUserStorage(), is("us2"));
+    assertThat("Only us2 is searched", searchedUserStorages, contains("us2"));
+  }
+
+  @Test
+  public void testFindFirstMisses() {
+    assertThat(
+        "Not found anywhere",
+        userStorageSearch.findFirst(
+            "realm", "user", "titi", List.of("us1", "us2", "us3"), this::lookup),
+        nullValue());
+  }
+
+  @Test
+  public void testFindFirstPrefersUserStorageOrder() {
+    UserStorageSearch.Match<String> match =
+        userStorageSearch.findFirst(
+            "realm",
+            "user",
+            "tata",
+            List.of("us1", "us2"),
+            (userStorage, id) -> {
+              if (userStorage.equals("us1")) {
+                try {
+                  // us2 answers first
+                  Thread.sleep(200);
+                } catch (InterruptedException e) {
+                  throw new RuntimeException(e);
+                }
+              }
+              return userStorage + "-" + id;
+            });
+    assertThat("us1 comes first in the realm", match.getUserStorage(), is("us1"));
+    assertThat("Value of us1 is returned", match.getValue(), is("us1-tata"));
+  }
+
+  @Test
+  public void testCreatedUserIsLookedUpAgain() {
+    List<String> userStorages = List.of("us1", "us2", "us3");
+    userStorageSearch.findFirst("realm", "user", "toto", userStorages, this::lookup);
+
+    User user = new User();
+    user.setUsername("Toto");
+    userStorageSearch.onEvent(
+        new SugoiEvent(
+            "realm", "us1", SugoiEventTypeEnum.CREATE_USER, Map.of(EventKeysConfig.USER, user)));
+    searchedUserStorages.clear();
+    userStorageSearch.findFirst("realm", "user", "toto", userStorages, this::lookup);
+    // us3 may be cancelled before it starts once us2 answered
+    assertThat("Hint is forgotten", searchedUserStorages, hasItems("us1", "us2"));
+
+    userStorageSearch.onEvent(
+        new SugoiEvent("realm", null, SugoiEventTypeEnum.UPDATE_REALM, Map.of()));
+    searchedUserStorages.clear();
+    userStorageSearch.findFirst("realm", "user", "toto", userStorages, this::lookup);
+    assertThat("Hints of the realm are forgotten", searchedUserStorages, hasItems("us1", "us2"));
+  }
+
+  /** toto only exists on us2, us3 fails */
+  private String lookup(String userStorage, String id) {
+    synchronized (searchedUserStorages) {
+      searchedUserStorages.add(userStorage);
+    }
+    if (userStorage.equals("us3")) {
+      throw new RuntimeException("us3 is down");
+    }
+    return userStorage.equals("us2") && id.equalsIgnoreCase("toto") ? "us2-toto" : null;
+  }
+
+  @Test
+  public void testTokenRoundTrip() {
+    CompositeSearchToken token = new CompositeSearchToken();
+    token.put("Us1", CompositeSearchToken.Position.of(20, "abc=&:def"));
+    token.put("us2", CompositeSearchToken.Position.exhausted());
+    CompositeSearchToken decoded = CompositeSearchToken.decode(token.encode());
+    assertThat("Offset is kept", decoded.get("us1").getOffset(), is(20));
+    assertThat("Token is kept", decoded.get("US1").getSearchToken(), is("abc=&:def"));
+    assertThat("Exhausted is kept", decoded.get("us2").isExhausted(), is(true));
+    assertThrows(
+        InvalidSearchTokenException.class, () -> CompositeSearchToken.decode("notatoken"));
+  }
+}
@@ -16,26 +16,59 @@ package fr.insee.sugoi.core.service;
 import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.when;
 
+import fr.insee.sugoi.core.configuration.EhCacheConfig;
 import fr.insee.sugoi.core.seealso.MapProtocolSeeAlsoDecorator;
 import fr.insee.sugoi.core.seealso.SeeAlsoService;
 import fr.insee.sugoi.model.User;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import net.sf.ehcache.CacheManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
-import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
 
-@SpringBootTest(classes = {SeeAlsoService.class, MapProtocolSeeAlsoDecorator.class})
+@SpringBootTest(
+    classes = {SeeAlsoService.class, EhCacheConfig.class},
+    properties = "fr.insee.sugoi.seealso.timeout=500")
 public class SeeAlsoServiceTest {
 
-  @Mock MapProtocolSeeAlsoDecorator mapProtocolSeeAlsoDecorator;
-  @InjectMocks SeeAlsoService seeAlsoService;
+  @MockBean MapProtocolSeeAlsoDecorator mapProtocolSeeAlsoDecorator;
+  @Autowired SeeAlsoService seeAlsoService;
+  @Autowired CacheManager ehCacheManager;
 
   @BeforeEach
   public void setup() {
-    when(mapProtocolSeeAlsoDecorator.getResourceFromUrl(any(), any(), any())).thenReturn("toto");
+    for (String cacheName : ehCacheManager.getCacheNames()) {
+      if (cacheName.startsWith("SeeAlso_")) {
+        ehCacheManager.getEhcache(cacheName).removeAll();
+      }
+    }
+    when(mapProtocolSeeAlsoDecorator.getResourcesFromUrlAsync(any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              Map<String, Object> resources = new HashMap<>();
+              for (Object subobject : invocation.getArgument(2, Collection.class)) {
+                resources.put((String) subobject, "toto");
+              }
+              return CompletableFuture.completedFuture(resources);
+            });
   }
 
   @Test
@@ -47,4 +80,116 @@ public class SeeAlsoServiceTest {
     assertThat(
         "Should add toto to ldap_string", user.getAttributes().get("ldap_string"), is("toto"));
   }
+
+  @Test
+  public void sameUrlIsFetchedOnceTest() {
+    String url = "ldap://localhost:10389/uid=testc,ou=contacts,ou=clients_domaine1,o=insee,c=fr";
+    User user = new User();
+    seeAlsoService.decorateWithSeeAlsos(
+        user, List.of(url + "|cn|ldap_cn", url + "|mail|ldap_mail", "http://other|name|http_name"));
+    assertThat("Should add ldap_cn", user.getAttributes().get("ldap_cn"), is("toto"));
+    assertThat("Should add ldap_mail", user.getAttributes().get("ldap_mail"), is("toto"));
+    assertThat("Should add http_name", user.getAttributes().get("http_name"), is("toto"));
+    Mockito.verify(mapProtocolSeeAlsoDecorator, Mockito.times(1))
+        .getResourcesFromUrlAsync(eq("ldap"), eq(url), any(), any());
+  }
+
+  @Test
+  public void resolvedSeeAlsoIsCachedTest() {
+    seeAlsoService.decorateWithSeeAlso(new User(), "http://example.org/ex|name|http_name");
+    User user = new User();
+    seeAlsoService.decorateWithSeeAlso(user, "http://example.org/ex|name|http_name");
+    assertThat("Should add cached value", user.getAttributes().get("http_name"), is("toto"));
+    Mockito.verify(mapProtocolSeeAlsoDecorator, Mockito.times(1))
+        .getResourcesFromUrlAsync(eq("http"), eq("http://example.org/ex"), any(), any());
+  }
+
+  @Test
+  public void slowSeeAlsoIsSkippedTest() {
+    Mockito.doReturn(
+            CompletableFuture.supplyAsync(
+                () -> Map.of("name", "late"),
+                CompletableFuture.delayedExecutor(2, TimeUnit.SECONDS)))
+        .when(mapProtocolSeeAlsoDecorator)
+        .getResourcesFromUrlAsync(any(), eq("http://slow"), any(), any());
+    User user = new User();
+    long start = System.currentTimeMillis();
+    seeAlsoService.decorateWithSeeAlsos(
+        user, List.of("http://slow|name|slow_name", "http://fast|name|fast_name"));
+    assertThat(
+        "Should not wait for the slow seeAlso",
+        System.currentTimeMillis() - start,
+        lessThan(1500L));
+    assertThat("Should skip slow_name", user.getAttributes().get("slow_name"), nullValue());
+    assertThat("Should add fast_name", user.getAttributes().get("fast_name"), is("toto"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void cachedListIsNotSharedWithUsersTest() {
+    Mockito.doAnswer(
+            invocation ->
+                CompletableFuture.completedFuture(
+                    Map.<String, Object>of("names", new ArrayList<>(List.of("toto")))))
+        .when(mapProtocolSeeAlsoDecorator)
+        .getResourcesFromUrlAsync(any(), eq("http://list"), any(), any());
+    User user = new User();
+    seeAlsoService.decorateWithSeeAlso(user, "http://list|names|http_names");
+    ((List<String>) user.getAttributes().get("http_names")).add("titi");
+    User otherUser = new User();
+    seeAlsoService.decorateWithSeeAlso(otherUser, "http://list|names|http_names");
+    assertThat(
+        "Should add the cached value unmodified",
+        otherUser.getAttributes().get("http_names"),
+        is(List.of("toto")));
+  }
+
+  @Test
+  public void saturatedExecutorSkipsSeeAlsoTest() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    Metrics.addRegistry(meterRegistry);
+    // one thread and a queue of four fetches
+    SeeAlsoService saturatedService = new SeeAlsoService(1, 200, false, 300, 10);
+    MapProtocolSeeAlsoDecorator blockingDecorator =
+        Mockito.mock(MapProtocolSeeAlsoDecorator.class);
+    ReflectionTestUtils.setField(saturatedService, "mapProtocol", blockingDecorator);
+    CountDownLatch released = new CountDownLatch(1);
+    List<Thread> fetchThreads = new CopyOnWriteArrayList<>();
+    when(blockingDecorator.getResourcesFromUrlAsync(any(), any(), any(), any()))
+        .thenAnswer(
+            invocation ->
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      fetchThreads.add(Thread.currentThread());
+                      try {
+                        released.await(5, TimeUnit.SECONDS);
+                      } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                      }
+                      return Map.<String, Object>of("name", "toto");
+                    },
+                    invocation.getArgument(3, Executor.class)));
+    try {
+      List<String> seeAlsos = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        seeAlsos.add("http://url" + i + "|name|name" + i);
+      }
+      User user = new User();
+      saturatedService.decorateWithSeeAlsos(user, seeAlsos);
+      assertThat(
+          "Should skip the rejected seeAlso", user.getAttributes().get("name5"), nullValue());
+      assertThat(
+          "Should not fetch on the request thread",
+          fetchThreads,
+          not(hasItem(Thread.currentThread())));
+      assertThat(
+          "Should count the rejected seeAlso",
+          meterRegistry.counter("sugoi.seealso.rejected", "protocol", "http").count(),
+          is(1.0));
+    } finally {
+      released.countDown();
+      saturatedService.destroy();
+      Metrics.removeRegistry(meterRegistry);
+    }
+  }
 }
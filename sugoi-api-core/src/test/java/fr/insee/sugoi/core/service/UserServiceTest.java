@@ -18,6 +18,7 @@ import static org.hamcrest.Matchers.is;
 
 import fr.insee.sugoi.core.event.publisher.SugoiEventPublisher;
 import fr.insee.sugoi.core.realm.RealmProvider;
+import fr.insee.sugoi.core.search.UserStorageSearch;
 import fr.insee.sugoi.core.service.impl.UserServiceImpl;
 import fr.insee.sugoi.core.store.ReaderStore;
 import fr.insee.sugoi.core.store.StoreProvider;
@@ -33,7 +34,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.TestPropertySource;
 
-@SpringBootTest(classes = UserServiceImpl.class)
+@SpringBootTest(classes = {UserServiceImpl.class, UserStorageSearch.class})
 @TestPropertySource(locations = "classpath:/application.properties")
 public class UserServiceTest {
 
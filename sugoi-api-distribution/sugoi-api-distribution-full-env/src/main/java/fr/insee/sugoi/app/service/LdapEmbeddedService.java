@@ -56,11 +56,41 @@ public class LdapEmbeddedService {
     System.out.println("Schema used: " + UserDirService.getUserDir() + schemaPath);
     System.out.println("Ldif used: " + UserDirService.getUserDir() + ldifPath);
 
+    ds =
+        createServer(
+            port,
+            baseDn,
+            Schema.getSchema(new File(UserDirService.getUserDir() + schemaPath)),
+            true);
+    ds.importFromLDIF(true, UserDirService.getUserDir() + ldifPath);
+
+    System.out.println("Started Ldap Server (localhost:" + port + ")");
+    ds.startListening();
+  }
+
+  public static void stop() {
+    ds.shutDown(true);
+  }
+
+  /**
+   * Create an empty directory server configured as the embedded ldap. The server is not listening
+   * yet so that entries can be loaded first.
+   *
+   * @param port port on which the server will listen
+   * @param baseDn base dn of the directory
+   * @param schema schema enforced by the server
+   * @param accessLog true to log each operation on the console
+   * @return the directory server
+   * @throws LDAPException if the configuration is invalid
+   */
+  public static InMemoryDirectoryServer createServer(
+      int port, String baseDn, Schema schema, boolean accessLog) throws LDAPException {
     InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(baseDn);
-    config.setAccessLogHandler(new ConsoleHandler());
+    if (accessLog) {
+      config.setAccessLogHandler(new ConsoleHandler());
+    }
     config.addAdditionalBindCredentials(username, password);
-    File file = new File(UserDirService.getUserDir() + schemaPath);
-    config.setSchema(Schema.getSchema(file));
+    config.setSchema(schema);
     config.setEnforceSingleStructuralObjectClass(false);
     config.setEnforceAttributeSyntaxCompliance(false);
     config.setGenerateOperationalAttributes(true);
@@ -70,14 +100,14 @@ public class LdapEmbeddedService {
             "listen-" + port, InetAddress.getLoopbackAddress(), port, null, null, null);
     config.setListenerConfigs(listenerConfig);
 
-    ds = new InMemoryDirectoryServer(config);
-    ds.importFromLDIF(true, UserDirService.getUserDir() + ldifPath);
+    return new InMemoryDirectoryServer(config);
+  }
 
-    System.out.println("Started Ldap Server (localhost:" + port + ")");
-    ds.startListening();
+  public static String getUsername() {
+    return username;
   }
 
-  public static void stop() {
-    ds.shutDown(true);
+  public static String getPassword() {
+    return password;
   }
 }
@@ -13,6 +13,7 @@
 */
 package fr.insee.sugoi.event.listener.log;
 
+import fr.insee.sugoi.core.event.bus.SugoiEventListener;
 import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
 import fr.insee.sugoi.core.event.model.SugoiEvent;
 import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
@@ -22,12 +23,13 @@ import fr.insee.sugoi.model.Habilitation;
 import fr.insee.sugoi.model.Organization;
 import fr.insee.sugoi.model.Realm;
 import fr.insee.sugoi.model.User;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -35,11 +37,20 @@ import org.springframework.stereotype.Component;
     name = "sugoi.api.event.log.producer.enabled",
     havingValue = "true",
     matchIfMissing = false)
-public class SugoiEventLogProducer {
+public class SugoiEventLogProducer implements SugoiEventListener {
 
   public static final Logger logger = LoggerFactory.getLogger(SugoiEventLogProducer.class);
 
-  @EventListener
+  @Override
+  public Set<SugoiEventTypeEnum> getEventTypes() {
+    return EnumSet.allOf(SugoiEventTypeEnum.class);
+  }
+
+  @Override
+  public void onEvent(SugoiEvent event) {
+    handleContextStart(event);
+  }
+
   public void handleContextStart(SugoiEvent cse) {
     boolean isEventError = false;
     SugoiEventTypeEnum eventType = cse.getEventType();
@@ -13,11 +13,14 @@
 */
 package fr.insee.sugoi.event.listener.metrics;
 
+import fr.insee.sugoi.core.event.bus.SugoiEventListener;
 import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
 import io.micrometer.core.instrument.MeterRegistry;
+import java.util.EnumSet;
+import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -25,11 +28,38 @@ import org.springframework.stereotype.Component;
     name = "fr.insee.sugoi.api.event.metrics.enabled",
     havingValue = "true",
     matchIfMissing = false)
-public class SugoiEventMetrics {
+public class SugoiEventMetrics implements SugoiEventListener {
 
   @Autowired private MeterRegistry meterRegistry;
 
-  @EventListener
+  /** Reads are not counted, they are not even published when only counters are enabled */
+  @Override
+  public Set<SugoiEventTypeEnum> getEventTypes() {
+    return EnumSet.complementOf(
+        EnumSet.of(
+            SugoiEventTypeEnum.CREATE_REALM,
+            SugoiEventTypeEnum.UPDATE_REALM,
+            SugoiEventTypeEnum.DELETE_REALM,
+            SugoiEventTypeEnum.FIND_REALMS,
+            SugoiEventTypeEnum.FIND_REALM_BY_ID,
+            SugoiEventTypeEnum.FIND_USER_BY_ID,
+            SugoiEventTypeEnum.FIND_APPLICATION_BY_ID,
+            SugoiEventTypeEnum.FIND_GROUP_BY_ID,
+            SugoiEventTypeEnum.FIND_ORGANIZATION_BY_ID,
+            SugoiEventTypeEnum.FIND_GROUPS,
+            SugoiEventTypeEnum.FIND_APPLICATIONS,
+            SugoiEventTypeEnum.FIND_HABILITATION_BY_ID,
+            SugoiEventTypeEnum.FIND_USERS,
+            SugoiEventTypeEnum.FIND_HABILITATIONS,
+            SugoiEventTypeEnum.FIND_ORGANIZATIONS,
+            SugoiEventTypeEnum.FIND_REALM_BY_ID_ERROR));
+  }
+
+  @Override
+  public void onEvent(SugoiEvent event) {
+    handleContextStart(event);
+  }
+
   public void handleContextStart(SugoiEvent cse) {
     switch (cse.getEventType()) {
       case CREATE_REALM:
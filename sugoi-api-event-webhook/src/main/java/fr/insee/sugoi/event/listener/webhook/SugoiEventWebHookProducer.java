@@ -13,6 +13,8 @@
 */
 package fr.insee.sugoi.event.listener.webhook;
 
+import fr.insee.sugoi.core.event.bus.OverflowPolicy;
+import fr.insee.sugoi.core.event.bus.SugoiEventListener;
 import fr.insee.sugoi.core.event.configuration.EventKeysConfig;
 import fr.insee.sugoi.core.event.model.SugoiEvent;
 import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
@@ -20,20 +22,21 @@ import fr.insee.sugoi.event.listener.webhook.service.WebHookService;
 import fr.insee.sugoi.model.User;
 import fr.insee.sugoi.model.paging.PasswordChangeRequest;
 import fr.insee.sugoi.model.paging.SendMode;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 @Component
 @ConditionalOnProperty(name = "sugoi.api.event.webhook.enabled", havingValue = "true")
-public class SugoiEventWebHookProducer {
+public class SugoiEventWebHookProducer implements SugoiEventListener {
 
   @Value("${sugoi.api.event.webhook.name}")
   private List<String> webHookNames;
@@ -42,7 +45,22 @@ public class SugoiEventWebHookProducer {
 
   @Autowired private WebHookService webHookService;
 
-  @EventListener
+  @Override
+  public Set<SugoiEventTypeEnum> getEventTypes() {
+    return EnumSet.of(SugoiEventTypeEnum.INIT_PASSWORD, SugoiEventTypeEnum.RESET_PASSWORD);
+  }
+
+  /** Passwords are sent by the webhooks, none of them can be dropped */
+  @Override
+  public OverflowPolicy getOverflowPolicy() {
+    return OverflowPolicy.BLOCK;
+  }
+
+  @Override
+  public void onEvent(SugoiEvent event) {
+    handleContextStart(event);
+  }
+
   @SuppressWarnings("unchecked")
   public void handleContextStart(SugoiEvent cse) {
     SugoiEventTypeEnum eventType = cse.getEventType();
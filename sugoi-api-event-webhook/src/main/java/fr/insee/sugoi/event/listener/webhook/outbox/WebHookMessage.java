@@ -0,0 +1,108 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.event.listener.webhook.outbox;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A webhook waiting in the outbox, as written in the journal */
+public class WebHookMessage {
+
+  private String id;
+  private String webHookName;
+  private String target;
+  private String content;
+  private Map<String, String> headers = new HashMap<>();
+  private long createdAt;
+  private int attempts;
+  private String lastError;
+
+  /** Times in a row the target was busy, not written in the journal */
+  @JsonIgnore private int busyAttempts;
+
+  public WebHookMessage() {}
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getWebHookName() {
+    return webHookName;
+  }
+
+  public void setWebHookName(String webHookName) {
+    this.webHookName = webHookName;
+  }
+
+  public String getTarget() {
+    return target;
+  }
+
+  public void setTarget(String target) {
+    this.target = target;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public void setContent(String content) {
+    this.content = content;
+  }
+
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  public void setHeaders(Map<String, String> headers) {
+    this.headers = headers;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(long createdAt) {
+    this.createdAt = createdAt;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public void setLastError(String lastError) {
+    this.lastError = lastError;
+  }
+
+  public int getBusyAttempts() {
+    return busyAttempts;
+  }
+
+  public void setBusyAttempts(int busyAttempts) {
+    this.busyAttempts = busyAttempts;
+  }
+}
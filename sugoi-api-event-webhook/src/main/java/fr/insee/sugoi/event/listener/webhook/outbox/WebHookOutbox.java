@@ -0,0 +1,449 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.event.listener.webhook.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Metrics;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Base64Utils;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Deliver the webhooks outside of the requests. Each webhook is first written in the pending
+ * directory of the outbox, then posted by a pool of workers sharing a pooled http client, at most
+ * max-concurrency-per-target at a time for a target. Failed deliveries are retried with an
+ * exponential backoff and jitter, and the webhooks still failing after the last attempt, or refused
+ * by the target, are moved to the dead letter directory without their content, which may hold
+ * passwords, and removed from it after the retention. Webhooks pending when the instance stops are
+ * delivered at the next start.
+ */
+@Component
+@ConditionalOnProperty(name = "sugoi.api.event.webhook.enabled", havingValue = "true")
+public class WebHookOutbox implements InitializingBean, DisposableBean {
+
+  public static final Logger logger = LoggerFactory.getLogger(WebHookOutbox.class);
+
+  private static final String PENDING_DIRECTORY = "pending";
+
+  private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+
+  private static final String EXTENSION = ".json";
+
+  /** First delay before trying again a webhook whose target already receives the maximum */
+  private static final long TARGET_BUSY_DELAY_MILLIS = 100;
+
+  private static final boolean POSIX =
+      FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final Map<String, Semaphore> targetPermits = new ConcurrentHashMap<>();
+
+  private final AtomicInteger pendingCount = new AtomicInteger();
+
+  @Autowired private Environment env;
+
+  @Value("${sugoi.api.event.webhook.outbox.directory:}")
+  private String directory;
+
+  @Value("${sugoi.api.event.webhook.outbox.workers:4}")
+  private int workers;
+
+  @Value("${sugoi.api.event.webhook.outbox.max-concurrency-per-target:2}")
+  private int maxConcurrencyPerTarget;
+
+  @Value("${sugoi.api.event.webhook.outbox.max-attempts:8}")
+  private int maxAttempts;
+
+  @Value("${sugoi.api.event.webhook.outbox.initial-backoff:1000}")
+  private long initialBackoffMillis;
+
+  @Value("${sugoi.api.event.webhook.outbox.max-backoff:300000}")
+  private long maxBackoffMillis;
+
+  @Value("${sugoi.api.event.webhook.outbox.timeout:5000}")
+  private int timeoutMillis;
+
+  @Value("${sugoi.api.event.webhook.outbox.dead-letter-retention:604800000}")
+  private long deadLetterRetentionMillis;
+
+  private Path pendingDirectory;
+
+  private Path deadLetterDirectory;
+
+  private CloseableHttpClient httpClient;
+
+  private RestTemplate restTemplate;
+
+  private ScheduledThreadPoolExecutor executor;
+
+  @Override
+  public void afterPropertiesSet() throws IOException {
+    // the outbox holds passwords, it must not land in a shared directory by default
+    if (directory == null || directory.isBlank()) {
+      throw new IllegalStateException(
+          "sugoi.api.event.webhook.outbox.directory must be set when webhooks are enabled");
+    }
+    Path outboxDirectory = createDirectory(Paths.get(directory));
+    pendingDirectory = createDirectory(outboxDirectory.resolve(PENDING_DIRECTORY));
+    deadLetterDirectory = createDirectory(outboxDirectory.resolve(DEAD_LETTER_DIRECTORY));
+
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(workers);
+    connectionManager.setDefaultMaxPerRoute(maxConcurrencyPerTarget);
+    httpClient =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(
+                RequestConfig.custom()
+                    .setConnectTimeout(timeoutMillis)
+                    .setConnectionRequestTimeout(timeoutMillis)
+                    .setSocketTimeout(timeoutMillis)
+                    .build())
+            .evictIdleConnections(60, TimeUnit.SECONDS)
+            .build();
+    restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+
+    AtomicInteger threadCount = new AtomicInteger();
+    executor =
+        new ScheduledThreadPoolExecutor(
+            workers,
+            runnable -> {
+              Thread thread = new Thread(runnable, "webhook-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    Metrics.gauge("sugoi.webhook.outbox.size", pendingCount);
+    recover();
+    executor.scheduleWithFixedDelay(this::expireDeadLetters, 0, 1, TimeUnit.HOURS);
+  }
+
+  /**
+   * Write a webhook in the outbox, it is delivered later
+   *
+   * @param webHookName name of the webhook, its authentication is added when it is delivered
+   * @param target url receiving the webhook
+   * @param content body of the webhook
+   * @param headers headers of the webhook
+   */
+  public void append(
+      String webHookName, String target, String content, Map<String, String> headers) {
+    WebHookMessage message = new WebHookMessage();
+    message.setCreatedAt(System.currentTimeMillis());
+    // ids sort in the order of creation
+    message.setId(String.format("%013d-%s", message.getCreatedAt(), UUID.randomUUID()));
+    message.setWebHookName(webHookName);
+    message.setTarget(target);
+    message.setContent(content);
+    message.setHeaders(headers);
+    try {
+      write(message);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write webhook for target " + target, e);
+    }
+    pendingCount.incrementAndGet();
+    schedule(message, 0);
+  }
+
+  @Override
+  public void destroy() throws InterruptedException, IOException {
+    // pending webhooks stay in the outbox until the next start
+    executor.shutdownNow();
+    executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    httpClient.close();
+  }
+
+  private void recover() throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.list(pendingDirectory)) {
+      files =
+          paths
+              .filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      try {
+        WebHookMessage message = objectMapper.readValue(file.toFile(), WebHookMessage.class);
+        pendingCount.incrementAndGet();
+        schedule(message, 0);
+      } catch (IOException e) {
+        logger.error("Unable to read pending webhook {}", file, e);
+      }
+    }
+    if (!files.isEmpty()) {
+      logger.info("{} pending webhooks recovered from {}", files.size(), pendingDirectory);
+    }
+  }
+
+  private void schedule(WebHookMessage message, long delayMillis) {
+    try {
+      executor.schedule(() -> deliver(message), delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      logger.debug("Outbox stopped, webhook {} stays pending", message.getId());
+    }
+  }
+
+  private void deliver(WebHookMessage message) {
+    Semaphore permits =
+        targetPermits.computeIfAbsent(
+            Objects.toString(message.getTarget(), ""),
+            target -> new Semaphore(maxConcurrencyPerTarget));
+    if (!permits.tryAcquire()) {
+      message.setBusyAttempts(message.getBusyAttempts() + 1);
+      schedule(message, getBusyBackoff(message.getBusyAttempts()));
+      return;
+    }
+    message.setBusyAttempts(0);
+    long start = System.nanoTime();
+    String outcome;
+    try {
+      post(message);
+      remove(message);
+      outcome = "success";
+      Metrics.timer("sugoi.webhook.delivery.latency", "webhook", message.getWebHookName())
+          .record(System.currentTimeMillis() - message.getCreatedAt(), TimeUnit.MILLISECONDS);
+      logger.info("Sending webHook to {} success", message.getTarget());
+    } catch (HttpStatusCodeException e) {
+      logger.info(
+          "Something went wrong when sending request to {} receive status {} response {}",
+          message.getTarget(),
+          e.getRawStatusCode(),
+          e.getResponseBodyAsString());
+      int status = e.getRawStatusCode();
+      outcome = retry(message, status >= 500 || status == 408 || status == 429, e.getMessage());
+    } catch (RestClientException e) {
+      logger.info("Unable to send webhook to {}: {}", message.getTarget(), e.getMessage());
+      outcome = retry(message, true, e.getMessage());
+    } catch (RuntimeException e) {
+      // a webhook which cannot be built, such as one without target, fails the same way each time
+      logger.warn("Unable to send webhook {} to {}", message.getId(), message.getTarget(), e);
+      outcome = retry(message, false, e.toString());
+    } finally {
+      permits.release();
+    }
+    Metrics.timer("sugoi.webhook.delivery", "webhook", message.getWebHookName(), "outcome", outcome)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private void post(WebHookMessage message) {
+    // a missing or relative target would otherwise fail as a connection error, retried in vain
+    if (message.getTarget() == null || !URI.create(message.getTarget()).isAbsolute()) {
+      throw new IllegalArgumentException(
+          "Webhook " + message.getWebHookName() + " has no absolute target " + message.getTarget());
+    }
+    HttpHeaders headers = new HttpHeaders();
+    message.getHeaders().forEach(headers::add);
+    addAuthHeader(message.getWebHookName(), headers);
+    restTemplate.postForEntity(
+        message.getTarget(), new HttpEntity<>(message.getContent(), headers), String.class);
+  }
+
+  /**
+   * Schedule a new attempt or move the webhook to the dead letter file
+   *
+   * @return the outcome of the delivery
+   */
+  private String retry(WebHookMessage message, boolean retryable, String error) {
+    message.setAttempts(message.getAttempts() + 1);
+    message.setLastError(error);
+    if (retryable && message.getAttempts() < maxAttempts) {
+      try {
+        write(message);
+      } catch (IOException e) {
+        logger.warn("Unable to update pending webhook {}", message.getId(), e);
+      }
+      schedule(message, getBackoff(message.getAttempts()));
+      return "retry";
+    }
+    logger.error(
+        "Webhook {} to {} abandoned after {} attempts: {}",
+        message.getId(),
+        message.getTarget(),
+        message.getAttempts(),
+        error);
+    deadLetter(message);
+    remove(message);
+    return "dead_letter";
+  }
+
+  /** Exponential backoff with jitter: a random delay between half and all of the backoff */
+  private long getBackoff(int attempts) {
+    long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempts - 1, 30));
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
+  /**
+   * The target is still busy after a delivery: wait longer each time, up to the time a delivery can
+   * last, instead of polling it
+   */
+  private long getBusyBackoff(int busyAttempts) {
+    long backoff =
+        Math.min(
+            Math.max(timeoutMillis, TARGET_BUSY_DELAY_MILLIS),
+            TARGET_BUSY_DELAY_MILLIS << Math.min(busyAttempts - 1, 30));
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
+  private void write(WebHookMessage message) throws IOException {
+    write(pendingDirectory, message);
+  }
+
+  /** Write the message in a new file readable by the owner only, then move it in place */
+  private void write(Path targetDirectory, WebHookMessage message) throws IOException {
+    Path temporary = targetDirectory.resolve(message.getId() + ".tmp");
+    Files.deleteIfExists(temporary);
+    try (SeekableByteChannel channel =
+        Files.newByteChannel(
+            temporary,
+            EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+            ownerOnly("rw-------"))) {
+      ByteBuffer buffer = ByteBuffer.wrap(objectMapper.writeValueAsBytes(message));
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    Files.move(
+        temporary,
+        targetDirectory.resolve(message.getId() + EXTENSION),
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void remove(WebHookMessage message) {
+    try {
+      Files.deleteIfExists(getPendingFile(message));
+    } catch (IOException e) {
+      logger.warn("Unable to remove delivered webhook {}", message.getId(), e);
+    }
+    pendingCount.decrementAndGet();
+  }
+
+  /** Keep what identifies the webhook and why it failed, but not its content */
+  private void deadLetter(WebHookMessage message) {
+    WebHookMessage deadLetter = new WebHookMessage();
+    deadLetter.setId(message.getId());
+    deadLetter.setWebHookName(message.getWebHookName());
+    deadLetter.setTarget(message.getTarget());
+    deadLetter.setCreatedAt(message.getCreatedAt());
+    deadLetter.setAttempts(message.getAttempts());
+    deadLetter.setLastError(message.getLastError());
+    deadLetter.setHeaders(null);
+    try {
+      write(deadLetterDirectory, deadLetter);
+    } catch (IOException e) {
+      logger.error("Unable to write webhook {} in the dead letters", message.getId(), e);
+    }
+  }
+
+  private void expireDeadLetters() {
+    long expiredBefore = System.currentTimeMillis() - deadLetterRetentionMillis;
+    try (Stream<Path> paths = Files.list(deadLetterDirectory)) {
+      paths
+          .filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+          .filter(path -> path.toFile().lastModified() < expiredBefore)
+          .forEach(
+              path -> {
+                try {
+                  Files.deleteIfExists(path);
+                } catch (IOException e) {
+                  logger.warn("Unable to remove expired dead letter {}", path, e);
+                }
+              });
+    } catch (IOException e) {
+      logger.warn("Unable to list the dead letters in {}", deadLetterDirectory, e);
+    }
+  }
+
+  private Path getPendingFile(WebHookMessage message) {
+    return pendingDirectory.resolve(message.getId() + EXTENSION);
+  }
+
+  /** Webhooks contain passwords, the outbox is only accessible to its owner */
+  private Path createDirectory(Path path) throws IOException {
+    return Files.createDirectories(path, ownerOnly("rwx------"));
+  }
+
+  private FileAttribute<?>[] ownerOnly(String permissions) {
+    return POSIX
+        ? new FileAttribute<?>[] {
+          PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions))
+        }
+        : new FileAttribute<?>[0];
+  }
+
+  private void addAuthHeader(String webHookName, HttpHeaders headers) {
+    String authType = env.getProperty("sugoi.api.event.webhook." + webHookName + ".auth.type");
+    if (authType == null) {
+      return;
+    }
+    if (authType.equalsIgnoreCase("basic")) {
+      String username = env.getProperty("sugoi.api.event.webhook." + webHookName + ".auth.user");
+      String password =
+          env.getProperty("sugoi.api.event.webhook." + webHookName + ".auth.password");
+      String auth = username + ":" + password;
+      byte[] encodedAuth = Base64Utils.encode(auth.getBytes());
+      String authHeader = "Basic " + new String(encodedAuth);
+      headers.add("Authorization", authHeader);
+    } else if (authType.equalsIgnoreCase("oauth")) {
+      String token =
+          env.getProperty(
+              env.getProperty("sugoi.api.event.webhook." + webHookName + ".auth.token"));
+      headers.add("Authorization", "bearer " + token);
+    }
+  }
+}
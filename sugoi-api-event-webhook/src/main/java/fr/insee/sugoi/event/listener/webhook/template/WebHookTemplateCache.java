@@ -0,0 +1,200 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.event.listener.webhook.template;
+
+import fr.insee.sugoi.core.event.bus.SugoiEventListener;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.core.service.ConfigService;
+import fr.insee.sugoi.model.Realm;
+import fr.insee.sugoi.model.UserStorage;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compiled templates of the webhooks for each (webhook, realm, userStorage, kind). A userStorage
+ * may override the default template of a webhook with its {webhook}_{kind}_template property. The
+ * templates are parsed once and removed when a realm is modified through Sugoi, or after the time
+ * to live since realms may be modified by other applications.
+ */
+@Component
+@ConditionalOnProperty(name = "sugoi.api.event.webhook.enabled", havingValue = "true")
+public class WebHookTemplateCache implements SugoiEventListener {
+
+  public static final Logger logger = LoggerFactory.getLogger(WebHookTemplateCache.class);
+
+  private static final String CACHE_NAME = "WebHookTemplates";
+
+  /** Kinds of webhooks having a template */
+  public enum Kind {
+    INIT,
+    RESET;
+
+    public String getName() {
+      return name().toLowerCase();
+    }
+  }
+
+  /** Shared by all the templates, a configuration is thread safe once set up */
+  private final Configuration configuration = new Configuration(Configuration.VERSION_2_3_30);
+
+  private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+  @Autowired private Environment env;
+
+  @Autowired private ConfigService configService;
+
+  @Autowired private CacheManager ehCacheManager;
+
+  @Value("${sugoi.api.event.webhook.template.cache.ttl:300}")
+  private long timeToLiveSeconds;
+
+  @Value("${sugoi.api.event.webhook.template.cache.max-entries:1000}")
+  private int maxEntries;
+
+  /**
+   * Get the compiled template of a webhook
+   *
+   * @param webHookName name of the webhook
+   * @param realm name of the realm of the user
+   * @param userStorage name of the userStorage of the user
+   * @param kind kind of the webhook
+   * @return the template of the userStorage if it overrides the default template of the webhook,
+   *     the default template otherwise
+   */
+  public Template getTemplate(String webHookName, String realm, String userStorage, Kind kind) {
+    String key = getKey(realm, userStorage, webHookName, kind);
+    Ehcache cache = getCache();
+    Element element = cache.get(key);
+    if (element != null) {
+      return (Template) element.getObjectValue();
+    }
+    Template template = compile(webHookName, realm, userStorage, kind);
+    cache.put(new Element(key, template));
+    return template;
+  }
+
+  @Override
+  public Set<SugoiEventTypeEnum> getEventTypes() {
+    return EnumSet.of(
+        SugoiEventTypeEnum.CREATE_REALM,
+        SugoiEventTypeEnum.UPDATE_REALM,
+        SugoiEventTypeEnum.DELETE_REALM);
+  }
+
+  @Override
+  public boolean isSynchronous() {
+    return true;
+  }
+
+  @Override
+  public void onEvent(SugoiEvent event) {
+    Ehcache cache = getCache();
+    if (event.getRealm() == null) {
+      cache.removeAll();
+      return;
+    }
+    String prefix = event.getRealm().toLowerCase() + "|";
+    for (Object key : cache.getKeys()) {
+      if (((String) key).startsWith(prefix)) {
+        cache.remove(key);
+      }
+    }
+  }
+
+  private Template compile(String webHookName, String realm, String userStorage, Kind kind) {
+    String name = getKey(realm, userStorage, webHookName, kind);
+    try {
+      Optional<String> override =
+          getUserStorageTemplate(
+              realm, userStorage, webHookName + "_" + kind.getName() + "_template");
+      if (override.isPresent()) {
+        return new Template(name, new StringReader(override.get()), configuration);
+      }
+      String path =
+          env.getProperty(
+              "sugoi.api.event.webhook."
+                  + webHookName
+                  + ".default."
+                  + kind.getName()
+                  + ".template");
+      logger.debug("Compiling {} from {}", name, path);
+      try (Reader reader =
+          new InputStreamReader(
+              resourceLoader.getResource(path).getInputStream(), StandardCharsets.UTF_8)) {
+        return new Template(name, reader, configuration);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to load template " + name, e);
+    }
+  }
+
+  private Optional<String> getUserStorageTemplate(
+      String realmName, String userStorageName, String property) {
+    try {
+      Optional<Realm> realm = configService.getRealm(realmName);
+      return realm.stream()
+          .flatMap(r -> r.getUserStorages().stream())
+          .filter(us -> us.getName().equalsIgnoreCase(userStorageName))
+          .map(UserStorage::getProperties)
+          .map(properties -> properties.get(property))
+          .filter(Objects::nonNull)
+          .findFirst();
+    } catch (Exception e) {
+      // the default template is used
+      return Optional.empty();
+    }
+  }
+
+  private String getKey(String realm, String userStorage, String webHookName, Kind kind) {
+    return (realm + "|" + userStorage + "|" + webHookName + "|" + kind.getName()).toLowerCase();
+  }
+
+  private Ehcache getCache() {
+    Ehcache cache = ehCacheManager.getEhcache(CACHE_NAME);
+    if (cache == null) {
+      cache =
+          ehCacheManager.addCacheIfAbsent(
+              new Cache(
+                  new CacheConfiguration(CACHE_NAME, maxEntries)
+                      .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+                      .timeToLiveSeconds(timeToLiveSeconds)));
+    }
+    return cache;
+  }
+}
@@ -0,0 +1,236 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.event.listener.webhook.outbox;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class WebHookOutboxTest {
+
+  @TempDir Path directory;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+  private final BlockingQueue<Integer> statuses = new LinkedBlockingQueue<>();
+
+  private CountDownLatch release = new CountDownLatch(0);
+
+  private HttpServer server;
+
+  private String target;
+
+  private WebHookOutbox outbox;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          received.add(
+              new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+          Integer status = statuses.poll();
+          exchange.sendResponseHeaders(status != null ? status : 200, -1);
+          exchange.close();
+        });
+    server.start();
+    target = "http://localhost:" + server.getAddress().getPort() + "/hook";
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    release.countDown();
+    if (outbox != null) {
+      outbox.destroy();
+    }
+    server.stop(0);
+  }
+
+  @Test
+  public void testDirectoryIsRequired() {
+    WebHookOutbox outbox = outbox("");
+    assertThrows(IllegalStateException.class, outbox::afterPropertiesSet);
+  }
+
+  @Test
+  public void testWebHookIsWrittenForOwnerOnly() throws Exception {
+    release = new CountDownLatch(1);
+    start();
+    outbox.append("web1", target, "password=secret", Map.of());
+    List<Path> pending = files("pending");
+    assertThat("Webhook is written before its delivery", pending.size(), is(1));
+    assertThat(
+        "Webhook is readable by the owner only",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(pending.get(0))),
+        is("rw-------"));
+    assertThat(
+        "Outbox is accessible by the owner only",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.resolve("outbox"))),
+        is("rwx------"));
+    release.countDown();
+    assertThat("Webhook is delivered", received.poll(5, TimeUnit.SECONDS), is("password=secret"));
+    awaitNoPending();
+  }
+
+  @Test
+  public void testPendingWebHookIsDeliveredAtStart() throws Exception {
+    Files.createDirectories(directory.resolve("outbox").resolve("pending"));
+    WebHookMessage message = new WebHookMessage();
+    message.setId("0000000000001-pending");
+    message.setWebHookName("web1");
+    message.setTarget(target);
+    message.setContent("replayed");
+    Files.write(
+        directory.resolve("outbox").resolve("pending").resolve(message.getId() + ".json"),
+        objectMapper.writeValueAsBytes(message));
+    start();
+    assertThat("Webhook is delivered", received.poll(5, TimeUnit.SECONDS), is("replayed"));
+    awaitNoPending();
+  }
+
+  @Test
+  public void testFailedWebHookIsRetried() throws Exception {
+    statuses.add(503);
+    statuses.add(503);
+    start();
+    outbox.append("web1", target, "retried", Map.of());
+    for (int i = 0; i < 3; i++) {
+      assertThat("Webhook is sent again", received.poll(5, TimeUnit.SECONDS), is("retried"));
+    }
+    awaitNoPending();
+    assertThat("Webhook is not a dead letter", files("dead-letter").size(), is(0));
+  }
+
+  @Test
+  public void testRefusedWebHookIsDeadLetterWithoutContent() throws Exception {
+    statuses.add(400);
+    start();
+    outbox.append("web1", target, "password=secret", Map.of("X-Test", "secret"));
+    assertThat("Webhook is sent", received.poll(5, TimeUnit.SECONDS), is("password=secret"));
+    awaitNoPending();
+    List<Path> deadLetters = files("dead-letter");
+    assertThat("Webhook is a dead letter", deadLetters.size(), is(1));
+    WebHookMessage deadLetter =
+        objectMapper.readValue(deadLetters.get(0).toFile(), WebHookMessage.class);
+    assertThat("Dead letter keeps the target", deadLetter.getTarget(), is(target));
+    assertThat("Dead letter keeps the attempts", deadLetter.getAttempts(), is(1));
+    assertThat("Dead letter has no content", deadLetter.getContent(), nullValue());
+    assertThat("Dead letter has no headers", deadLetter.getHeaders(), nullValue());
+    assertThat(
+        "Dead letter is readable by the owner only",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(deadLetters.get(0))),
+        is("rw-------"));
+  }
+
+  @Test
+  public void testWebHookWithoutTargetIsDeadLetter() throws Exception {
+    start();
+    outbox.append("web1", null, "lost", Map.of());
+    awaitNoPending();
+    List<Path> deadLetters = files("dead-letter");
+    assertThat("Webhook is a dead letter", deadLetters.size(), is(1));
+    WebHookMessage deadLetter =
+        objectMapper.readValue(deadLetters.get(0).toFile(), WebHookMessage.class);
+    assertThat("Webhook is not retried", deadLetter.getAttempts(), is(1));
+    assertThat("Dead letter keeps the error", deadLetter.getLastError() != null, is(true));
+    assertThat("Nothing is sent", received.isEmpty(), is(true));
+    assertThat(
+        "Webhook is no longer counted as pending",
+        ((AtomicInteger) ReflectionTestUtils.getField(outbox, "pendingCount")).get(),
+        is(0));
+  }
+
+  @Test
+  public void testExpiredDeadLetterIsRemoved() throws Exception {
+    Path deadLetters = Files.createDirectories(directory.resolve("outbox").resolve("dead-letter"));
+    Path expired = Files.write(deadLetters.resolve("expired.json"), "{}".getBytes());
+    expired.toFile().setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8));
+    Path recent = Files.write(deadLetters.resolve("recent.json"), "{}".getBytes());
+    start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (Files.exists(expired) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat("Expired dead letter is removed", Files.exists(expired), is(false));
+    assertThat("Recent dead letter is kept", Files.exists(recent), is(true));
+  }
+
+  private void start() throws IOException {
+    outbox = outbox(directory.resolve("outbox").toString());
+    outbox.afterPropertiesSet();
+  }
+
+  private WebHookOutbox outbox(String outboxDirectory) {
+    WebHookOutbox outbox = new WebHookOutbox();
+    ReflectionTestUtils.setField(outbox, "env", new MockEnvironment());
+    ReflectionTestUtils.setField(outbox, "directory", outboxDirectory);
+    ReflectionTestUtils.setField(outbox, "workers", 2);
+    ReflectionTestUtils.setField(outbox, "maxConcurrencyPerTarget", 1);
+    ReflectionTestUtils.setField(outbox, "maxAttempts", 5);
+    ReflectionTestUtils.setField(outbox, "initialBackoffMillis", 10L);
+    ReflectionTestUtils.setField(outbox, "maxBackoffMillis", 100L);
+    ReflectionTestUtils.setField(outbox, "timeoutMillis", 5000);
+    ReflectionTestUtils.setField(outbox, "deadLetterRetentionMillis", TimeUnit.DAYS.toMillis(7));
+    return outbox;
+  }
+
+  private List<Path> files(String subdirectory) throws IOException {
+    try (Stream<Path> paths = Files.list(directory.resolve("outbox").resolve(subdirectory))) {
+      return paths
+          .filter(path -> path.getFileName().toString().endsWith(".json"))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private void awaitNoPending() throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!files("pending").isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat("Webhook is no longer pending", files("pending").size(), is(0));
+  }
+}
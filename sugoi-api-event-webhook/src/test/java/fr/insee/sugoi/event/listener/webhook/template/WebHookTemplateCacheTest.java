@@ -0,0 +1,117 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.event.listener.webhook.template;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import fr.insee.sugoi.core.configuration.EhCacheConfig;
+import fr.insee.sugoi.core.event.model.SugoiEvent;
+import fr.insee.sugoi.core.event.model.SugoiEventTypeEnum;
+import fr.insee.sugoi.core.service.ConfigService;
+import fr.insee.sugoi.event.listener.webhook.template.WebHookTemplateCache.Kind;
+import fr.insee.sugoi.model.Realm;
+import fr.insee.sugoi.model.UserStorage;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+@SpringBootTest(
+    classes = {EhCacheConfig.class, WebHookTemplateCache.class},
+    properties = {
+      "sugoi.api.event.webhook.enabled=true",
+      "sugoi.api.event.webhook.web1.default.init.template=classpath:template/mail_default.ftl",
+      "sugoi.api.event.webhook.web1.default.reset.template=classpath:template/mail_default.ftl"
+    })
+public class WebHookTemplateCacheTest {
+
+  @Autowired private WebHookTemplateCache webHookTemplateCache;
+
+  @MockBean private ConfigService configService;
+
+  private UserStorage userStorage;
+
+  @BeforeEach
+  public void setup() {
+    userStorage = new UserStorage();
+    userStorage.setName("us");
+    Realm realm = new Realm();
+    realm.setName("realm");
+    realm.setUserStorages(List.of(userStorage));
+    Mockito.when(configService.getRealm("realm")).thenReturn(Optional.of(realm));
+    webHookTemplateCache.onEvent(
+        new SugoiEvent(null, null, SugoiEventTypeEnum.UPDATE_REALM, Map.of()));
+  }
+
+  @Test
+  public void testTemplateIsCompiledOnce() {
+    Template template = webHookTemplateCache.getTemplate("web1", "realm", "us", Kind.INIT);
+    assertThat(
+        "Cached template is returned",
+        webHookTemplateCache.getTemplate("web1", "Realm", "US", Kind.INIT),
+        sameInstance(template));
+    Mockito.verify(configService, Mockito.times(1)).getRealm("realm");
+    assertThat(
+        "Other kinds have their own template",
+        webHookTemplateCache.getTemplate("web1", "realm", "us", Kind.RESET),
+        not(sameInstance(template)));
+  }
+
+  @Test
+  public void testTemplateIsReloadedWhenRealmChanges() throws Exception {
+    userStorage.addProperty("web1_init_template", "first");
+    assertThat(
+        "UserStorage overrides the default template",
+        render(webHookTemplateCache.getTemplate("web1", "realm", "us", Kind.INIT)),
+        is("first"));
+
+    userStorage.addProperty("web1_init_template", "second");
+    assertThat(
+        "Template is cached until the realm changes",
+        render(webHookTemplateCache.getTemplate("web1", "realm", "us", Kind.INIT)),
+        is("first"));
+
+    webHookTemplateCache.onEvent(
+        new SugoiEvent("other", null, SugoiEventTypeEnum.UPDATE_REALM, Map.of()));
+    assertThat(
+        "Templates of other realms are kept",
+        render(webHookTemplateCache.getTemplate("web1", "realm", "us", Kind.INIT)),
+        is("first"));
+
+    webHookTemplateCache.onEvent(
+        new SugoiEvent("realm", null, SugoiEventTypeEnum.UPDATE_REALM, Map.of()));
+    assertThat(
+        "Template is reloaded once the realm changed",
+        render(webHookTemplateCache.getTemplate("web1", "realm", "us", Kind.INIT)),
+        is("second"));
+  }
+
+  private String render(Template template) throws IOException, TemplateException {
+    StringWriter writer = new StringWriter();
+    template.process(Map.of(), writer);
+    return writer.toString();
+  }
+}
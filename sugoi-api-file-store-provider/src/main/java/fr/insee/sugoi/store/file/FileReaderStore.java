@@ -14,6 +14,7 @@
 package fr.insee.sugoi.store.file;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.insee.sugoi.core.cache.OrganizationHierarchyCache;
 import fr.insee.sugoi.core.store.ReaderStore;
 import fr.insee.sugoi.model.Application;
 import fr.insee.sugoi.model.Group;
@@ -43,6 +44,10 @@ public class FileReaderStore implements ReaderStore {
   private static final Logger logger = LogManager.getLogger(FileReaderStore.class);
 
   @Autowired ResourceLoader resourceLoader;
+
+  @Autowired(required = false)
+  OrganizationHierarchyCache organizationHierarchyCache;
+
   private Map<String, String> config;
   private ObjectMapper mapper = new ObjectMapper();
 
@@ -84,29 +89,30 @@ public class FileReaderStore implements ReaderStore {
   @Override
   public Organization getOrganization(String id) {
     if (config.get(FileKeysConfig.ORGANIZATION_SOURCE) != null) {
-      Resource realmsResource =
-          resourceLoader.getResource(config.get(FileKeysConfig.ORGANIZATION_SOURCE) + id);
-      if (realmsResource.exists()) {
-        Organization organization = loadResourceContent(realmsResource, Organization.class);
-        // suborganization is loaded as an independant resource
-        if (organization.getOrganization() != null
-            && organization.getOrganization().getIdentifiant() != null) {
-          try {
-            organization.setOrganization(
-                getOrganization(organization.getOrganization().getIdentifiant()));
-          } catch (RuntimeException e) {
-            logger.error("Unable to retrieve organization's suborganization", e);
-          }
-        }
-        return organization;
-      }
-      return null;
+      return organizationHierarchyCache != null && OrganizationHierarchyCache.isEnabled(config)
+          ? organizationHierarchyCache.getOrganization(
+              config.get(FileKeysConfig.REALM),
+              config.get(FileKeysConfig.USERSTORAGE),
+              id,
+              this::loadOrganization)
+          : OrganizationHierarchyCache.resolveHierarchy(
+              id, OrganizationHierarchyCache.DEFAULT_MAX_DEPTH, this::loadOrganization);
     } else {
       throw new UnsupportedOperationException(
           "Organizations feature not configured for this storage");
     }
   }
 
+  /** Load a single organization, its suborganization only contains its identifiant */
+  private Organization loadOrganization(String id) {
+    Resource realmsResource =
+        resourceLoader.getResource(config.get(FileKeysConfig.ORGANIZATION_SOURCE) + id);
+    if (realmsResource.exists()) {
+      return loadResourceContent(realmsResource, Organization.class);
+    }
+    return null;
+  }
+
   @Override
   public PageResult<User> getUsersInGroup(String appName, String groupName) {
     PageResult<User> pageResult = new PageResult<>();
@@ -13,6 +13,7 @@
 */
 package fr.insee.sugoi.store.file;
 
+import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
 import fr.insee.sugoi.model.Realm;
 import fr.insee.sugoi.model.UserStorage;
 import fr.insee.sugoi.store.file.configuration.FileKeysConfig;
@@ -39,6 +40,11 @@ public class FileStoreBeans {
 
   public Map<String, String> generateConfig(Realm realm, UserStorage userStorage) {
     Map<String, String> config = new HashMap<>();
+    config.put(FileKeysConfig.REALM, realm.getName());
+    config.put(FileKeysConfig.USERSTORAGE, userStorage.getName());
+    config.put(
+        GlobalKeysConfig.ORGANIZATION_CACHE,
+        realm.getProperties().get(GlobalKeysConfig.ORGANIZATION_CACHE));
     config.put(FileKeysConfig.APP_SOURCE, realm.getAppSource());
     config.put(FileKeysConfig.USER_SOURCE, userStorage.getUserSource());
     config.put(FileKeysConfig.ORGANIZATION_SOURCE, userStorage.getOrganizationSource());
@@ -17,6 +17,7 @@ import com.unboundid.ldap.sdk.AddRequest;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
 import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.ModifyRequest;
@@ -61,6 +62,12 @@ public class LdapRealmProviderDAOImpl implements RealmProvider {
   @Value("${fr.insee.sugoi.config.ldap.profils.branche:}")
   private String baseDn;
 
+  @Value("${fr.insee.sugoi.config.ldap.profils.connect-timeout:5000}")
+  private int connectTimeout;
+
+  @Value("${fr.insee.sugoi.config.ldap.profils.response-timeout:30000}")
+  private long responseTimeout;
+
   @Value("${fr.insee.sugoi.store.defaultReader:}")
   private String defaultReader;
 
@@ -266,7 +273,11 @@ public class LdapRealmProviderDAOImpl implements RealmProvider {
     try {
       if (ldapConnectionPool == null
           || !ldapConnectionPool.getConnectionPoolName().equals(url + "-" + port)) {
-        ldapConnectionPool = new LDAPConnectionPool(new LDAPConnection(url, port), 10);
+        // same timeouts as the realm pools so that a stuck configuration ldap cannot hang requests
+        LDAPConnectionOptions options = new LDAPConnectionOptions();
+        options.setConnectTimeoutMillis(connectTimeout);
+        options.setResponseTimeoutMillis(responseTimeout);
+        ldapConnectionPool = new LDAPConnectionPool(new LDAPConnection(options, url, port), 10);
         ldapConnectionPool.setConnectionPoolName(url + "-" + port);
         ldapConnectionPool.setCreateIfNecessary(true);
       }
@@ -14,12 +14,16 @@
 package fr.insee.sugoi.store.ldap;
 
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.SearchScope;
+import fr.insee.sugoi.core.cache.OrganizationHierarchyCache;
+import fr.insee.sugoi.core.deadline.RequestDeadline;
 import fr.insee.sugoi.core.store.ReaderStore;
 import fr.insee.sugoi.ldap.utils.LdapFactory;
 import fr.insee.sugoi.ldap.utils.LdapFilter;
@@ -37,20 +41,91 @@ import fr.insee.sugoi.model.Organization;
 import fr.insee.sugoi.model.User;
 import fr.insee.sugoi.model.paging.PageResult;
 import fr.insee.sugoi.model.paging.PageableResult;
+import fr.insee.sugoi.store.ldap.PagedSearchSessionManager.PagedSearchSession;
+import io.micrometer.core.instrument.Metrics;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 
-public class LdapReaderStore extends LdapStore implements ReaderStore {
+public class LdapReaderStore extends LdapStore implements ReaderStore, DisposableBean {
 
-  public LdapReaderStore(Map<String, String> config, Map<String, Map<String, String>> mappings) {
+  private static final int DEFAULT_MEMBER_BATCH_SIZE = 200;
+
+  /**
+   * Executor on which the address and organization lookups of a user are made. It is shared by all
+   * the LdapReaderStores and bounds the number of concurrent hydration requests.
+   */
+  private final ExecutorService hydrationExecutor;
+
+  @Autowired(required = false)
+  private OrganizationHierarchyCache organizationHierarchyCache;
+
+  private static final long DEFAULT_PAGED_SEARCH_SESSION_TIMEOUT = 300;
+
+  private int memberBatchSize;
+
+  /** Null if the searches of the store only read their first page */
+  private PagedSearchSessionManager pagedSearchSessionManager;
+
+  /** Pool of the master, the same as ldapPoolConnection if the realm has no read url */
+  private LDAPConnectionPool masterPoolConnection;
+
+  public LdapReaderStore(
+      Map<String, String> config,
+      Map<String, Map<String, String>> mappings,
+      ExecutorService hydrationExecutor) {
+    this(config, mappings, hydrationExecutor, true);
+  }
+
+  /**
+   * @param pagedSearchSessionsEnabled false for a store whose searches only read their first page,
+   *     such as the one of a LdapWriterStore, no paged search session is then kept
+   */
+  LdapReaderStore(
+      Map<String, String> config,
+      Map<String, Map<String, String>> mappings,
+      ExecutorService hydrationExecutor,
+      boolean pagedSearchSessionsEnabled) {
     logger.debug("Configuring LdapReaderStore with config : {}", config);
+    this.hydrationExecutor = hydrationExecutor;
     try {
-      this.ldapPoolConnection = LdapFactory.getConnectionPool(config);
-      this.ldapMonoConnection = LdapFactory.getSingleConnection(config);
+      this.ldapPoolConnection = LdapFactory.getReplicaConnectionPool(config);
+      this.masterPoolConnection = LdapFactory.getConnectionPool(config);
       this.config = config;
+      if (pagedSearchSessionsEnabled) {
+        this.pagedSearchSessionManager =
+            new PagedSearchSessionManager(
+                ldapPoolConnection,
+                !"true".equalsIgnoreCase(config.get(LdapConfigKeys.VLV_ENABLED)),
+                config.get(LdapConfigKeys.PAGED_SEARCH_SESSION_TIMEOUT) != null
+                    ? Long.valueOf(config.get(LdapConfigKeys.PAGED_SEARCH_SESSION_TIMEOUT))
+                    : DEFAULT_PAGED_SEARCH_SESSION_TIMEOUT,
+                config.get(LdapConfigKeys.PAGED_SEARCH_MAX_SESSIONS) != null
+                        && !config.get(LdapConfigKeys.PAGED_SEARCH_MAX_SESSIONS).isBlank()
+                    ? Integer.valueOf(config.get(LdapConfigKeys.PAGED_SEARCH_MAX_SESSIONS))
+                    // by default searches in progress keep half of the connections at most
+                    : ldapPoolConnection.getMaximumAvailableConnections() / 2,
+                config.get(LdapConfigKeys.REALM_NAME),
+                config.get(LdapConfigKeys.NAME));
+      }
+      this.memberBatchSize =
+          config.get(LdapConfigKeys.MEMBER_BATCH_SIZE) != null
+              ? Integer.valueOf(config.get(LdapConfigKeys.MEMBER_BATCH_SIZE))
+              : DEFAULT_MEMBER_BATCH_SIZE;
       userLdapMapper = new UserLdapMapper(config, mappings.get("userMapping"));
       organizationLdapMapper =
           new OrganizationLdapMapper(config, mappings.get("organizationMapping"));
@@ -63,51 +138,188 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
   }
 
   /**
-   * Retrieve the user ldap resource then complete it by retrieving the address ldap resource and
-   * the organization ldap resource
+   * Retrieve the user ldap resource then complete it by retrieving concurrently the address ldap
+   * resource and the organization ldap resource
    */
   @Override
   public User getUser(String id) {
     logger.debug("Searching user {}", id);
-    SearchResultEntry entry = getEntryByDn(getUserDN(id));
+    SearchResultEntry entry = getEntryByDn(getUserDN(id), userLdapMapper.getReadAttributes());
     User user = (entry != null) ? userLdapMapper.mapFromAttributes(entry.getAttributes()) : null;
-    if (user != null && user.getAddress() != null && user.getAddress().containsKey("id")) {
-      Map<String, String> address = getAddress(user.getAddress().get("id"));
-      if (address != null) {
-        address.put("id", user.getAddress().get("id"));
-        user.setAddress(address);
-      }
-    }
-    if (user != null && user.getOrganization() != null) {
-      user.setOrganization(getOrganization(user.getOrganization().getIdentifiant()));
+    if (user != null) {
+      CompletableFuture<Map<String, String>> address = getAddressAsync(user.getAddress());
+      CompletableFuture<Organization> organization =
+          user.getOrganization() != null
+              ? getOrganizationAsync(user.getOrganization().getIdentifiant())
+              : CompletableFuture.completedFuture(null);
+      user.setAddress(join(address));
+      user.setOrganization(join(organization));
     }
     return user;
   }
 
+  /** Probe the user entry without reading any attribute */
+  @Override
+  public boolean userExists(String id) {
+    return entryExists(getUserDN(id), null);
+  }
+
   /**
-   * Retrieve the organization ldap resource then complete it by retrieving the address ldap
-   * resource and the sub organization ldap resource
+   * Retrieve the organization ldap resource then complete it by retrieving concurrently the address
+   * ldap resource and the parent organizations
    */
   @Override
   public Organization getOrganization(String id) {
-    if (config.get(LdapConfigKeys.ORGANIZATION_SOURCE) != null) {
-      SearchResultEntry entry = getEntryByDn(getOrganizationDN(id));
-      Organization org =
-          (entry != null) ? organizationLdapMapper.mapFromAttributes(entry.getAttributes()) : null;
-      if (org != null && org.getAddress() != null && org.getAddress().containsKey("id")) {
-        Map<String, String> address = getAddress(org.getAddress().get("id"));
-        if (address != null) {
-          address.put("id", org.getAddress().get("id"));
-          org.setAddress(address);
-        }
-      }
-      if (org != null && org.getOrganization() != null) {
-        org.setOrganization(getOrganization(org.getOrganization().getIdentifiant()));
+    return join(getOrganizationAsync(id));
+  }
+
+  /** Probe the organization entry without reading any attribute nor the parent organizations */
+  @Override
+  public boolean organizationExists(String id) {
+    return entryExists(getOrganizationDN(id), null);
+  }
+
+  /**
+   * Retrieve an organization and its parent organizations on the hydration executor
+   *
+   * @param id identifiant of the organization
+   * @return a future completed with the organization or null if it does not exist
+   */
+  private CompletableFuture<Organization> getOrganizationAsync(String id) {
+    if (config.get(LdapConfigKeys.ORGANIZATION_SOURCE) == null) {
+      return CompletableFuture.failedFuture(
+          new UnsupportedOperationException(
+              "Organizations feature not configured for this storage"));
+    }
+    Set<String> visitedIds = ConcurrentHashMap.newKeySet();
+    visitedIds.add(id.toLowerCase());
+    return getOrganizationAsync(id, visitedIds);
+  }
+
+  /**
+   * Fetch an organization on the hydration executor, or from the organization hierarchy cache if
+   * the realm enables it. Once the organization is received, its address and its parent
+   * organization are fetched concurrently. The walk stops with the same depth limit and cycle
+   * protection as OrganizationHierarchyCache.resolveHierarchy, the last organization then keeps a
+   * parent only containing its identifiant.
+   *
+   * @param id identifiant of the organization
+   * @param visitedIds lower cased identifiants of the organizations of the walk
+   * @return a future completed with the organization or null if it does not exist
+   */
+  private CompletableFuture<Organization> getOrganizationAsync(String id, Set<String> visitedIds) {
+    Organization cached =
+        isOrganizationCached()
+            ? organizationHierarchyCache.getCached(
+                config.get(LdapConfigKeys.REALM_NAME), config.get(LdapConfigKeys.NAME), id)
+            : null;
+    Supplier<SearchResultEntry> task =
+        () -> getEntryByDn(getOrganizationDN(id), organizationLdapMapper.getReadAttributes());
+    CompletableFuture<Organization> organization =
+        cached != null
+            ? CompletableFuture.completedFuture(cached)
+            : CompletableFuture.supplyAsync(RequestDeadline.wrap(task), hydrationExecutor)
+                .thenApply(
+                    entry ->
+                        entry != null
+                            ? organizationLdapMapper.mapFromAttributes(entry.getAttributes())
+                            : null);
+    return organization.thenCompose(
+        org -> {
+          if (org == null) {
+            return CompletableFuture.completedFuture(null);
+          }
+          CompletableFuture<Map<String, String>> address =
+              cached != null
+                  ? CompletableFuture.completedFuture(org.getAddress())
+                  : getAddressAsync(org.getAddress());
+          CompletableFuture<Organization> parent =
+              org.getOrganization() != null
+                      && visitParent(org.getOrganization().getIdentifiant(), visitedIds)
+                  ? getOrganizationAsync(org.getOrganization().getIdentifiant(), visitedIds)
+                  : CompletableFuture.completedFuture(org.getOrganization());
+          return address.thenCombine(
+              parent,
+              (completedAddress, completedParent) -> {
+                org.setAddress(completedAddress);
+                if (cached == null && isOrganizationCached()) {
+                  organizationHierarchyCache.put(
+                      config.get(LdapConfigKeys.REALM_NAME),
+                      config.get(LdapConfigKeys.NAME),
+                      id,
+                      org);
+                }
+                org.setOrganization(completedParent);
+                return org;
+              });
+        });
+  }
+
+  /** @return true if the walk of the parent organizations goes on with parentId */
+  private boolean visitParent(String parentId, Set<String> visitedIds) {
+    if (parentId == null) {
+      return false;
+    }
+    if (visitedIds.size() >= getOrganizationMaxDepth()) {
+      logger.warn("Too many parent organizations above organization {}", parentId);
+      return false;
+    }
+    if (!visitedIds.add(parentId.toLowerCase())) {
+      logger.warn("Organization {} is its own parent organization", parentId);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isOrganizationCached() {
+    return organizationHierarchyCache != null && OrganizationHierarchyCache.isEnabled(config);
+  }
+
+  private int getOrganizationMaxDepth() {
+    return organizationHierarchyCache != null
+        ? organizationHierarchyCache.getMaxDepth()
+        : OrganizationHierarchyCache.DEFAULT_MAX_DEPTH;
+  }
+
+  /**
+   * Complete an address only containing an id with the address ldap resource on the hydration
+   * executor
+   *
+   * @param address the address to complete
+   * @return a future completed with the complete address or the original one if the address ldap
+   *     resource does not exist
+   */
+  private CompletableFuture<Map<String, String>> getAddressAsync(Map<String, String> address) {
+    if (address == null || !address.containsKey("id")) {
+      return CompletableFuture.completedFuture(address);
+    }
+    Supplier<Map<String, String>> task =
+        () -> {
+          Map<String, String> completedAddress = getAddress(address.get("id"));
+          if (completedAddress != null) {
+            completedAddress.put("id", address.get("id"));
+            return completedAddress;
+          }
+          return address;
+        };
+    return CompletableFuture.supplyAsync(RequestDeadline.wrap(task), hydrationExecutor);
+  }
+
+  /**
+   * Wait for a hydration future and rethrow the original exception if it failed
+   *
+   * @param <T> type of the result
+   * @param future the future to wait for
+   * @return the result of the future
+   */
+  private <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
       }
-      return org;
-    } else {
-      throw new UnsupportedOperationException(
-          "Organizations feature not configured for this storage");
+      throw e;
     }
   }
 
@@ -127,14 +339,26 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
     }
   }
 
+  /**
+   * Retrieve the members of a group. Members are fetched by chunks of member_batch_size uids and
+   * their addresses and organizations are fetched once per distinct identifier. Members of a group
+   * written during the read-your-writes window are read on the master as the group is.
+   */
   @Override
   public PageResult<User> getUsersInGroup(String appName, String groupName) {
     PageResult<User> page = new PageResult<>();
-    SearchResultEntry entry = getEntryByDn(getGroupDN(appName, groupName));
+    String groupDn = getGroupDN(appName, groupName);
+    SearchResultEntry entry = getEntryByDn(groupDn, Set.of("uniqueMember"));
     if (entry != null && entry.hasAttribute("uniqueMember")) {
-      page.setResults(
+      List<String> memberIds =
           Arrays.stream(entry.getAttribute("uniqueMember").getValues())
-              .map(uniqueMember -> getUser(LdapUtils.getNodeValueFromDN(uniqueMember)))
+              .map(uniqueMember -> LdapUtils.getNodeValueFromDN(uniqueMember))
+              .filter(memberId -> memberId != null)
+              .collect(Collectors.toList());
+      Map<String, User> users = getUsers(memberIds, isRecentlyWritten(groupDn));
+      page.setResults(
+          memberIds.stream()
+              .map(memberId -> users.get(memberId))
               .filter(user -> user != null)
               .collect(Collectors.toList()));
     } else {
@@ -170,9 +394,12 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
   @Override
   public Group getGroup(String appName, String groupName) {
     try {
-      SearchResultEntry entry = getEntryByDn(getGroupDN(appName, groupName));
-      return ((entry != null)
-              && (Filter.create(getGroupWildcardFilter(appName)).matchesEntry(entry)))
+      Filter groupWildcardFilter = Filter.create(getGroupWildcardFilter(appName));
+      Set<String> attributes = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+      attributes.addAll(groupLdapMapper.getReadAttributes());
+      attributes.addAll(LdapUtils.getFilterAttributeNames(groupWildcardFilter));
+      SearchResultEntry entry = getEntryByDn(getGroupDN(appName, groupName), attributes);
+      return ((entry != null) && (groupWildcardFilter.matchesEntry(entry)))
           ? groupLdapMapper.mapFromAttributes(entry.getAttributes())
           : null;
     } catch (LDAPException e) {
@@ -180,6 +407,20 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
     }
   }
 
+  /**
+   * Probe the group entry without reading the members. The group_filter_pattern is checked by the
+   * directory.
+   */
+  @Override
+  public boolean groupExists(String appName, String groupName) {
+    try {
+      return entryExists(
+          getGroupDN(appName, groupName), Filter.create(getGroupWildcardFilter(appName)));
+    } catch (LDAPException e) {
+      throw new RuntimeException("Fail to get group in ldap", e);
+    }
+  }
+
   /** Search groups with the group_filter under the group source */
   @Override
   public PageResult<Group> searchGroups(
@@ -201,7 +442,8 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
   @Override
   public boolean validateCredentials(User user, String credential) {
     try {
-      return LdapFactory.validateUserPassword(config, getUserDN(user.getUsername()), credential);
+      String dn = getUserDN(user.getUsername());
+      return LdapFactory.validateUserPassword(config, dn, credential, !isRecentlyWritten(dn));
     } catch (LDAPException e) {
       return false;
     }
@@ -209,7 +451,8 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
 
   @Override
   public Application getApplication(String applicationName) {
-    SearchResultEntry entry = getEntryByDn(getApplicationDN(applicationName));
+    SearchResultEntry entry =
+        getEntryByDn(getApplicationDN(applicationName), applicationLdapMapper.getReadAttributes());
     Application application =
         (entry != null) ? applicationLdapMapper.mapFromAttributes(entry.getAttributes()) : null;
     if (application != null) {
@@ -225,6 +468,12 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
     return application;
   }
 
+  /** Probe the application entry without reading any attribute nor the groups */
+  @Override
+  public boolean applicationExists(String applicationName) {
+    return entryExists(getApplicationDN(applicationName), null);
+  }
+
   /** Search applications matching applicationFilter set properties just under application source */
   @Override
   public PageResult<Application> searchApplications(
@@ -246,6 +495,14 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
     }
   }
 
+  /** Abandon the paged search sessions once the store is discarded */
+  @Override
+  public void destroy() {
+    if (pagedSearchSessionManager != null) {
+      pagedSearchSessionManager.close();
+    }
+  }
+
   /**
    * Create a filter from an object using a mapper class. Each set field of the object is
    * transformed to a filter.
@@ -292,18 +549,92 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
     throw new RuntimeException("Invalid searchType must be AND or OR");
   }
 
-  private SearchResultEntry getEntryByDn(String dn) {
+  /**
+   * @param dn DN of the entry
+   * @param attributes names of the attributes to retrieve
+   * @return the entry or null if it does not exist
+   */
+  private SearchResultEntry getEntryByDn(String dn, Set<String> attributes) {
     try {
       logger.debug("Fetching {}", dn);
-      SearchResultEntry entry = ldapPoolConnection.getEntry(dn, "+", "*");
+      SearchResultEntry entry =
+          getPool(dn)
+              .searchForEntry(
+                  withDeadline(
+                      new SearchRequest(
+                          dn,
+                          SearchScope.BASE,
+                          Filter.createPresenceFilter("objectClass"),
+                          attributes.toArray(new String[attributes.size()])),
+                      "read"));
 
       return entry;
-    } catch (LDAPException e) {
+    } catch (LDAPSearchException e) {
+      if (e.getResultCode() == ResultCode.NO_SUCH_OBJECT) {
+        return null;
+      }
+      checkTimeout(e, "read");
       throw new RuntimeException("Failed to execute " + dn, e);
     }
   }
 
   /**
+   * Entries written during the read-your-writes window are read on the master, the others on the
+   * replicas
+   *
+   * @param dn DN of the entry to read
+   * @return the pool where to read the entry
+   */
+  private LDAPConnectionPool getPool(String dn) {
+    return isRecentlyWritten(dn) ? getMasterPool() : ldapPoolConnection;
+  }
+
+  private LDAPConnectionPool getMasterPool() {
+    if (masterPoolConnection != ldapPoolConnection) {
+      Metrics.counter("sugoi.ldap.read.master", "realm", config.get(LdapConfigKeys.REALM_NAME))
+          .increment();
+    }
+    return masterPoolConnection;
+  }
+
+  private boolean isRecentlyWritten(String dn) {
+    return masterPoolConnection != ldapPoolConnection
+        && recentWrites.isRecent(config.get(LdapConfigKeys.REALM_NAME), dn);
+  }
+
+  /**
+   * Base scope search of an entry requesting no attribute.
+   *
+   * @param dn DN of the entry
+   * @param filter filter the entry must match, any entry matches if null
+   * @return true if the entry exists and matches the filter
+   */
+  private boolean entryExists(String dn, Filter filter) {
+    try {
+      logger.debug("Probing {}", dn);
+      return getPool(dn)
+              .searchForEntry(
+                  withDeadline(
+                      new SearchRequest(
+                          dn,
+                          SearchScope.BASE,
+                          filter != null ? filter : Filter.createPresenceFilter("objectClass"),
+                          SearchRequest.NO_ATTRIBUTES),
+                      "read"))
+          != null;
+    } catch (LDAPSearchException e) {
+      if (e.getResultCode() == ResultCode.NO_SUCH_OBJECT) {
+        return false;
+      }
+      checkTimeout(e, "read");
+      throw new RuntimeException("Failed to probe " + dn, e);
+    }
+  }
+
+  /**
+   * Search on a pooled connection. When more pages are available, the connection stays pinned to
+   * the returned search token until the last page is read or the session expires.
+   *
    * @param <ResultType> the type of the resource searched
    * @param baseDn DN where to make the search
    * @param scope search scope value
@@ -320,21 +651,268 @@ public class LdapReaderStore extends LdapStore implements ReaderStore {
       PageableResult pageableResult,
       LdapMapper<ResultType> mapper)
       throws LDAPSearchException {
-    SearchRequest searchRequest = new SearchRequest(baseDn, scope, filter, "*", "+");
+    SearchRequest searchRequest =
+        new SearchRequest(
+            baseDn,
+            scope,
+            filter,
+            mapper.getReadAttributes().toArray(new String[mapper.getReadAttributes().size()]));
+    withDeadline(searchRequest, "search");
+    if (pagedSearchSessionManager == null) {
+      // only the first page is read so the connection is not kept
+      LdapUtils.setRequestControls(searchRequest, pageableResult, config);
+      try {
+        return toPageResult(ldapPoolConnection.search(searchRequest), pageableResult, mapper, null);
+      } catch (LDAPSearchException e) {
+        checkTimeout(e, "search");
+        throw e;
+      }
+    }
+    PagedSearchSession session;
+    try {
+      session = pagedSearchSessionManager.checkout(pageableResult);
+    } catch (LDAPException e) {
+      throw new LDAPSearchException(e);
+    }
+    // the session prefix is removed from the search token by the checkout
     LdapUtils.setRequestControls(searchRequest, pageableResult, config);
-    SearchResult searchResult = ldapMonoConnection.search(searchRequest);
+    SearchResult searchResult;
+    try {
+      searchResult = session.search(searchRequest);
+    } catch (LDAPSearchException e) {
+      pagedSearchSessionManager.release(session, e);
+      checkTimeout(e, "search");
+      throw e;
+    }
+    return toPageResult(searchResult, pageableResult, mapper, session);
+  }
+
+  /**
+   * @param session the session used for the search, given back once the page is built, or null
+   * @return the page built from the search result
+   */
+  private <ResultType> PageResult<ResultType> toPageResult(
+      SearchResult searchResult,
+      PageableResult pageableResult,
+      LdapMapper<ResultType> mapper,
+      PagedSearchSession session) {
     PageResult<ResultType> pageResult = new PageResult<>();
-    pageResult.setResults(
-        searchResult.getSearchEntries().stream()
-            .map(e -> mapper.mapFromAttributes(e.getAttributes()))
-            .collect(Collectors.toList()));
-    LdapUtils.setResponseControls(pageResult, searchResult);
+    try {
+      pageResult.setResults(
+          searchResult.getSearchEntries().stream()
+              .map(e -> mapper.mapFromAttributes(e.getAttributes()))
+              .collect(Collectors.toList()));
+      LdapUtils.setResponseControls(pageResult, searchResult);
+    } finally {
+      if (session != null) {
+        pagedSearchSessionManager.checkin(session, pageResult);
+      }
+    }
     pageResult.setNextStart(pageableResult.getFirst() + pageResult.getPageSize());
     return pageResult;
   }
 
+  /**
+   * Retrieve users by uid the same way getUser does, but with one search per chunk of uids
+   *
+   * @param ids uids of the users to retrieve
+   * @param onMaster true if the users must be read on the master
+   * @return found users indexed by uid (case insensitive)
+   */
+  private Map<String, User> getUsers(Collection<String> ids, boolean onMaster) {
+    Map<String, User> users = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    searchEntriesByIds(
+            config.get(LdapConfigKeys.USER_SOURCE),
+            "uid",
+            ids,
+            userLdapMapper.getReadAttributes(),
+            onMaster)
+        .forEach(
+            userEntry ->
+                users.put(
+                    LdapUtils.getNodeValueFromDN(userEntry.getDN()),
+                    userLdapMapper.mapFromAttributes(userEntry.getAttributes())));
+    Map<String, Map<String, String>> addresses =
+        getAddresses(
+            users.values().stream()
+                .filter(user -> user.getAddress() != null && user.getAddress().containsKey("id"))
+                .map(user -> user.getAddress().get("id"))
+                .collect(Collectors.toSet()));
+    Map<String, Organization> organizations =
+        getOrganizations(
+            users.values().stream()
+                .filter(user -> user.getOrganization() != null)
+                .map(user -> user.getOrganization().getIdentifiant())
+                .collect(Collectors.toSet()));
+    for (User user : users.values()) {
+      user.setAddress(completeAddress(user.getAddress(), addresses));
+      if (user.getOrganization() != null) {
+        user.setOrganization(organizations.get(user.getOrganization().getIdentifiant()));
+      }
+    }
+    return users;
+  }
+
+  /**
+   * Retrieve organizations and their parent organizations level by level, each level being fetched
+   * by chunks of uids. Each organization is fetched only once even if it is shared, then each
+   * hierarchy is built with the same depth limit and cycle protection as getOrganization.
+   *
+   * @param ids uids of the organizations to retrieve
+   * @return found organizations indexed by uid (case insensitive)
+   */
+  private Map<String, Organization> getOrganizations(Set<String> ids) {
+    Map<String, Organization> organizations = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    if (ids.isEmpty()) {
+      return organizations;
+    }
+    if (config.get(LdapConfigKeys.ORGANIZATION_SOURCE) == null) {
+      throw new UnsupportedOperationException(
+          "Organizations feature not configured for this storage");
+    }
+    Set<String> requestedIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    Set<String> idsToFetch = ids;
+    while (!idsToFetch.isEmpty()) {
+      requestedIds.addAll(idsToFetch);
+      searchEntriesByIds(
+              config.get(LdapConfigKeys.ORGANIZATION_SOURCE),
+              "uid",
+              idsToFetch,
+              organizationLdapMapper.getReadAttributes(),
+              false)
+          .forEach(
+              organizationEntry ->
+                  organizations.put(
+                      LdapUtils.getNodeValueFromDN(organizationEntry.getDN()),
+                      organizationLdapMapper.mapFromAttributes(
+                          organizationEntry.getAttributes())));
+      idsToFetch =
+          organizations.values().stream()
+              .filter(organization -> organization.getOrganization() != null)
+              .map(organization -> organization.getOrganization().getIdentifiant())
+              .filter(parentId -> parentId != null && !requestedIds.contains(parentId))
+              .collect(
+                  Collectors.toCollection(() -> new TreeSet<>(String.CASE_INSENSITIVE_ORDER)));
+    }
+    Map<String, Map<String, String>> addresses =
+        getAddresses(
+            organizations.values().stream()
+                .filter(org -> org.getAddress() != null && org.getAddress().containsKey("id"))
+                .map(org -> org.getAddress().get("id"))
+                .collect(Collectors.toSet()));
+    for (Organization organization : organizations.values()) {
+      organization.setAddress(completeAddress(organization.getAddress(), addresses));
+    }
+    Map<String, Organization> hierarchies = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (String id : ids) {
+      hierarchies.put(
+          id,
+          OrganizationHierarchyCache.resolveHierarchy(
+              id, getOrganizationMaxDepth(), organizations::get));
+    }
+    return hierarchies;
+  }
+
+  private Map<String, Map<String, String>> getAddresses(Set<String> ids) {
+    Map<String, Map<String, String>> addresses = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    if (!ids.isEmpty() && config.get(LdapConfigKeys.ADDRESS_SOURCE) != null) {
+      searchEntriesByIds(
+              config.get(LdapConfigKeys.ADDRESS_SOURCE),
+              "l",
+              ids,
+              addressLdapMapper.getReadAttributes(),
+              false)
+          .forEach(
+              addressEntry ->
+                  addresses.put(
+                      LdapUtils.getNodeValueFromDN(addressEntry.getDN()),
+                      addressLdapMapper.mapFromSearchEntry(addressEntry)));
+    }
+    return addresses;
+  }
+
+  /**
+   * Replace an address only containing an id by a copy of the corresponding fetched address
+   *
+   * @param address the address to complete
+   * @param addresses fetched addresses indexed by id
+   * @return the complete address or the original one if it was not fetched
+   */
+  private Map<String, String> completeAddress(
+      Map<String, String> address, Map<String, Map<String, String>> addresses) {
+    if (address != null && address.containsKey("id") && addresses.containsKey(address.get("id"))) {
+      Map<String, String> completedAddress = new HashMap<>(addresses.get(address.get("id")));
+      completedAddress.put("id", address.get("id"));
+      return completedAddress;
+    }
+    return address;
+  }
+
+  /**
+   * Search the entries just under baseDn whose idAttribute matches one of ids. A search with an OR
+   * filter is made for each chunk of member_batch_size ids. The search is one level deep since the
+   * entries read one by one are read at idAttribute=id,baseDn, so that the batch finds the same
+   * entries and never an entry of a sub tree sharing the id. A chunk is read on the master if one
+   * of its entries was written during the read-your-writes window.
+   *
+   * @param baseDn DN under which the entries are
+   * @param idAttribute attribute naming the entries
+   * @param ids values of idAttribute to search
+   * @param attributes names of the attributes to retrieve
+   * @param onMaster true if all the chunks must be read on the master
+   * @return all the entries found
+   */
+  private List<SearchResultEntry> searchEntriesByIds(
+      String baseDn,
+      String idAttribute,
+      Collection<String> ids,
+      Set<String> attributes,
+      boolean onMaster) {
+    List<String> idList = new ArrayList<>(ids);
+    List<SearchResultEntry> entries = new ArrayList<>();
+    for (int i = 0; i < idList.size(); i += memberBatchSize) {
+      List<String> chunk = idList.subList(i, Math.min(i + memberBatchSize, idList.size()));
+      Filter filter =
+          LdapFilter.or(
+              chunk.stream()
+                  .map(id -> LdapFilter.equalsProperty(idAttribute, id))
+                  .collect(Collectors.toList()));
+      LDAPConnectionPool pool =
+          onMaster || isAnyRecentlyWritten(baseDn, idAttribute, chunk)
+              ? getMasterPool()
+              : ldapPoolConnection;
+      try {
+        logger.debug("Fetching {} under {}", filter, baseDn);
+        entries.addAll(
+            pool
+                .search(
+                    withDeadline(
+                        new SearchRequest(
+                            baseDn,
+                            SearchScope.ONE,
+                            filter,
+                            attributes.toArray(new String[attributes.size()])),
+                        "search"))
+                .getSearchEntries());
+      } catch (LDAPSearchException e) {
+        checkTimeout(e, "search");
+        if (e.getResultCode() != ResultCode.NO_SUCH_OBJECT) {
+          throw new RuntimeException("Failed to search entries under " + baseDn, e);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private boolean isAnyRecentlyWritten(String baseDn, String idAttribute, List<String> ids) {
+    return masterPoolConnection != ldapPoolConnection
+        && ids.stream()
+            .anyMatch(id -> isRecentlyWritten(String.format("%s=%s,%s", idAttribute, id, baseDn)));
+  }
+
   private Map<String, String> getAddress(String addressId) {
-    SearchResultEntry addressResult = getEntryByDn(getAddressDN(addressId));
+    SearchResultEntry addressResult =
+        getEntryByDn(getAddressDN(addressId), addressLdapMapper.getReadAttributes());
     return addressResult != null ? addressLdapMapper.mapFromSearchEntry(addressResult) : null;
   }
 }
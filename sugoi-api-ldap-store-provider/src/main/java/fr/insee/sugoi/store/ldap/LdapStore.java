@@ -13,22 +13,31 @@
 */
 package fr.insee.sugoi.store.ldap;
 
-import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPRequest;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import fr.insee.sugoi.core.deadline.RequestDeadline;
+import fr.insee.sugoi.core.exceptions.StoreTimeoutException;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.ldap.utils.mapper.AddressLdapMapper;
 import fr.insee.sugoi.ldap.utils.mapper.ApplicationLdapMapper;
 import fr.insee.sugoi.ldap.utils.mapper.GroupLdapMapper;
 import fr.insee.sugoi.ldap.utils.mapper.OrganizationLdapMapper;
 import fr.insee.sugoi.ldap.utils.mapper.UserLdapMapper;
+import io.micrometer.core.instrument.Metrics;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class LdapStore {
 
   protected LDAPConnectionPool ldapPoolConnection;
-  protected LDAPConnection ldapMonoConnection;
+
+  /** Writes shared by the readers and writers of all the realms */
+  protected static final RecentWrites recentWrites = new RecentWrites();
 
   protected static final Logger logger = LogManager.getLogger(LdapReaderStore.class);
 
@@ -40,6 +49,52 @@ public class LdapStore {
 
   protected Map<String, String> config;
 
+  /**
+   * Bound an operation by the deadline of the request. The operation is not sent if the deadline
+   * passed and is given up by the connection when the deadline comes before the response timeout
+   * of the realm. Searches also ask the server to stop at the deadline.
+   *
+   * @param request the operation to send
+   * @param operation name of the operation in the metrics
+   * @return the request
+   */
+  protected <T extends LDAPRequest> T withDeadline(T request, String operation) {
+    RequestDeadline.check(operation);
+    long remainingMillis = RequestDeadline.remainingMillis();
+    if (remainingMillis == Long.MAX_VALUE) {
+      return request;
+    }
+    String responseTimeout = config.get(LdapConfigKeys.RESPONSE_TIMEOUT);
+    if (responseTimeout == null
+        || responseTimeout.isBlank()
+        || Long.parseLong(responseTimeout.trim()) > remainingMillis) {
+      // a response timeout of 0 means no timeout
+      request.setResponseTimeoutMillis(Math.max(remainingMillis, 1));
+    }
+    if (request instanceof SearchRequest) {
+      long remainingSeconds = Math.max(TimeUnit.MILLISECONDS.toSeconds(remainingMillis), 1);
+      ((SearchRequest) request).setTimeLimitSeconds((int) Math.min(remainingSeconds, 3600));
+    }
+    return request;
+  }
+
+  /**
+   * Turn an operation which timed out into a StoreTimeoutException, counted by the
+   * sugoi.ldap.timeout metric. Other errors are left to the caller.
+   *
+   * @param e the error of the operation
+   * @param operation name of the operation in the metrics
+   * @throws StoreTimeoutException if the operation timed out on the connection or on the server
+   */
+  protected void checkTimeout(LDAPException e, String operation) {
+    if (e.getResultCode() == ResultCode.TIMEOUT
+        || e.getResultCode() == ResultCode.TIME_LIMIT_EXCEEDED) {
+      String realm = config.get(LdapConfigKeys.REALM_NAME);
+      Metrics.counter("sugoi.ldap.timeout", "realm", realm, "operation", operation).increment();
+      throw new StoreTimeoutException("Ldap " + operation + " on realm " + realm + " timed out", e);
+    }
+  }
+
   protected String getGroupSource(String appName) {
     if (config.get(LdapConfigKeys.GROUP_SOURCE_PATTERN) != null) {
       return config.get(LdapConfigKeys.GROUP_SOURCE_PATTERN).replace("{appliname}", appName);
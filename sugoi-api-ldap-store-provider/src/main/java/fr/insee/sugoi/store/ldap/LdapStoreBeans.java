@@ -13,12 +13,15 @@
 */
 package fr.insee.sugoi.store.ldap;
 
+import fr.insee.sugoi.core.configuration.GlobalKeysConfig;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.model.Realm;
 import fr.insee.sugoi.model.UserStorage;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -37,9 +40,33 @@ public class LdapStoreBeans {
   @Value("${fr.insee.sugoi.ldap.default.pool:}")
   private String defaultPoolSize;
 
+  @Value("${fr.insee.sugoi.ldap.default.bind-pool:${fr.insee.sugoi.ldap.default.pool:}}")
+  private String defaultBindPoolSize;
+
+  @Value("${fr.insee.sugoi.ldap.default.credentials-validation:bind}")
+  private String defaultCredentialsValidation;
+
   @Value("${fr.insee.sugoi.ldap.default.port:}")
   private String defaultPort;
 
+  @Value("${fr.insee.sugoi.ldap.default.server-set-strategy:round-robin}")
+  private String defaultServerSetStrategy;
+
+  @Value("${fr.insee.sugoi.ldap.default.max-connection-age:900}")
+  private String defaultMaxConnectionAge;
+
+  @Value("${fr.insee.sugoi.ldap.default.health-check-interval:60}")
+  private String defaultHealthCheckInterval;
+
+  @Value("${fr.insee.sugoi.ldap.default.connect-timeout:5000}")
+  private String defaultConnectTimeout;
+
+  @Value("${fr.insee.sugoi.ldap.default.response-timeout:30000}")
+  private String defaultResponseTimeout;
+
+  @Value("${fr.insee.sugoi.ldap.default.read-your-writes-window:5}")
+  private String defaultReadYourWritesWindow;
+
   @Value("${fr.insee.sugoi.ldap.default.group_filter_pattern:}")
   private String defaultGroupFilterPattern;
 
@@ -49,6 +76,18 @@ public class LdapStoreBeans {
   @Value("${fr.insee.sugoi.ldap.default.vlv.enabled:false}")
   private String vlvEnabled;
 
+  @Value("${fr.insee.sugoi.ldap.default.member-batch-size:200}")
+  private String defaultMemberBatchSize;
+
+  @Value("${fr.insee.sugoi.ldap.default.paged-search-session-timeout:300}")
+  private String defaultPagedSearchSessionTimeout;
+
+  @Value("${fr.insee.sugoi.ldap.default.paged-search-max-sessions:}")
+  private String defaultPagedSearchMaxSessions;
+
+  @Value("${fr.insee.sugoi.ldap.hydration-threads:0}")
+  private int hydrationThreads;
+
   @Value("${fr.insee.sugoi.ldap.default.user-object-classes:top,person}")
   private String defaultUserObjectClasses;
 
@@ -81,7 +120,9 @@ public class LdapStoreBeans {
   @Scope("prototype")
   public LdapReaderStore ldapReaderStore(Realm realm, UserStorage userStorage) {
     return new LdapReaderStore(
-        generateConfig(realm, userStorage), getCompleteMapping(realm, userStorage));
+        generateConfig(realm, userStorage),
+        getCompleteMapping(realm, userStorage),
+        ldapHydrationExecutor());
   }
 
   @Bean("LdapWriterStore")
@@ -89,7 +130,24 @@ public class LdapStoreBeans {
   @Scope("prototype")
   public LdapWriterStore ldapWriterStore(Realm realm, UserStorage userStorage) {
     return new LdapWriterStore(
-        generateConfig(realm, userStorage), getCompleteMapping(realm, userStorage));
+        generateConfig(realm, userStorage),
+        getCompleteMapping(realm, userStorage),
+        ldapHydrationExecutor());
+  }
+
+  /**
+   * Executor shared by all the ldap stores on which the addresses and organizations of the entries
+   * read are fetched
+   */
+  @Bean(name = "LdapHydrationExecutor", destroyMethod = "shutdown")
+  public ExecutorService ldapHydrationExecutor() {
+    return Executors.newFixedThreadPool(
+        hydrationThreads > 0 ? hydrationThreads : Runtime.getRuntime().availableProcessors() * 4,
+        runnable -> {
+          Thread thread = new Thread(runnable, "ldap-hydration");
+          thread.setDaemon(true);
+          return thread;
+        });
   }
 
   public Map<String, String> generateConfig(Realm realm, UserStorage userStorage) {
@@ -98,10 +156,51 @@ public class LdapStoreBeans {
         LdapConfigKeys.NAME,
         userStorage.getName() != null ? userStorage.getName() : realm.getName());
     config.put(LdapConfigKeys.URL, realm.getUrl());
+    config.put(LdapConfigKeys.READ_URL, realm.getProperties().get(LdapConfigKeys.READ_URL));
+    config.put(
+        LdapConfigKeys.READ_YOUR_WRITES_WINDOW,
+        realm.getProperties().get(LdapConfigKeys.READ_YOUR_WRITES_WINDOW) != null
+            ? realm.getProperties().get(LdapConfigKeys.READ_YOUR_WRITES_WINDOW)
+            : defaultReadYourWritesWindow);
     config.put(LdapConfigKeys.PORT, defaultPort);
     config.put(LdapConfigKeys.USERNAME, defaultUsername);
     config.put(LdapConfigKeys.PASSWORD, defaultPassword);
     config.put(LdapConfigKeys.POOL_SIZE, defaultPoolSize);
+    config.put(
+        LdapConfigKeys.BIND_POOL_SIZE,
+        realm.getProperties().get(LdapConfigKeys.BIND_POOL_SIZE) != null
+            ? realm.getProperties().get(LdapConfigKeys.BIND_POOL_SIZE)
+            : defaultBindPoolSize);
+    config.put(
+        LdapConfigKeys.CREDENTIALS_VALIDATION,
+        realm.getProperties().get(LdapConfigKeys.CREDENTIALS_VALIDATION) != null
+            ? realm.getProperties().get(LdapConfigKeys.CREDENTIALS_VALIDATION)
+            : defaultCredentialsValidation);
+    config.put(
+        LdapConfigKeys.SERVER_SET_STRATEGY,
+        realm.getProperties().get(LdapConfigKeys.SERVER_SET_STRATEGY) != null
+            ? realm.getProperties().get(LdapConfigKeys.SERVER_SET_STRATEGY)
+            : defaultServerSetStrategy);
+    config.put(
+        LdapConfigKeys.MAX_CONNECTION_AGE,
+        realm.getProperties().get(LdapConfigKeys.MAX_CONNECTION_AGE) != null
+            ? realm.getProperties().get(LdapConfigKeys.MAX_CONNECTION_AGE)
+            : defaultMaxConnectionAge);
+    config.put(
+        LdapConfigKeys.HEALTH_CHECK_INTERVAL,
+        realm.getProperties().get(LdapConfigKeys.HEALTH_CHECK_INTERVAL) != null
+            ? realm.getProperties().get(LdapConfigKeys.HEALTH_CHECK_INTERVAL)
+            : defaultHealthCheckInterval);
+    config.put(
+        LdapConfigKeys.CONNECT_TIMEOUT,
+        realm.getProperties().get(LdapConfigKeys.CONNECT_TIMEOUT) != null
+            ? realm.getProperties().get(LdapConfigKeys.CONNECT_TIMEOUT)
+            : defaultConnectTimeout);
+    config.put(
+        LdapConfigKeys.RESPONSE_TIMEOUT,
+        realm.getProperties().get(LdapConfigKeys.RESPONSE_TIMEOUT) != null
+            ? realm.getProperties().get(LdapConfigKeys.RESPONSE_TIMEOUT)
+            : defaultResponseTimeout);
     config.put(LdapConfigKeys.USER_SOURCE, userStorage.getUserSource());
     config.put(LdapConfigKeys.APP_SOURCE, realm.getAppSource());
     config.put(LdapConfigKeys.ORGANIZATION_SOURCE, userStorage.getOrganizationSource());
@@ -147,6 +246,27 @@ public class LdapStoreBeans {
         userStorage.getProperties().get(LdapConfigKeys.ADDRESS_OBJECT_CLASSES) != null
             ? userStorage.getProperties().get(LdapConfigKeys.ADDRESS_OBJECT_CLASSES)
             : defaultAddressObjectClasses);
+    config.put(
+        LdapConfigKeys.APP_MANAGED_ATTRIBUTE_KEYS_LIST,
+        realm.getProperties().get(LdapConfigKeys.APP_MANAGED_ATTRIBUTE_KEYS_LIST));
+    config.put(
+        LdapConfigKeys.MEMBER_BATCH_SIZE,
+        realm.getProperties().get(LdapConfigKeys.MEMBER_BATCH_SIZE) != null
+            ? realm.getProperties().get(LdapConfigKeys.MEMBER_BATCH_SIZE)
+            : defaultMemberBatchSize);
+    config.put(
+        LdapConfigKeys.PAGED_SEARCH_SESSION_TIMEOUT,
+        realm.getProperties().get(LdapConfigKeys.PAGED_SEARCH_SESSION_TIMEOUT) != null
+            ? realm.getProperties().get(LdapConfigKeys.PAGED_SEARCH_SESSION_TIMEOUT)
+            : defaultPagedSearchSessionTimeout);
+    config.put(
+        LdapConfigKeys.PAGED_SEARCH_MAX_SESSIONS,
+        realm.getProperties().get(LdapConfigKeys.PAGED_SEARCH_MAX_SESSIONS) != null
+            ? realm.getProperties().get(LdapConfigKeys.PAGED_SEARCH_MAX_SESSIONS)
+            : defaultPagedSearchMaxSessions);
+    config.put(
+        GlobalKeysConfig.ORGANIZATION_CACHE,
+        realm.getProperties().get(GlobalKeysConfig.ORGANIZATION_CACHE));
 
     return config;
   }
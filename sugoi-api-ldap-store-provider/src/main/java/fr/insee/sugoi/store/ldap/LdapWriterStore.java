@@ -47,6 +47,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class LdapWriterStore extends LdapStore implements WriterStore {
 
@@ -60,7 +62,13 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
 
   private LdapReaderStore ldapReaderStore;
 
-  public LdapWriterStore(Map<String, String> config, Map<String, Map<String, String>> mappings) {
+  /** Time during which the written entries are read on the master, 0 if reads are not split */
+  private long readYourWritesWindowMillis;
+
+  public LdapWriterStore(
+      Map<String, String> config,
+      Map<String, Map<String, String>> mappings,
+      ExecutorService hydrationExecutor) {
     try {
       this.ldapPoolConnection = LdapFactory.getConnectionPoolAuthenticated(config);
       this.config = config;
@@ -70,7 +78,16 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
       groupLdapMapper = new GroupLdapMapper(config, mappings.get("groupMapping"));
       applicationLdapMapper = new ApplicationLdapMapper(config, mappings.get("applicationMapping"));
       addressLdapMapper = new AddressLdapMapper(config);
-      ldapReaderStore = new LdapReaderStore(config, mappings);
+      // entries are read on the master before being modified, they are never searched
+      Map<String, String> masterConfig = new HashMap<>(config);
+      masterConfig.remove(LdapConfigKeys.READ_URL);
+      ldapReaderStore = new LdapReaderStore(masterConfig, mappings, hydrationExecutor, false);
+      readYourWritesWindowMillis =
+          LdapFactory.hasReplicas(config)
+                  && config.get(LdapConfigKeys.READ_YOUR_WRITES_WINDOW) != null
+              ? TimeUnit.SECONDS.toMillis(
+                  Long.valueOf(config.get(LdapConfigKeys.READ_YOUR_WRITES_WINDOW)))
+              : 0;
     } catch (LDAPException e) {
       throw new RuntimeException(e);
     }
@@ -88,7 +105,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
         deleteAddress(currentUser.getAddress().get("id"));
       }
       DeleteRequest dr = new DeleteRequest(getUserDN(id));
-      ldapPoolConnection.delete(dr);
+      delete(dr);
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to delete user " + id, e);
     }
@@ -107,7 +124,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
       }
       AddRequest userAddRequest =
           new AddRequest(getUserDN(user.getUsername()), userLdapMapper.mapToAttributes(user));
-      ldapPoolConnection.add(userAddRequest);
+      add(userAddRequest);
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to create user. Provider message : " + e.getMessage(), e);
     }
@@ -133,7 +150,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
         ModifyRequest mr =
             new ModifyRequest(
                 getUserDN(updatedUser.getUsername()), userLdapMapper.createMods(updatedUser));
-        ldapPoolConnection.modify(mr);
+        modify(mr);
       }
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to update user while writing to LDAP", e);
@@ -146,7 +163,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
     try {
       if (ldapReaderStore.getGroup(appName, groupName) != null) {
         DeleteRequest dr = new DeleteRequest(getGroupDN(appName, groupName));
-        ldapPoolConnection.delete(dr);
+        delete(dr);
       } else {
         throw new RuntimeException(groupName + "is not a group");
       }
@@ -165,12 +182,12 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
               new AddRequest(
                   getGroupSource(appName),
                   new Attribute("objectClass", "top", "organizationalUnit"));
-          ldapPoolConnection.add(groupsAR);
+          add(groupsAR);
         }
         AddRequest ar =
             new AddRequest(
                 getGroupDN(appName, group.getName()), groupLdapMapper.mapToAttributes(group));
-        ldapPoolConnection.add(ar);
+        add(ar);
       } else {
         throw new StoragePolicyNotMetException("Group pattern won't match");
       }
@@ -188,7 +205,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
             new ModifyRequest(
                 getGroupDN(appName, updatedGroup.getName()),
                 groupLdapMapper.createMods(updatedGroup));
-        ldapPoolConnection.modify(mr);
+        modify(mr);
       } else {
         throw new RuntimeException(updatedGroup.getName() + "is not a group");
       }
@@ -208,7 +225,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
         deleteAddress(currentOrganization.getAddress().get("id"));
       }
       DeleteRequest dr = new DeleteRequest(getOrganizationDN(name));
-      ldapPoolConnection.delete(dr);
+      delete(dr);
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to delete organisation " + name, e);
     }
@@ -229,7 +246,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new AddRequest(
               getOrganizationDN(organization.getIdentifiant()),
               organizationLdapMapper.mapToAttributes(organization));
-      ldapPoolConnection.add(ar);
+      add(ar);
     } catch (LDAPException e) {
       throw new RuntimeException(
           "Failed to create organization " + organization.getIdentifiant(), e);
@@ -260,7 +277,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new ModifyRequest(
               getOrganizationDN(updatedOrganization.getIdentifiant()),
               organizationLdapMapper.createMods(updatedOrganization));
-      ldapPoolConnection.modify(mr);
+      modify(mr);
     } catch (LDAPException e) {
       throw new RuntimeException(
           "Failed to update organization "
@@ -278,7 +295,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new ModifyRequest(
               getGroupDN(appName, groupName),
               new Modification(ModificationType.DELETE, "uniqueMember", getUserDN(userId)));
-      ldapPoolConnection.modify(mr);
+      modify(mr);
     } catch (LDAPException e) {
       if (!e.getResultCode().equals(ResultCode.NO_SUCH_ATTRIBUTE)) {
         throw new RuntimeException("Failed to add user to group " + groupName, e);
@@ -293,7 +310,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new ModifyRequest(
               getGroupDN(appName, groupName),
               new Modification(ModificationType.ADD, "uniqueMember", getUserDN(userId)));
-      ldapPoolConnection.modify(mr);
+      modify(mr);
     } catch (LDAPException e) {
       if (!e.getResultCode().equals(ResultCode.ATTRIBUTE_OR_VALUE_EXISTS)) {
         throw new RuntimeException("Failed to remove user to group " + groupName, e);
@@ -307,8 +324,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
     Modification mod =
         new Modification(ModificationType.REPLACE, "userPassword", generatedPassword);
     try {
-      ldapPoolConnection.modify(
-          "uid=" + user.getUsername() + "," + config.get(LdapConfigKeys.USER_SOURCE), mod);
+      modify("uid=" + user.getUsername() + "," + config.get(LdapConfigKeys.USER_SOURCE), mod);
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to reinit password for user " + user.getUsername(), e);
     }
@@ -319,8 +335,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
       User user, String password, PasswordChangeRequest pcr, List<SendMode> sendMode) {
     Modification mod = new Modification(ModificationType.REPLACE, "userPassword", password);
     try {
-      ldapPoolConnection.modify(
-          "uid=" + user.getUsername() + "," + config.get(LdapConfigKeys.USER_SOURCE), mod);
+      modify("uid=" + user.getUsername() + "," + config.get(LdapConfigKeys.USER_SOURCE), mod);
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to init password for user " + user.getUsername(), e);
     }
@@ -341,6 +356,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
       } else if (result.getResultCode().intValue() != 0) {
         throw new RuntimeException("Unexpected error when changing password");
       }
+      recordWrite(pmer.getUserIdentity());
     } catch (NumberFormatException | LDAPException e) {
       e.printStackTrace();
     }
@@ -352,8 +368,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
         new Modification(
             ModificationType.REPLACE, "pwdReset", Boolean.toString(isReset).toUpperCase());
     try {
-      ldapPoolConnection.modify(
-          "uid=" + user.getUsername() + "," + config.get(LdapConfigKeys.USER_SOURCE), mod);
+      modify("uid=" + user.getUsername() + "," + config.get(LdapConfigKeys.USER_SOURCE), mod);
     } catch (LDAPException e) {
       e.printStackTrace();
     }
@@ -367,12 +382,12 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new AddRequest(
               getApplicationDN(application.getName()),
               applicationLdapMapper.mapToAttributes(application));
-      ldapPoolConnection.add(ar);
+      add(ar);
       AddRequest groupsAR =
           new AddRequest(
               getGroupSource(application.getName()),
               new Attribute("objectClass", "top", "organizationalUnit"));
-      ldapPoolConnection.add(groupsAR);
+      add(groupsAR);
       application.getGroups().stream().forEach(group -> createGroup(application.getName(), group));
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to create application" + application.getName(), e);
@@ -387,7 +402,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new ModifyRequest(
               getApplicationDN(updatedApplication.getName()),
               applicationLdapMapper.createMods(updatedApplication));
-      ldapPoolConnection.modify(mr);
+      modify(mr);
       List<Group> alreadyExistingGroups =
           ldapReaderStore.getApplication(updatedApplication.getName()).getGroups();
       for (Group existingGroup : alreadyExistingGroups) {
@@ -422,6 +437,10 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
       // DeleteRequest dr = new DeleteRequest(getApplicationDN(applicationName));
       // ldapPoolConnection.delete(dr);
       (new SubtreeDeleter()).delete(ldapPoolConnection, getApplicationDN(applicationName));
+      recentWrites.recordSubtree(
+          config.get(LdapConfigKeys.REALM_NAME),
+          getApplicationDN(applicationName),
+          readYourWritesWindowMillis);
     } catch (LDAPException e) {
       throw new RuntimeException("Failed to delete application " + applicationName, e);
     }
@@ -439,19 +458,19 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
     AddRequest addressAddRequest =
         new AddRequest(
             getAddressDN(addressUUID.toString()), addressLdapMapper.mapToAttributes(address));
-    ldapPoolConnection.add(addressAddRequest);
+    add(addressAddRequest);
     return addressUUID;
   }
 
   private void updateAddress(String id, Map<String, String> newAddress) throws LDAPException {
     ModifyRequest modifyRequest =
         new ModifyRequest(getAddressDN(id), addressLdapMapper.createMods(newAddress));
-    ldapPoolConnection.modify(modifyRequest);
+    modify(modifyRequest);
   }
 
   private void deleteAddress(String id) throws LDAPException {
     DeleteRequest deleteRequest = new DeleteRequest(getAddressDN(id));
-    ldapPoolConnection.delete(deleteRequest);
+    delete(deleteRequest);
   }
 
   @Override
@@ -461,7 +480,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new ModifyRequest(
               getUserDN(userId),
               new Modification(ModificationType.ADD, attributeKey, attributeValue));
-      ldapPoolConnection.modify(modifyAttributeRequest);
+      modify(modifyAttributeRequest);
     } catch (LDAPException e) {
       throw new RuntimeException(
           "Failed to update user attribute "
@@ -480,7 +499,7 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           new ModifyRequest(
               getUserDN(userId),
               new Modification(ModificationType.DELETE, attributeKey, attributeValue));
-      ldapPoolConnection.modify(modifyAttributeRequest);
+      modify(modifyAttributeRequest);
     } catch (LDAPException e) {
       if (e.getResultCode().equals(ResultCode.NO_SUCH_ATTRIBUTE)) {
         throw new AppManagedAttributeException("Cannot delete, attribute not found", e);
@@ -494,4 +513,55 @@ public class LdapWriterStore extends LdapStore implements WriterStore {
           e);
     }
   }
+
+  /**
+   * The request deadline is checked once before the whole write by the DeadlineWriterStore, the
+   * steps of the write are only bounded by the response timeout of the realm.
+   */
+  private void add(AddRequest addRequest) throws LDAPException {
+    try {
+      ldapPoolConnection.add(addRequest);
+    } catch (LDAPException e) {
+      checkTimeout(e, addRequest.getDN(), "add");
+      throw e;
+    }
+    recordWrite(addRequest.getDN());
+  }
+
+  private void modify(ModifyRequest modifyRequest) throws LDAPException {
+    try {
+      ldapPoolConnection.modify(modifyRequest);
+    } catch (LDAPException e) {
+      checkTimeout(e, modifyRequest.getDN(), "modify");
+      throw e;
+    }
+    recordWrite(modifyRequest.getDN());
+  }
+
+  private void modify(String dn, Modification modification) throws LDAPException {
+    modify(new ModifyRequest(dn, modification));
+  }
+
+  private void delete(DeleteRequest deleteRequest) throws LDAPException {
+    try {
+      ldapPoolConnection.delete(deleteRequest);
+    } catch (LDAPException e) {
+      checkTimeout(e, deleteRequest.getDN(), "delete");
+      throw e;
+    }
+    recordWrite(deleteRequest.getDN());
+  }
+
+  /** A write which timed out may still be applied by the server */
+  private void checkTimeout(LDAPException e, String dn, String operation) {
+    if (e.getResultCode() == ResultCode.TIMEOUT) {
+      recordWrite(dn);
+    }
+    checkTimeout(e, operation);
+  }
+
+  /** Read the entry on the master until the replicas are expected to have the write */
+  private void recordWrite(String dn) {
+    recentWrites.record(config.get(LdapConfigKeys.REALM_NAME), dn, readYourWritesWindowMillis);
+  }
 }
@@ -0,0 +1,285 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.store.ldap;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import fr.insee.sugoi.core.exceptions.SearchExpiredException;
+import fr.insee.sugoi.model.paging.PageResult;
+import fr.insee.sugoi.model.paging.PageableResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Run searches on connections of a pool. When a search returns a Simple Paged Results cookie, the
+ * connection is kept aside with the cursor until the next page is requested, since the cookie is
+ * only valid on the connection which issued it. The search token returned to the caller is then
+ * prefixed by the id of the session. Sessions idle for more than the session timeout are abandoned
+ * and their connection is given back to the pool, and so is the session idle for the longest time
+ * when a new session would exceed the maximum number of sessions. The next page of an abandoned
+ * session cannot be read anymore, the search has to start again from the first page.
+ */
+public class PagedSearchSessionManager {
+
+  private static final Logger logger = LogManager.getLogger(PagedSearchSessionManager.class);
+
+  public static final String ACTIVE_SESSIONS_METRIC = "sugoi.ldap.paged.search.sessions";
+
+  private static final String SESSION_SEPARATOR = ".";
+
+  private static final ScheduledThreadPoolExecutor reaper =
+      new ScheduledThreadPoolExecutor(
+          1,
+          runnable -> {
+            Thread thread = new Thread(runnable, "ldap-paged-search-reaper");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  static {
+    reaper.setRemoveOnCancelPolicy(true);
+  }
+
+  private final LDAPConnectionPool pool;
+  private final boolean pagedResultsEnabled;
+  private final long sessionTimeoutMillis;
+  private final int maxSessions;
+  private final Map<String, PagedSearchSession> sessions = new ConcurrentHashMap<>();
+  private final Gauge activeSessionsGauge;
+  private final ScheduledFuture<?> reaperTask;
+
+  /**
+   * @param pool pool where connections are checked out
+   * @param pagedResultsEnabled false if searches use VLV, sessions are then never kept
+   * @param sessionTimeoutSeconds time after which an unused session is abandoned
+   * @param maxSessions maximum number of sessions kept at the same time, each one holding a
+   *     connection of the pool
+   * @param realm name of the realm, used as a metric tag
+   * @param userStorage name of the userStorage, used as a metric tag
+   */
+  public PagedSearchSessionManager(
+      LDAPConnectionPool pool,
+      boolean pagedResultsEnabled,
+      long sessionTimeoutSeconds,
+      int maxSessions,
+      String realm,
+      String userStorage) {
+    this.pool = pool;
+    this.pagedResultsEnabled = pagedResultsEnabled;
+    this.sessionTimeoutMillis = TimeUnit.SECONDS.toMillis(sessionTimeoutSeconds);
+    this.maxSessions = Math.max(maxSessions, 1);
+    if (pagedResultsEnabled) {
+      long reapPeriod = Math.max(1, sessionTimeoutSeconds / 2);
+      // the reaper does not keep a manager no longer used from being collected
+      WeakReference<PagedSearchSessionManager> manager = new WeakReference<>(this);
+      ScheduledFuture<?>[] task = new ScheduledFuture<?>[1];
+      task[0] =
+          reaper.scheduleWithFixedDelay(
+              () -> {
+                PagedSearchSessionManager current = manager.get();
+                if (current != null) {
+                  current.reclaimIdleSessions();
+                } else {
+                  task[0].cancel(false);
+                }
+              },
+              reapPeriod,
+              reapPeriod,
+              TimeUnit.SECONDS);
+      this.reaperTask = task[0];
+    } else {
+      this.reaperTask = null;
+    }
+    this.activeSessionsGauge =
+        Gauge.builder(
+                ACTIVE_SESSIONS_METRIC, this, PagedSearchSessionManager::getActiveSessionCount)
+            .tags("realm", String.valueOf(realm), "userStorage", String.valueOf(userStorage))
+            .strongReference(false)
+            .register(Metrics.globalRegistry);
+  }
+
+  /**
+   * Get the connection on which the page requested by pageable must be searched. If the search
+   * token of pageable belongs to a session, the connection of the session is used and the session
+   * id is removed from the search token. Otherwise a connection is checked out from the pool.
+   *
+   * @param pageable the requested page, its search token is replaced by the paged results cookie
+   * @return the session to use for the search
+   * @throws LDAPException if no connection can be checked out from the pool
+   * @throws SearchExpiredException if the search token belongs to a session which was abandoned,
+   *     its cookie is only valid on the connection of the session
+   */
+  public PagedSearchSession checkout(PageableResult pageable) throws LDAPException {
+    String searchToken = pageable.getSearchToken();
+    if (pagedResultsEnabled && searchToken != null && !searchToken.isBlank()) {
+      int separator = searchToken.indexOf(SESSION_SEPARATOR);
+      PagedSearchSession session =
+          separator > 0 ? sessions.remove(searchToken.substring(0, separator)) : null;
+      if (session == null) {
+        logger.debug("Paged search session of token {} expired", searchToken);
+        throw new SearchExpiredException(
+            "The search expired, it has to start again from the first page");
+      }
+      pageable.setSearchToken(searchToken.substring(separator + 1));
+      return session;
+    }
+    return new PagedSearchSession(UUID.randomUUID().toString(), pool.getConnection());
+  }
+
+  /**
+   * Give back a session after a successful search. If the result has more pages, the session is
+   * kept and its id is added to the search token of page, otherwise its connection is released.
+   *
+   * @param session the session used for the search
+   * @param page the page built from the search result
+   */
+  public void checkin(PagedSearchSession session, PageResult<?> page) {
+    if (pagedResultsEnabled
+        && session.cookie != null
+        && page.isHasMoreResult()
+        && page.getSearchToken() != null) {
+      session.lastAccess = System.currentTimeMillis();
+      sessions.put(session.id, session);
+      page.setSearchToken(session.id + SESSION_SEPARATOR + page.getSearchToken());
+      while (sessions.size() > maxSessions && reclaimOldestSession()) {
+        // a new session takes the connection of the session idle for the longest time
+      }
+    } else {
+      pool.releaseConnection(session.connection);
+    }
+  }
+
+  /**
+   * Give back a session after a failed search. Its connection is released or closed depending on
+   * the exception.
+   */
+  public void release(PagedSearchSession session, LDAPException exception) {
+    pool.releaseConnectionAfterException(session.connection, exception);
+  }
+
+  public int getActiveSessionCount() {
+    return sessions.size();
+  }
+
+  /**
+   * Abandon all the sessions and stop reclaiming idle sessions, once the manager is no longer used
+   */
+  public void close() {
+    if (reaperTask != null) {
+      reaperTask.cancel(false);
+    }
+    Metrics.globalRegistry.remove(activeSessionsGauge);
+    sessions.forEach(
+        (sessionId, session) -> {
+          if (sessions.remove(sessionId, session)) {
+            abandon(session);
+          }
+        });
+  }
+
+  /** Abandon the server side cursors of sessions idle for too long and release their connection */
+  public void reclaimIdleSessions() {
+    long expiration = System.currentTimeMillis() - sessionTimeoutMillis;
+    sessions.forEach(
+        (sessionId, session) -> {
+          if (session.lastAccess < expiration && sessions.remove(sessionId, session)) {
+            logger.debug("Reclaiming idle paged search session {}", sessionId);
+            abandon(session);
+          }
+        });
+  }
+
+  /** @return false if there is no session left to reclaim */
+  private boolean reclaimOldestSession() {
+    PagedSearchSession oldest = null;
+    for (PagedSearchSession session : sessions.values()) {
+      if (oldest == null || session.lastAccess < oldest.lastAccess) {
+        oldest = session;
+      }
+    }
+    if (oldest == null) {
+      return false;
+    }
+    if (sessions.remove(oldest.id, oldest)) {
+      logger.debug("Too many paged search sessions, reclaiming session {}", oldest.id);
+      abandon(oldest);
+    }
+    return true;
+  }
+
+  private void abandon(PagedSearchSession session) {
+    try {
+      // A page size of 0 tells the server to free the cursor
+      SearchRequest abandonRequest = session.request.duplicate();
+      abandonRequest.replaceControl(new SimplePagedResultsControl(0, session.cookie, false));
+      session.connection.search(abandonRequest);
+      pool.releaseConnection(session.connection);
+    } catch (LDAPException e) {
+      pool.releaseConnectionAfterException(session.connection, e);
+    }
+  }
+
+  /** A connection used by a paged search and the cursor it holds */
+  public static class PagedSearchSession {
+
+    private final String id;
+    private final LDAPConnection connection;
+    private SearchRequest request;
+    private ASN1OctetString cookie;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    private PagedSearchSession(String id, LDAPConnection connection) {
+      this.id = id;
+      this.connection = connection;
+    }
+
+    /**
+     * Execute the search on the connection of the session and remember the returned cookie
+     *
+     * @param searchRequest the search to execute
+     * @return the search result
+     * @throws LDAPSearchException if the search fails
+     */
+    public SearchResult search(SearchRequest searchRequest) throws LDAPSearchException {
+      SearchResult searchResult = connection.search(searchRequest);
+      request = searchRequest;
+      cookie = null;
+      if (searchResult.getResponseControls() != null) {
+        for (Control control : searchResult.getResponseControls()) {
+          if (control instanceof SimplePagedResultsControl
+              && ((SimplePagedResultsControl) control).getCookie().getValueLength() > 0) {
+            cookie = ((SimplePagedResultsControl) control).getCookie();
+          }
+        }
+      }
+      return searchResult;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.store.ldap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entries recently written on the master of a realm. Until the window given with a write is over,
+ * the entry, or the subtree for a subtree deletion, is read on the master so that the replicas not
+ * yet replicated do not show it as it was before the write.
+ */
+public class RecentWrites {
+
+  private final Map<String, Long> entries = new ConcurrentHashMap<>();
+
+  private final Map<String, Long> subtrees = new ConcurrentHashMap<>();
+
+  private volatile long lastPurge = System.nanoTime();
+
+  /**
+   * @param realm name of the realm
+   * @param dn DN of the written entry
+   * @param windowMillis time in milliseconds during which the entry is read on the master, nothing
+   *     is recorded if not positive
+   */
+  public void record(String realm, String dn, long windowMillis) {
+    record(entries, realm, dn, windowMillis);
+  }
+
+  /**
+   * @param realm name of the realm
+   * @param dn DN of the root of the deleted subtree
+   * @param windowMillis time in milliseconds during which the entries of the subtree are read on
+   *     the master, nothing is recorded if not positive
+   */
+  public void recordSubtree(String realm, String dn, long windowMillis) {
+    record(subtrees, realm, dn, windowMillis);
+  }
+
+  /**
+   * @param realm name of the realm
+   * @param dn DN of an entry
+   * @return true if the entry should be read on the master
+   */
+  public boolean isRecent(String realm, String dn) {
+    long now = System.nanoTime();
+    if (isPending(entries, getKey(realm, dn), now)) {
+      return true;
+    }
+    if (subtrees.isEmpty()) {
+      return false;
+    }
+    String ancestor = normalize(dn);
+    while (!isPending(subtrees, realm + "|" + ancestor, now)) {
+      int separator = ancestor.indexOf(',');
+      if (separator == -1) {
+        return false;
+      }
+      ancestor = ancestor.substring(separator + 1);
+    }
+    return true;
+  }
+
+  private void record(Map<String, Long> writes, String realm, String dn, long windowMillis) {
+    if (windowMillis <= 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    writes.put(getKey(realm, dn), now + TimeUnit.MILLISECONDS.toNanos(windowMillis));
+    purge(now);
+  }
+
+  private boolean isPending(Map<String, Long> writes, String key, long now) {
+    Long expiration = writes.get(key);
+    if (expiration == null) {
+      return false;
+    }
+    if (expiration - now > 0) {
+      return true;
+    }
+    writes.remove(key, expiration);
+    return false;
+  }
+
+  /** Remove the writes whose window is over, at most once per second */
+  private void purge(long now) {
+    if (now - lastPurge < TimeUnit.SECONDS.toNanos(1)) {
+      return;
+    }
+    lastPurge = now;
+    entries.values().removeIf(expiration -> expiration - now <= 0);
+    subtrees.values().removeIf(expiration -> expiration - now <= 0);
+  }
+
+  private String getKey(String realm, String dn) {
+    return realm + "|" + normalize(dn);
+  }
+
+  private String normalize(String dn) {
+    return dn.replace(", ", ",").toLowerCase();
+  }
+}
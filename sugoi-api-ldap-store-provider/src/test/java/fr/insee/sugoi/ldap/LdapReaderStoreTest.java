@@ -15,8 +15,11 @@ package fr.insee.sugoi.ldap;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import fr.insee.sugoi.core.exceptions.SearchExpiredException;
 import fr.insee.sugoi.model.Application;
 import fr.insee.sugoi.model.Group;
 import fr.insee.sugoi.model.Organization;
@@ -27,6 +30,7 @@ import fr.insee.sugoi.model.paging.PageResult;
 import fr.insee.sugoi.model.paging.PageableResult;
 import fr.insee.sugoi.store.ldap.LdapReaderStore;
 import fr.insee.sugoi.store.ldap.LdapStoreBeans;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -152,6 +156,24 @@ public class LdapReaderStoreTest {
     assertThat("Suborga must have address", suborga.getAddress().get("Ligne1"), is("Insee"));
   }
 
+  @Test
+  public void testGetOrganizationStopsOnParentOrganizationLoop() {
+    Organization organization = ldapReaderStore.getOrganization("boucle1");
+    assertThat("Should get boucle1", organization.getIdentifiant(), is("boucle1"));
+    assertThat(
+        "Should get parent boucle2",
+        organization.getOrganization().getIdentifiant(),
+        is("boucle2"));
+    assertThat(
+        "Loop should end with the identifiant of boucle1",
+        organization.getOrganization().getOrganization().getIdentifiant(),
+        is("boucle1"));
+    assertThat(
+        "Loop should not be followed further",
+        organization.getOrganization().getOrganization().getOrganization(),
+        is(nullValue()));
+  }
+
   @Test
   public void testGetNonexistentOrganization() {
     assertThat("Should get null", ldapReaderStore.getOrganization("nottesto"), is(nullValue()));
@@ -212,6 +234,28 @@ public class LdapReaderStoreTest {
     assertThat("Should get null", ldapReaderStore.getUser("nottestc"), is(nullValue()));
   }
 
+  @Test
+  public void testExists() {
+    assertThat("testc exists", ldapReaderStore.userExists("testc"), is(true));
+    assertThat("nottestc does not exist", ldapReaderStore.userExists("nottestc"), is(false));
+    assertThat("testo exists", ldapReaderStore.organizationExists("testo"), is(true));
+    assertThat(
+        "nottesto does not exist", ldapReaderStore.organizationExists("nottesto"), is(false));
+    assertThat("Applitest exists", ldapReaderStore.applicationExists("Applitest"), is(true));
+    assertThat(
+        "Notapplitest does not exist",
+        ldapReaderStore.applicationExists("Notapplitest"),
+        is(false));
+    assertThat(
+        "Utilisateurs_Applitest exists",
+        ldapReaderStore.groupExists("Applitest", "Utilisateurs_Applitest"),
+        is(true));
+    assertThat(
+        "Group of a missing application does not exist",
+        ldapReaderStore.groupExists("Notapplitest", "Utilisateurs_Notapplitest"),
+        is(false));
+  }
+
   @Test
   public void testSearchAllUsers() {
     PageableResult pageableResult = new PageableResult();
@@ -224,6 +268,76 @@ public class LdapReaderStoreTest {
         users.stream().anyMatch(user -> user.getUsername().equals("testc")));
   }
 
+  @Test
+  public void testSearchUsersOnSeveralPages() {
+    PageableResult pageableResult = new PageableResult(1, 0, null);
+    PageResult<User> firstPage = ldapReaderStore.searchUsers(new User(), pageableResult, "AND");
+    assertThat("Should have more results", firstPage.isHasMoreResult(), is(true));
+    PageResult<User> secondPage =
+        ldapReaderStore.searchUsers(
+            new User(), new PageableResult(1, 0, firstPage.getSearchToken()), "AND");
+    assertThat("Should find one result", secondPage.getResults().size(), is(1));
+    assertThat(
+        "Should find another user",
+        secondPage.getResults().get(0).getUsername(),
+        not(firstPage.getResults().get(0).getUsername()));
+  }
+
+  @Test
+  public void testSearchUsersWithUnknownSessionFails() {
+    PageResult<User> firstPage =
+        ldapReaderStore.searchUsers(new User(), new PageableResult(1, 0, null), "AND");
+    String cookie =
+        firstPage.getSearchToken().substring(firstPage.getSearchToken().indexOf('.') + 1);
+    assertThrows(
+        SearchExpiredException.class,
+        () ->
+            ldapReaderStore.searchUsers(
+                new User(), new PageableResult(1, 0, "unknown." + cookie), "AND"));
+    assertThrows(
+        SearchExpiredException.class,
+        () -> ldapReaderStore.searchUsers(new User(), new PageableResult(1, 0, cookie), "AND"));
+  }
+
+  @Test
+  public void testOldestSessionIsReclaimedPastMaxSessions() throws InterruptedException {
+    // the pool of the test has 10 connections so at most 5 searches are kept in progress
+    List<String> searchTokens = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      searchTokens.add(
+          ldapReaderStore
+              .searchUsers(new User(), new PageableResult(1, 0, null), "AND")
+              .getSearchToken());
+      Thread.sleep(5);
+    }
+    assertThrows(
+        SearchExpiredException.class,
+        () ->
+            ldapReaderStore.searchUsers(
+                new User(), new PageableResult(1, 0, searchTokens.get(0)), "AND"));
+    assertThat(
+        "Should read the next page of the latest search",
+        ldapReaderStore
+            .searchUsers(new User(), new PageableResult(1, 0, searchTokens.get(5)), "AND")
+            .getResults()
+            .size(),
+        is(1));
+  }
+
+  @Test
+  public void testDestroyedStoreAbandonsSessions() {
+    String searchToken =
+        ldapReaderStore
+            .searchUsers(new User(), new PageableResult(1, 0, null), "AND")
+            .getSearchToken();
+    ldapReaderStore.destroy();
+    assertThrows(
+        SearchExpiredException.class,
+        () ->
+            ldapReaderStore.searchUsers(
+                new User(), new PageableResult(1, 0, searchToken), "AND"));
+  }
+
   @Test
   public void testSearchUserWithMatchingMail() {
     PageableResult pageableResult = new PageableResult();
@@ -319,6 +433,25 @@ public class LdapReaderStoreTest {
     assertThat("Should be readers", users.get(0).getUsername(), is("testc"));
   }
 
+  @Test
+  public void testGetUsersInGroupSameAsGetUser() {
+    List<User> users =
+        ldapReaderStore.getUsersInGroup("Applitest", "Reader_Applitest").getResults();
+    assertThat("Should find 2 elements", users.size(), is(2));
+    for (User user : users) {
+      User expectedUser = ldapReaderStore.getUser(user.getUsername());
+      assertThat("Should have the same mail", user.getMail(), is(expectedUser.getMail()));
+      assertThat("Should have the same address", user.getAddress(), is(expectedUser.getAddress()));
+      assertThat(
+          "Should have the same organization",
+          user.getOrganization() != null ? user.getOrganization().getIdentifiant() : null,
+          is(
+              expectedUser.getOrganization() != null
+                  ? expectedUser.getOrganization().getIdentifiant()
+                  : null));
+    }
+  }
+
   @Test
   public void validateCredential() {
     User user = ldapReaderStore.getUser("testc");
@@ -0,0 +1,66 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import fr.insee.sugoi.store.ldap.RecentWrites;
+import org.junit.jupiter.api.Test;
+
+public class RecentWritesTest {
+
+  private static final String USER = "uid=testc,ou=contacts,ou=clients_domaine1,o=insee,c=fr";
+
+  @Test
+  public void testWrittenEntryIsRecentDuringWindow() throws InterruptedException {
+    RecentWrites recentWrites = new RecentWrites();
+    recentWrites.record("domaine1", USER, 100);
+    assertThat(
+        "Entry should be recent", recentWrites.isRecent("domaine1", USER.toUpperCase()), is(true));
+    assertThat(
+        "Entry should only be recent in its realm",
+        recentWrites.isRecent("domaine2", USER),
+        is(false));
+    Thread.sleep(200);
+    assertThat(
+        "Entry should not be recent anymore", recentWrites.isRecent("domaine1", USER), is(false));
+  }
+
+  @Test
+  public void testNothingRecordedWithoutWindow() {
+    RecentWrites recentWrites = new RecentWrites();
+    recentWrites.record("domaine1", USER, 0);
+    assertThat("Entry should not be recent", recentWrites.isRecent("domaine1", USER), is(false));
+  }
+
+  @Test
+  public void testDeletedSubtreeIsRecent() {
+    RecentWrites recentWrites = new RecentWrites();
+    recentWrites.recordSubtree("domaine1", "ou=Applic,ou=Applications,o=insee,c=fr", 1000);
+    assertThat(
+        "Entry under the subtree should be recent",
+        recentWrites.isRecent(
+            "domaine1", "cn=Admin_Applic,ou=Applic_Objets,ou=Applic,ou=Applications,o=insee,c=fr"),
+        is(true));
+    assertThat(
+        "Root of the subtree should be recent",
+        recentWrites.isRecent("domaine1", "ou=Applic,ou=Applications,o=insee,c=fr"),
+        is(true));
+    assertThat(
+        "Entry outside the subtree should not be recent",
+        recentWrites.isRecent("domaine1", "ou=Other,ou=Applications,o=insee,c=fr"),
+        is(false));
+  }
+}
@@ -13,27 +13,69 @@
 */
 package fr.insee.sugoi.ldap.utils;
 
+import com.unboundid.ldap.sdk.BindRequest;
 import com.unboundid.ldap.sdk.BindResult;
+import com.unboundid.ldap.sdk.CompareResult;
+import com.unboundid.ldap.sdk.GetEntryLDAPConnectionPoolHealthCheck;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
 import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10RequestControl;
+import com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10ResponseControl;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
-import java.util.HashMap;
+import io.micrometer.core.instrument.Metrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Component;
 
 @Component
 public class LdapFactory {
 
-  // private static final Logger logger = LogManager.getLogger(LdapUtils.class);
+  private static final Logger logger = LogManager.getLogger(LdapFactory.class);
 
-  private static final Map<String, LDAPConnectionPool> openLdapPoolConnection = new HashMap<>();
-  private static final Map<String, String> openLdapPoolConnectionConfig = new HashMap<>();
-  private static final Map<String, String> openLdapMonoConnectionConfig = new HashMap<>();
-  private static final Map<String, LDAPConnection> openLdapMonoConnection = new HashMap<>();
+  /** Credentials are checked by binding as the user */
+  public static final String BIND_VALIDATION = "bind";
+
+  /** Credentials are checked by binding with the password policy control */
+  public static final String PASSWORD_POLICY_VALIDATION = "bind-ppolicy";
+
+  /** Credentials are checked by comparing the userPassword of the user as the realm user */
+  public static final String COMPARE_VALIDATION = "compare";
+
+  private static final String VALID_CREDENTIALS = "success";
+
+  private static final String NO_PASSWORD_POLICY_STATE = "none";
+
+  /** Time between two checks of the connections still used of a pool replaced by a new config */
+  private static final long POOL_DRAIN_DELAY_MILLIS = 30000;
 
   /**
-   * Give an unauthenticated Ldap Connection Pool
+   * Time after which a pool replaced by a new configuration is closed even if some connections are
+   * still used, twice the default timeout of the paged search sessions
+   */
+  private static final long POOL_MAX_DRAIN_MILLIS = 600000;
+
+  /** Maximum time the health check waits for the root DSE of a server */
+  private static final int HEALTH_CHECK_TIMEOUT_MILLIS = 5000;
+
+  private static final LdapPoolRegistry poolRegistry =
+      new LdapPoolRegistry(POOL_DRAIN_DELAY_MILLIS, POOL_MAX_DRAIN_MILLIS);
+
+  /**
+   * Give an unauthenticated Ldap Connection Pool. The pool is shared with the other userStorages
+   * reaching the same servers.
    *
    * @param url
    * @return
@@ -41,60 +83,47 @@ public class LdapFactory {
    */
   public static LDAPConnectionPool getConnectionPool(Map<String, String> config)
       throws LDAPException {
-    // Check if a ldap connection pool already exist for this userStorage and create
-    // it if it doesn't exist
-    String key =
-        config.get(LdapConfigKeys.REALM_NAME)
-            + "_"
-            + config.get(LdapConfigKeys.NAME)
-            + "_"
-            + config.hashCode()
-            + "_R";
-    String name =
-        config.get(LdapConfigKeys.REALM_NAME) + "_" + config.get(LdapConfigKeys.NAME) + "_R";
-
-    if (!openLdapPoolConnectionConfig.containsKey(key)) {
-      if (openLdapPoolConnection.containsKey(name)) {
-        openLdapPoolConnection.get(name).close();
-      }
-      openLdapPoolConnectionConfig.put(key, name);
-      openLdapPoolConnection.put(
-          name,
-          new LDAPConnectionPool(
-              new LDAPConnection(
-                  config.get(LdapConfigKeys.URL), Integer.valueOf(config.get(LdapConfigKeys.PORT))),
-              Integer.valueOf(config.get(LdapConfigKeys.POOL_SIZE))));
-    }
-    return openLdapPoolConnection.get(name);
+    return getConnectionPool(config, config.get(LdapConfigKeys.URL), "_R");
   }
 
-  public static LDAPConnection getSingleConnection(Map<String, String> config)
+  /**
+   * Give an unauthenticated Ldap Connection Pool on the read servers of the realm, the same pool as
+   * getConnectionPool if the realm has no read url.
+   *
+   * @param config
+   * @return
+   * @throws LDAPException
+   */
+  public static LDAPConnectionPool getReplicaConnectionPool(Map<String, String> config)
       throws LDAPException {
-    String key =
-        config.get(LdapConfigKeys.REALM_NAME)
-            + "_"
-            + config.get(LdapConfigKeys.NAME)
-            + "_"
-            + config.hashCode()
-            + "_R";
-    String name =
-        config.get(LdapConfigKeys.REALM_NAME) + "_" + config.get(LdapConfigKeys.NAME) + "_R";
+    return hasReplicas(config)
+        ? getConnectionPool(config, config.get(LdapConfigKeys.READ_URL), "_RO")
+        : getConnectionPool(config);
+  }
 
-    if (!openLdapMonoConnectionConfig.containsKey(key)) {
-      if (openLdapMonoConnection.containsKey(name)) {
-        openLdapMonoConnection.get(name).close();
-      }
-      openLdapMonoConnectionConfig.put(key, name);
-      openLdapMonoConnection.put(
-          name,
-          new LDAPConnection(
-              config.get(LdapConfigKeys.URL), Integer.valueOf(config.get(LdapConfigKeys.PORT))));
-    }
-    return openLdapMonoConnection.get(name);
+  /**
+   * @param config
+   * @return true if the reads of the realm are made on other servers than the writes
+   */
+  public static boolean hasReplicas(Map<String, String> config) {
+    String readUrl = config.get(LdapConfigKeys.READ_URL);
+    return readUrl != null && !readUrl.isBlank();
+  }
+
+  private static LDAPConnectionPool getConnectionPool(
+      Map<String, String> config, String url, String suffix) throws LDAPException {
+    String name =
+        config.get(LdapConfigKeys.REALM_NAME) + "_" + config.get(LdapConfigKeys.NAME) + suffix;
+    String endpoint = getEndpoint(config, url);
+    return poolRegistry.acquire(
+        name,
+        endpoint + "|" + getPoolOptions(config),
+        () -> createPool(config, url, null, endpoint));
   }
 
   /**
-   * Give a Ldap Connection Pool
+   * Give a Ldap Connection Pool. The pool is shared with the other userStorages reaching the same
+   * servers as the same user.
    *
    * @param url
    * @return
@@ -102,75 +131,289 @@ public class LdapFactory {
    */
   public static LDAPConnectionPool getConnectionPoolAuthenticated(Map<String, String> config)
       throws LDAPException {
-    // Check if a ldap connection pool already exist for this userStorage and create
-    // it if it doesn't exist
     String name =
         config.get(LdapConfigKeys.REALM_NAME) + "_" + config.get(LdapConfigKeys.NAME) + "_RW";
-    String key =
-        config.get(LdapConfigKeys.REALM_NAME)
-            + "_"
-            + config.get(LdapConfigKeys.NAME)
-            + "_"
-            + config.hashCode()
-            + "_RW";
+    String url = config.get(LdapConfigKeys.URL);
+    String endpoint = getEndpoint(config, url);
+    String identity = config.get(LdapConfigKeys.USERNAME);
+    return poolRegistry.acquire(
+        name,
+        endpoint
+            + "|"
+            + identity
+            + "|"
+            + digest(config.get(LdapConfigKeys.PASSWORD))
+            + "|"
+            + getPoolOptions(config),
+        () ->
+            createPool(
+                config,
+                url,
+                new SimpleBindRequest(identity, config.get(LdapConfigKeys.PASSWORD)),
+                endpoint + "-" + identity));
+  }
+
+  /**
+   * Create a pool on the servers of the realm. Connections are checked in the background and when
+   * an operation fails, and are replaced once older than the maximum connection age so that they
+   * are spread again over the servers, a server coming back taking its share of the connections.
+   */
+  private static LDAPConnectionPool createPool(
+      Map<String, String> config, String url, BindRequest bindRequest, String name)
+      throws LDAPException {
+    return createPool(
+        config, url, bindRequest, name, Integer.valueOf(config.get(LdapConfigKeys.POOL_SIZE)));
+  }
+
+  private static LDAPConnectionPool createPool(
+      Map<String, String> config, String url, BindRequest bindRequest, String name, int poolSize)
+      throws LDAPException {
+    long healthCheckIntervalMillis = getMillis(config, LdapConfigKeys.HEALTH_CHECK_INTERVAL);
+    LDAPConnectionPool pool =
+        new LDAPConnectionPool(getServerSet(config, url), bindRequest, poolSize);
+    pool.setConnectionPoolName(name);
+    pool.setRetryFailedOperationsDueToInvalidConnections(true);
+    pool.setHealthCheck(
+        new GetEntryLDAPConnectionPoolHealthCheck(
+            null, HEALTH_CHECK_TIMEOUT_MILLIS, false, false, false, false, true, true));
+    if (healthCheckIntervalMillis > 0) {
+      pool.setHealthCheckIntervalMillis(healthCheckIntervalMillis);
+      // connections replacing defunct ones may have been opened on another server
+      pool.setMaxDefunctReplacementConnectionAgeMillis(healthCheckIntervalMillis);
+    }
+    pool.setMaxConnectionAgeMillis(getMillis(config, LdapConfigKeys.MAX_CONNECTION_AGE));
+    return pool;
+  }
+
+  private static ServerSet getServerSet(Map<String, String> config, String url) {
+    return LdapServerSets.create(
+        getServers(config, url),
+        config.get(LdapConfigKeys.SERVER_SET_STRATEGY),
+        getMillis(config, LdapConfigKeys.HEALTH_CHECK_INTERVAL),
+        getConnectionOptions(config));
+  }
+
+  /**
+   * Connections give up opening after the connect timeout and give up waiting for the answer of an
+   * operation after the response timeout, in milliseconds, unless the operation sets its own.
+   */
+  private static LDAPConnectionOptions getConnectionOptions(Map<String, String> config) {
+    LDAPConnectionOptions options = new LDAPConnectionOptions();
+    String connectTimeout = config.get(LdapConfigKeys.CONNECT_TIMEOUT);
+    if (connectTimeout != null && !connectTimeout.isBlank()) {
+      options.setConnectTimeoutMillis(Integer.parseInt(connectTimeout.trim()));
+    }
+    String responseTimeout = config.get(LdapConfigKeys.RESPONSE_TIMEOUT);
+    if (responseTimeout != null && !responseTimeout.isBlank()) {
+      options.setResponseTimeoutMillis(Long.parseLong(responseTimeout.trim()));
+    }
+    return options;
+  }
+
+  private static List<String> getServers(Map<String, String> config, String url) {
+    return LdapServerSets.parseServers(url, Integer.valueOf(config.get(LdapConfigKeys.PORT)));
+  }
+
+  private static String getEndpoint(Map<String, String> config, String url) {
+    return String.join(",", getServers(config, url));
+  }
+
+  /** Everything but the servers and the bind identity which makes two pools different */
+  private static String getPoolOptions(Map<String, String> config) {
+    return config.get(LdapConfigKeys.SERVER_SET_STRATEGY)
+        + "|"
+        + config.get(LdapConfigKeys.MAX_CONNECTION_AGE)
+        + "|"
+        + config.get(LdapConfigKeys.HEALTH_CHECK_INTERVAL)
+        + "|"
+        + config.get(LdapConfigKeys.CONNECT_TIMEOUT)
+        + "|"
+        + config.get(LdapConfigKeys.RESPONSE_TIMEOUT)
+        + "|"
+        + config.get(LdapConfigKeys.POOL_SIZE);
+  }
 
-    if (!openLdapPoolConnectionConfig.containsKey(key)) {
-      if (openLdapPoolConnection.containsKey(name)) {
-        openLdapPoolConnection.get(name).close();
+  /** A duration in seconds of the config in milliseconds, 0 if not set */
+  private static long getMillis(Map<String, String> config, String key) {
+    String seconds = config.get(key);
+    return seconds != null && !seconds.isBlank()
+        ? TimeUnit.SECONDS.toMillis(Long.parseLong(seconds.trim()))
+        : 0;
+  }
+
+  /** Pools are keyed by the bind password without keeping it in clear */
+  private static String digest(String password) {
+    if (password == null) {
+      return "";
+    }
+    try {
+      MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+      return Base64.getEncoder()
+          .encodeToString(messageDigest.digest(password.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Check the password of a user. By default the user binds on a connection of a pool dedicated to
+   * the binds of the userStorage, the connection being re-bound by the next check. The realm can
+   * also ask for the password policy control to be sent with the bind, or for the password to be
+   * compared as the realm user. The checks are timed by the sugoi.ldap.credentials.validation
+   * metric, tagged with their outcome and the password policy warning or error of the directory.
+   * Only the result of the bind makes the credentials valid or not.
+   *
+   * @param config
+   * @param userdn
+   * @param password
+   * @param onReplicas check on the read servers of the realm if it has some
+   * @return true if the password is the one of the user
+   * @throws LDAPException
+   */
+  public static boolean validateUserPassword(
+      Map<String, String> config, String userdn, String password, boolean onReplicas)
+      throws LDAPException {
+    String mode =
+        config.get(LdapConfigKeys.CREDENTIALS_VALIDATION) != null
+            ? config.get(LdapConfigKeys.CREDENTIALS_VALIDATION).trim().toLowerCase()
+            : BIND_VALIDATION;
+    long start = System.nanoTime();
+    CredentialsCheck check;
+    try {
+      switch (mode) {
+        case BIND_VALIDATION:
+          check = bind(config, userdn, password, onReplicas, false);
+          break;
+        case PASSWORD_POLICY_VALIDATION:
+          check = bind(config, userdn, password, onReplicas, true);
+          break;
+        case COMPARE_VALIDATION:
+          check = compare(config, userdn, password);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown credentials validation " + mode);
       }
-      openLdapPoolConnectionConfig.put(key, name);
-      openLdapPoolConnection.put(
-          name,
-          new LDAPConnectionPool(
-              new LDAPConnection(
-                  config.get(LdapConfigKeys.URL),
-                  Integer.valueOf(config.get(LdapConfigKeys.PORT)),
-                  config.get(LdapConfigKeys.USERNAME),
-                  config.get(LdapConfigKeys.PASSWORD)),
-              Integer.valueOf(config.get(LdapConfigKeys.POOL_SIZE))));
+    } catch (LDAPException e) {
+      logger.debug("Cannot validate the credentials of {}", userdn, e);
+      check =
+          new CredentialsCheck(
+              e.getResultCode() == ResultCode.NO_SUCH_OBJECT ? "no_such_user" : "error",
+              NO_PASSWORD_POLICY_STATE);
     }
-    return openLdapPoolConnection.get(name);
+    Metrics.timer(
+            "sugoi.ldap.credentials.validation",
+            "realm",
+            config.get(LdapConfigKeys.REALM_NAME),
+            "mode",
+            mode,
+            "outcome",
+            check.outcome,
+            "ppolicy",
+            check.passwordPolicyState)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    return VALID_CREDENTIALS.equals(check.outcome);
   }
 
-  public static LDAPConnection getSingleConnectionAuthenticated(Map<String, String> config)
+  /**
+   * Bind as the user on a connection of the bind pool. A bind failing on the credentials leaves
+   * the connection usable, it goes back to the pool unauthenticated.
+   *
+   * @return success or invalid depending on the result of the bind only, with the password policy
+   *     warning or error returned by the directory
+   */
+  private static CredentialsCheck bind(
+      Map<String, String> config,
+      String userdn,
+      String password,
+      boolean onReplicas,
+      boolean passwordPolicy)
       throws LDAPException {
+    LDAPConnectionPool pool = getBindConnectionPool(config, onReplicas);
+    SimpleBindRequest bindRequest =
+        passwordPolicy
+            ? new SimpleBindRequest(
+                userdn, password, new DraftBeheraLDAPPasswordPolicy10RequestControl())
+            : new SimpleBindRequest(userdn, password);
+    LDAPConnection connection = pool.getConnection();
+    try {
+      BindResult result = connection.bind(bindRequest);
+      pool.releaseConnection(connection);
+      return new CredentialsCheck(
+          VALID_CREDENTIALS,
+          passwordPolicy ? getPasswordPolicyState(result) : NO_PASSWORD_POLICY_STATE);
+    } catch (LDAPException e) {
+      if (e.getResultCode() != ResultCode.INVALID_CREDENTIALS) {
+        pool.releaseConnectionAfterException(connection, e);
+        throw e;
+      }
+      pool.releaseConnection(connection);
+      return new CredentialsCheck(
+          "invalid",
+          passwordPolicy ? getPasswordPolicyState(e.toLDAPResult()) : NO_PASSWORD_POLICY_STATE);
+    }
+  }
+
+  /**
+   * The password policy error of the result if any, else its warning. A successful bind may come
+   * with an error, such as a password to change after a reset, which does not make the credentials
+   * invalid.
+   */
+  private static String getPasswordPolicyState(LDAPResult result) throws LDAPException {
+    DraftBeheraLDAPPasswordPolicy10ResponseControl control =
+        DraftBeheraLDAPPasswordPolicy10ResponseControl.get(result);
+    if (control == null) {
+      return NO_PASSWORD_POLICY_STATE;
+    } else if (control.getErrorType() != null) {
+      return control.getErrorType().name().toLowerCase();
+    } else if (control.getWarningType() != null) {
+      return control.getWarningType().name().toLowerCase();
+    }
+    return NO_PASSWORD_POLICY_STATE;
+  }
+
+  /** Compare the password as the realm user, the directory must allow it to compare userPassword */
+  private static CredentialsCheck compare(
+      Map<String, String> config, String userdn, String password) throws LDAPException {
+    CompareResult result =
+        getConnectionPoolAuthenticated(config).compare(userdn, "userPassword", password);
+    return new CredentialsCheck(
+        result.compareMatched() ? VALID_CREDENTIALS : "invalid", NO_PASSWORD_POLICY_STATE);
+  }
+
+  /**
+   * Pool of the connections on which the users bind. It is never shared with a pool used to read
+   * since its connections stay bound as the last user checked.
+   */
+  private static LDAPConnectionPool getBindConnectionPool(
+      Map<String, String> config, boolean onReplicas) throws LDAPException {
+    boolean replicas = onReplicas && hasReplicas(config);
+    String url = config.get(replicas ? LdapConfigKeys.READ_URL : LdapConfigKeys.URL);
     String name =
-        config.get(LdapConfigKeys.REALM_NAME) + "_" + config.get(LdapConfigKeys.NAME) + "_RW";
-    String key =
         config.get(LdapConfigKeys.REALM_NAME)
             + "_"
             + config.get(LdapConfigKeys.NAME)
-            + "_"
-            + config.hashCode()
-            + "_RW";
-    if (!openLdapMonoConnectionConfig.containsKey(key)) {
-      if (openLdapMonoConnection.containsKey(name)) {
-        openLdapMonoConnection.get(name).close();
-      }
-      openLdapMonoConnectionConfig.put(key, name);
-      openLdapMonoConnection.put(
-          name,
-          new LDAPConnection(
-              config.get(LdapConfigKeys.URL),
-              Integer.valueOf(config.get(LdapConfigKeys.PORT)),
-              config.get(LdapConfigKeys.USERNAME),
-              config.get(LdapConfigKeys.PASSWORD)));
-    }
-    return openLdapMonoConnection.get(name);
+            + (replicas ? "_BIND_RO" : "_BIND");
+    String endpoint = getEndpoint(config, url);
+    int poolSize =
+        Integer.valueOf(
+            config.get(LdapConfigKeys.BIND_POOL_SIZE) != null
+                ? config.get(LdapConfigKeys.BIND_POOL_SIZE)
+                : config.get(LdapConfigKeys.POOL_SIZE));
+    return poolRegistry.acquire(
+        name,
+        endpoint + "|bind|" + getPoolOptions(config) + "|" + poolSize,
+        () -> createPool(config, url, null, endpoint + "-bind", poolSize));
   }
 
-  public static boolean validateUserPassword(
-      Map<String, String> config, String userdn, String password) throws LDAPException {
-    try (LDAPConnection conn =
-        new LDAPConnection(
-            config.get(LdapConfigKeys.URL), Integer.valueOf(config.get(LdapConfigKeys.PORT)))) {
-      BindResult result = conn.bind(userdn, password);
-      if (result.getResultCode().intValue() != 0) {
-        return false;
-      }
-    } catch (Exception e) {
-      return false;
+  /** Outcome of a credentials check and the password policy state returned with it */
+  private static class CredentialsCheck {
+
+    private final String outcome;
+    private final String passwordPolicyState;
+
+    private CredentialsCheck(String outcome, String passwordPolicyState) {
+      this.outcome = outcome;
+      this.passwordPolicyState = passwordPolicyState;
     }
-    return true;
   }
 }
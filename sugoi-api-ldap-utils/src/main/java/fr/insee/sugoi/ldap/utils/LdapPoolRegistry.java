@@ -0,0 +1,232 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap.utils;
+
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Connection pools shared by the userStorages. A pool is identified by a key describing its server
+ * and its bind identity, so that the userStorages reaching the same server as the same user share
+ * one pool. Each owner (a userStorage reader or writer) holds a lease on one pool, and a pool is
+ * closed once no owner holds it anymore. When the configuration of an owner changes, its lease is
+ * moved to the new pool and the old pool is only closed once all its connections are back, leaving
+ * the operations already started on it, such as paged searches, the time to complete.
+ */
+public class LdapPoolRegistry {
+
+  private static final Logger logger = LogManager.getLogger(LdapPoolRegistry.class);
+
+  /** Creates a pool, only called once per key while the pool is held */
+  public interface PoolFactory {
+    LDAPConnectionPool create() throws LDAPException;
+  }
+
+  private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+  /** Pools held by at least one owner, guarded by this */
+  private final Map<String, SharedPool> pools = new HashMap<>();
+
+  private final long drainDelayMillis;
+
+  private final long maxDrainMillis;
+
+  private final ScheduledExecutorService drainExecutor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "ldap-pool-drain");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /**
+   * @param drainDelayMillis time in milliseconds between two checks of the connections still
+   *     checked out of a pool no longer held
+   * @param maxDrainMillis time in milliseconds after which a pool no longer held is closed even if
+   *     some of its connections are still checked out
+   */
+  public LdapPoolRegistry(long drainDelayMillis, long maxDrainMillis) {
+    this.drainDelayMillis = drainDelayMillis;
+    this.maxDrainMillis = maxDrainMillis;
+  }
+
+  /**
+   * Get the pool of an owner, creating or sharing the pool of the key if the owner does not hold
+   * it yet. The pool is created without holding the registry, the owners asking for the same key
+   * in the meantime wait for this creation only.
+   *
+   * @param owner name of the owner of the lease
+   * @param key identity of the pool, two owners with the same key share the same pool
+   * @param factory creates the pool if no owner holds a pool of this key
+   * @return the pool of the key
+   * @throws LDAPException if the pool cannot be created
+   */
+  public LDAPConnectionPool acquire(String owner, String key, PoolFactory factory)
+      throws LDAPException {
+    Lease lease = leases.get(owner);
+    if (lease != null && lease.key.equals(key)) {
+      return lease.sharedPool.get();
+    }
+    SharedPool sharedPool;
+    boolean creator = false;
+    synchronized (this) {
+      lease = leases.get(owner);
+      if (lease != null && lease.key.equals(key)) {
+        sharedPool = lease.sharedPool;
+      } else {
+        sharedPool = pools.get(key);
+        if (sharedPool == null) {
+          sharedPool = new SharedPool();
+          pools.put(key, sharedPool);
+          creator = true;
+        } else {
+          logger.debug("{} shares an existing connection pool", owner);
+        }
+        sharedPool.references++;
+        lease = null;
+      }
+    }
+    if (lease != null) {
+      return sharedPool.get();
+    }
+    if (creator) {
+      try {
+        sharedPool.future.complete(factory.create());
+      } catch (LDAPException | RuntimeException e) {
+        sharedPool.future.completeExceptionally(e);
+      }
+    }
+    LDAPConnectionPool pool;
+    try {
+      pool = sharedPool.get();
+    } catch (LDAPException | RuntimeException e) {
+      synchronized (this) {
+        // the next acquire of the key tries to create the pool again
+        pools.remove(key, sharedPool);
+        sharedPool.references--;
+      }
+      throw e;
+    }
+    synchronized (this) {
+      Lease previous = leases.put(owner, new Lease(key, sharedPool));
+      if (previous != null && previous.sharedPool == sharedPool) {
+        // the owner acquired the same key on another thread at the same time
+        release(previous);
+      } else if (previous != null) {
+        logger.info("Configuration of {} changed, moving to a new connection pool", owner);
+        release(previous);
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Release the lease of an owner, closing its pool if no other owner holds it
+   *
+   * @param owner name of the owner of the lease
+   */
+  public synchronized void release(String owner) {
+    Lease lease = leases.remove(owner);
+    if (lease != null) {
+      release(lease);
+    }
+  }
+
+  /**
+   * @return number of pools held by at least one owner
+   */
+  public synchronized int size() {
+    return pools.size();
+  }
+
+  private void release(Lease lease) {
+    lease.sharedPool.references--;
+    if (lease.sharedPool.references == 0) {
+      pools.remove(lease.key, lease.sharedPool);
+      LDAPConnectionPool pool = lease.sharedPool.future.getNow(null);
+      if (pool != null) {
+        drain(pool, System.currentTimeMillis() + maxDrainMillis);
+      }
+    }
+  }
+
+  /** Close the pool once none of its connections is checked out anymore */
+  private void drain(LDAPConnectionPool pool, long closeAt) {
+    drainExecutor.schedule(
+        () -> {
+          int checkedOut =
+              pool.getMaximumAvailableConnections() - pool.getCurrentAvailableConnections();
+          if (checkedOut > 0 && System.currentTimeMillis() < closeAt) {
+            logger.debug(
+                "{} connections of the unused pool {} are still checked out",
+                checkedOut,
+                pool.getConnectionPoolName());
+            drain(pool, closeAt);
+            return;
+          }
+          if (checkedOut > 0) {
+            logger.warn(
+                "Closing the unused connection pool {} with {} connections still checked out",
+                pool.getConnectionPoolName(),
+                checkedOut);
+          } else {
+            logger.info("Closing the unused connection pool {}", pool.getConnectionPoolName());
+          }
+          pool.close();
+        },
+        drainDelayMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private static class Lease {
+
+    private final String key;
+    private final SharedPool sharedPool;
+
+    private Lease(String key, SharedPool sharedPool) {
+      this.key = key;
+      this.sharedPool = sharedPool;
+    }
+  }
+
+  private static class SharedPool {
+
+    private final CompletableFuture<LDAPConnectionPool> future = new CompletableFuture<>();
+    private int references = 0;
+
+    private LDAPConnectionPool get() throws LDAPException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a connection pool", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof LDAPException) {
+          throw (LDAPException) e.getCause();
+        }
+        throw (RuntimeException) e.getCause();
+      }
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap.utils;
+
+import com.unboundid.ldap.sdk.FailoverServerSet;
+import com.unboundid.ldap.sdk.FastestConnectServerSet;
+import com.unboundid.ldap.sdk.FewestConnectionsServerSet;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.RoundRobinServerSet;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server sets built from the url of a realm. The url is a list of servers separated by commas, each
+ * server being a host optionally followed by a port, and the strategy of the realm chooses the
+ * server on which each new connection is opened. An IPv6 address followed by a port is written
+ * between brackets, as [address]:port.
+ */
+public class LdapServerSets {
+
+  /** Connections are spread over the servers in turn */
+  public static final String ROUND_ROBIN = "round-robin";
+
+  /** Connections are opened on the server having the fewest connections open */
+  public static final String FEWEST_CONNECTIONS = "fewest-connections";
+
+  /** Connections are opened on the server answering first */
+  public static final String FASTEST_CONNECT = "fastest-connect";
+
+  /** Connections are opened on the first server available in the order of the url */
+  public static final String FAILOVER = "failover";
+
+  private LdapServerSets() {}
+
+  /**
+   * @param url servers separated by commas, as host, host:port, [address] or [address]:port
+   * @param defaultPort port of the servers given without a port
+   * @return the servers as host:port, IPv6 addresses being kept between brackets
+   */
+  public static List<String> parseServers(String url, int defaultPort) {
+    List<String> servers = new ArrayList<>();
+    for (String server : url.split(",")) {
+      server = server.trim();
+      if (server.isEmpty()) {
+        continue;
+      }
+      int separator;
+      if (server.startsWith("[")) {
+        int closing = server.indexOf(']');
+        if (closing == -1 || (closing < server.length() - 1 && server.charAt(closing + 1) != ':')) {
+          throw new IllegalArgumentException("Malformed ldap server " + server);
+        }
+        separator = closing < server.length() - 1 ? closing + 1 : -1;
+      } else if (server.indexOf(':') != server.lastIndexOf(':')) {
+        // an IPv6 address without port
+        server = "[" + server + "]";
+        separator = -1;
+      } else {
+        separator = server.lastIndexOf(':');
+      }
+      if (separator == -1) {
+        servers.add(server + ":" + defaultPort);
+      } else {
+        // reject a malformed port now rather than when connecting
+        Integer.parseInt(server.substring(separator + 1));
+        servers.add(server);
+      }
+    }
+    if (servers.isEmpty()) {
+      throw new IllegalArgumentException("No ldap server in url " + url);
+    }
+    return servers;
+  }
+
+  /**
+   * Create the server set of a list of servers
+   *
+   * @param servers the servers as host:port or [address]:port, in order of preference for the
+   *     failover strategy
+   * @param strategy one of round-robin, fewest-connections, fastest-connect or failover, defaults
+   *     to round-robin
+   * @param failoverConnectionAgeMillis maximum age of the connections opened on a server which is
+   *     not the preferred one with the failover strategy, so that they go back to the preferred
+   *     server once it is available again. Zero to use the maximum age of the pool
+   * @param options options of the connections
+   * @return the server set
+   */
+  public static ServerSet create(
+      List<String> servers,
+      String strategy,
+      long failoverConnectionAgeMillis,
+      LDAPConnectionOptions options) {
+    String[] hosts = new String[servers.size()];
+    int[] ports = new int[servers.size()];
+    for (int i = 0; i < servers.size(); i++) {
+      String server = servers.get(i);
+      int separator = server.lastIndexOf(':');
+      hosts[i] = server.substring(0, separator);
+      if (hosts[i].startsWith("[") && hosts[i].endsWith("]")) {
+        hosts[i] = hosts[i].substring(1, hosts[i].length() - 1);
+      }
+      ports[i] = Integer.parseInt(server.substring(separator + 1));
+    }
+    if (hosts.length == 1) {
+      return new SingleServerSet(hosts[0], ports[0], options);
+    }
+    switch (strategy != null ? strategy.trim().toLowerCase() : ROUND_ROBIN) {
+      case ROUND_ROBIN:
+        return new RoundRobinServerSet(hosts, ports, options);
+      case FEWEST_CONNECTIONS:
+        return new FewestConnectionsServerSet(hosts, ports, options);
+      case FASTEST_CONNECT:
+        return new FastestConnectServerSet(hosts, ports, options);
+      case FAILOVER:
+        FailoverServerSet failoverServerSet = new FailoverServerSet(hosts, ports, options);
+        if (failoverConnectionAgeMillis > 0) {
+          failoverServerSet.setMaxFailoverConnectionAgeMillis(failoverConnectionAgeMillis);
+        }
+        return failoverServerSet;
+      default:
+        throw new IllegalArgumentException(
+            "Unknown server set strategy "
+                + strategy
+                + ", expected one of "
+                + String.join(", ", ROUND_ROBIN, FEWEST_CONNECTIONS, FASTEST_CONNECT, FAILOVER));
+    }
+  }
+}
@@ -17,6 +17,7 @@ import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.Modification;
 import com.unboundid.ldap.sdk.ModificationType;
@@ -35,6 +36,8 @@ import java.text.ParseException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -80,6 +83,26 @@ public class LdapUtils {
     }
   }
 
+  /**
+   * List the attributes on which a filter is applied
+   *
+   * @param filter the filter to inspect
+   * @return the attribute names (case insensitive)
+   */
+  public static Set<String> getFilterAttributeNames(Filter filter) {
+    Set<String> attributeNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    if (filter.getAttributeName() != null) {
+      attributeNames.add(filter.getAttributeName());
+    }
+    for (Filter component : filter.getComponents()) {
+      attributeNames.addAll(getFilterAttributeNames(component));
+    }
+    if (filter.getNOTComponent() != null) {
+      attributeNames.addAll(getFilterAttributeNames(filter.getNOTComponent()));
+    }
+    return attributeNames;
+  }
+
   public static void setRequestControls(
       SearchRequest searchRequest, PageableResult pageable, Map<String, String> config) {
     if (config.get(LdapConfigKeys.VLV_ENABLED).equalsIgnoreCase("true")) {
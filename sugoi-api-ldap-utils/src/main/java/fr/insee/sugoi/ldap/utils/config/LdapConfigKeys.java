@@ -19,10 +19,19 @@ public class LdapConfigKeys extends GlobalKeysConfig {
 
   public static final String NAME = "name";
   public static final String URL = "url";
+  public static final String READ_URL = "read_url";
+  public static final String READ_YOUR_WRITES_WINDOW = "read_your_writes_window";
   public static final String PORT = "port";
   public static final String USERNAME = "username";
   public static final String PASSWORD = "password";
   public static final String POOL_SIZE = "pool_size";
+  public static final String BIND_POOL_SIZE = "bind_pool_size";
+  public static final String CREDENTIALS_VALIDATION = "credentials_validation";
+  public static final String SERVER_SET_STRATEGY = "server_set_strategy";
+  public static final String MAX_CONNECTION_AGE = "max_connection_age";
+  public static final String HEALTH_CHECK_INTERVAL = "health_check_interval";
+  public static final String CONNECT_TIMEOUT = "connect_timeout";
+  public static final String RESPONSE_TIMEOUT = "response_timeout";
   public static final String GROUP_SOURCE_PATTERN = "group_source_pattern";
   public static final String GROUP_FILTER_PATTERN = "group_filter_pattern";
   public static final String REALM_NAME = "realm_name";
@@ -34,4 +43,7 @@ public class LdapConfigKeys extends GlobalKeysConfig {
   public static final String GROUP_OBJECT_CLASSES = "group_object_classes";
   public static final String APPLICATION_OBJECT_CLASSES = "application_object_classes";
   public static final String ADDRESS_OBJECT_CLASSES = "address_object_classes";
+  public static final String MEMBER_BATCH_SIZE = "member_batch_size";
+  public static final String PAGED_SEARCH_SESSION_TIMEOUT = "paged_search_session_timeout";
+  public static final String PAGED_SEARCH_MAX_SESSIONS = "paged_search_max_sessions";
 }
@@ -19,8 +19,10 @@ import com.unboundid.ldap.sdk.ModificationType;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class AddressLdapMapper {
@@ -35,6 +37,15 @@ public class AddressLdapMapper {
     // }
   }
 
+  /** @return the names of the ldap attributes read by mapFromSearchEntry */
+  public Set<String> getReadAttributes() {
+    Set<String> readAttributes = new HashSet<>();
+    for (int i = 1; i < 8; i++) {
+      readAttributes.add("inseeAdressePostaleCorrespondantLigne" + String.valueOf(i));
+    }
+    return readAttributes;
+  }
+
   public Map<String, String> mapFromSearchEntry(SearchResultEntry searchResultEntry) {
     Map<String, String> address = new HashMap<>();
     for (int i = 1; i < 8; i++) {
@@ -15,18 +15,22 @@ package fr.insee.sugoi.ldap.utils.mapper;
 
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Modification;
+import fr.insee.sugoi.ldap.utils.LdapUtils;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.model.Application;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ApplicationLdapMapper implements LdapMapper<Application> {
 
   Map<String, String> config;
   List<String> objectClasses;
   Map<String, String> mapping;
+  Set<String> readAttributes;
+  MappingPlan<Application> mappingPlan;
 
   public ApplicationLdapMapper(Map<String, String> config, Map<String, String> mapping) {
     this.config = config;
@@ -35,19 +39,25 @@ public class ApplicationLdapMapper implements LdapMapper<Application> {
           Arrays.asList(config.get(LdapConfigKeys.APPLICATION_OBJECT_CLASSES).split(","));
     }
     this.mapping = mapping;
+    mappingPlan = new MappingPlan<>(Application.class, config, mapping);
+    readAttributes = GenericLdapMapper.getLdapAttributeNames(mapping);
   }
 
   public Application mapFromAttributes(Collection<Attribute> attributes) {
-    return GenericLdapMapper.mapLdapAttributesToObject(
-        attributes, Application.class, config, mapping);
+    return mappingPlan.mapLdapAttributesToObject(attributes);
   }
 
   public List<Attribute> mapToAttributes(Application application) {
-    return GenericLdapMapper.mapObjectToLdapAttributes(
-        application, Application.class, config, mapping, objectClasses);
+    return mappingPlan.mapObjectToLdapAttributes(application, objectClasses);
   }
 
   public List<Modification> createMods(Application updatedApplication) {
-    return GenericLdapMapper.createMods(updatedApplication, Application.class, config, mapping);
+    return LdapUtils.convertAttributesToModifications(
+        // Modification => no need to specify object classes
+        mappingPlan.mapObjectToLdapAttributes(updatedApplication, null));
+  }
+
+  public Set<String> getReadAttributes() {
+    return readAttributes;
   }
 }
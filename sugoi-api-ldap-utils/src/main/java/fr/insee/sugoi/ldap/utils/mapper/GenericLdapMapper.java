@@ -15,184 +15,84 @@ package fr.insee.sugoi.ldap.utils.mapper;
 
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Modification;
-import fr.insee.sugoi.core.exceptions.LdapMappingConfigurationException;
 import fr.insee.sugoi.ldap.utils.LdapUtils;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.model.Group;
 import fr.insee.sugoi.model.Habilitation;
 import fr.insee.sugoi.model.Organization;
 import fr.insee.sugoi.model.User;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class GenericLdapMapper {
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Create an entity from ldap attributes. The mapping is compiled on each call, mappers should
+   * rather keep a {@link MappingPlan}.
+   */
   public static <ReturnType> ReturnType mapLdapAttributesToObject(
       Collection<Attribute> attributes,
       Class<ReturnType> returnClazz,
       Map<String, String> config,
       Map<String, String> mapping) {
-    try {
-      ReturnType mappedEntity = returnClazz.getDeclaredConstructor().newInstance();
-      for (Entry<String, String> mappingDefinition : mapping.entrySet()) {
-        try {
-          String[] splitedMappingDefinition = mappingDefinition.getValue().split(",");
-          String attributeLdapName = splitedMappingDefinition[0];
-          String mappingType = splitedMappingDefinition[1];
-          String fieldToSetName = mappingDefinition.getKey();
-          List<String> correspondingAttributes = new ArrayList<>();
-          attributes.stream()
-              .filter(attribute -> attributeLdapName.equalsIgnoreCase(attribute.getName()))
-              .forEach(
-                  attribute ->
-                      correspondingAttributes.addAll(Arrays.asList(attribute.getValues())));
-          if (correspondingAttributes.size() > 0) {
-            if (fieldToSetName.contains(".")) {
-              String[] splitedFieldName = fieldToSetName.split("\\.");
-              String mapToModifyName = splitedFieldName[0];
-              String keyToModify = splitedFieldName[1];
-              Field modelField = mappedEntity.getClass().getDeclaredField(mapToModifyName);
-              modelField.setAccessible(true);
-              Map<String, Object> map = (Map<String, Object>) modelField.get(mappedEntity);
-              map.put(
-                  keyToModify,
-                  transformAttributeToSugoi(mappingType, correspondingAttributes, config));
-            } else {
-              Field modelField =
-                  mappedEntity.getClass().getDeclaredField(mappingDefinition.getKey());
-              modelField.setAccessible(true);
-              modelField.set(
-                  mappedEntity,
-                  transformAttributeToSugoi(mappingType, correspondingAttributes, config));
-            }
-          }
-        } catch (Exception e) {
-          throw new LdapMappingConfigurationException(
-              "Error occured while mapping attribute to Ldap. Must be caused by the configuration "
-                  + mappingDefinition.getKey()
-                  + ":"
-                  + mappingDefinition.getValue()
-                  + " for entity "
-                  + returnClazz.getName(),
-              e);
-        }
-      }
-      return mappedEntity;
-    } catch (InstantiationException
-        | IllegalAccessException
-        | IllegalArgumentException
-        | InvocationTargetException
-        | NoSuchMethodException
-        | SecurityException e) {
-      throw new RuntimeException("Exception while getting the entity " + returnClazz.getName(), e);
-    }
+    return new MappingPlan<>(returnClazz, config, mapping).mapLdapAttributesToObject(attributes);
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Create the ldap attributes of an entity. The mapping is compiled on each call, mappers should
+   * rather keep a {@link MappingPlan}.
+   */
   public static <SugoiType> List<Attribute> mapObjectToLdapAttributes(
       SugoiType entity,
       Class<SugoiType> entityClazz,
       Map<String, String> config,
       Map<String, String> mapping,
       List<String> objectClasses) {
-    List<Attribute> attributes = new ArrayList<>();
-    if (objectClasses != null && !objectClasses.isEmpty()) {
-      attributes.add(new Attribute("objectClass", objectClasses));
-    }
-    // Exception where else is needed ? not needed if modification step
-
-    for (Entry<String, String> mappingDefinition : mapping.entrySet()) {
-      try {
-        String[] splitedMappingDefinition = mappingDefinition.getValue().split(",");
-        String attributeLdapName = splitedMappingDefinition[0];
-        String mappingType = splitedMappingDefinition[1];
-        String readonlyStatus = splitedMappingDefinition[2];
-        String fieldToSetName = mappingDefinition.getKey();
-        if (!readonlyStatus.equalsIgnoreCase("ro")) {
-          if (fieldToSetName.contains(".")) {
-            String[] splitedFieldName = fieldToSetName.split("\\.");
-            String mapToModifyName = splitedFieldName[0];
-            String keyToModify = splitedFieldName[1];
-            Field modelField = entity.getClass().getDeclaredField(mapToModifyName);
-            modelField.setAccessible(true);
-            Map<String, Object> map = (Map<String, Object>) modelField.get(entity);
-            if (map != null && map.containsKey(keyToModify)) {
-              Object sugoiValue = map.get(keyToModify);
-              if (sugoiValue != null) {
-                attributes.addAll(
-                    transformSugoiToAttribute(mappingType, attributeLdapName, sugoiValue, config));
-              }
-            }
-          } else {
-            Field sugoiField = entity.getClass().getDeclaredField(fieldToSetName);
-            sugoiField.setAccessible(true);
-            Object sugoiValue = sugoiField.get(entity);
-            if (sugoiValue != null) {
-              attributes.addAll(
-                  transformSugoiToAttribute(mappingType, attributeLdapName, sugoiValue, config));
-            }
-          }
-        }
-      } catch (Exception e) {
-        throw new LdapMappingConfigurationException(
-            "Error occured while mapping attribute to Ldap. Must be caused by the configuration "
-                + mappingDefinition.getKey()
-                + ":"
-                + mappingDefinition.getValue()
-                + " for entity "
-                + entityClazz.getName(),
-            e);
-      }
-    }
-    return attributes;
+    return new MappingPlan<>(entityClazz, config, mapping)
+        .mapObjectToLdapAttributes(entity, objectClasses);
   }
 
-  private static Object transformAttributeToSugoi(
-      String type, List<String> attr, Map<String, String> config) {
-    switch (type.toUpperCase()) {
-      case "STRING":
+  static Object transformAttributeToSugoi(
+      ModelType type, List<String> attr, Pattern groupPattern) {
+    if (type == null) {
+      return null;
+    }
+    switch (type) {
+      case STRING:
         return attr.get(0);
-      case "ORGANIZATION":
+      case ORGANIZATION:
         Organization orga = new Organization();
         orga.setIdentifiant(LdapUtils.getNodeValueFromDN(attr.get(0)));
         return orga;
-      case "ADDRESS":
+      case ADDRESS:
         Map<String, String> address = new HashMap<>();
         address.put("id", LdapUtils.getNodeValueFromDN(attr.get(0)));
         return address;
-      case "LIST_HABILITATION":
+      case LIST_HABILITATION:
         return attr.stream()
             .filter(
                 attributeValue ->
                     attributeValue.split("_").length == 2 || attributeValue.split("_").length == 3)
             .map(attributeValue -> new Habilitation(attributeValue))
             .collect(Collectors.toList());
-      case "LIST_USER":
+      case LIST_USER:
         return attr.stream()
             .map(attributeValue -> new User(LdapUtils.getNodeValueFromDN(attributeValue)))
             .collect(Collectors.toList());
-      case "LIST_GROUP":
+      case LIST_GROUP:
         return attr.stream()
             .map(
                 attributeValue -> {
-                  Pattern pattern =
-                      Pattern.compile(
-                          config
-                              .get(LdapConfigKeys.GROUP_SOURCE_PATTERN)
-                              .replace("{appliname}", "(.*)"));
                   Matcher matcher =
-                      pattern.matcher(attributeValue.substring(attributeValue.indexOf(",") + 1));
+                      groupPattern.matcher(
+                          attributeValue.substring(attributeValue.indexOf(",") + 1));
                   if (matcher.matches()) {
                     return new Group(
                         matcher.group(1), LdapUtils.getNodeValueFromDN(attributeValue));
@@ -201,7 +101,7 @@ public class GenericLdapMapper {
                   }
                 })
             .collect(Collectors.toList());
-      case "LIST_STRING":
+      case LIST_STRING:
         return attr.stream().collect(Collectors.toList());
       default:
         return null;
@@ -209,16 +109,19 @@ public class GenericLdapMapper {
   }
 
   @SuppressWarnings("unchecked")
-  private static List<Attribute> transformSugoiToAttribute(
-      String type, String ldapAttributeName, Object sugoiValue, Map<String, String> config) {
-    switch (type.toUpperCase()) {
-      case "STRING":
+  static List<Attribute> transformSugoiToAttribute(
+      ModelType type, String ldapAttributeName, Object sugoiValue, Map<String, String> config) {
+    if (type == null) {
+      return List.of();
+    }
+    switch (type) {
+      case STRING:
         if ((String) sugoiValue != "") {
           return List.of(new Attribute(ldapAttributeName, (String) sugoiValue));
         } else {
           return List.of();
         }
-      case "ORGANIZATION":
+      case ORGANIZATION:
         return List.of(
             new Attribute(
                 ldapAttributeName,
@@ -229,7 +132,7 @@ public class GenericLdapMapper {
                     //
                     ((Organization) sugoiValue).getIdentifiant(),
                     config.get(LdapConfigKeys.ORGANIZATION_SOURCE))));
-      case "ADDRESS":
+      case ADDRESS:
         if (((Map<String, String>) sugoiValue).containsKey("id")
             && config.get(LdapConfigKeys.ADDRESS_SOURCE) != null) {
           return List.of(
@@ -243,7 +146,7 @@ public class GenericLdapMapper {
                       ((Map<String, String>) sugoiValue).get("id"),
                       config.get(LdapConfigKeys.ADDRESS_SOURCE))));
         } else return List.of();
-      case "LIST_HABILITATION":
+      case LIST_HABILITATION:
         return ((List<Habilitation>) sugoiValue)
             .stream()
                 .filter(
@@ -251,9 +154,9 @@ public class GenericLdapMapper {
                         habilitation.getApplication() != null && habilitation.getRole() != null)
                 .map(habilitation -> new Attribute(ldapAttributeName, habilitation.getId()))
                 .collect(Collectors.toList());
-      case "LIST_USER":
+      case LIST_USER:
         return List.of();
-      case "LIST_GROUP":
+      case LIST_GROUP:
         return ((List<Group>) sugoiValue)
             .stream()
                 .map(
@@ -267,7 +170,7 @@ public class GenericLdapMapper {
                                 group.getName(),
                                 config.get(LdapConfigKeys.APP_SOURCE))))
                 .collect(Collectors.toList());
-      case "LIST_STRING":
+      case LIST_STRING:
         return ((List<String>) sugoiValue)
             .stream()
                 .map(value -> new Attribute(ldapAttributeName, value))
@@ -278,6 +181,18 @@ public class GenericLdapMapper {
     return List.of();
   }
 
+  /**
+   * List the ldap attributes named in a mapping
+   *
+   * @param mapping the mapping between sugoi fields and ldap attributes
+   * @return the ldap attribute names (case insensitive)
+   */
+  public static Set<String> getLdapAttributeNames(Map<String, String> mapping) {
+    return mapping.values().stream()
+        .map(mappingDefinition -> mappingDefinition.split(",")[0])
+        .collect(Collectors.toCollection(() -> new TreeSet<>(String.CASE_INSENSITIVE_ORDER)));
+  }
+
   public static <O> List<Modification> createMods(
       O entity, Class<O> propertiesClazz, Map<String, String> config, Map<String, String> mapping) {
     return LdapUtils.convertAttributesToModifications(
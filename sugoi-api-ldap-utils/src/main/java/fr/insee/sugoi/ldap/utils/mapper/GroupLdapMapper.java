@@ -15,18 +15,22 @@ package fr.insee.sugoi.ldap.utils.mapper;
 
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Modification;
+import fr.insee.sugoi.ldap.utils.LdapUtils;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.model.Group;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class GroupLdapMapper implements LdapMapper<Group> {
 
   Map<String, String> config;
   List<String> objectClasses;
   Map<String, String> mapping;
+  Set<String> readAttributes;
+  MappingPlan<Group> mappingPlan;
 
   public GroupLdapMapper(Map<String, String> config, Map<String, String> mapping) {
     this.config = config;
@@ -34,21 +38,29 @@ public class GroupLdapMapper implements LdapMapper<Group> {
       objectClasses = Arrays.asList(config.get(LdapConfigKeys.GROUP_OBJECT_CLASSES).split(","));
     }
     this.mapping = mapping;
+    mappingPlan = new MappingPlan<>(Group.class, config, mapping);
+    readAttributes = GenericLdapMapper.getLdapAttributeNames(mapping);
   }
 
   @Override
   public Group mapFromAttributes(Collection<Attribute> attributes) {
-    return GenericLdapMapper.mapLdapAttributesToObject(attributes, Group.class, config, mapping);
+    return mappingPlan.mapLdapAttributesToObject(attributes);
   }
 
   @Override
   public List<Attribute> mapToAttributes(Group group) {
-    return GenericLdapMapper.mapObjectToLdapAttributes(
-        group, Group.class, config, mapping, objectClasses);
+    return mappingPlan.mapObjectToLdapAttributes(group, objectClasses);
   }
 
   @Override
   public List<Modification> createMods(Group updatedGroup) {
-    return GenericLdapMapper.createMods(updatedGroup, Group.class, config, mapping);
+    return LdapUtils.convertAttributesToModifications(
+        // Modification => no need to specify object classes
+        mappingPlan.mapObjectToLdapAttributes(updatedGroup, null));
+  }
+
+  @Override
+  public Set<String> getReadAttributes() {
+    return readAttributes;
   }
 }
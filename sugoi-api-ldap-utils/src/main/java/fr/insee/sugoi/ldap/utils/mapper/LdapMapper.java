@@ -17,6 +17,7 @@ import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Modification;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface LdapMapper<ResultType> {
 
@@ -25,4 +26,10 @@ public interface LdapMapper<ResultType> {
   public List<Attribute> mapToAttributes(ResultType object);
 
   public List<Modification> createMods(ResultType object);
+
+  /**
+   * @return the names of the ldap attributes read by mapFromAttributes, only these attributes need
+   *     to be requested to the ldap
+   */
+  public Set<String> getReadAttributes();
 }
@@ -0,0 +1,254 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap.utils.mapper;
+
+import com.unboundid.ldap.sdk.Attribute;
+import fr.insee.sugoi.core.exceptions.LdapMappingConfigurationException;
+import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Mapping between the fields of a sugoi entity and ldap attributes, compiled once from a mapping
+ * configuration. Mapping definitions are parsed, fields are resolved to method handles and the
+ * group pattern is compiled when the plan is built, so that mapping an entry only costs a lookup
+ * per attribute. A definition which cannot be resolved only fails when it is used, as the
+ * definitions of a configuration may not be relevant for both directions.
+ *
+ * @param <T> the mapped sugoi entity
+ */
+public class MappingPlan<T> {
+
+  private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+  private final Class<T> entityClazz;
+  private final MethodHandle constructor;
+  private final Map<String, String> config;
+  private final List<MappedField> mappedFields = new ArrayList<>();
+  private final Map<String, List<MappedField>> mappedFieldsByAttribute =
+      new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+  private final Pattern groupPattern;
+
+  /**
+   * @param entityClazz class of the sugoi entity
+   * @param config configuration of the userStorage
+   * @param mapping the mapping between sugoi fields and ldap attributes
+   */
+  public MappingPlan(
+      Class<T> entityClazz, Map<String, String> config, Map<String, String> mapping) {
+    this.entityClazz = entityClazz;
+    this.config = config;
+    try {
+      constructor = lookup.unreflectConstructor(entityClazz.getDeclaredConstructor());
+    } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+      throw new RuntimeException("Exception while getting the entity " + entityClazz.getName(), e);
+    }
+    for (Entry<String, String> mappingDefinition : mapping.entrySet()) {
+      MappedField mappedField = new MappedField(mappingDefinition);
+      mappedFields.add(mappedField);
+      if (mappedField.attributeLdapName != null) {
+        mappedFieldsByAttribute
+            .computeIfAbsent(mappedField.attributeLdapName, name -> new ArrayList<>())
+            .add(mappedField);
+      }
+    }
+    // The group pattern is only required by LIST_GROUP mappings
+    String groupSourcePattern = config.get(LdapConfigKeys.GROUP_SOURCE_PATTERN);
+    groupPattern =
+        groupSourcePattern != null
+                && mappedFields.stream().anyMatch(field -> field.type == ModelType.LIST_GROUP)
+            ? Pattern.compile(groupSourcePattern.replace("{appliname}", "(.*)"))
+            : null;
+  }
+
+  /**
+   * Create an entity from ldap attributes
+   *
+   * @param attributes the attributes of an ldap entry
+   * @return the mapped entity
+   */
+  public T mapLdapAttributesToObject(Collection<Attribute> attributes) {
+    T mappedEntity = newInstance();
+    Map<MappedField, List<String>> valuesByField = new IdentityHashMap<>();
+    for (Attribute attribute : attributes) {
+      List<MappedField> fields = mappedFieldsByAttribute.get(attribute.getName());
+      if (fields != null) {
+        for (MappedField field : fields) {
+          Collections.addAll(
+              valuesByField.computeIfAbsent(field, f -> new ArrayList<>()), attribute.getValues());
+        }
+      }
+    }
+    // Fields are set in the order of the mapping
+    for (MappedField field : mappedFields) {
+      List<String> values = valuesByField.get(field);
+      if (field.configurationError != null
+          && (!field.validDefinition || (values != null && values.size() > 0))) {
+        throw field.mappingException(field.configurationError);
+      }
+      if (values != null && values.size() > 0) {
+        try {
+          field.set(
+              mappedEntity,
+              GenericLdapMapper.transformAttributeToSugoi(
+                  field.type,
+                  values,
+                  field.type == ModelType.LIST_GROUP ? getGroupPattern() : null));
+        } catch (Throwable e) {
+          throw field.mappingException(e);
+        }
+      }
+    }
+    return mappedEntity;
+  }
+
+  /**
+   * Create the ldap attributes of an entity
+   *
+   * @param entity the entity to map
+   * @param objectClasses object classes to add as attribute, can be null
+   * @return the ldap attributes of the entity
+   */
+  public List<Attribute> mapObjectToLdapAttributes(T entity, List<String> objectClasses) {
+    List<Attribute> attributes = new ArrayList<>();
+    if (objectClasses != null && !objectClasses.isEmpty()) {
+      attributes.add(new Attribute("objectClass", objectClasses));
+    }
+    for (MappedField field : mappedFields) {
+      if (!field.readonly) {
+        if (field.configurationError != null) {
+          throw field.mappingException(field.configurationError);
+        }
+        try {
+          Object sugoiValue = field.get(entity);
+          if (sugoiValue != null) {
+            attributes.addAll(
+                GenericLdapMapper.transformSugoiToAttribute(
+                    field.type, field.attributeLdapName, sugoiValue, config));
+          }
+        } catch (Throwable e) {
+          throw field.mappingException(e);
+        }
+      }
+    }
+    return attributes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T newInstance() {
+    try {
+      return (T) constructor.invoke();
+    } catch (Throwable e) {
+      throw new RuntimeException("Exception while getting the entity " + entityClazz.getName(), e);
+    }
+  }
+
+  private Pattern getGroupPattern() {
+    if (groupPattern == null) {
+      throw new IllegalStateException(
+          LdapConfigKeys.GROUP_SOURCE_PATTERN + " is required to map groups");
+    }
+    return groupPattern;
+  }
+
+  /** A mapping definition with its field accessors */
+  private class MappedField {
+
+    private final String mappingKey;
+    private final String mappingValue;
+    private String attributeLdapName;
+    private ModelType type;
+    private boolean readonly;
+    private MethodHandle getter;
+    private MethodHandle setter;
+    // key of the element when the field is a map
+    private String mapKey;
+    private boolean validDefinition = false;
+    private Exception configurationError;
+
+    private MappedField(Entry<String, String> mappingDefinition) {
+      mappingKey = mappingDefinition.getKey();
+      mappingValue = mappingDefinition.getValue();
+      try {
+        String[] splitedMappingDefinition = mappingValue.split(",");
+        attributeLdapName = splitedMappingDefinition[0];
+        type = parseType(splitedMappingDefinition[1]);
+        validDefinition = true;
+        readonly =
+            splitedMappingDefinition.length > 2
+                && splitedMappingDefinition[2].equalsIgnoreCase("ro");
+        String fieldName = mappingKey;
+        if (mappingKey.contains(".")) {
+          String[] splitedFieldName = mappingKey.split("\\.");
+          fieldName = splitedFieldName[0];
+          mapKey = splitedFieldName[1];
+        }
+        Field modelField = entityClazz.getDeclaredField(fieldName);
+        modelField.setAccessible(true);
+        getter = lookup.unreflectGetter(modelField);
+        setter = lookup.unreflectSetter(modelField);
+      } catch (Exception e) {
+        configurationError = e;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object get(Object entity) throws Throwable {
+      if (mapKey != null) {
+        Map<String, Object> map = (Map<String, Object>) getter.invoke(entity);
+        return map != null ? map.get(mapKey) : null;
+      }
+      return getter.invoke(entity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void set(Object entity, Object value) throws Throwable {
+      if (mapKey != null) {
+        ((Map<String, Object>) getter.invoke(entity)).put(mapKey, value);
+      } else {
+        setter.invoke(entity, value);
+      }
+    }
+
+    private LdapMappingConfigurationException mappingException(Throwable cause) {
+      return new LdapMappingConfigurationException(
+          "Error occured while mapping attribute to Ldap. Must be caused by the configuration "
+              + mappingKey
+              + ":"
+              + mappingValue
+              + " for entity "
+              + entityClazz.getName(),
+          cause);
+    }
+  }
+
+  /** Unknown types are kept as null and mapped to nothing */
+  private static ModelType parseType(String type) {
+    try {
+      return ModelType.valueOf(type.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
@@ -15,18 +15,22 @@ package fr.insee.sugoi.ldap.utils.mapper;
 
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Modification;
+import fr.insee.sugoi.ldap.utils.LdapUtils;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.model.Organization;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class OrganizationLdapMapper implements LdapMapper<Organization> {
 
   Map<String, String> config;
   List<String> objectClasses;
   Map<String, String> mapping;
+  Set<String> readAttributes;
+  MappingPlan<Organization> mappingPlan;
 
   public OrganizationLdapMapper(Map<String, String> config, Map<String, String> mapping) {
     this.config = config;
@@ -35,25 +39,31 @@ public class OrganizationLdapMapper implements LdapMapper<Organization> {
           Arrays.asList(config.get(LdapConfigKeys.ORGANIZATION_OBJECT_CLASSES).split(","));
     }
     this.mapping = mapping;
+    mappingPlan = new MappingPlan<>(Organization.class, config, mapping);
+    readAttributes = GenericLdapMapper.getLdapAttributeNames(mapping);
   }
 
   @Override
   public Organization mapFromAttributes(Collection<Attribute> attributes) {
-    Organization org =
-        GenericLdapMapper.mapLdapAttributesToObject(
-            attributes, Organization.class, config, mapping);
+    Organization org = mappingPlan.mapLdapAttributesToObject(attributes);
     // org.setGpgkey(searchResultEntry.getAttribute("inseeClefChiffrement").getValueByteArray());
     return org;
   }
 
   @Override
   public List<Attribute> mapToAttributes(Organization organization) {
-    return GenericLdapMapper.mapObjectToLdapAttributes(
-        organization, Organization.class, config, mapping, objectClasses);
+    return mappingPlan.mapObjectToLdapAttributes(organization, objectClasses);
   }
 
   @Override
   public List<Modification> createMods(Organization updatedOrganization) {
-    return GenericLdapMapper.createMods(updatedOrganization, Organization.class, config, mapping);
+    return LdapUtils.convertAttributesToModifications(
+        // Modification => no need to specify object classes
+        mappingPlan.mapObjectToLdapAttributes(updatedOrganization, null));
+  }
+
+  @Override
+  public Set<String> getReadAttributes() {
+    return readAttributes;
   }
 }
@@ -15,18 +15,22 @@ package fr.insee.sugoi.ldap.utils.mapper;
 
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Modification;
+import fr.insee.sugoi.ldap.utils.LdapUtils;
 import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.model.User;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class UserLdapMapper implements LdapMapper<User> {
 
   Map<String, String> config;
   List<String> objectClasses;
   Map<String, String> mapping;
+  Set<String> readAttributes;
+  MappingPlan<User> mappingPlan;
 
   public UserLdapMapper(Map<String, String> config, Map<String, String> mapping) {
     this.config = config;
@@ -34,21 +38,35 @@ public class UserLdapMapper implements LdapMapper<User> {
       objectClasses = Arrays.asList(config.get(LdapConfigKeys.USER_OBJECT_CLASSES).split(","));
     }
     this.mapping = mapping;
+    mappingPlan = new MappingPlan<>(User.class, config, mapping);
+    readAttributes = GenericLdapMapper.getLdapAttributeNames(mapping);
+    if (config.get(LdapConfigKeys.APP_MANAGED_ATTRIBUTE_KEYS_LIST) != null) {
+      Arrays.stream(config.get(LdapConfigKeys.APP_MANAGED_ATTRIBUTE_KEYS_LIST).split(","))
+          .map(String::trim)
+          .filter(key -> !key.isEmpty())
+          .forEach(readAttributes::add);
+    }
   }
 
   @Override
   public User mapFromAttributes(Collection<Attribute> attributes) {
-    return GenericLdapMapper.mapLdapAttributesToObject(attributes, User.class, config, mapping);
+    return mappingPlan.mapLdapAttributesToObject(attributes);
   }
 
   @Override
   public List<Attribute> mapToAttributes(User u) {
-    return GenericLdapMapper.mapObjectToLdapAttributes(
-        u, User.class, config, mapping, objectClasses);
+    return mappingPlan.mapObjectToLdapAttributes(u, objectClasses);
   }
 
   @Override
   public List<Modification> createMods(User updatedUser) {
-    return GenericLdapMapper.createMods(updatedUser, User.class, config, mapping);
+    return LdapUtils.convertAttributesToModifications(
+        // Modification => no need to specify object classes
+        mappingPlan.mapObjectToLdapAttributes(updatedUser, null));
+  }
+
+  @Override
+  public Set<String> getReadAttributes() {
+    return readAttributes;
   }
 }
@@ -0,0 +1,183 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap.utils;
+
+import static com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10RequestControl.PASSWORD_POLICY_REQUEST_OID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindResult;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.BindResult;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10ErrorType;
+import com.unboundid.ldap.sdk.experimental.DraftBeheraLDAPPasswordPolicy10ResponseControl;
+import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LdapFactoryTest {
+
+  private static final String USER_DN = "uid=testc,dc=sugoi";
+
+  /** A user whose password was reset, the directory asks to change it after a successful bind */
+  private static final String RESET_USER_DN = "uid=reset,dc=sugoi";
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private InMemoryDirectoryServer server;
+
+  private Map<String, String> config;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    InMemoryDirectoryServerConfig serverConfig = new InMemoryDirectoryServerConfig("dc=sugoi");
+    serverConfig.addAdditionalBindCredentials("cn=Directory Manager", "admin");
+    serverConfig.setSchema(null);
+    serverConfig.addInMemoryOperationInterceptor(new PasswordPolicyInterceptor());
+    server = new InMemoryDirectoryServer(serverConfig);
+    server.startListening();
+    server.add("dn: dc=sugoi", "objectClass: top", "objectClass: domain", "dc: sugoi");
+    server.add(
+        "dn: " + USER_DN,
+        "objectClass: top",
+        "objectClass: person",
+        "uid: testc",
+        "userPassword: pwd");
+    server.add(
+        "dn: " + RESET_USER_DN,
+        "objectClass: top",
+        "objectClass: person",
+        "uid: reset",
+        "userPassword: pwd");
+    config = new HashMap<>();
+    config.put(LdapConfigKeys.REALM_NAME, "realm");
+    // a name per test so that each test gets its own pools
+    config.put(LdapConfigKeys.NAME, "us" + server.getListenPort());
+    config.put(LdapConfigKeys.URL, "localhost");
+    config.put(LdapConfigKeys.PORT, String.valueOf(server.getListenPort()));
+    config.put(LdapConfigKeys.USERNAME, "cn=Directory Manager");
+    config.put(LdapConfigKeys.PASSWORD, "admin");
+    config.put(LdapConfigKeys.POOL_SIZE, "2");
+    config.put(LdapConfigKeys.BIND_POOL_SIZE, "1");
+    Metrics.addRegistry(meterRegistry);
+  }
+
+  @AfterEach
+  public void teardown() {
+    Metrics.removeRegistry(meterRegistry);
+    server.shutDown(true);
+  }
+
+  @Test
+  public void testBindValidationReusesConnection() throws LDAPException {
+    assertThat(
+        "Password should be valid",
+        LdapFactory.validateUserPassword(config, USER_DN, "pwd", true),
+        is(true));
+    assertThat(
+        "Password should be invalid",
+        LdapFactory.validateUserPassword(config, USER_DN, "wrong", true),
+        is(false));
+    assertThat(
+        "Connection should be usable after a failed bind",
+        LdapFactory.validateUserPassword(config, USER_DN, "pwd", true),
+        is(true));
+    assertThat(
+        "Unknown user should be invalid",
+        LdapFactory.validateUserPassword(config, "uid=unknown,dc=sugoi", "pwd", true),
+        is(false));
+    assertThat(
+        "Validations should be timed by outcome",
+        meterRegistry
+            .get("sugoi.ldap.credentials.validation")
+            .tags("mode", "bind", "outcome", "success")
+            .timer()
+            .count(),
+        is(2L));
+  }
+
+  @Test
+  public void testPasswordPolicyValidation() throws LDAPException {
+    config.put(LdapConfigKeys.CREDENTIALS_VALIDATION, "bind-ppolicy");
+    assertThat(
+        "Password should be valid",
+        LdapFactory.validateUserPassword(config, USER_DN, "pwd", true),
+        is(true));
+    assertThat(
+        "Password should be invalid",
+        LdapFactory.validateUserPassword(config, USER_DN, "wrong", true),
+        is(false));
+    assertThat(
+        "Password to change should still be valid",
+        LdapFactory.validateUserPassword(config, RESET_USER_DN, "pwd", true),
+        is(true));
+    assertThat(
+        "Password policy error should be reported apart from the outcome",
+        meterRegistry
+            .get("sugoi.ldap.credentials.validation")
+            .tags("mode", "bind-ppolicy", "outcome", "success", "ppolicy", "change_after_reset")
+            .timer()
+            .count(),
+        is(1L));
+  }
+
+  @Test
+  public void testCompareValidation() throws LDAPException {
+    config.put(LdapConfigKeys.CREDENTIALS_VALIDATION, "compare");
+    assertThat(
+        "Password should be valid",
+        LdapFactory.validateUserPassword(config, USER_DN, "pwd", true),
+        is(true));
+    assertThat(
+        "Password should be invalid",
+        LdapFactory.validateUserPassword(config, USER_DN, "wrong", true),
+        is(false));
+  }
+
+  /** Answer the binds of the reset user asking for the password policy as a ppolicy server does */
+  private static class PasswordPolicyInterceptor extends InMemoryOperationInterceptor {
+
+    @Override
+    public void processSimpleBindResult(InMemoryInterceptedSimpleBindResult bindResult) {
+      BindResult result = bindResult.getResult();
+      SimpleBindRequest request = bindResult.getRequest();
+      if (result.getResultCode() == ResultCode.SUCCESS
+          && request.getBindDN().equals(RESET_USER_DN)
+          && request.hasControl(PASSWORD_POLICY_REQUEST_OID)) {
+        bindResult.setResult(
+            new BindResult(
+                result.getMessageID(),
+                ResultCode.SUCCESS,
+                null,
+                null,
+                null,
+                new Control[] {
+                  new DraftBeheraLDAPPasswordPolicy10ResponseControl(
+                      null, -1, DraftBeheraLDAPPasswordPolicy10ErrorType.CHANGE_AFTER_RESET)
+                }));
+      }
+    }
+  }
+}
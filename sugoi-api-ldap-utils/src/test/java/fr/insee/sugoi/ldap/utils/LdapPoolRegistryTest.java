@@ -0,0 +1,192 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LdapPoolRegistryTest {
+
+  private InMemoryDirectoryServer server;
+
+  private LdapPoolRegistry poolRegistry;
+
+  private AtomicInteger createdPools;
+
+  @BeforeEach
+  public void setup() throws LDAPException {
+    server = new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=sugoi"));
+    server.startListening();
+    poolRegistry = new LdapPoolRegistry(50, 60000);
+    createdPools = new AtomicInteger();
+  }
+
+  @AfterEach
+  public void teardown() {
+    server.shutDown(true);
+  }
+
+  @Test
+  public void testSameKeySharesPool() throws LDAPException {
+    LDAPConnectionPool first = poolRegistry.acquire("realm_us1_R", "server", this::createPool);
+    LDAPConnectionPool second = poolRegistry.acquire("realm_us2_R", "server", this::createPool);
+    assertThat("Pool should be shared", second, sameInstance(first));
+    assertThat("Pool should be created once", createdPools.get(), is(1));
+    assertThat("Registry should hold one pool", poolRegistry.size(), is(1));
+  }
+
+  @Test
+  public void testConcurrentFirstAcquiresCreateOnePool() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<LDAPConnectionPool>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      String owner = "realm_us" + i + "_R";
+      futures.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return poolRegistry.acquire(owner, "server", this::createPool);
+              }));
+    }
+    start.countDown();
+    LDAPConnectionPool pool = futures.get(0).get(5, TimeUnit.SECONDS);
+    for (Future<LDAPConnectionPool> future : futures) {
+      assertThat("Pool should be shared", future.get(5, TimeUnit.SECONDS), sameInstance(pool));
+    }
+    executor.shutdown();
+    assertThat("Pool should be created once", createdPools.get(), is(1));
+  }
+
+  @Test
+  public void testReconfigurationSwapsPool() throws Exception {
+    LDAPConnectionPool oldPool = poolRegistry.acquire("realm_us_R", "old", this::createPool);
+    LDAPConnectionPool newPool = poolRegistry.acquire("realm_us_R", "new", this::createPool);
+    assertThat("Owner should get a new pool", newPool, not(sameInstance(oldPool)));
+    assertThat(
+        "Owner should keep its new pool",
+        poolRegistry.acquire("realm_us_R", "new", this::createPool),
+        sameInstance(newPool));
+    assertThat("Old pool should be released", poolRegistry.size(), is(1));
+    for (int i = 0; i < 50 && !oldPool.isClosed(); i++) {
+      Thread.sleep(100);
+    }
+    assertThat("Old pool should be closed", oldPool.isClosed(), is(true));
+    assertThat("New pool should stay open", newPool.isClosed(), is(false));
+  }
+
+  @Test
+  public void testPoolHeldByAnotherOwnerStaysOpen() throws Exception {
+    LDAPConnectionPool sharedPool = poolRegistry.acquire("realm_us1_R", "old", this::createPool);
+    poolRegistry.acquire("realm_us2_R", "old", this::createPool);
+    poolRegistry.acquire("realm_us1_R", "new", this::createPool);
+    Thread.sleep(200);
+    assertThat("Shared pool should stay open", sharedPool.isClosed(), is(false));
+    poolRegistry.release("realm_us2_R");
+    for (int i = 0; i < 50 && !sharedPool.isClosed(); i++) {
+      Thread.sleep(100);
+    }
+    assertThat("Shared pool should be closed", sharedPool.isClosed(), is(true));
+  }
+
+  @Test
+  public void testPoolIsClosedOnceItsConnectionsAreBack() throws Exception {
+    LDAPConnectionPool oldPool = poolRegistry.acquire("realm_us_R", "old", this::createPool);
+    LDAPConnection pagedSearchConnection = oldPool.getConnection();
+    poolRegistry.acquire("realm_us_R", "new", this::createPool);
+    Thread.sleep(300);
+    assertThat(
+        "Pool with a checked out connection should stay open", oldPool.isClosed(), is(false));
+    oldPool.releaseConnection(pagedSearchConnection);
+    for (int i = 0; i < 50 && !oldPool.isClosed(); i++) {
+      Thread.sleep(100);
+    }
+    assertThat("Old pool should be closed", oldPool.isClosed(), is(true));
+  }
+
+  @Test
+  public void testPoolIsCreatedOutsideTheRegistry() throws Exception {
+    CountDownLatch creating = new CountDownLatch(1);
+    CountDownLatch created = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<LDAPConnectionPool> slowPool =
+        executor.submit(
+            () ->
+                poolRegistry.acquire(
+                    "realm_us1_R",
+                    "slow",
+                    () -> {
+                      creating.countDown();
+                      try {
+                        created.await();
+                      } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                      }
+                      return createPool();
+                    }));
+    creating.await();
+    assertThat(
+        "Another key should not wait for the slow creation",
+        poolRegistry.acquire("realm_us2_R", "fast", this::createPool).isClosed(),
+        is(false));
+    created.countDown();
+    assertThat(
+        "Slow pool should be created", slowPool.get(5, TimeUnit.SECONDS).isClosed(), is(false));
+    executor.shutdown();
+  }
+
+  @Test
+  public void testFailedCreationIsRetried() throws Exception {
+    assertThrows(
+        LDAPException.class,
+        () ->
+            poolRegistry.acquire(
+                "realm_us_R",
+                "server",
+                () -> {
+                  throw new LDAPException(ResultCode.CONNECT_ERROR);
+                }));
+    assertThat("Failed pool should not be held", poolRegistry.size(), is(0));
+    assertThat(
+        "Pool should be created on the next acquire",
+        poolRegistry.acquire("realm_us_R", "server", this::createPool).isClosed(),
+        is(false));
+  }
+
+  private LDAPConnectionPool createPool() throws LDAPException {
+    createdPools.incrementAndGet();
+    return new LDAPConnectionPool(new LDAPConnection("localhost", server.getListenPort()), 1);
+  }
+}
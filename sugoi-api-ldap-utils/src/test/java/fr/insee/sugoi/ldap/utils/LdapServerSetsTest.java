@@ -0,0 +1,117 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.FailoverServerSet;
+import com.unboundid.ldap.sdk.FastestConnectServerSet;
+import com.unboundid.ldap.sdk.FewestConnectionsServerSet;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.RoundRobinServerSet;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class LdapServerSetsTest {
+
+  private static final List<String> SERVERS = List.of("ldap1:389", "ldap2:1389");
+
+  @Test
+  public void testParseServersWithDefaultPort() {
+    assertThat(
+        "Servers without port should get the default port",
+        LdapServerSets.parseServers("ldap1, ldap2:1389,", 389),
+        is(SERVERS));
+  }
+
+  @Test
+  public void testParseIpv6Servers() {
+    assertThat(
+        "IPv6 addresses should be kept between brackets",
+        LdapServerSets.parseServers("[::1]:1389, [fe80::1], ::1", 389),
+        is(List.of("[::1]:1389", "[fe80::1]:389", "[::1]:389")));
+    assertThrows(IllegalArgumentException.class, () -> LdapServerSets.parseServers("[::1", 389));
+    assertThrows(
+        IllegalArgumentException.class, () -> LdapServerSets.parseServers("[::1]1389", 389));
+    SingleServerSet serverSet =
+        (SingleServerSet)
+            LdapServerSets.create(List.of("[::1]:1389"), null, 0, new LDAPConnectionOptions());
+    assertThat("Brackets should be removed from the address", serverSet.getAddress(), is("::1"));
+    assertThat("Port should follow the brackets", serverSet.getPort(), is(1389));
+  }
+
+  @Test
+  public void testParseServersRejectsEmptyUrl() {
+    assertThrows(IllegalArgumentException.class, () -> LdapServerSets.parseServers(" , ", 389));
+  }
+
+  @Test
+  public void testServerSetOfStrategy() {
+    LDAPConnectionOptions options = new LDAPConnectionOptions();
+    assertThat(
+        "Default strategy should be round-robin",
+        LdapServerSets.create(SERVERS, null, 0, options),
+        instanceOf(RoundRobinServerSet.class));
+    assertThat(
+        LdapServerSets.create(SERVERS, "fewest-connections", 0, options),
+        instanceOf(FewestConnectionsServerSet.class));
+    assertThat(
+        LdapServerSets.create(SERVERS, "fastest-connect", 0, options),
+        instanceOf(FastestConnectServerSet.class));
+    assertThat(
+        LdapServerSets.create(SERVERS, "Failover", 0, options),
+        instanceOf(FailoverServerSet.class));
+    assertThat(
+        "A single server needs no strategy",
+        LdapServerSets.create(List.of("ldap1:389"), "failover", 0, options),
+        instanceOf(SingleServerSet.class));
+    assertThrows(
+        IllegalArgumentException.class, () -> LdapServerSets.create(SERVERS, "random", 0, options));
+  }
+
+  @Test
+  public void testFailoverSkipsUnavailableServer() throws LDAPException, IOException {
+    InMemoryDirectoryServer server =
+        new InMemoryDirectoryServer(new InMemoryDirectoryServerConfig("dc=sugoi"));
+    server.startListening();
+    int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    try (LDAPConnection connection =
+        LdapServerSets.create(
+                List.of("localhost:" + closedPort, "localhost:" + server.getListenPort()),
+                "failover",
+                0,
+                new LDAPConnectionOptions())
+            .getConnection()) {
+      assertThat(
+          "Connection should be opened on the available server",
+          connection.getConnectedPort(),
+          is(server.getListenPort()));
+    } finally {
+      server.shutDown(true);
+    }
+  }
+}
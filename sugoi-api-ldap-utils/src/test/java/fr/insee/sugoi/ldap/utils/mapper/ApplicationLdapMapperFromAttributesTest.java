@@ -38,8 +38,8 @@ public class ApplicationLdapMapperFromAttributesTest {
     config.put("address_source", "ou=address,o=insee,c=fr");
     config.put("app_source", "ou=organisations,ou=clients_domaine1,o=inese,c=fr");
     Map<String, String> mapping = new HashMap<>();
-    applicationLdapMapper = new ApplicationLdapMapper(config, mapping);
     mapping.put("name", "ou,String,rw");
+    applicationLdapMapper = new ApplicationLdapMapper(config, mapping);
   }
 
   @Test
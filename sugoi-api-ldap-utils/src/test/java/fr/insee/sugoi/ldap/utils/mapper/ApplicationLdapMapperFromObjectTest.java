@@ -38,8 +38,8 @@ public class ApplicationLdapMapperFromObjectTest {
     config.put("app_source", "ou=monappli,ou=Applications,o=insee,c=fr");
     config.put("address_source", "ou=address,o=insee,c=fr");
     Map<String, String> mapping = new HashMap<>();
-    applicationLdapMapper = new ApplicationLdapMapper(config, mapping);
     mapping.put("name", "ou,String,rw");
+    applicationLdapMapper = new ApplicationLdapMapper(config, mapping);
     application = new Application();
   }
 
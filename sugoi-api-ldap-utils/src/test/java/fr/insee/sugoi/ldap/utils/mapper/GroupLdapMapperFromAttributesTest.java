@@ -38,10 +38,10 @@ public class GroupLdapMapperFromAttributesTest {
     config.put("address_source", "ou=address,o=insee,c=fr");
     config.put("organization_source", "ou=organisations,ou=clients_domaine1,o=insee,c=fr");
     Map<String, String> mapping = new HashMap<>();
-    groupLdapMapper = new GroupLdapMapper(config, mapping);
     mapping.put("name", "cn,String,rw");
     mapping.put("description", "description,String,rw");
     mapping.put("users", "uniquemember,list_user,rw");
+    groupLdapMapper = new GroupLdapMapper(config, mapping);
   }
 
   @Test
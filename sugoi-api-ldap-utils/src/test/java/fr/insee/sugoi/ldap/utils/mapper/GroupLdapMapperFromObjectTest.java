@@ -40,10 +40,10 @@ public class GroupLdapMapperFromObjectTest {
     config.put("address_source", "ou=address,o=insee,c=fr");
     config.put("user_source", "ou=contacts,o=insee,c=fr");
     Map<String, String> mapping = new HashMap<>();
-    groupLdapMapper = new GroupLdapMapper(config, mapping);
     mapping.put("name", "cn,String,rw");
     mapping.put("description", "description,String,rw");
     mapping.put("users", "uniquemember,list_user,rw");
+    groupLdapMapper = new GroupLdapMapper(config, mapping);
     group = new Group();
   }
 
@@ -0,0 +1,81 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.ldap.utils.mapper;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.unboundid.ldap.sdk.Attribute;
+import fr.insee.sugoi.core.exceptions.LdapMappingConfigurationException;
+import fr.insee.sugoi.model.Group;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MappingPlanTest {
+
+  Map<String, String> config;
+  Map<String, String> mapping;
+
+  @BeforeEach
+  public void setup() {
+    config = new HashMap<>();
+    mapping = new HashMap<>();
+    mapping.put("name", "cn,String,rw");
+    mapping.put("description", "description,String,ro");
+  }
+
+  @Test
+  public void mapAttributesWhateverTheirCase() {
+    MappingPlan<Group> plan = new MappingPlan<>(Group.class, config, mapping);
+    Group group =
+        plan.mapLdapAttributesToObject(
+            List.of(
+                new Attribute("CN", "groupe"),
+                new Attribute("Description", "une description")));
+    assertThat("Should have a name", group.getName(), is("groupe"));
+    assertThat("Should have a description", group.getDescription(), is("une description"));
+  }
+
+  @Test
+  public void readonlyFieldsAreNotWritten() {
+    MappingPlan<Group> plan = new MappingPlan<>(Group.class, config, mapping);
+    Group group = new Group();
+    group.setName("groupe");
+    group.setDescription("une description");
+    List<Attribute> attributes = plan.mapObjectToLdapAttributes(group, null);
+    assertThat(
+        "Should have name",
+        attributes.stream().anyMatch(attribute -> attribute.getName().equals("cn")));
+    assertThat(
+        "Should not have description",
+        attributes.stream().noneMatch(attribute -> attribute.getName().equals("description")));
+  }
+
+  @Test
+  public void unknownFieldOnlyFailsWhenUsed() {
+    mapping.put("unknown", "unknownattribute,String,rw");
+    MappingPlan<Group> plan = new MappingPlan<>(Group.class, config, mapping);
+    assertThat(
+        "Should map without the unknown attribute",
+        plan.mapLdapAttributesToObject(List.of(new Attribute("cn", "groupe"))).getName(),
+        is("groupe"));
+    assertThrows(
+        LdapMappingConfigurationException.class,
+        () -> plan.mapLdapAttributesToObject(List.of(new Attribute("unknownattribute", "value"))));
+  }
+}
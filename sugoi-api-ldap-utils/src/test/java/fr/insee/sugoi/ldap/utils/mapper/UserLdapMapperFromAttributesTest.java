@@ -17,6 +17,7 @@ import static org.hamcrest.MatcherAssert.*;
 import static org.hamcrest.Matchers.*;
 
 import com.unboundid.ldap.sdk.Attribute;
+import fr.insee.sugoi.ldap.utils.config.LdapConfigKeys;
 import fr.insee.sugoi.model.User;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -208,4 +209,31 @@ public class UserLdapMapperFromAttributesTest {
         "Should have inseeRoleapplicatif tata",
         inseeRoleApplicatifs.stream().anyMatch(role -> role.equals("tata")));
   }
+
+  @Test
+  public void getReadAttributesFromMapping() {
+    Map<String, String> config = new HashMap<>();
+    config.put(LdapConfigKeys.APP_MANAGED_ATTRIBUTE_KEYS_LIST, "inseeGroupeDefaut, inseeRole ,");
+    Map<String, String> mapping = new HashMap<>();
+    mapping.put("username", "uid,String,rw");
+    mapping.put("mail", "mail,String,rw");
+    mapping.put("groups", "memberOf,list_group,ro");
+    UserLdapMapper projectingMapper = new UserLdapMapper(config, mapping);
+
+    assertThat(
+        "Should read the mapped and app managed attributes only",
+        projectingMapper.getReadAttributes(),
+        containsInAnyOrder("uid", "mail", "memberOf", "inseeGroupeDefaut", "inseeRole"));
+    assertThat(
+        "Should ignore the case of attribute names",
+        projectingMapper.getReadAttributes().contains("MEMBEROF"));
+    assertThat(
+        "Should read the attributes of the full mapping",
+        userLdapMapper.getReadAttributes(),
+        hasItems("sn", "givenname", "inseeOrganisationDN", "inseeRoleApplicatif"));
+    assertThat(
+        "Should not read unmapped attributes",
+        userLdapMapper.getReadAttributes(),
+        not(anyOf(hasItem("userPassword"), hasItem("*"), hasItem("+"))));
+  }
 }
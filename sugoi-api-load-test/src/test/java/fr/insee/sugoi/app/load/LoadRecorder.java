@@ -0,0 +1,151 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.app.load;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies and response statuses of the requests sent during a load test, grouped by endpoint.
+ * Statistics cover the whole run: they are not decayed as they would be on a monitoring registry.
+ */
+public class LoadRecorder {
+
+  public static final String REQUESTS_METRIC = "sugoi.load.requests";
+  public static final String RESPONSES_METRIC = "sugoi.load.responses";
+  public static final String TRANSPORT_ERROR = "transport_error";
+
+  private static final Duration[] HISTOGRAM_BUCKETS = {
+    Duration.ofMillis(5),
+    Duration.ofMillis(10),
+    Duration.ofMillis(25),
+    Duration.ofMillis(50),
+    Duration.ofMillis(100),
+    Duration.ofMillis(250),
+    Duration.ofMillis(500),
+    Duration.ofSeconds(1),
+    Duration.ofMillis(2500),
+    Duration.ofSeconds(5)
+  };
+
+  private final MeterRegistry registry = new SimpleMeterRegistry();
+
+  /**
+   * Record a response
+   *
+   * @param endpoint name of the endpoint
+   * @param nanos time between the sending of the request and the reception of the whole response
+   * @param status http status of the response, or TRANSPORT_ERROR
+   * @param error true if the response is not an expected one
+   */
+  public void record(String endpoint, long nanos, String status, boolean error) {
+    timer(endpoint).record(nanos, TimeUnit.NANOSECONDS);
+    Counter.builder(RESPONSES_METRIC)
+        .tag("endpoint", endpoint)
+        .tag("status", status)
+        .tag("error", String.valueOf(error))
+        .register(registry)
+        .increment();
+  }
+
+  /**
+   * Build the report of the run, one entry per endpoint sorted by name
+   *
+   * @param elapsed duration of the run, used to compute throughputs
+   * @return the statistics of each endpoint
+   */
+  public List<Map<String, Object>> report(Duration elapsed) {
+    double seconds = elapsed.toMillis() / 1000.0;
+    Map<String, Map<String, Object>> endpoints = new TreeMap<>();
+    registry
+        .find(REQUESTS_METRIC)
+        .timers()
+        .forEach(
+            timer -> {
+              String endpoint = timer.getId().getTag("endpoint");
+              HistogramSnapshot snapshot = timer.takeSnapshot();
+              Map<String, Object> statistics = new LinkedHashMap<>();
+              statistics.put("endpoint", endpoint);
+              statistics.put("requests", snapshot.count());
+              double errors = countErrors(endpoint);
+              statistics.put("errors", (long) errors);
+              statistics.put("errorRate", snapshot.count() > 0 ? errors / snapshot.count() : 0.0);
+              statistics.put("throughputPerSecond", snapshot.count() / seconds);
+              statistics.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+              statistics.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+              Map<String, Double> percentiles = new LinkedHashMap<>();
+              for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                percentiles.put(
+                    "p" + Math.round(percentile.percentile() * 100),
+                    percentile.value(TimeUnit.MILLISECONDS));
+              }
+              statistics.put("percentilesMs", percentiles);
+              Map<String, Double> histogram = new LinkedHashMap<>();
+              for (CountAtBucket bucket : snapshot.histogramCounts()) {
+                histogram.put(
+                    "le" + Math.round(bucket.bucket(TimeUnit.MILLISECONDS)), bucket.count());
+              }
+              statistics.put("histogramMs", histogram);
+              statistics.put("statuses", countStatuses(endpoint));
+              endpoints.put(endpoint, statistics);
+            });
+    return new ArrayList<>(endpoints.values());
+  }
+
+  private Timer timer(String endpoint) {
+    return Timer.builder(REQUESTS_METRIC)
+        .tag("endpoint", endpoint)
+        .publishPercentiles(0.5, 0.9, 0.99)
+        .serviceLevelObjectives(HISTOGRAM_BUCKETS)
+        .distributionStatisticExpiry(Duration.ofDays(1))
+        .distributionStatisticBufferLength(1)
+        .register(registry);
+  }
+
+  private double countErrors(String endpoint) {
+    return registry
+        .find(RESPONSES_METRIC)
+        .tag("endpoint", endpoint)
+        .tag("error", "true")
+        .counters()
+        .stream()
+        .mapToDouble(Counter::count)
+        .sum();
+  }
+
+  private Map<String, Long> countStatuses(String endpoint) {
+    Map<String, Long> statuses = new TreeMap<>();
+    registry
+        .find(RESPONSES_METRIC)
+        .tag("endpoint", endpoint)
+        .counters()
+        .forEach(
+            counter ->
+                statuses.merge(
+                    counter.getId().getTag("status"), (long) counter.count(), Long::sum));
+    return statuses;
+  }
+}
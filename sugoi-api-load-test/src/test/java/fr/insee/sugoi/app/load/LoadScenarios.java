@@ -0,0 +1,265 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.app.load;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The mix of requests sent by the load test. Scenarios are drawn according to their weight and act
+ * on users created before the run. Reads and synchronous writes go to tomcat1, which uses the
+ * LdapWriterStore; one scenario writes through tomcat2, which sends its writes to tomcat1 through
+ * the broker.
+ */
+public class LoadScenarios {
+
+  public static final String REALM = "domaine1";
+  public static final String STORAGE = "Profil_domaine1_WebServiceLdap";
+  public static final String APPLICATION = "Applitest";
+  public static final String GROUP = "Utilisateurs_Applitest";
+
+  /** Maximum number of pages read by a paged search */
+  private static final int MAX_PAGES = 5;
+
+  private static final Set<Integer> CONFLICT = Set.of(409);
+
+  private final SugoiClient tomcat1;
+  private final SugoiClient tomcat2;
+  private final List<String> usernames;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final List<Scenario> scenarios = new ArrayList<>();
+  private int totalWeight = 0;
+
+  /**
+   * @param tomcat1 client of the tomcat writing in ldap
+   * @param tomcat2 client of the tomcat writing through the broker
+   * @param usernames users on which the scenarios act
+   */
+  public LoadScenarios(SugoiClient tomcat1, SugoiClient tomcat2, List<String> usernames) {
+    this.tomcat1 = tomcat1;
+    this.tomcat2 = tomcat2;
+    this.usernames = usernames;
+    add(25, this::getUser);
+    add(15, this::getContact);
+    add(10, this::searchUsers);
+    add(5, this::searchContacts);
+    add(2, this::exportUsers);
+    add(5, this::reinitPassword);
+    add(3, this::reinitContactPassword);
+    add(8, this::addGroupMember);
+    add(8, this::deleteGroupMember);
+    add(4, this::addContactToGroup);
+    add(4, this::deleteContactFromGroup);
+    add(3, this::addGroupMemberThroughBroker);
+  }
+
+  /** Run a scenario drawn according to the weights */
+  public void runRandom(Random random) {
+    int draw = random.nextInt(totalWeight);
+    for (Scenario scenario : scenarios) {
+      draw -= scenario.weight;
+      if (draw < 0) {
+        scenario.action.accept(random);
+        return;
+      }
+    }
+  }
+
+  private void getUser(Random random) {
+    tomcat1.get(
+        "GET /v2/realms/{realm}/users/{id}",
+        "/v2/realms/" + REALM + "/users/" + username(random),
+        Set.of());
+  }
+
+  private void getContact(Random random) {
+    tomcat1.get(
+        "GET /v1/{domaine}/contact/{id}",
+        "/v1/" + REALM + "/contact/" + username(random),
+        Set.of());
+  }
+
+  /** Read the first pages of all the users, following the search token of each page */
+  private void searchUsers(Random random) {
+    String path = "/v2/realms/" + REALM + "/storages/" + STORAGE + "/users?size=20";
+    HttpResponse<String> response =
+        tomcat1.get("GET /v2/realms/{realm}/storages/{storage}/users", path, Set.of());
+    for (int page = 1; page < MAX_PAGES && isOk(response); page++) {
+      JsonNode body = readBody(response);
+      if (body == null
+          || !body.path("hasMoreResult").asBoolean()
+          || body.path("searchToken").asText(null) == null) {
+        return;
+      }
+      response =
+          tomcat1.get(
+              "GET /v2/realms/{realm}/storages/{storage}/users?searchToken",
+              path
+                  + "&offset="
+                  + body.path("nextStart").asInt()
+                  + "&searchToken="
+                  + URLEncoder.encode(body.path("searchToken").asText(), StandardCharsets.UTF_8),
+              Set.of());
+    }
+  }
+
+  /** Read the first pages of all the contacts, following the nextLocation header of each page */
+  private void searchContacts(Random random) {
+    HttpResponse<String> response =
+        tomcat1.get(
+            "GET /v1/{domaine}/contacts", "/v1/" + REALM + "/contacts?size=20&body=true", Set.of());
+    for (int page = 1; page < MAX_PAGES && isOk(response); page++) {
+      String nextLocation = response.headers().firstValue("nextLocation").orElse(null);
+      if (nextLocation == null || !nextLocation.contains("searchCookie=")) {
+        return;
+      }
+      response = tomcat1.get("GET /v1/{domaine}/contacts?searchCookie", nextLocation, Set.of());
+    }
+  }
+
+  private void exportUsers(Random random) {
+    tomcat1.send(
+        "GET /v2/realms/{realm}/storages/{storage}/export/users/export.csv",
+        tomcat1
+            .request("/v2/realms/" + REALM + "/storages/" + STORAGE + "/export/users/export.csv")
+            .setHeader("Accept", "text/csv")
+            .GET()
+            .build(),
+        Set.of());
+  }
+
+  private void reinitPassword(Random random) {
+    tomcat1.post(
+        "POST /v2/realms/{realm}/storages/{storage}/users/{id}/reinitPassword",
+        "/v2/realms/"
+            + REALM
+            + "/storages/"
+            + STORAGE
+            + "/users/"
+            + username(random)
+            + "/reinitPassword",
+        "{}",
+        Set.of());
+  }
+
+  private void reinitContactPassword(Random random) {
+    tomcat1.post(
+        "POST /v1/{domaine}/contact/{id}/password",
+        "/v1/" + REALM + "/contact/" + username(random) + "/password",
+        "{}",
+        Set.of());
+  }
+
+  private void addGroupMember(Random random) {
+    tomcat1.put(
+        "PUT /v2/realms/{realm}/applications/{application}/groups/{group}/members/{id}",
+        groupMemberPath(random),
+        "",
+        Set.of());
+  }
+
+  private void deleteGroupMember(Random random) {
+    tomcat1.delete(
+        "DELETE /v2/realms/{realm}/applications/{application}/groups/{group}/members/{id}",
+        groupMemberPath(random),
+        Set.of());
+  }
+
+  /** A contact already in the group, or not in the group when deleted, gives a conflict */
+  private void addContactToGroup(Random random) {
+    tomcat1.put(
+        "PUT /v1/{domaine}/contact/{id}/groupes/{appli}/{groupe}",
+        contactGroupPath(random),
+        "",
+        CONFLICT);
+  }
+
+  private void deleteContactFromGroup(Random random) {
+    tomcat1.delete(
+        "DELETE /v1/{domaine}/contact/{id}/groupes/{appli}/{groupe}",
+        contactGroupPath(random),
+        CONFLICT);
+  }
+
+  private void addGroupMemberThroughBroker(Random random) {
+    tomcat2.put(
+        "PUT /v2/realms/{realm}/applications/{application}/groups/{group}/members/{id} (broker)",
+        groupMemberPath(random),
+        "",
+        Set.of());
+  }
+
+  private String groupMemberPath(Random random) {
+    return "/v2/realms/"
+        + REALM
+        + "/applications/"
+        + APPLICATION
+        + "/groups/"
+        + GROUP
+        + "/members/"
+        + username(random);
+  }
+
+  private String contactGroupPath(Random random) {
+    return "/v1/"
+        + REALM
+        + "/contact/"
+        + username(random)
+        + "/groupes/"
+        + APPLICATION
+        + "/"
+        + GROUP;
+  }
+
+  private String username(Random random) {
+    return usernames.get(random.nextInt(usernames.size()));
+  }
+
+  private boolean isOk(HttpResponse<String> response) {
+    return response != null && response.statusCode() == 200;
+  }
+
+  private JsonNode readBody(HttpResponse<String> response) {
+    try {
+      return objectMapper.readTree(response.body());
+    } catch (JsonProcessingException e) {
+      return null;
+    }
+  }
+
+  private void add(int weight, Consumer<Random> action) {
+    scenarios.add(new Scenario(weight, action));
+    totalWeight += weight;
+  }
+
+  private static class Scenario {
+
+    private final int weight;
+    private final Consumer<Random> action;
+
+    private Scenario(int weight, Consumer<Random> action) {
+      this.weight = weight;
+      this.action = action;
+    }
+  }
+}
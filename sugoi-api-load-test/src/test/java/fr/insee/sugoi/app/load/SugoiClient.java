@@ -0,0 +1,107 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.app.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * Http client of the load test. Each call is timed and recorded under the name of its endpoint
+ * rather than its url, so that the calls on different users are aggregated.
+ */
+public class SugoiClient {
+
+  private final HttpClient httpClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+  private final String baseUrl;
+  private final String authorization;
+  private final LoadRecorder recorder;
+
+  /**
+   * @param baseUrl url of the tomcat, to which the paths of the requests are appended
+   * @param username basic authentication username
+   * @param password basic authentication password
+   * @param recorder where responses are recorded
+   */
+  public SugoiClient(String baseUrl, String username, String password, LoadRecorder recorder) {
+    this.baseUrl = baseUrl;
+    this.authorization =
+        "Basic "
+            + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    this.recorder = recorder;
+  }
+
+  public HttpResponse<String> get(String endpoint, String path, Set<Integer> accepted) {
+    return send(endpoint, request(path).GET().build(), accepted);
+  }
+
+  public HttpResponse<String> post(
+      String endpoint, String path, String body, Set<Integer> accepted) {
+    return send(endpoint, request(path).POST(BodyPublishers.ofString(body)).build(), accepted);
+  }
+
+  public HttpResponse<String> put(
+      String endpoint, String path, String body, Set<Integer> accepted) {
+    return send(endpoint, request(path).PUT(BodyPublishers.ofString(body)).build(), accepted);
+  }
+
+  public HttpResponse<String> delete(String endpoint, String path, Set<Integer> accepted) {
+    return send(endpoint, request(path).DELETE().build(), accepted);
+  }
+
+  /**
+   * Send a request and record its response. Responses with a 2xx status or one of the accepted
+   * statuses are successes, others are recorded as errors.
+   *
+   * @return the response, or null if none could be received
+   */
+  public HttpResponse<String> send(String endpoint, HttpRequest request, Set<Integer> accepted) {
+    long start = System.nanoTime();
+    try {
+      HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+      int status = response.statusCode();
+      recorder.record(
+          endpoint,
+          System.nanoTime() - start,
+          String.valueOf(status),
+          !(status / 100 == 2 || accepted.contains(status)));
+      return response;
+    } catch (IOException e) {
+      recorder.record(endpoint, System.nanoTime() - start, LoadRecorder.TRANSPORT_ERROR, true);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /** A request to baseUrl + path, with the credentials and json content type */
+  public HttpRequest.Builder request(String path) {
+    return HttpRequest.newBuilder(URI.create(path.startsWith("http") ? path : baseUrl + path))
+        .timeout(Duration.ofSeconds(30))
+        .header("Authorization", authorization)
+        .header("Accept", "application/json")
+        .header("Content-Type", "application/json");
+  }
+}
@@ -0,0 +1,173 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.app.load;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Send a mix of requests to the tomcats started by SugoiTestService for a fixed duration, then
+ * write a json report of the throughput, latencies and errors of each endpoint. The test fails if
+ * the overall error rate is above the configured maximum.
+ */
+public class SugoiLoadTest {
+
+  private static final String BASE_URL =
+      System.getProperty("fr.insee.sugoi.load.url", "http://localhost:8080");
+  private static final String USERNAME =
+      System.getProperty("fr.insee.sugoi.load.username", "appli_sugoi");
+  private static final String PASSWORD =
+      System.getProperty("fr.insee.sugoi.load.password", "sugoi");
+  private static final long DURATION =
+      Long.parseLong(System.getProperty("fr.insee.sugoi.load.duration", "60"));
+  private static final int THREADS =
+      Integer.parseInt(System.getProperty("fr.insee.sugoi.load.threads", "8"));
+  private static final int USERS =
+      Integer.parseInt(System.getProperty("fr.insee.sugoi.load.users", "200"));
+  private static final double MAX_ERROR_RATE =
+      Double.parseDouble(System.getProperty("fr.insee.sugoi.load.max.error.rate", "0.01"));
+  private static final String REPORT =
+      System.getProperty("fr.insee.sugoi.load.report", "target/load-test/report.json");
+  private static final long SEED = 42L;
+
+  @Test
+  public void runLoad() throws Exception {
+    // requests sent before the run are not part of the report
+    LoadRecorder setupRecorder = new LoadRecorder();
+    SugoiClient setupClient =
+        new SugoiClient(BASE_URL + "/tomcat1", USERNAME, PASSWORD, setupRecorder);
+    waitForStart(
+        setupClient, new SugoiClient(BASE_URL + "/tomcat2", USERNAME, PASSWORD, setupRecorder));
+    List<String> usernames = createUsers(setupClient);
+
+    LoadRecorder recorder = new LoadRecorder();
+    LoadScenarios scenarios =
+        new LoadScenarios(
+            new SugoiClient(BASE_URL + "/tomcat1", USERNAME, PASSWORD, recorder),
+            new SugoiClient(BASE_URL + "/tomcat2", USERNAME, PASSWORD, recorder),
+            usernames);
+    Instant start = Instant.now();
+    Instant end = start.plusSeconds(DURATION);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    for (int thread = 0; thread < THREADS; thread++) {
+      Random random = new Random(SEED + thread);
+      executor.submit(
+          () -> {
+            while (Instant.now().isBefore(end)) {
+              scenarios.runRandom(random);
+            }
+          });
+    }
+    executor.shutdown();
+    executor.awaitTermination(DURATION + 120, TimeUnit.SECONDS);
+    Duration elapsed = Duration.between(start, Instant.now());
+
+    List<Map<String, Object>> endpoints = recorder.report(elapsed);
+    writeReport(endpoints, elapsed);
+    long requests = endpoints.stream().mapToLong(e -> (long) e.get("requests")).sum();
+    long errors = endpoints.stream().mapToLong(e -> (long) e.get("errors")).sum();
+    assertTrue(requests > 0, "No request was sent");
+    assertTrue(
+        (double) errors / requests <= MAX_ERROR_RATE,
+        errors + " errors on " + requests + " requests, see " + REPORT);
+  }
+
+  /** The tomcats are started asynchronously by the pre-integration-test phase */
+  private void waitForStart(SugoiClient... clients) throws InterruptedException {
+    Instant timeout = Instant.now().plus(Duration.ofMinutes(5));
+    for (SugoiClient client : clients) {
+      HttpResponse<String> response = null;
+      while (response == null || response.statusCode() != 200) {
+        if (Instant.now().isAfter(timeout)) {
+          throw new IllegalStateException("Sugoi did not start in 5 minutes");
+        }
+        Thread.sleep(2000);
+        response = client.get("GET /v2/realms", "/v2/realms", Set.of());
+      }
+    }
+  }
+
+  /** Create the users on which the scenarios act, they all get an address and a mail */
+  private List<String> createUsers(SugoiClient client) {
+    List<String> usernames = new ArrayList<>();
+    for (int i = 0; i < USERS; i++) {
+      String username = "load" + i;
+      client.post(
+          "POST /v2/realms/{realm}/storages/{storage}/users",
+          "/v2/realms/" + LoadScenarios.REALM + "/storages/" + LoadScenarios.STORAGE + "/users",
+          "{\"username\":\""
+              + username
+              + "\",\"lastName\":\"Nom"
+              + i
+              + "\",\"firstName\":\"Prenom"
+              + i
+              + "\",\"mail\":\""
+              + username
+              + "@insee.fr\",\"address\":{\"Ligne1\":\"Prenom"
+              + i
+              + " Nom"
+              + i
+              + "\",\"Ligne4\":\"88 AVE VERDIER\",\"Ligne6\":\"92120 MONTROUGE\"}}",
+          Set.of(409));
+      usernames.add(username);
+    }
+    return usernames;
+  }
+
+  private void writeReport(List<Map<String, Object>> endpoints, Duration elapsed)
+      throws Exception {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("durationSeconds", elapsed.toMillis() / 1000.0);
+    report.put("threads", THREADS);
+    report.put("users", USERS);
+    report.put("endpoints", endpoints);
+    File reportFile = new File(REPORT);
+    reportFile.getParentFile().mkdirs();
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+
+    System.out.println(
+        String.format(
+            "%-90s %9s %7s %9s %9s %9s %9s",
+            "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "max ms"));
+    for (Map<String, Object> endpoint : endpoints) {
+      @SuppressWarnings("unchecked")
+      Map<String, Double> percentiles = (Map<String, Double>) endpoint.get("percentilesMs");
+      System.out.println(
+          String.format(
+              "%-90s %9d %7d %9.1f %9.1f %9.1f %9.1f",
+              endpoint.get("endpoint"),
+              endpoint.get("requests"),
+              endpoint.get("errors"),
+              endpoint.get("throughputPerSecond"),
+              percentiles.get("p50"),
+              percentiles.get("p99"),
+              endpoint.get("maxMs")));
+    }
+  }
+}
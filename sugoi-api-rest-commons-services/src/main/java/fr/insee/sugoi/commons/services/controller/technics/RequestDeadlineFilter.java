@@ -0,0 +1,67 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.commons.services.controller.technics;
+
+import fr.insee.sugoi.core.deadline.RequestDeadline;
+import java.io.IOException;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Start the deadline of each request. The deadline is the request timeout, or the timeout asked by
+ * the client in the X-Request-Timeout header in milliseconds if it is shorter.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+  public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+  @Value("${fr.insee.sugoi.request.timeout:60000}")
+  private long timeoutMillis;
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    RequestDeadline.start(getTimeoutMillis(request));
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      RequestDeadline.clear();
+    }
+  }
+
+  private long getTimeoutMillis(HttpServletRequest request) {
+    String header = request.getHeader(TIMEOUT_HEADER);
+    if (header != null) {
+      try {
+        long requestedTimeoutMillis = Long.parseLong(header.trim());
+        if (requestedTimeoutMillis > 0 && requestedTimeoutMillis < timeoutMillis) {
+          return requestedTimeoutMillis;
+        }
+      } catch (NumberFormatException e) {
+        // the request timeout applies
+      }
+    }
+    return timeoutMillis;
+  }
+}
@@ -23,6 +23,7 @@ import fr.insee.sugoi.core.exceptions.GroupAlreadyExistException;
 import fr.insee.sugoi.core.exceptions.GroupNotCreatedException;
 import fr.insee.sugoi.core.exceptions.GroupNotFoundException;
 import fr.insee.sugoi.core.exceptions.InvalidPasswordException;
+import fr.insee.sugoi.core.exceptions.InvalidSearchTokenException;
 import fr.insee.sugoi.core.exceptions.InvalidUserStorageException;
 import fr.insee.sugoi.core.exceptions.OrganizationAlreadyExistException;
 import fr.insee.sugoi.core.exceptions.OrganizationNotCreatedException;
@@ -31,7 +32,10 @@ import fr.insee.sugoi.core.exceptions.PasswordPolicyNotMetException;
 import fr.insee.sugoi.core.exceptions.RealmAlreadyExistException;
 import fr.insee.sugoi.core.exceptions.RealmNotCreatedException;
 import fr.insee.sugoi.core.exceptions.RealmNotFoundException;
+import fr.insee.sugoi.core.exceptions.RequestDeadlineExceededException;
+import fr.insee.sugoi.core.exceptions.SearchExpiredException;
 import fr.insee.sugoi.core.exceptions.StoragePolicyNotMetException;
+import fr.insee.sugoi.core.exceptions.StoreTimeoutException;
 import fr.insee.sugoi.core.exceptions.UserAlreadyExistException;
 import fr.insee.sugoi.core.exceptions.UserNotCreatedException;
 import fr.insee.sugoi.core.exceptions.UserNotFoundException;
@@ -270,6 +274,49 @@ public class SugoiAdviceController {
     return response;
   }
 
+  @ExceptionHandler(StoreTimeoutException.class)
+  @ResponseBody
+  public ResponseEntity<ErrorView> exception(StoreTimeoutException e) {
+    logger.warn(e.getMessage());
+    ErrorView errorView = new ErrorView();
+    errorView.setMessage(e.getMessage());
+    final ResponseEntity<ErrorView> response =
+        new ResponseEntity<ErrorView>(errorView, HttpStatus.GATEWAY_TIMEOUT);
+    return response;
+  }
+
+  @ExceptionHandler(RequestDeadlineExceededException.class)
+  @ResponseBody
+  public ResponseEntity<ErrorView> exception(RequestDeadlineExceededException e) {
+    logger.warn(e.getMessage());
+    ErrorView errorView = new ErrorView();
+    errorView.setMessage(e.getMessage());
+    final ResponseEntity<ErrorView> response =
+        new ResponseEntity<ErrorView>(errorView, HttpStatus.SERVICE_UNAVAILABLE);
+    return response;
+  }
+
+  @ExceptionHandler(SearchExpiredException.class)
+  @ResponseBody
+  public ResponseEntity<ErrorView> exception(SearchExpiredException e) {
+    logger.info(e.getMessage());
+    ErrorView errorView = new ErrorView();
+    errorView.setMessage(e.getMessage());
+    final ResponseEntity<ErrorView> response =
+        new ResponseEntity<ErrorView>(errorView, HttpStatus.GONE);
+    return response;
+  }
+
+  @ExceptionHandler(InvalidSearchTokenException.class)
+  @ResponseBody
+  public ResponseEntity<ErrorView> exception(InvalidSearchTokenException e) {
+    ErrorView errorView = new ErrorView();
+    errorView.setMessage(e.getMessage());
+    final ResponseEntity<ErrorView> response =
+        new ResponseEntity<ErrorView>(errorView, HttpStatus.BAD_REQUEST);
+    return response;
+  }
+
   @ExceptionHandler(Exception.class)
   @ResponseBody
   public ResponseEntity<ErrorView> exception(Exception e) {
@@ -13,6 +13,7 @@
 */
 package fr.insee.sugoi.services.controller;
 
+import fr.insee.sugoi.core.deadline.RequestDeadline;
 import fr.insee.sugoi.core.service.ConfigService;
 import fr.insee.sugoi.core.service.UserService;
 import fr.insee.sugoi.model.Habilitation;
@@ -156,6 +157,9 @@ public class ExportController {
         PageableResult pageable = new PageableResult(pageSize, 0, null);
 
         while (true) {
+          // each page has the whole request timeout since the export streams an unknown number
+          // of pages
+          RequestDeadline.restart();
           PageResult<User> foundUsers =
               userService.findByProperties(realm, storageName, searchUser, pageable, typeRecherche);
           csvPrinter.printRecords(
@@ -13,19 +13,43 @@
 */
 package fr.insee.sugoi.seealso;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.insee.sugoi.core.seealso.SeeAlsoDecorator;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
 @Service
 public class HttpSeeAlsoDecorator implements SeeAlsoDecorator {
 
+  private static final Logger logger = LogManager.getLogger(HttpSeeAlsoDecorator.class);
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static final JsonFactory jsonFactory = objectMapper.getFactory();
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(1);
+
+  /** Subobjects are read from the users, only a bounded number of compiled paths is kept */
+  private static final int MAX_COMPILED_PATHS = 1000;
+
+  private final Map<String, JsonPathMatcher> compiledPaths = new ConcurrentHashMap<>();
+
   private WebClient client = WebClient.create();
 
   @Override
@@ -45,44 +69,70 @@ public class HttpSeeAlsoDecorator implements SeeAlsoDecorator {
    */
   @Override
   public Object getResourceFromUrl(String url, String subobject) {
+    return getResourcesFromUrl(url, List.of(subobject)).get(subobject);
+  }
+
+  @Override
+  public Map<String, Object> getResourcesFromUrl(String url, Collection<String> subobjects) {
     try {
-      JsonNode rootNode = (new ObjectMapper()).readTree(getHttpResourceBody(url));
-      return transformJsonToValue(rootNode, subobject);
-    } catch (IOException | InterruptedException e) {
-      return null;
+      return getResourcesFromUrlAsync(url, subobjects, Runnable::run).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
     }
   }
 
-  private String getHttpResourceBody(String url) throws IOException, InterruptedException {
+  /** Fetch the resource without blocking, the executor is not used */
+  @Override
+  public CompletableFuture<Map<String, Object>> getResourcesFromUrlAsync(
+      String url, Collection<String> subobjects, Executor executor) {
     return client
         .get()
         .uri(url)
         .retrieve()
         .bodyToMono(String.class)
-        .timeout(Duration.ofSeconds(1))
-        .block();
+        .timeout(TIMEOUT)
+        .map(body -> transformJsonToValues(body, subobjects))
+        .defaultIfEmpty(new HashMap<>())
+        .toFuture();
+  }
+
+  private Map<String, Object> transformJsonToValues(String body, Collection<String> subobjects) {
+    Map<String, Object> values = new HashMap<>();
+    for (String subobject : subobjects) {
+      try (JsonParser parser = jsonFactory.createParser(body)) {
+        JsonNode node =
+            getPathMatcher(subobject).match(parser) ? objectMapper.readTree(parser) : null;
+        if (node != null) {
+          values.put(subobject, transformJsonToValue(node));
+        }
+      } catch (IOException e) {
+        logger.debug("Cannot read {} in the resource", subobject, e);
+      }
+    }
+    return values;
   }
 
-  private Object transformJsonToValue(JsonNode rootNode, String subobject) {
-    String[] leafs = subobject.split("\\.");
-    for (String leaf : leafs) {
-      String isArrayPositionRegex = ".*\\[[0-9]+\\]";
-      if (leaf.matches(isArrayPositionRegex)) {
-        int arrayPosition =
-            Integer.parseInt(leaf.substring(leaf.lastIndexOf("[") + 1, leaf.lastIndexOf("]")));
-        rootNode = rootNode.get(leaf.substring(0, leaf.lastIndexOf("[")));
-        rootNode = rootNode.get(arrayPosition);
-      } else {
-        rootNode = rootNode.get(leaf);
+  private JsonPathMatcher getPathMatcher(String subobject) {
+    JsonPathMatcher pathMatcher = compiledPaths.get(subobject);
+    if (pathMatcher == null) {
+      pathMatcher = JsonPathMatcher.compile(subobject);
+      if (compiledPaths.size() < MAX_COMPILED_PATHS) {
+        compiledPaths.put(subobject, pathMatcher);
       }
     }
+    return pathMatcher;
+  }
 
-    if (rootNode.isArray()) {
+  private Object transformJsonToValue(JsonNode node) {
+    if (node.isArray()) {
       List<String> result = new ArrayList<>();
-      rootNode.forEach(e -> result.add(e.asText()));
+      node.forEach(e -> result.add(e.asText()));
       return result;
     } else {
-      return rootNode.asText();
+      return node.asText();
     }
   }
 }
@@ -0,0 +1,117 @@
+/*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package fr.insee.sugoi.seealso;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A subobject path such as items[3].something compiled once. The matcher reads a json document
+ * with a streaming parser, skipping the subtrees outside of the path, and stops on the matched
+ * node.
+ */
+class JsonPathMatcher {
+
+  private final List<Step> steps;
+
+  private JsonPathMatcher(List<Step> steps) {
+    this.steps = steps;
+  }
+
+  /**
+   * @param subobject node names separated with dots, the position of an array item being given
+   *     under []
+   * @return the compiled path
+   */
+  static JsonPathMatcher compile(String subobject) {
+    List<Step> steps = new ArrayList<>();
+    for (String leaf : subobject.split("\\.")) {
+      if (leaf.endsWith("]") && leaf.lastIndexOf("[") != -1) {
+        String position = leaf.substring(leaf.lastIndexOf("[") + 1, leaf.length() - 1);
+        if (!position.isEmpty() && position.chars().allMatch(Character::isDigit)) {
+          String field = leaf.substring(0, leaf.lastIndexOf("["));
+          steps.add(new Step(field.isEmpty() ? null : field, Integer.parseInt(position)));
+          continue;
+        }
+      }
+      steps.add(new Step(leaf, -1));
+    }
+    return new JsonPathMatcher(steps);
+  }
+
+  /**
+   * Move the parser to the matched node
+   *
+   * @param parser a parser at the start of the document
+   * @return true if the parser is on the first token of the matched node, false if the path does
+   *     not exist in the document
+   * @throws IOException if the document cannot be read
+   */
+  boolean match(JsonParser parser) throws IOException {
+    JsonToken token = parser.nextToken();
+    for (Step step : steps) {
+      if (step.field != null) {
+        if (token != JsonToken.START_OBJECT || !moveToField(parser, step.field)) {
+          return false;
+        }
+        token = parser.nextToken();
+      }
+      if (step.position >= 0) {
+        if (token != JsonToken.START_ARRAY || !moveToPosition(parser, step.position)) {
+          return false;
+        }
+        token = parser.currentToken();
+      }
+    }
+    return token != null;
+  }
+
+  private boolean moveToField(JsonParser parser, String field) throws IOException {
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      if (field.equals(parser.getCurrentName())) {
+        return true;
+      }
+      parser.nextToken();
+      parser.skipChildren();
+    }
+    return false;
+  }
+
+  private boolean moveToPosition(JsonParser parser, int position) throws IOException {
+    JsonToken token = parser.nextToken();
+    for (int i = 0; token != null && token != JsonToken.END_ARRAY; i++) {
+      if (i == position) {
+        return true;
+      }
+      parser.skipChildren();
+      token = parser.nextToken();
+    }
+    return false;
+  }
+
+  /** A field to enter, then an array position to enter if not negative */
+  private static class Step {
+
+    private final String field;
+    private final int position;
+
+    private Step(String field, int position) {
+      this.field = field;
+      this.position = position;
+    }
+  }
+}
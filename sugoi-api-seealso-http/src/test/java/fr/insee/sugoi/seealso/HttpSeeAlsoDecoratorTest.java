@@ -15,6 +15,7 @@ package fr.insee.sugoi.seealso;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.when;
 
@@ -24,6 +25,7 @@ import fr.insee.sugoi.model.Group;
 import fr.insee.sugoi.model.User;
 import java.lang.reflect.InaccessibleObjectException;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -92,4 +94,26 @@ public class HttpSeeAlsoDecoratorTest {
     assertThat("Should have habilitation something", ((List<String>) res).get(0), is("something"));
     assertThat("Should have habilitation else", ((List<String>) res).get(1), is("else"));
   }
+
+  @Test
+  public void testGetSeveralResourcesFromHttpUrl() {
+    Map<String, Object> res =
+        httpSeeAlsoDecorator.getResourcesFromUrl(
+            "https://test.this.url/user/toto", List.of("groups[1].name", "username"));
+    assertThat("Group name should be group2", res.get("groups[1].name"), is("group2"));
+    assertThat("Username should be toto", res.get("username"), is("toto"));
+  }
+
+  @Test
+  public void testGetMissingResourceFromHttpUrl() {
+    assertThat(
+        "Missing array item has no resource",
+        httpSeeAlsoDecorator.getResourceFromUrl(
+            "https://test.this.url/user/toto", "groups[5].name"),
+        nullValue());
+    assertThat(
+        "Missing field has no resource",
+        httpSeeAlsoDecorator.getResourceFromUrl("https://test.this.url/user/toto", "notafield"),
+        nullValue());
+  }
 }
@@ -14,17 +14,56 @@
 package fr.insee.sugoi.seealso;
 
 import com.unboundid.ldap.sdk.Attribute;
-import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.GetEntryLDAPConnectionPoolHealthCheck;
+import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPURL;
 import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SingleServerSet;
 import fr.insee.sugoi.core.seealso.SeeAlsoDecorator;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Read seeAlsos on ldap servers. A small connection pool is kept for each host:port, checked in the
+ * background and closed once the server has not been read for the idle timeout. A pool is created
+ * without blocking the reads of the other servers and is never closed while a read uses it.
+ */
 @Service
-public class LdapSeeAlsoDecorator implements SeeAlsoDecorator {
+public class LdapSeeAlsoDecorator implements SeeAlsoDecorator, DisposableBean {
+
+  private static final Logger logger = LogManager.getLogger(LdapSeeAlsoDecorator.class);
+
+  private final Map<String, ServerPool> pools = new ConcurrentHashMap<>();
+
+  private volatile long lastEviction = System.nanoTime();
+
+  @Value("${fr.insee.sugoi.seealso.ldap.timeout:1000}")
+  private int timeoutMillis;
+
+  @Value("${fr.insee.sugoi.seealso.ldap.pool.max-connections:4}")
+  private int maxConnections;
+
+  @Value("${fr.insee.sugoi.seealso.ldap.pool.idle-timeout:300}")
+  private long idleTimeoutSeconds;
+
+  @Value("${fr.insee.sugoi.seealso.ldap.pool.health-check-interval:60}")
+  private long healthCheckIntervalSeconds;
 
   @Override
   public List<String> getProtocols() {
@@ -41,33 +80,186 @@ public class LdapSeeAlsoDecorator implements SeeAlsoDecorator {
    */
   @Override
   public Object getResourceFromUrl(String url, String subobject) {
-    SearchResultEntry searchResultEntry = getResourceFromLdapURL(url);
-    return transformLdapResponseToValue(searchResultEntry, subobject);
+    return getResourcesFromUrl(url, List.of(subobject)).get(subobject);
+  }
+
+  /** Read the entry once, requesting only the wanted attributes */
+  @Override
+  public Map<String, Object> getResourcesFromUrl(String url, Collection<String> subobjects) {
+    Map<String, Object> resources = new HashMap<>();
+    SearchResultEntry searchResultEntry =
+        getResourceFromLdapURL(url, subobjects.toArray(new String[subobjects.size()]));
+    if (searchResultEntry != null) {
+      for (String subobject : subobjects) {
+        Object value = transformLdapResponseToValue(searchResultEntry, subobject);
+        if (value != null) {
+          resources.put(subobject, value);
+        }
+      }
+    }
+    return resources;
   }
 
-  private SearchResultEntry getResourceFromLdapURL(String url) {
-    try (LDAPConnection ldapConnection = new LDAPConnection()) {
-      String portString = url.substring(url.lastIndexOf(":") + 1, url.lastIndexOf("/"));
-      int ldapPort = portString.matches("-?\\d+") ? Integer.parseInt(portString) : 389;
-      String host =
-          url.substring(
-              url.indexOf("/") + 2,
-              url.lastIndexOf(":") != -1 ? url.lastIndexOf(":") : url.lastIndexOf("/"));
-      String dn = url.substring(url.lastIndexOf("/") + 1);
-      ldapConnection.connect(host, ldapPort, 1000);
-      return ldapConnection.getEntry(dn);
+  @Override
+  public void destroy() {
+    pools.values().forEach(ServerPool::close);
+    pools.clear();
+  }
+
+  private SearchResultEntry getResourceFromLdapURL(String url, String... attributes) {
+    try {
+      LDAPURL ldapURL = new LDAPURL(url);
+      ServerPool serverPool = acquire(ldapURL);
+      try {
+        return serverPool.get().getEntry(ldapURL.getBaseDN().toString(), attributes);
+      } finally {
+        serverPool.release();
+      }
     } catch (LDAPException e) {
+      logger.debug("Cannot read {}", url, e);
       return null;
     }
   }
 
+  /**
+   * Get the pool of the server of an url, which must be released once the read is done. The pool
+   * is created by the first reader of the server, the other readers of the server wait for this
+   * creation only.
+   */
+  private ServerPool acquire(LDAPURL ldapURL) throws LDAPException {
+    evictIdlePools();
+    String key = ldapURL.getHost().toLowerCase() + ":" + ldapURL.getPort();
+    while (true) {
+      ServerPool serverPool = pools.get(key);
+      if (serverPool == null) {
+        ServerPool created = new ServerPool();
+        serverPool = pools.putIfAbsent(key, created);
+        if (serverPool == null) {
+          serverPool = created;
+          try {
+            created.future.complete(createPool(key, ldapURL.getHost(), ldapURL.getPort()));
+          } catch (LDAPException | RuntimeException e) {
+            created.future.completeExceptionally(e);
+          }
+        }
+      }
+      if (serverPool.tryAcquire()) {
+        try {
+          serverPool.get();
+        } catch (LDAPException | RuntimeException e) {
+          serverPool.release();
+          // the next read of the server tries to create the pool again
+          pools.remove(key, serverPool);
+          throw e;
+        }
+        return serverPool;
+      }
+      // the pool was closed as idle in the meantime, it is replaced by a new pool
+      pools.remove(key, serverPool);
+    }
+  }
+
+  private LDAPConnectionPool createPool(String key, String host, int port) throws LDAPException {
+    logger.info("Opening a seeAlso connection pool to {}", key);
+    LDAPConnectionOptions options = new LDAPConnectionOptions();
+    options.setConnectTimeoutMillis(timeoutMillis);
+    options.setResponseTimeoutMillis(timeoutMillis);
+    LDAPConnectionPool pool =
+        new LDAPConnectionPool(new SingleServerSet(host, port, options), null, 1, maxConnections);
+    pool.setConnectionPoolName("seealso-" + key);
+    pool.setMaxWaitTimeMillis(timeoutMillis);
+    pool.setRetryFailedOperationsDueToInvalidConnections(true);
+    // read the root DSE in the background and when an operation fails
+    pool.setHealthCheck(
+        new GetEntryLDAPConnectionPoolHealthCheck(
+            null, timeoutMillis, false, false, false, false, true, true));
+    pool.setHealthCheckIntervalMillis(TimeUnit.SECONDS.toMillis(healthCheckIntervalSeconds));
+    return pool;
+  }
+
+  /** Close the pools of the servers not read for the idle timeout, at most once per minute */
+  private void evictIdlePools() {
+    long now = System.nanoTime();
+    if (now - lastEviction < TimeUnit.MINUTES.toNanos(1)) {
+      return;
+    }
+    lastEviction = now;
+    pools.forEach(
+        (key, serverPool) -> {
+          if (now - serverPool.lastUsed > TimeUnit.SECONDS.toNanos(idleTimeoutSeconds)
+              && serverPool.closeIfUnused()) {
+            logger.info("Closing the idle seeAlso connection pool to {}", key);
+            pools.remove(key, serverPool);
+          }
+        });
+  }
+
   private Object transformLdapResponseToValue(
       SearchResultEntry searchResultEntry, String subobject) {
     Attribute attribute = searchResultEntry.getAttribute(subobject);
-    if (attribute.getValues().length > 1) {
+    if (attribute == null) {
+      return null;
+    } else if (attribute.getValues().length > 1) {
       return Arrays.stream(attribute.getValues()).collect(Collectors.toList());
     } else {
       return attribute.getValue();
     }
   }
+
+  /**
+   * The pool of a server, the number of reads using it and the last time it was used. Once closed,
+   * the pool cannot be acquired anymore.
+   */
+  private static class ServerPool {
+
+    private static final int CLOSED = -1;
+
+    private final CompletableFuture<LDAPConnectionPool> future = new CompletableFuture<>();
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile long lastUsed = System.nanoTime();
+
+    private LDAPConnectionPool get() throws LDAPException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a connection pool", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof LDAPException) {
+          throw (LDAPException) e.getCause();
+        }
+        throw (RuntimeException) e.getCause();
+      }
+    }
+
+    private boolean tryAcquire() {
+      int current;
+      do {
+        current = users.get();
+        if (current == CLOSED) {
+          return false;
+        }
+      } while (!users.compareAndSet(current, current + 1));
+      return true;
+    }
+
+    private void release() {
+      lastUsed = System.nanoTime();
+      users.decrementAndGet();
+    }
+
+    /** Close the pool if no read uses it */
+    private boolean closeIfUnused() {
+      if (!users.compareAndSet(0, CLOSED)) {
+        return false;
+      }
+      future.thenAccept(LDAPConnectionPool::close);
+      return true;
+    }
+
+    private void close() {
+      users.set(CLOSED);
+      future.thenAccept(LDAPConnectionPool::close);
+    }
+  }
 }
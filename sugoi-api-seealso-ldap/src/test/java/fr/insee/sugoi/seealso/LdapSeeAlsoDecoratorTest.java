@@ -14,14 +14,19 @@
 package fr.insee.sugoi.seealso;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.ldap.embedded.EmbeddedLdapAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
 
 @SpringBootTest(classes = {EmbeddedLdapAutoConfiguration.class, LdapSeeAlsoDecorator.class})
 @TestPropertySource(locations = "classpath:/application.properties")
@@ -50,4 +55,43 @@ public class LdapSeeAlsoDecoratorTest {
         ((List<String>) res)
             .stream().anyMatch(property -> property.equalsIgnoreCase("prop_role_applitest")));
   }
+
+  @Test
+  public void testGetSeveralResourcesFromLdapUrl() {
+    Map<String, Object> res =
+        ldapSeeAlsoDecorator.getResourcesFromUrl(
+            "ldap://localhost:10389/uid=testc,ou=contacts,ou=clients_domaine1,o=insee,c=fr",
+            List.of("cn", "inseeGroupeDefaut", "notAnAttribute"));
+    assertThat("Should get cn", res.get("cn"), is("Testy Test"));
+    assertThat("Should get habilitations", res.get("inseeGroupeDefaut"), instanceOf(List.class));
+    assertThat("Should ignore missing attribute", res.containsKey("notAnAttribute"), is(false));
+  }
+
+  @Test
+  public void testGetResourceFromMissingEntry() {
+    assertThat(
+        "Missing entry has no resource",
+        ldapSeeAlsoDecorator.getResourceFromUrl(
+            "ldap://localhost:10389/uid=nottestc,ou=contacts,ou=clients_domaine1,o=insee,c=fr",
+            "cn"),
+        nullValue());
+  }
+
+  @Test
+  public void testIdlePoolIsReplaced() {
+    String url = "ldap://localhost:10389/uid=testc,ou=contacts,ou=clients_domaine1,o=insee,c=fr";
+    assertThat(
+        "Pool is opened", ldapSeeAlsoDecorator.getResourceFromUrl(url, "cn"), is("Testy Test"));
+    ReflectionTestUtils.setField(ldapSeeAlsoDecorator, "idleTimeoutSeconds", 0L);
+    try {
+      ReflectionTestUtils.setField(
+          ldapSeeAlsoDecorator, "lastEviction", System.nanoTime() - TimeUnit.MINUTES.toNanos(2));
+      assertThat(
+          "Idle pool is closed and replaced",
+          ldapSeeAlsoDecorator.getResourceFromUrl(url, "cn"),
+          is("Testy Test"));
+    } finally {
+      ReflectionTestUtils.setField(ldapSeeAlsoDecorator, "idleTimeoutSeconds", 300L);
+    }
+  }
 }